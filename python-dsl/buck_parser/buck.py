@@ -8,7 +8,8 @@ import __future__
 
 import contextlib
 from pathlib import Path, PurePath
-from pywatchman import WatchmanError
+from pywatchman import WatchmanError, bser
+from pywatchman.load import load as bser_load
 from .json_encoder import BuckJSONEncoder
 from .glob_internal import glob_internal
 from .glob_mercurial import glob_mercurial_manifest, load_mercurial_repo_info
@@ -23,6 +24,7 @@ import functools
 import hashlib
 import imp
 import inspect
+import io
 import json
 import optparse
 import os
@@ -1028,11 +1030,14 @@ def format_exception_info(exception_info):
     return formatted
 
 
-def encode_result(values, diagnostics, profile):
+def encode_result(values, diagnostics, profile, use_bser=False):
     result = {'values': [
         dict((k, v) for k, v in value.iteritems() if v is not None)
         for value in values]}
     json_encoder = BuckJSONEncoder()
+    encode = json_encoder.encode
+    if use_bser:
+        encode = functools.partial(encode_bser, json_encoder)
     if diagnostics:
         encoded_diagnostics = []
         for d in diagnostics:
@@ -1048,7 +1053,7 @@ def encode_result(values, diagnostics, profile):
     if profile is not None:
         result['profile'] = profile
     try:
-        return json_encoder.encode(result)
+        return encode(result)
     except Exception as e:
         # Try again without the values
         result['values'] = []
@@ -1060,11 +1065,20 @@ def encode_result(values, diagnostics, profile):
             'source': 'parse',
             'exception': format_exception_info(sys.exc_info()),
         })
-        return json_encoder.encode(result)
+        return encode(result)
+
+
+def encode_bser(json_encoder, result):
+    try:
+        return bser.dumps(result)
+    except (ValueError, RuntimeError):
+        # The BSER encoder only knows about the builtin collection types. Let the JSON encoder
+        # convert any other map-like and list-like objects, and report those it cannot encode.
+        return bser.dumps(json.loads(json_encoder.encode(result)))
 
 
 def process_with_diagnostics(build_file_query, build_file_processor, to_parent,
-                             should_profile=False):
+                             should_profile=False, use_bser=False):
     start_time = time.time()
     build_file = build_file_query.get('buildFile')
     watch_root = build_file_query.get('watchRoot')
@@ -1101,15 +1115,15 @@ def process_with_diagnostics(build_file_query, build_file_processor, to_parent,
                     exception=sys.exc_info()))
         raise
     finally:
-        java_process_send_result(to_parent, values, diagnostics, None)
+        java_process_send_result(to_parent, values, diagnostics, None, use_bser)
 
     end_time = time.time()
     return end_time - start_time
 
 
-def java_process_send_result(to_parent, values, diagnostics, profile_result):
+def java_process_send_result(to_parent, values, diagnostics, profile_result, use_bser=False):
     """Sends result to the Java process"""
-    data = encode_result(values, diagnostics, profile_result)
+    data = encode_result(values, diagnostics, profile_result, use_bser)
     to_parent.write(data)
     to_parent.flush()
 
@@ -1156,8 +1170,9 @@ def _optparse_store_kv(option, opt_str, value, parser):
 # directories of generated files produced by Buck.
 #
 # All of the build rules that are parsed from the BUCK files will be printed
-# to stdout encoded in JSON. That means that printing out other information
-# for debugging purposes will break the JSON encoding, so be careful!
+# to stdout encoded in JSON, or in BSER when --use_bser is passed. That means
+# that printing out other information for debugging purposes will break the
+# encoding, so be careful!
 
 
 def main():
@@ -1256,6 +1271,11 @@ def main():
         '--build_file_import_whitelist',
         action='append',
         dest='build_file_import_whitelist')
+    parser.add_option(
+        '--use_bser',
+        action='store_true',
+        dest='use_bser',
+        help='Reads queries from and writes results to the parent encoded in BSER.')
     (options, args) = parser.parse_args()
 
     # Even though project_root is absolute path, it may not be concise. For
@@ -1296,7 +1316,7 @@ def main():
                 source='mercurial',
                 exception=None,
             )
-            java_process_send_result(to_parent, [], [d], None)
+            java_process_send_result(to_parent, [], [d], None, options.use_bser)
             raise
 
     configs = {}
@@ -1356,7 +1376,8 @@ def main():
                     query,
                     buildFileProcessor,
                     to_parent,
-                    should_profile=options.profile)
+                    should_profile=options.profile,
+                    use_bser=options.use_bser)
                 processed_build_file.append({'buildFile': build_file, 'duration': duration})
 
             # From https://docs.python.org/2/using/cmdline.html :
@@ -1365,10 +1386,12 @@ def main():
             # and File Objects (for line in sys.stdin) which is not
             # influenced by this option. To work around this, you will
             # want to use file.readline() inside a while 1: loop.
-            for line in wait_and_read_build_file_query():
-                if line == '':
-                    break
-                build_file_query = json.loads(line)
+            if options.use_bser:
+                build_file_queries = wait_and_read_bser_build_file_queries()
+            else:
+                build_file_queries = (
+                    json.loads(line) for line in wait_and_read_build_file_query())
+            for build_file_query in build_file_queries:
                 if build_file_query.get('command') == 'report_profile':
                     report_profile(options, to_parent, processed_build_file, profiler)
                 else:
@@ -1376,7 +1399,8 @@ def main():
                         build_file_query,
                         buildFileProcessor,
                         to_parent,
-                        should_profile=options.profile)
+                        should_profile=options.profile,
+                        use_bser=options.use_bser)
                     processed_build_file.append(
                         {'buildFile': build_file_query['buildFile'], 'duration': duration})
 
@@ -1396,15 +1420,19 @@ def wait_build_file_query():
     select.select([sys.stdin], [], [])
 
 
-def wait_and_read_build_file_query():
+def get_build_file_query_wait():
     def default_wait():
         return
-    wait = default_wait
     if sys.platform != 'win32':
         # wait_build_file_query() is useful to attribute time waiting for queries.
         # Since select.select() is not supported on Windows, we currently don't have
         # a reliable way to measure it on this platform. Then, we skip it.
-        wait = wait_build_file_query
+        return wait_build_file_query
+    return default_wait
+
+
+def wait_and_read_build_file_query():
+    wait = get_build_file_query_wait()
     while True:
         wait()
         line = sys.stdin.readline()
@@ -1413,6 +1441,18 @@ def wait_and_read_build_file_query():
         yield line
 
 
+def wait_and_read_bser_build_file_queries():
+    wait = get_build_file_query_wait()
+    # Read without buffering, so that waiting for the next query does not hold back this one.
+    from_parent = io.open(sys.stdin.fileno(), 'rb', buffering=0, closefd=False)
+    while True:
+        wait()
+        query = bser_load(from_parent)
+        if query is None:
+            return
+        yield query
+
+
 def report_profile(options, to_parent, processed_build_file, profiler):
     if options.profile:
         try:
@@ -1433,13 +1473,13 @@ def report_profile(options, to_parent, processed_build_file, profiler):
                     info['buildFile'], info['duration'])
             extra_result += '\n\n'
             profile_result = extra_result + profile_result
-            java_process_send_result(to_parent, [], [], profile_result)
+            java_process_send_result(to_parent, [], [], profile_result, options.use_bser)
         except Exception as e:
             trace = traceback.format_exc()
             print(str(trace))
             raise
     else:
-        to_parent.write(encode_result([], [], None))
+        to_parent.write(encode_result([], [], None, options.use_bser))
         to_parent.flush()
 
 
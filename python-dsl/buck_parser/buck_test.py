@@ -1,17 +1,23 @@
 from .buck import (
     BuildFileContext,
     LazyBuildEnvPartial,
+    encode_bser,
+    encode_result,
     flatten_dicts,
     get_mismatched_args,
     subdir_glob,
+    wait_and_read_bser_build_file_queries,
 )
 from .glob_mercurial import _load_manifest_trie, glob_mercurial_manifest
 from .glob_watchman import format_watchman_query_params
 from .glob_internal import path_component_contains_dot, glob_internal
+from .json_encoder import BuckJSONEncoder
 from pathlib import Path, PurePosixPath, PureWindowsPath
+from pywatchman import bser
 import itertools
 import os
 import shutil
+import sys
 import tempfile
 import unittest
 
@@ -634,6 +640,40 @@ class TestBuck(unittest.TestCase):
         self.assertTrue(path_component_contains_dot(Path('.foo/.bar')))
 
 
+class TestBser(unittest.TestCase):
+    def test_encode_bser_encodes_builtin_types(self):
+        result = {'values': [{'name': 'foo', 'deps': [':bar'], 'licenses': None}]}
+        self.assertEqual(result, bser.loads(encode_bser(BuckJSONEncoder(), result)))
+
+    def test_encode_bser_falls_back_to_json_encoder(self):
+        result = {'values': [{'name': 'foo', 'deps': set([':bar'])}]}
+        self.assertEqual(
+            {'values': [{'name': 'foo', 'deps': [':bar']}]},
+            bser.loads(encode_bser(BuckJSONEncoder(), result)))
+
+    def test_encode_result_reports_values_it_cannot_encode(self):
+        decoded = bser.loads(
+            encode_result([{'name': 'foo', 'deps': object()}], [], None, use_bser=True))
+        self.assertEqual([], decoded['values'])
+        self.assertEqual('fatal', decoded['diagnostics'][0]['level'])
+
+    def test_wait_and_read_bser_build_file_queries(self):
+        queries = [
+            {'buildFile': '/project/foo/BUCK', 'watchRoot': '/project', 'projectPrefix': ''},
+            {'command': 'report_profile'},
+        ]
+        orig_stdin = sys.stdin
+        with tempfile.TemporaryFile() as from_parent:
+            for query in queries:
+                from_parent.write(bser.dumps(query))
+            from_parent.seek(0)
+            sys.stdin = from_parent
+            try:
+                self.assertEqual(queries, list(wait_and_read_bser_build_file_queries()))
+            finally:
+                sys.stdin = orig_stdin
+
+
 class TestMemoized(unittest.TestCase):
     def _makeone(self, func, *args, **kwargs):
         from .util import memoized
@@ -0,0 +1,393 @@
+/**
+ * Autogenerated by Thrift Compiler (0.9.3)
+ *
+ * DO NOT EDIT UNLESS YOU ARE SURE THAT YOU KNOW WHAT YOU ARE DOING
+ *  @generated
+ */
+package com.facebook.buck.artifact_cache.thrift;
+
+import org.apache.thrift.scheme.IScheme;
+import org.apache.thrift.scheme.SchemeFactory;
+import org.apache.thrift.scheme.StandardScheme;
+
+import org.apache.thrift.scheme.TupleScheme;
+import org.apache.thrift.protocol.TTupleProtocol;
+import org.apache.thrift.protocol.TProtocolException;
+import org.apache.thrift.EncodingUtils;
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.apache.thrift.server.AbstractNonblockingServer.*;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.EnumSet;
+import java.util.Collections;
+import java.util.BitSet;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import javax.annotation.Generated;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+@SuppressWarnings({"cast", "rawtypes", "serial", "unchecked"})
+@Generated(value = "Autogenerated by Thrift Compiler (0.9.3)", date = "2017-03-12")
+public class BuckCacheContainsResponse implements org.apache.thrift.TBase<BuckCacheContainsResponse, BuckCacheContainsResponse._Fields>, java.io.Serializable, Cloneable, Comparable<BuckCacheContainsResponse> {
+  private static final org.apache.thrift.protocol.TStruct STRUCT_DESC = new org.apache.thrift.protocol.TStruct("BuckCacheContainsResponse");
+
+  private static final org.apache.thrift.protocol.TField ARTIFACT_EXISTS_FIELD_DESC = new org.apache.thrift.protocol.TField("artifactExists", org.apache.thrift.protocol.TType.BOOL, (short)1);
+
+  private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
+  static {
+    schemes.put(StandardScheme.class, new BuckCacheContainsResponseStandardSchemeFactory());
+    schemes.put(TupleScheme.class, new BuckCacheContainsResponseTupleSchemeFactory());
+  }
+
+  public boolean artifactExists; // optional
+
+  /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
+  public enum _Fields implements org.apache.thrift.TFieldIdEnum {
+    ARTIFACT_EXISTS((short)1, "artifactExists");
+
+    private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
+
+    static {
+      for (_Fields field : EnumSet.allOf(_Fields.class)) {
+        byName.put(field.getFieldName(), field);
+      }
+    }
+
+    /**
+     * Find the _Fields constant that matches fieldId, or null if its not found.
+     */
+    public static _Fields findByThriftId(int fieldId) {
+      switch(fieldId) {
+        case 1: // ARTIFACT_EXISTS
+          return ARTIFACT_EXISTS;
+        default:
+          return null;
+      }
+    }
+
+    /**
+     * Find the _Fields constant that matches fieldId, throwing an exception
+     * if it is not found.
+     */
+    public static _Fields findByThriftIdOrThrow(int fieldId) {
+      _Fields fields = findByThriftId(fieldId);
+      if (fields == null) throw new IllegalArgumentException("Field " + fieldId + " doesn't exist!");
+      return fields;
+    }
+
+    /**
+     * Find the _Fields constant that matches name, or null if its not found.
+     */
+    public static _Fields findByName(String name) {
+      return byName.get(name);
+    }
+
+    private final short _thriftId;
+    private final String _fieldName;
+
+    _Fields(short thriftId, String fieldName) {
+      _thriftId = thriftId;
+      _fieldName = fieldName;
+    }
+
+    public short getThriftFieldId() {
+      return _thriftId;
+    }
+
+    public String getFieldName() {
+      return _fieldName;
+    }
+  }
+
+  // isset id assignments
+  private static final int __ARTIFACTEXISTS_ISSET_ID = 0;
+  private byte __isset_bitfield = 0;
+  private static final _Fields optionals[] = {_Fields.ARTIFACT_EXISTS};
+  public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
+  static {
+    Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
+    tmpMap.put(_Fields.ARTIFACT_EXISTS, new org.apache.thrift.meta_data.FieldMetaData("artifactExists", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
+        new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.BOOL)));
+    metaDataMap = Collections.unmodifiableMap(tmpMap);
+    org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(BuckCacheContainsResponse.class, metaDataMap);
+  }
+
+  public BuckCacheContainsResponse() {
+  }
+
+  /**
+   * Performs a deep copy on <i>other</i>.
+   */
+  public BuckCacheContainsResponse(BuckCacheContainsResponse other) {
+    __isset_bitfield = other.__isset_bitfield;
+    this.artifactExists = other.artifactExists;
+  }
+
+  public BuckCacheContainsResponse deepCopy() {
+    return new BuckCacheContainsResponse(this);
+  }
+
+  @Override
+  public void clear() {
+    setArtifactExistsIsSet(false);
+    this.artifactExists = false;
+  }
+
+  public boolean isArtifactExists() {
+    return this.artifactExists;
+  }
+
+  public BuckCacheContainsResponse setArtifactExists(boolean artifactExists) {
+    this.artifactExists = artifactExists;
+    setArtifactExistsIsSet(true);
+    return this;
+  }
+
+  public void unsetArtifactExists() {
+    __isset_bitfield = EncodingUtils.clearBit(__isset_bitfield, __ARTIFACTEXISTS_ISSET_ID);
+  }
+
+  /** Returns true if field artifactExists is set (has been assigned a value) and false otherwise */
+  public boolean isSetArtifactExists() {
+    return EncodingUtils.testBit(__isset_bitfield, __ARTIFACTEXISTS_ISSET_ID);
+  }
+
+  public void setArtifactExistsIsSet(boolean value) {
+    __isset_bitfield = EncodingUtils.setBit(__isset_bitfield, __ARTIFACTEXISTS_ISSET_ID, value);
+  }
+
+  public void setFieldValue(_Fields field, Object value) {
+    switch (field) {
+    case ARTIFACT_EXISTS:
+      if (value == null) {
+        unsetArtifactExists();
+      } else {
+        setArtifactExists((Boolean)value);
+      }
+      break;
+
+    }
+  }
+
+  public Object getFieldValue(_Fields field) {
+    switch (field) {
+    case ARTIFACT_EXISTS:
+      return isArtifactExists();
+
+    }
+    throw new IllegalStateException();
+  }
+
+  /** Returns true if field corresponding to fieldID is set (has been assigned a value) and false otherwise */
+  public boolean isSet(_Fields field) {
+    if (field == null) {
+      throw new IllegalArgumentException();
+    }
+
+    switch (field) {
+    case ARTIFACT_EXISTS:
+      return isSetArtifactExists();
+    }
+    throw new IllegalStateException();
+  }
+
+  @Override
+  public boolean equals(Object that) {
+    if (that == null)
+      return false;
+    if (that instanceof BuckCacheContainsResponse)
+      return this.equals((BuckCacheContainsResponse)that);
+    return false;
+  }
+
+  public boolean equals(BuckCacheContainsResponse that) {
+    if (that == null)
+      return false;
+
+    boolean this_present_artifactExists = true && this.isSetArtifactExists();
+    boolean that_present_artifactExists = true && that.isSetArtifactExists();
+    if (this_present_artifactExists || that_present_artifactExists) {
+      if (!(this_present_artifactExists && that_present_artifactExists))
+        return false;
+      if (this.artifactExists != that.artifactExists)
+        return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    List<Object> list = new ArrayList<Object>();
+
+    boolean present_artifactExists = true && (isSetArtifactExists());
+    list.add(present_artifactExists);
+    if (present_artifactExists)
+      list.add(artifactExists);
+
+    return list.hashCode();
+  }
+
+  @Override
+  public int compareTo(BuckCacheContainsResponse other) {
+    if (!getClass().equals(other.getClass())) {
+      return getClass().getName().compareTo(other.getClass().getName());
+    }
+
+    int lastComparison = 0;
+
+    lastComparison = Boolean.valueOf(isSetArtifactExists()).compareTo(other.isSetArtifactExists());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (isSetArtifactExists()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.artifactExists, other.artifactExists);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
+    return 0;
+  }
+
+  public _Fields fieldForId(int fieldId) {
+    return _Fields.findByThriftId(fieldId);
+  }
+
+  public void read(org.apache.thrift.protocol.TProtocol iprot) throws org.apache.thrift.TException {
+    schemes.get(iprot.getScheme()).getScheme().read(iprot, this);
+  }
+
+  public void write(org.apache.thrift.protocol.TProtocol oprot) throws org.apache.thrift.TException {
+    schemes.get(oprot.getScheme()).getScheme().write(oprot, this);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("BuckCacheContainsResponse(");
+    boolean first = true;
+
+    if (isSetArtifactExists()) {
+      sb.append("artifactExists:");
+      sb.append(this.artifactExists);
+      first = false;
+    }
+    sb.append(")");
+    return sb.toString();
+  }
+
+  public void validate() throws org.apache.thrift.TException {
+    // check for required fields
+    // check for sub-struct validity
+  }
+
+  private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException {
+    try {
+      write(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(out)));
+    } catch (org.apache.thrift.TException te) {
+      throw new java.io.IOException(te);
+    }
+  }
+
+  private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+    try {
+      // it doesn't seem like you should have to do this, but java serialization is wacky, and doesn't call the default constructor.
+      __isset_bitfield = 0;
+      read(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(in)));
+    } catch (org.apache.thrift.TException te) {
+      throw new java.io.IOException(te);
+    }
+  }
+
+  private static class BuckCacheContainsResponseStandardSchemeFactory implements SchemeFactory {
+    public BuckCacheContainsResponseStandardScheme getScheme() {
+      return new BuckCacheContainsResponseStandardScheme();
+    }
+  }
+
+  private static class BuckCacheContainsResponseStandardScheme extends StandardScheme<BuckCacheContainsResponse> {
+
+    public void read(org.apache.thrift.protocol.TProtocol iprot, BuckCacheContainsResponse struct) throws org.apache.thrift.TException {
+      org.apache.thrift.protocol.TField schemeField;
+      iprot.readStructBegin();
+      while (true)
+      {
+        schemeField = iprot.readFieldBegin();
+        if (schemeField.type == org.apache.thrift.protocol.TType.STOP) { 
+          break;
+        }
+        switch (schemeField.id) {
+          case 1: // ARTIFACT_EXISTS
+            if (schemeField.type == org.apache.thrift.protocol.TType.BOOL) {
+              struct.artifactExists = iprot.readBool();
+              struct.setArtifactExistsIsSet(true);
+            } else { 
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
+          default:
+            org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+        }
+        iprot.readFieldEnd();
+      }
+      iprot.readStructEnd();
+
+      // check for required fields of primitive type, which can't be checked in the validate method
+      struct.validate();
+    }
+
+    public void write(org.apache.thrift.protocol.TProtocol oprot, BuckCacheContainsResponse struct) throws org.apache.thrift.TException {
+      struct.validate();
+
+      oprot.writeStructBegin(STRUCT_DESC);
+      if (struct.isSetArtifactExists()) {
+        oprot.writeFieldBegin(ARTIFACT_EXISTS_FIELD_DESC);
+        oprot.writeBool(struct.artifactExists);
+        oprot.writeFieldEnd();
+      }
+      oprot.writeFieldStop();
+      oprot.writeStructEnd();
+    }
+
+  }
+
+  private static class BuckCacheContainsResponseTupleSchemeFactory implements SchemeFactory {
+    public BuckCacheContainsResponseTupleScheme getScheme() {
+      return new BuckCacheContainsResponseTupleScheme();
+    }
+  }
+
+  private static class BuckCacheContainsResponseTupleScheme extends TupleScheme<BuckCacheContainsResponse> {
+
+    @Override
+    public void write(org.apache.thrift.protocol.TProtocol prot, BuckCacheContainsResponse struct) throws org.apache.thrift.TException {
+      TTupleProtocol oprot = (TTupleProtocol) prot;
+      BitSet optionals = new BitSet();
+      if (struct.isSetArtifactExists()) {
+        optionals.set(0);
+      }
+      oprot.writeBitSet(optionals, 1);
+      if (struct.isSetArtifactExists()) {
+        oprot.writeBool(struct.artifactExists);
+      }
+    }
+
+    @Override
+    public void read(org.apache.thrift.protocol.TProtocol prot, BuckCacheContainsResponse struct) throws org.apache.thrift.TException {
+      TTupleProtocol iprot = (TTupleProtocol) prot;
+      BitSet incoming = iprot.readBitSet(1);
+      if (incoming.get(0)) {
+        struct.artifactExists = iprot.readBool();
+        struct.setArtifactExistsIsSet(true);
+      }
+    }
+  }
+
+}
+
@@ -44,6 +44,8 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
   private static final org.apache.thrift.protocol.TField PAYLOADS_FIELD_DESC = new org.apache.thrift.protocol.TField("payloads", org.apache.thrift.protocol.TType.LIST, (short)100);
   private static final org.apache.thrift.protocol.TField FETCH_RESPONSE_FIELD_DESC = new org.apache.thrift.protocol.TField("fetchResponse", org.apache.thrift.protocol.TType.STRUCT, (short)101);
   private static final org.apache.thrift.protocol.TField STORE_RESPONSE_FIELD_DESC = new org.apache.thrift.protocol.TField("storeResponse", org.apache.thrift.protocol.TType.STRUCT, (short)102);
+  private static final org.apache.thrift.protocol.TField MULTI_FETCH_RESPONSE_FIELD_DESC = new org.apache.thrift.protocol.TField("multiFetchResponse", org.apache.thrift.protocol.TType.STRUCT, (short)103);
+  private static final org.apache.thrift.protocol.TField CONTAINS_RESPONSE_FIELD_DESC = new org.apache.thrift.protocol.TField("containsResponse", org.apache.thrift.protocol.TType.STRUCT, (short)104);
 
   private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
   static {
@@ -61,6 +63,8 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
   public List<PayloadInfo> payloads; // optional
   public BuckCacheFetchResponse fetchResponse; // optional
   public BuckCacheStoreResponse storeResponse; // optional
+  public BuckCacheMultiFetchResponse multiFetchResponse; // optional
+  public BuckCacheContainsResponse containsResponse; // optional
 
   /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
   public enum _Fields implements org.apache.thrift.TFieldIdEnum {
@@ -73,7 +77,9 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
     TYPE((short)10, "type"),
     PAYLOADS((short)100, "payloads"),
     FETCH_RESPONSE((short)101, "fetchResponse"),
-    STORE_RESPONSE((short)102, "storeResponse");
+    STORE_RESPONSE((short)102, "storeResponse"),
+    MULTI_FETCH_RESPONSE((short)103, "multiFetchResponse"),
+    CONTAINS_RESPONSE((short)104, "containsResponse");
 
     private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
 
@@ -100,6 +106,10 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
           return FETCH_RESPONSE;
         case 102: // STORE_RESPONSE
           return STORE_RESPONSE;
+        case 103: // MULTI_FETCH_RESPONSE
+          return MULTI_FETCH_RESPONSE;
+        case 104: // CONTAINS_RESPONSE
+          return CONTAINS_RESPONSE;
         default:
           return null;
       }
@@ -142,7 +152,7 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
   // isset id assignments
   private static final int __WASSUCCESSFUL_ISSET_ID = 0;
   private byte __isset_bitfield = 0;
-  private static final _Fields optionals[] = {_Fields.WAS_SUCCESSFUL,_Fields.ERROR_MESSAGE,_Fields.TYPE,_Fields.PAYLOADS,_Fields.FETCH_RESPONSE,_Fields.STORE_RESPONSE};
+  private static final _Fields optionals[] = {_Fields.WAS_SUCCESSFUL,_Fields.ERROR_MESSAGE,_Fields.TYPE,_Fields.PAYLOADS,_Fields.FETCH_RESPONSE,_Fields.STORE_RESPONSE,_Fields.MULTI_FETCH_RESPONSE,_Fields.CONTAINS_RESPONSE};
   public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
   static {
     Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
@@ -159,6 +169,10 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
         new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, BuckCacheFetchResponse.class)));
     tmpMap.put(_Fields.STORE_RESPONSE, new org.apache.thrift.meta_data.FieldMetaData("storeResponse", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
         new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, BuckCacheStoreResponse.class)));
+    tmpMap.put(_Fields.MULTI_FETCH_RESPONSE, new org.apache.thrift.meta_data.FieldMetaData("multiFetchResponse", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
+        new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, BuckCacheMultiFetchResponse.class)));
+    tmpMap.put(_Fields.CONTAINS_RESPONSE, new org.apache.thrift.meta_data.FieldMetaData("containsResponse", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
+        new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, BuckCacheContainsResponse.class)));
     metaDataMap = Collections.unmodifiableMap(tmpMap);
     org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(BuckCacheResponse.class, metaDataMap);
   }
@@ -193,6 +207,12 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
     if (other.isSetStoreResponse()) {
       this.storeResponse = new BuckCacheStoreResponse(other.storeResponse);
     }
+    if (other.isSetMultiFetchResponse()) {
+      this.multiFetchResponse = new BuckCacheMultiFetchResponse(other.multiFetchResponse);
+    }
+    if (other.isSetContainsResponse()) {
+      this.containsResponse = new BuckCacheContainsResponse(other.containsResponse);
+    }
   }
 
   public BuckCacheResponse deepCopy() {
@@ -209,6 +229,8 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
     this.payloads = null;
     this.fetchResponse = null;
     this.storeResponse = null;
+    this.multiFetchResponse = null;
+    this.containsResponse = null;
   }
 
   public boolean isWasSuccessful() {
@@ -377,6 +399,54 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
     }
   }
 
+  public BuckCacheMultiFetchResponse getMultiFetchResponse() {
+    return this.multiFetchResponse;
+  }
+
+  public BuckCacheResponse setMultiFetchResponse(BuckCacheMultiFetchResponse multiFetchResponse) {
+    this.multiFetchResponse = multiFetchResponse;
+    return this;
+  }
+
+  public void unsetMultiFetchResponse() {
+    this.multiFetchResponse = null;
+  }
+
+  /** Returns true if field multiFetchResponse is set (has been assigned a value) and false otherwise */
+  public boolean isSetMultiFetchResponse() {
+    return this.multiFetchResponse != null;
+  }
+
+  public void setMultiFetchResponseIsSet(boolean value) {
+    if (!value) {
+      this.multiFetchResponse = null;
+    }
+  }
+
+  public BuckCacheContainsResponse getContainsResponse() {
+    return this.containsResponse;
+  }
+
+  public BuckCacheResponse setContainsResponse(BuckCacheContainsResponse containsResponse) {
+    this.containsResponse = containsResponse;
+    return this;
+  }
+
+  public void unsetContainsResponse() {
+    this.containsResponse = null;
+  }
+
+  /** Returns true if field containsResponse is set (has been assigned a value) and false otherwise */
+  public boolean isSetContainsResponse() {
+    return this.containsResponse != null;
+  }
+
+  public void setContainsResponseIsSet(boolean value) {
+    if (!value) {
+      this.containsResponse = null;
+    }
+  }
+
   public void setFieldValue(_Fields field, Object value) {
     switch (field) {
     case WAS_SUCCESSFUL:
@@ -427,6 +497,22 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
       }
       break;
 
+    case MULTI_FETCH_RESPONSE:
+      if (value == null) {
+        unsetMultiFetchResponse();
+      } else {
+        setMultiFetchResponse((BuckCacheMultiFetchResponse)value);
+      }
+      break;
+
+    case CONTAINS_RESPONSE:
+      if (value == null) {
+        unsetContainsResponse();
+      } else {
+        setContainsResponse((BuckCacheContainsResponse)value);
+      }
+      break;
+
     }
   }
 
@@ -450,6 +536,12 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
     case STORE_RESPONSE:
       return getStoreResponse();
 
+    case MULTI_FETCH_RESPONSE:
+      return getMultiFetchResponse();
+
+    case CONTAINS_RESPONSE:
+      return getContainsResponse();
+
     }
     throw new IllegalStateException();
   }
@@ -473,6 +565,10 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
       return isSetFetchResponse();
     case STORE_RESPONSE:
       return isSetStoreResponse();
+    case MULTI_FETCH_RESPONSE:
+      return isSetMultiFetchResponse();
+    case CONTAINS_RESPONSE:
+      return isSetContainsResponse();
     }
     throw new IllegalStateException();
   }
@@ -544,6 +640,24 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
         return false;
     }
 
+    boolean this_present_multiFetchResponse = true && this.isSetMultiFetchResponse();
+    boolean that_present_multiFetchResponse = true && that.isSetMultiFetchResponse();
+    if (this_present_multiFetchResponse || that_present_multiFetchResponse) {
+      if (!(this_present_multiFetchResponse && that_present_multiFetchResponse))
+        return false;
+      if (!this.multiFetchResponse.equals(that.multiFetchResponse))
+        return false;
+    }
+
+    boolean this_present_containsResponse = true && this.isSetContainsResponse();
+    boolean that_present_containsResponse = true && that.isSetContainsResponse();
+    if (this_present_containsResponse || that_present_containsResponse) {
+      if (!(this_present_containsResponse && that_present_containsResponse))
+        return false;
+      if (!this.containsResponse.equals(that.containsResponse))
+        return false;
+    }
+
     return true;
   }
 
@@ -581,6 +695,16 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
     if (present_storeResponse)
       list.add(storeResponse);
 
+    boolean present_multiFetchResponse = true && (isSetMultiFetchResponse());
+    list.add(present_multiFetchResponse);
+    if (present_multiFetchResponse)
+      list.add(multiFetchResponse);
+
+    boolean present_containsResponse = true && (isSetContainsResponse());
+    list.add(present_containsResponse);
+    if (present_containsResponse)
+      list.add(containsResponse);
+
     return list.hashCode();
   }
 
@@ -652,6 +776,26 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
         return lastComparison;
       }
     }
+    lastComparison = Boolean.valueOf(isSetMultiFetchResponse()).compareTo(other.isSetMultiFetchResponse());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (isSetMultiFetchResponse()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.multiFetchResponse, other.multiFetchResponse);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
+    lastComparison = Boolean.valueOf(isSetContainsResponse()).compareTo(other.isSetContainsResponse());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (isSetContainsResponse()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.containsResponse, other.containsResponse);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
     return 0;
   }
 
@@ -727,6 +871,26 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
       }
       first = false;
     }
+    if (isSetMultiFetchResponse()) {
+      if (!first) sb.append(", ");
+      sb.append("multiFetchResponse:");
+      if (this.multiFetchResponse == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.multiFetchResponse);
+      }
+      first = false;
+    }
+    if (isSetContainsResponse()) {
+      if (!first) sb.append(", ");
+      sb.append("containsResponse:");
+      if (this.containsResponse == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.containsResponse);
+      }
+      first = false;
+    }
     sb.append(")");
     return sb.toString();
   }
@@ -740,6 +904,12 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
     if (storeResponse != null) {
       storeResponse.validate();
     }
+    if (multiFetchResponse != null) {
+      multiFetchResponse.validate();
+    }
+    if (containsResponse != null) {
+      containsResponse.validate();
+    }
   }
 
   private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException {
@@ -839,6 +1009,24 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
               org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
             }
             break;
+          case 103: // MULTI_FETCH_RESPONSE
+            if (schemeField.type == org.apache.thrift.protocol.TType.STRUCT) {
+              struct.multiFetchResponse = new BuckCacheMultiFetchResponse();
+              struct.multiFetchResponse.read(iprot);
+              struct.setMultiFetchResponseIsSet(true);
+            } else { 
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
+          case 104: // CONTAINS_RESPONSE
+            if (schemeField.type == org.apache.thrift.protocol.TType.STRUCT) {
+              struct.containsResponse = new BuckCacheContainsResponse();
+              struct.containsResponse.read(iprot);
+              struct.setContainsResponseIsSet(true);
+            } else { 
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
           default:
             org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
         }
@@ -901,6 +1089,20 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
           oprot.writeFieldEnd();
         }
       }
+      if (struct.multiFetchResponse != null) {
+        if (struct.isSetMultiFetchResponse()) {
+          oprot.writeFieldBegin(MULTI_FETCH_RESPONSE_FIELD_DESC);
+          struct.multiFetchResponse.write(oprot);
+          oprot.writeFieldEnd();
+        }
+      }
+      if (struct.containsResponse != null) {
+        if (struct.isSetContainsResponse()) {
+          oprot.writeFieldBegin(CONTAINS_RESPONSE_FIELD_DESC);
+          struct.containsResponse.write(oprot);
+          oprot.writeFieldEnd();
+        }
+      }
       oprot.writeFieldStop();
       oprot.writeStructEnd();
     }
@@ -937,7 +1139,13 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
       if (struct.isSetStoreResponse()) {
         optionals.set(5);
       }
-      oprot.writeBitSet(optionals, 6);
+      if (struct.isSetMultiFetchResponse()) {
+        optionals.set(6);
+      }
+      if (struct.isSetContainsResponse()) {
+        optionals.set(7);
+      }
+      oprot.writeBitSet(optionals, 8);
       if (struct.isSetWasSuccessful()) {
         oprot.writeBool(struct.wasSuccessful);
       }
@@ -962,12 +1170,18 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
       if (struct.isSetStoreResponse()) {
         struct.storeResponse.write(oprot);
       }
+      if (struct.isSetMultiFetchResponse()) {
+        struct.multiFetchResponse.write(oprot);
+      }
+      if (struct.isSetContainsResponse()) {
+        struct.containsResponse.write(oprot);
+      }
     }
 
     @Override
     public void read(org.apache.thrift.protocol.TProtocol prot, BuckCacheResponse struct) throws org.apache.thrift.TException {
       TTupleProtocol iprot = (TTupleProtocol) prot;
-      BitSet incoming = iprot.readBitSet(6);
+      BitSet incoming = iprot.readBitSet(8);
       if (incoming.get(0)) {
         struct.wasSuccessful = iprot.readBool();
         struct.setWasSuccessfulIsSet(true);
@@ -1004,6 +1218,16 @@ public class BuckCacheResponse implements org.apache.thrift.TBase<BuckCacheRespo
         struct.storeResponse.read(iprot);
         struct.setStoreResponseIsSet(true);
       }
+      if (incoming.get(6)) {
+        struct.multiFetchResponse = new BuckCacheMultiFetchResponse();
+        struct.multiFetchResponse.read(iprot);
+        struct.setMultiFetchResponseIsSet(true);
+      }
+      if (incoming.get(7)) {
+        struct.containsResponse = new BuckCacheContainsResponse();
+        struct.containsResponse.read(iprot);
+        struct.setContainsResponseIsSet(true);
+      }
     }
   }
 
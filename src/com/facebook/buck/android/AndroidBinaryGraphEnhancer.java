@@ -602,28 +602,20 @@ public class AndroidBinaryGraphEnhancer {
         continue;
       }
 
-      // See whether the corresponding IntermediateDexRule has already been added to the
-      // ruleResolver.
-      BuildTarget originalTarget = javaLibrary.getBuildTarget();
-      BuildTarget preDexTarget = originalTarget.withAppendedFlavors(DEX_FLAVOR);
-      Optional<BuildRule> preDexRule = ruleResolver.getRuleOptional(preDexTarget);
-      if (preDexRule.isPresent()) {
-        preDexDeps.put(
-            apkModuleGraph.findModuleForTarget(buildTarget),
-            (DexProducedFromJavaLibrary) preDexRule.get());
-        continue;
-      }
-
-      // Create the IntermediateDexRule and add it to both the ruleResolver and preDexDeps.
-      BuildRuleParams paramsForPreDex =
-          buildRuleParams
-              .withDeclaredDeps(
-                  ImmutableSortedSet.of(ruleResolver.getRule(javaLibrary.getBuildTarget())))
-              .withoutExtraDeps();
+      // Look up the corresponding IntermediateDexRule, creating it if no other binary has yet.
+      BuildTarget preDexTarget = javaLibrary.getBuildTarget().withAppendedFlavors(DEX_FLAVOR);
       DexProducedFromJavaLibrary preDex =
-          new DexProducedFromJavaLibrary(
-              preDexTarget, projectFilesystem, paramsForPreDex, javaLibrary);
-      ruleResolver.addToIndex(preDex);
+          (DexProducedFromJavaLibrary)
+              ruleResolver.computeIfAbsent(
+                  preDexTarget,
+                  target ->
+                      new DexProducedFromJavaLibrary(
+                          target,
+                          projectFilesystem,
+                          buildRuleParams
+                              .withDeclaredDeps(ImmutableSortedSet.of(javaLibrary))
+                              .withoutExtraDeps(),
+                          javaLibrary));
       preDexDeps.put(apkModuleGraph.findModuleForTarget(buildTarget), preDex);
     }
     return preDexDeps.build();
@@ -126,20 +126,22 @@ public class AndroidLibraryGraphEnhancer {
             // that is used to build it
             originalBuildRuleParams.withoutDeclaredDeps().withoutExtraDeps(), ruleFinder);
 
-    DummyRDotJava dummyRDotJava =
-        new DummyRDotJava(
+    BuildRule dummyRDotJava =
+        ruleResolver.computeIfAbsent(
             dummyRDotJavaBuildTarget,
-            projectFilesystem,
-            dummyRDotJavaParams,
-            ruleFinder,
-            androidResourceDeps,
-            compileToJarStepFactory,
-            forceFinalResourceIds,
-            resourceUnionPackage,
-            finalRName,
-            useOldStyleableFormat);
-    ruleResolver.addToIndex(dummyRDotJava);
+            target ->
+                new DummyRDotJava(
+                    target,
+                    projectFilesystem,
+                    dummyRDotJavaParams,
+                    ruleFinder,
+                    androidResourceDeps,
+                    compileToJarStepFactory,
+                    forceFinalResourceIds,
+                    resourceUnionPackage,
+                    finalRName,
+                    useOldStyleableFormat));
 
-    return Optional.of(dummyRDotJava);
+    return Optional.of((DummyRDotJava) dummyRDotJava);
   }
 }
@@ -364,16 +364,9 @@ public class AppleBinaryDescription
 
       ImmutableSortedSet.Builder<BuildRule> thinRules = ImmutableSortedSet.naturalOrder();
       for (BuildTarget thinTarget : fatBinaryInfo.get().getThinTargets()) {
-        Optional<BuildRule> existingThinRule = resolver.getRuleOptional(thinTarget);
-        if (existingThinRule.isPresent()) {
-          thinRules.add(existingThinRule.get());
-          continue;
-        }
-        BuildRule thinRule =
+        thinRules.add(
             requireThinBinary(
-                targetGraph, thinTarget, projectFilesystem, params, resolver, cellRoots, args);
-        resolver.addToIndex(thinRule);
-        thinRules.add(thinRule);
+                targetGraph, thinTarget, projectFilesystem, params, resolver, cellRoots, args));
       }
       return MultiarchFileInfos.requireMultiarchRule(
           buildTarget, projectFilesystem, params, resolver, fatBinaryInfo.get(), thinRules.build());
@@ -392,11 +385,22 @@ public class AppleBinaryDescription
       CellPathResolver cellRoots,
       AppleBinaryDescriptionArg args)
       throws NoSuchBuildTargetException {
-    Optional<BuildRule> existingThinRule = resolver.getRuleOptional(buildTarget);
-    if (existingThinRule.isPresent()) {
-      return existingThinRule.get();
-    }
+    return resolver.computeIfAbsentThrowing(
+        buildTarget,
+        ignored ->
+            createThinBinary(
+                targetGraph, buildTarget, projectFilesystem, params, resolver, cellRoots, args));
+  }
 
+  private BuildRule createThinBinary(
+      TargetGraph targetGraph,
+      BuildTarget buildTarget,
+      ProjectFilesystem projectFilesystem,
+      BuildRuleParams params,
+      BuildRuleResolver resolver,
+      CellPathResolver cellRoots,
+      AppleBinaryDescriptionArg args)
+      throws NoSuchBuildTargetException {
     ImmutableSortedSet.Builder<BuildTarget> extraCxxDepsBuilder = ImmutableSortedSet.naturalOrder();
     Optional<BuildRule> swiftCompanionBuildRule =
         swiftDelegate.createCompanionBuildRule(
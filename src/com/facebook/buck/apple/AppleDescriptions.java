@@ -496,22 +496,20 @@ public class AppleDescriptions {
               .withoutFlavors(AppleDebugFormat.FLAVOR_DOMAIN.getFlavors())
               .withoutFlavors(LinkerMapMode.NO_LINKER_MAP.getFlavor())
               .withAppendedFlavors(AppleDsym.RULE_FLAVOR);
-      Optional<BuildRule> dsymRule = resolver.getRuleOptional(dsymBuildTarget);
-      if (!dsymRule.isPresent()) {
-        dsymRule =
-            Optional.of(
-                createAppleDsym(
-                    dsymBuildTarget,
-                    projectFilesystem,
-                    params,
-                    resolver,
-                    unstrippedBinaryRule,
-                    cxxPlatformFlavorDomain,
-                    defaultCxxPlatform,
-                    appleCxxPlatforms));
-      }
-      Preconditions.checkArgument(dsymRule.get() instanceof AppleDsym);
-      return Optional.of((AppleDsym) dsymRule.get());
+      BuildRule dsymRule =
+          resolver.computeIfAbsent(
+              dsymBuildTarget,
+              target ->
+                  createAppleDsym(
+                      target,
+                      projectFilesystem,
+                      params,
+                      unstrippedBinaryRule,
+                      cxxPlatformFlavorDomain,
+                      defaultCxxPlatform,
+                      appleCxxPlatforms));
+      Preconditions.checkArgument(dsymRule instanceof AppleDsym);
+      return Optional.of((AppleDsym) dsymRule);
     }
     return Optional.empty();
   }
@@ -520,7 +518,6 @@ public class AppleDescriptions {
       BuildTarget buildTarget,
       ProjectFilesystem projectFilesystem,
       BuildRuleParams params,
-      BuildRuleResolver resolver,
       ProvidesLinkedBinaryDeps unstrippedBinaryBuildRule,
       FlavorDomain<CxxPlatform> cxxPlatformFlavorDomain,
       CxxPlatform defaultCxxPlatform,
@@ -535,24 +532,21 @@ public class AppleDescriptions {
             MultiarchFileInfos.create(
                 appleCxxPlatforms, unstrippedBinaryBuildRule.getBuildTarget()));
 
-    AppleDsym appleDsym =
-        new AppleDsym(
-            buildTarget,
-            projectFilesystem,
-            params
-                .withDeclaredDeps(
-                    ImmutableSortedSet.<BuildRule>naturalOrder()
-                        .add(unstrippedBinaryBuildRule)
-                        .addAll(unstrippedBinaryBuildRule.getCompileDeps())
-                        .addAll(unstrippedBinaryBuildRule.getStaticLibraryDeps())
-                        .build())
-                .withoutExtraDeps(),
-            appleCxxPlatform.getDsymutil(),
-            appleCxxPlatform.getLldb(),
-            unstrippedBinaryBuildRule.getSourcePathToOutput(),
-            AppleDsym.getDsymOutputPath(buildTarget, projectFilesystem));
-    resolver.addToIndex(appleDsym);
-    return appleDsym;
+    return new AppleDsym(
+        buildTarget,
+        projectFilesystem,
+        params
+            .withDeclaredDeps(
+                ImmutableSortedSet.<BuildRule>naturalOrder()
+                    .add(unstrippedBinaryBuildRule)
+                    .addAll(unstrippedBinaryBuildRule.getCompileDeps())
+                    .addAll(unstrippedBinaryBuildRule.getStaticLibraryDeps())
+                    .build())
+            .withoutExtraDeps(),
+        appleCxxPlatform.getDsymutil(),
+        appleCxxPlatform.getLldb(),
+        unstrippedBinaryBuildRule.getSourcePathToOutput(),
+        AppleDsym.getDsymOutputPath(buildTarget, projectFilesystem));
   }
 
   static AppleBundle createAppleBundle(
@@ -458,25 +458,22 @@ public class AppleLibraryDescription
       unstrippedTarget = unstrippedTarget.withoutFlavors(LinkerMapMode.NO_LINKER_MAP.getFlavor());
     }
 
-    Optional<BuildRule> existingRule = resolver.getRuleOptional(unstrippedTarget);
-    if (existingRule.isPresent()) {
-      return existingRule.get();
-    } else {
-      BuildRule rule =
-          delegate.createBuildRule(
-              unstrippedTarget,
-              projectFilesystem,
-              params,
-              resolver,
-              cellRoots,
-              delegateArg.build(),
-              linkableDepType,
-              bundleLoader,
-              blacklist,
-              extraCxxDeps,
-              transitiveCxxDeps);
-      return resolver.addToIndex(rule);
-    }
+    BuildRuleParams delegateParams = params;
+    return resolver.computeIfAbsentThrowing(
+        unstrippedTarget,
+        target ->
+            delegate.createBuildRule(
+                target,
+                projectFilesystem,
+                delegateParams,
+                resolver,
+                cellRoots,
+                delegateArg.build(),
+                linkableDepType,
+                bundleLoader,
+                blacklist,
+                extraCxxDeps,
+                transitiveCxxDeps));
   }
 
   private boolean shouldWrapIntoDebuggableBinary(BuildTarget buildTarget, BuildRule buildRule) {
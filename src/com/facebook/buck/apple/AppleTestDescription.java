@@ -316,41 +316,41 @@ public class AppleTestDescription
           xctoolZipBuildRule.getBuildTarget().withAppendedFlavors(UNZIP_XCTOOL_FLAVOR);
       final Path outputDirectory =
           BuildTargets.getGenPath(projectFilesystem, unzipXctoolTarget, "%s/unzipped");
-      if (!resolver.getRuleOptional(unzipXctoolTarget).isPresent()) {
-        BuildRuleParams unzipXctoolParams =
-            params.withDeclaredDeps(ImmutableSortedSet.of(xctoolZipBuildRule)).withoutExtraDeps();
-        resolver.addToIndex(
-            new AbstractBuildRuleWithDeclaredAndExtraDeps(
-                unzipXctoolTarget, projectFilesystem, unzipXctoolParams) {
-              @Override
-              public ImmutableList<Step> getBuildSteps(
-                  BuildContext context, BuildableContext buildableContext) {
-                buildableContext.recordArtifact(outputDirectory);
-                return new ImmutableList.Builder<Step>()
-                    .addAll(
-                        MakeCleanDirectoryStep.of(
-                            BuildCellRelativePath.fromCellRelativePath(
-                                context.getBuildCellRootPath(),
-                                getProjectFilesystem(),
-                                outputDirectory)))
-                    .add(
-                        new UnzipStep(
-                            getProjectFilesystem(),
-                            context
-                                .getSourcePathResolver()
-                                .getAbsolutePath(
-                                    Preconditions.checkNotNull(
-                                        xctoolZipBuildRule.getSourcePathToOutput())),
-                            outputDirectory))
-                    .build();
-              }
-
-              @Override
-              public SourcePath getSourcePathToOutput() {
-                return new ExplicitBuildTargetSourcePath(getBuildTarget(), outputDirectory);
-              }
-            });
-      }
+      BuildRuleParams unzipXctoolParams =
+          params.withDeclaredDeps(ImmutableSortedSet.of(xctoolZipBuildRule)).withoutExtraDeps();
+      resolver.computeIfAbsent(
+          unzipXctoolTarget,
+          target ->
+              new AbstractBuildRuleWithDeclaredAndExtraDeps(
+                  target, projectFilesystem, unzipXctoolParams) {
+                @Override
+                public ImmutableList<Step> getBuildSteps(
+                    BuildContext context, BuildableContext buildableContext) {
+                  buildableContext.recordArtifact(outputDirectory);
+                  return new ImmutableList.Builder<Step>()
+                      .addAll(
+                          MakeCleanDirectoryStep.of(
+                              BuildCellRelativePath.fromCellRelativePath(
+                                  context.getBuildCellRootPath(),
+                                  getProjectFilesystem(),
+                                  outputDirectory)))
+                      .add(
+                          new UnzipStep(
+                              getProjectFilesystem(),
+                              context
+                                  .getSourcePathResolver()
+                                  .getAbsolutePath(
+                                      Preconditions.checkNotNull(
+                                          xctoolZipBuildRule.getSourcePathToOutput())),
+                              outputDirectory))
+                      .build();
+                }
+
+                @Override
+                public SourcePath getSourcePathToOutput() {
+                  return new ExplicitBuildTargetSourcePath(getBuildTarget(), outputDirectory);
+                }
+              });
       return Optional.of(
           new ExplicitBuildTargetSourcePath(
               unzipXctoolTarget, outputDirectory.resolve("bin/xctool")));
@@ -377,30 +377,24 @@ public class AppleTestDescription
         libraryTarget
             .withAppendedFlavors(AppleDebuggableBinary.RULE_FLAVOR, CxxStrip.RULE_FLAVOR)
             .withAppendedFlavors(StripStyle.NON_GLOBAL_SYMBOLS.getFlavor());
-    Optional<BuildRule> existingLibrary = resolver.getRuleOptional(existingLibraryTarget);
-    BuildRule library;
-    if (existingLibrary.isPresent()) {
-      library = existingLibrary.get();
-    } else {
-      library =
-          appleLibraryDescription.createLibraryBuildRule(
-              targetGraph,
-              libraryTarget,
-              projectFilesystem,
-              params,
-              resolver,
-              cellRoots,
-              args,
-              // For now, instead of building all deps as dylibs and fixing up their install_names,
-              // we'll just link them statically.
-              Optional.of(Linker.LinkableDepType.STATIC),
-              testHostAppBinarySourcePath,
-              blacklist,
-              extraCxxDeps,
-              CxxLibraryDescription.TransitiveCxxPreprocessorInputFunction.fromDeps());
-      resolver.addToIndex(library);
-    }
-    return library;
+    return resolver.computeIfAbsentThrowing(
+        existingLibraryTarget,
+        ignored ->
+            appleLibraryDescription.createLibraryBuildRule(
+                targetGraph,
+                libraryTarget,
+                projectFilesystem,
+                params,
+                resolver,
+                cellRoots,
+                args,
+                // For now, instead of building all deps as dylibs and fixing up their
+                // install_names, we'll just link them statically.
+                Optional.of(Linker.LinkableDepType.STATIC),
+                testHostAppBinarySourcePath,
+                blacklist,
+                extraCxxDeps,
+                CxxLibraryDescription.TransitiveCxxPreprocessorInputFunction.fromDeps()));
   }
 
   @Override
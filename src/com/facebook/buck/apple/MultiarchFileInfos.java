@@ -128,11 +128,6 @@ public class MultiarchFileInfos {
       BuildRuleResolver resolver,
       MultiarchFileInfo info,
       ImmutableSortedSet<BuildRule> thinRules) {
-    Optional<BuildRule> existingRule = resolver.getRuleOptional(info.getFatTarget());
-    if (existingRule.isPresent()) {
-      return existingRule.get();
-    }
-
     for (BuildRule rule : thinRules) {
       if (rule.getSourcePathToOutput() == null) {
         throw new HumanReadableException("%s: no output so it cannot be a multiarch input", rule);
@@ -144,17 +139,17 @@ public class MultiarchFileInfos {
             .transform(BuildRule::getSourcePathToOutput)
             .toSortedSet(Ordering.natural());
     SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(resolver);
-    MultiarchFile multiarchFile =
-        new MultiarchFile(
-            buildTarget,
-            projectFilesystem,
-            params.withoutDeclaredDeps().withExtraDeps(thinRules),
-            ruleFinder,
-            info.getRepresentativePlatform().getLipo(),
-            inputs,
-            BuildTargets.getGenPath(projectFilesystem, buildTarget, "%s"));
-    resolver.addToIndex(multiarchFile);
-    return multiarchFile;
+    return resolver.computeIfAbsent(
+        info.getFatTarget(),
+        ignored ->
+            new MultiarchFile(
+                buildTarget,
+                projectFilesystem,
+                params.withoutDeclaredDeps().withExtraDeps(thinRules),
+                ruleFinder,
+                info.getRepresentativePlatform().getLipo(),
+                inputs,
+                BuildTargets.getGenPath(projectFilesystem, buildTarget, "%s")));
   }
 
   private static final ImmutableSet<Flavor> FORBIDDEN_BUILD_ACTIONS =
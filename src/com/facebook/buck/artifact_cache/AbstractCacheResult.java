@@ -90,7 +90,9 @@ abstract class AbstractCacheResult {
 
   public String getCacheSource() {
     Preconditions.checkState(
-        getType() == CacheResultType.HIT || getType() == CacheResultType.ERROR);
+        getType() == CacheResultType.HIT
+            || getType() == CacheResultType.ERROR
+            || getType() == CacheResultType.CONTAINS);
     return cacheSource().get();
   }
 
@@ -155,6 +157,17 @@ abstract class AbstractCacheResult {
         Optional.empty());
   }
 
+  public static CacheResult contains(String cacheSource, ArtifactCacheMode cacheMode) {
+    return CacheResult.of(
+        CacheResultType.CONTAINS,
+        Optional.of(cacheSource),
+        Optional.of(cacheMode),
+        Optional.empty(),
+        Optional.empty(),
+        Optional.empty(),
+        Optional.empty());
+  }
+
   public static CacheResult miss() {
     return MISS_RESULT;
   }
@@ -199,7 +212,9 @@ abstract class AbstractCacheResult {
   protected void check() {
     Preconditions.checkState(
         cacheSource().isPresent()
-            || (getType() != CacheResultType.HIT && getType() != CacheResultType.ERROR));
+            || (getType() != CacheResultType.HIT
+                && getType() != CacheResultType.ERROR
+                && getType() != CacheResultType.CONTAINS));
     Preconditions.checkState(cacheError().isPresent() || getType() != CacheResultType.ERROR);
   }
 }
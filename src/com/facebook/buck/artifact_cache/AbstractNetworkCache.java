@@ -25,12 +25,17 @@ import com.facebook.buck.log.Logger;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.slb.HttpService;
 import com.facebook.buck.slb.NoHealthyServersException;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -74,12 +79,42 @@ public abstract class AbstractNetworkCache implements ArtifactCache {
       RuleKey ruleKey, LazyPath output, final HttpArtifactCacheEvent.Finished.Builder eventBuilder)
       throws IOException;
 
+  /**
+   * Checks whether the artifact is present without downloading it.
+   *
+   * @return {@link CacheResultType#CONTAINS} or a miss.
+   */
+  protected abstract CacheResult containsImpl(RuleKey ruleKey) throws IOException;
+
   protected abstract void storeImpl(
       ArtifactInfo info,
       final Path file,
       final HttpArtifactCacheEvent.Finished.Builder eventBuilder)
       throws IOException;
 
+  /**
+   * Fetches a batch of artifacts. The default implementation issues one {@link #fetchImpl} request
+   * for each key; subclasses whose protocol can look up several keys at once should override it.
+   *
+   * @return the result of each fetch, in the same order as {@code ruleKeys}.
+   */
+  protected ImmutableList<CacheResult> multiFetchImpl(
+      List<RuleKey> ruleKeys,
+      List<LazyPath> outputs,
+      List<HttpArtifactCacheEvent.Finished.Builder> eventBuilders)
+      throws IOException {
+    ImmutableList.Builder<CacheResult> results = ImmutableList.builder();
+    for (int i = 0; i < ruleKeys.size(); i++) {
+      RuleKey ruleKey = ruleKeys.get(i);
+      try {
+        results.add(fetchImpl(ruleKey, outputs.get(i), eventBuilders.get(i)));
+      } catch (IOException e) {
+        results.add(handleFetchException(ruleKey, e));
+      }
+    }
+    return results.build();
+  }
+
   private boolean isNoHealthyServersException(Throwable exception) {
     if (exception == null) {
       return false;
@@ -95,46 +130,108 @@ public abstract class AbstractNetworkCache implements ArtifactCache {
     return Futures.immediateFuture(fetch(ruleKey, output));
   }
 
-  private CacheResult fetch(RuleKey ruleKey, LazyPath output) {
-    HttpArtifactCacheEvent.Started startedEvent =
-        HttpArtifactCacheEvent.newFetchStartedEvent(ruleKey);
-    buckEventBus.post(startedEvent);
-    HttpArtifactCacheEvent.Finished.Builder eventBuilder =
-        HttpArtifactCacheEvent.newFinishedEventBuilder(startedEvent);
-    eventBuilder.getFetchBuilder().setRequestedRuleKey(ruleKey);
+  @Override
+  public ListenableFuture<ImmutableList<CacheResult>> multiFetchAsync(
+      List<RuleKey> ruleKeys, List<LazyPath> outputs) {
+    Preconditions.checkArgument(ruleKeys.size() == outputs.size());
+    if (ruleKeys.isEmpty()) {
+      return Futures.immediateFuture(ImmutableList.of());
+    }
+    return Futures.immediateFuture(multiFetch(ruleKeys, outputs));
+  }
+
+  @Override
+  public ListenableFuture<CacheResult> containsAsync(RuleKey ruleKey) {
+    try {
+      return Futures.immediateFuture(containsImpl(ruleKey));
+    } catch (IOException e) {
+      // Failed checks fall back to a fetch, which reports any persistent failure to the user.
+      String msg = String.format("%s: %s", e.getClass().getName(), e.getMessage());
+      LOG.warn(e, "contains(%s): %s", ruleKey, msg);
+      return Futures.immediateFuture(CacheResult.error(name, mode, msg));
+    }
+  }
 
+  private CacheResult fetch(RuleKey ruleKey, LazyPath output) {
+    HttpArtifactCacheEvent.Finished.Builder eventBuilder = startFetchEvent(ruleKey);
     CacheResult result = null;
     try {
       result = fetchImpl(ruleKey, output, eventBuilder);
       return result;
     } catch (IOException e) {
-      String msg = String.format("%s: %s", e.getClass().getName(), e.getMessage());
-      if (isNoHealthyServersException(e)) {
-        if (!isNoHealthyServersSeen) {
-          isNoHealthyServersSeen = true;
-          buckEventBus.post(
-              ConsoleEvent.warning(
-                  "\n"
-                      + "Failed to fetch %s over %s:\n"
-                      + "Buck encountered a critical network failure.\n"
-                      + "Please check your network connection and retry."
-                      + "\n",
-                  ruleKey, name));
-        }
-      } else {
-        reportFailure(e, "fetch(%s): %s", ruleKey, msg);
-      }
-      result = CacheResult.error(name, mode, msg);
+      result = handleFetchException(ruleKey, e);
       return result;
     } finally {
-      HttpArtifactCacheEventFetchData.Builder fetchBuilder =
-          eventBuilder.getFetchBuilder().setFetchResult(result);
-      if (result.getType() == CacheResultType.ERROR && result.cacheError().isPresent()) {
-        fetchBuilder.setErrorMessage(result.cacheError());
+      finishFetchEvent(eventBuilder, result);
+    }
+  }
+
+  private ImmutableList<CacheResult> multiFetch(List<RuleKey> ruleKeys, List<LazyPath> outputs) {
+    List<HttpArtifactCacheEvent.Finished.Builder> eventBuilders =
+        new ArrayList<>(ruleKeys.size());
+    for (RuleKey ruleKey : ruleKeys) {
+      eventBuilders.add(startFetchEvent(ruleKey));
+    }
+    ImmutableList<CacheResult> results = null;
+    try {
+      results = multiFetchImpl(ruleKeys, outputs, eventBuilders);
+      Preconditions.checkState(
+          results.size() == ruleKeys.size(),
+          "Got %s results for a multi-fetch of %s keys.",
+          results.size(),
+          ruleKeys.size());
+      return results;
+    } catch (IOException e) {
+      // A failure of the batch as a whole is reported once, but recorded for every key.
+      CacheResult error = handleFetchException(ruleKeys.get(0), e);
+      results = ImmutableList.copyOf(Collections.nCopies(ruleKeys.size(), error));
+      return results;
+    } finally {
+      for (int i = 0; i < eventBuilders.size(); i++) {
+        finishFetchEvent(eventBuilders.get(i), results == null ? null : results.get(i));
       }
+    }
+  }
+
+  private HttpArtifactCacheEvent.Finished.Builder startFetchEvent(RuleKey ruleKey) {
+    HttpArtifactCacheEvent.Started startedEvent =
+        HttpArtifactCacheEvent.newFetchStartedEvent(ruleKey);
+    buckEventBus.post(startedEvent);
+    HttpArtifactCacheEvent.Finished.Builder eventBuilder =
+        HttpArtifactCacheEvent.newFinishedEventBuilder(startedEvent);
+    eventBuilder.getFetchBuilder().setRequestedRuleKey(ruleKey);
+    return eventBuilder;
+  }
 
-      buckEventBus.post(eventBuilder.build());
+  private void finishFetchEvent(
+      HttpArtifactCacheEvent.Finished.Builder eventBuilder, CacheResult result) {
+    HttpArtifactCacheEventFetchData.Builder fetchBuilder =
+        eventBuilder.getFetchBuilder().setFetchResult(result);
+    if (result.getType() == CacheResultType.ERROR && result.cacheError().isPresent()) {
+      fetchBuilder.setErrorMessage(result.cacheError());
+    }
+
+    buckEventBus.post(eventBuilder.build());
+  }
+
+  private CacheResult handleFetchException(RuleKey ruleKey, IOException e) {
+    String msg = String.format("%s: %s", e.getClass().getName(), e.getMessage());
+    if (isNoHealthyServersException(e)) {
+      if (!isNoHealthyServersSeen) {
+        isNoHealthyServersSeen = true;
+        buckEventBus.post(
+            ConsoleEvent.warning(
+                "\n"
+                    + "Failed to fetch %s over %s:\n"
+                    + "Buck encountered a critical network failure.\n"
+                    + "Please check your network connection and retry."
+                    + "\n",
+                ruleKey, name));
+      }
+    } else {
+      reportFailure(e, "fetch(%s): %s", ruleKey, msg);
     }
+    return CacheResult.error(name, mode, msg);
   }
 
   @Override
@@ -19,7 +19,13 @@ package com.facebook.buck.artifact_cache;
 import com.facebook.buck.io.BorrowablePath;
 import com.facebook.buck.io.LazyPath;
 import com.facebook.buck.rules.RuleKey;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.ArrayList;
+import java.util.List;
 
 public interface ArtifactCache extends AutoCloseable {
   /**
@@ -34,6 +40,36 @@ public interface ArtifactCache extends AutoCloseable {
    */
   ListenableFuture<CacheResult> fetchAsync(RuleKey ruleKey, LazyPath output);
 
+  /**
+   * Fetch a batch of cached artifacts. This behaves as if {@link #fetchAsync(RuleKey, LazyPath)}
+   * was called for each key, but lets implementations backed by a remote service look up the whole
+   * batch with a single request.
+   *
+   * @param ruleKeys cache fetch keys
+   * @param outputs Paths to store the artifacts to, one for each of the {@code ruleKeys}.
+   * @return the result of each fetch, in the same order as {@code ruleKeys}.
+   */
+  default ListenableFuture<ImmutableList<CacheResult>> multiFetchAsync(
+      List<RuleKey> ruleKeys, List<LazyPath> outputs) {
+    Preconditions.checkArgument(ruleKeys.size() == outputs.size());
+    List<ListenableFuture<CacheResult>> results = new ArrayList<>(ruleKeys.size());
+    for (int i = 0; i < ruleKeys.size(); i++) {
+      results.add(fetchAsync(ruleKeys.get(i), outputs.get(i)));
+    }
+    return Futures.transform(
+        Futures.allAsList(results), ImmutableList::copyOf, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Check whether an artifact is present in the cache, without fetching it.
+   *
+   * @param ruleKey cache fetch key
+   * @return {@link CacheResultType#CONTAINS} if a fetch of {@code ruleKey} would be expected to
+   *     succeed, {@link CacheResultType#MISS} if it would not, or {@link CacheResultType#ERROR} if
+   *     the cache could not tell.
+   */
+  ListenableFuture<CacheResult> containsAsync(RuleKey ruleKey);
+
   /**
    * Store the artifact at path specified by output to cache, such that it can later be fetched
    * using ruleKey as the lookup key. If any internal errors occur, fail silently and continue
@@ -80,9 +80,10 @@ public class ArtifactCacheBuckConfig implements ConfigView<BuckConfig> {
   private static final String DIR_FIELD = "dir";
   private static final String DIR_MODE_FIELD = "dir_mode";
   private static final String DIR_MAX_SIZE_FIELD = "dir_max_size";
+  private static final String DIR_EVICTION_INDEX_FIELD = "dir_eviction_index";
   private static final String DIR_CACHE_NAMES_FIELD_NAME = "dir_cache_names";
   private static final ImmutableSet<String> DIR_CACHE_DESCRIPTION_FIELDS =
-      ImmutableSet.of(DIR_FIELD, DIR_MODE_FIELD, DIR_MAX_SIZE_FIELD);
+      ImmutableSet.of(DIR_FIELD, DIR_MODE_FIELD, DIR_MAX_SIZE_FIELD, DIR_EVICTION_INDEX_FIELD);
 
   private static final URI DEFAULT_HTTP_URL = URI.create("http://localhost:8080/");
   private static final String DEFAULT_HTTP_CACHE_MODE = CacheReadMode.READWRITE.name();
@@ -272,7 +273,9 @@ public class ArtifactCacheBuckConfig implements ConfigView<BuckConfig> {
 
     ImmutableList<String> names = getDirCacheNames();
     boolean implicitLegacyCache =
-        names.isEmpty() && getArtifactCacheModes().contains(ArtifactCacheMode.dir);
+        names.isEmpty()
+            && (getArtifactCacheModes().contains(ArtifactCacheMode.dir)
+                || getArtifactCacheModes().contains(ArtifactCacheMode.dedup_dir));
     if (implicitLegacyCache || legacyDirCacheConfigurationFieldsPresent()) {
       result.add(obtainDirEntryForName(Optional.empty()));
     }
@@ -391,6 +394,8 @@ public class ArtifactCacheBuckConfig implements ConfigView<BuckConfig> {
         .setCacheDir(pathToCacheDir)
         .setCacheReadMode(readMode)
         .setMaxSizeBytes(maxSizeBytes)
+        .setEvictionIndexEnabled(
+            buckConfig.getBooleanValue(section, DIR_EVICTION_INDEX_FIELD, false))
         .build();
   }
 
@@ -499,6 +504,11 @@ public class ArtifactCacheBuckConfig implements ConfigView<BuckConfig> {
     public abstract Optional<Long> getMaxSizeBytes();
 
     public abstract CacheReadMode getCacheReadMode();
+
+    @Value.Default
+    public boolean isEvictionIndexEnabled() {
+      return false;
+    }
   }
 
   @Value.Immutable
@@ -18,6 +18,7 @@ package com.facebook.buck.artifact_cache;
 
 public enum ArtifactCacheMode {
   dir(CacheType.local),
+  dedup_dir(CacheType.local),
   http(CacheType.remote),
   sqlite(CacheType.local),
   thrift_over_http(CacheType.remote);
@@ -16,6 +16,7 @@
 package com.facebook.buck.artifact_cache;
 
 import com.facebook.buck.cli.BuckConfig;
+import com.facebook.buck.counters.CounterRegistry;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.NetworkEvent.BytesReceivedEvent;
 import com.facebook.buck.io.ProjectFilesystem;
@@ -159,9 +160,10 @@ public class ArtifactCaches implements ArtifactCacheFactory {
    */
   public static Optional<ArtifactCache> newServedCache(
       ArtifactCacheBuckConfig buckConfig, final ProjectFilesystem projectFilesystem) {
+    boolean dedup = buckConfig.getArtifactCacheModes().contains(ArtifactCacheMode.dedup_dir);
     return buckConfig
         .getServedLocalCache()
-        .map(input -> createDirArtifactCache(Optional.empty(), input, projectFilesystem));
+        .map(input -> createDirArtifactCache(Optional.empty(), input, projectFilesystem, dedup));
   }
 
   private static ArtifactCache newInstanceInternal(
@@ -175,12 +177,23 @@ public class ArtifactCaches implements ArtifactCacheFactory {
     if (modes.isEmpty()) {
       return new NoopArtifactCache();
     }
+    if (modes.contains(ArtifactCacheMode.dir) && modes.contains(ArtifactCacheMode.dedup_dir)) {
+      throw new HumanReadableException(
+          "Cache modes %s and %s share the same directories and cannot be used together.",
+          ArtifactCacheMode.dir,
+          ArtifactCacheMode.dedup_dir);
+    }
     ArtifactCacheEntries cacheEntries = buckConfig.getCacheEntries();
     ImmutableList.Builder<ArtifactCache> builder = ImmutableList.builder();
     for (ArtifactCacheMode mode : modes) {
       switch (mode) {
         case dir:
-          initializeDirCaches(cacheEntries, buckEventBus, projectFilesystem, builder);
+          initializeDirCaches(
+              cacheEntries, buckEventBus, projectFilesystem, builder, /* dedup */ false);
+          break;
+        case dedup_dir:
+          initializeDirCaches(
+              cacheEntries, buckEventBus, projectFilesystem, builder, /* dedup */ true);
           break;
         case http:
           initializeDistributedCaches(
@@ -240,10 +253,12 @@ public class ArtifactCaches implements ArtifactCacheFactory {
       ArtifactCacheEntries artifactCacheEntries,
       BuckEventBus buckEventBus,
       ProjectFilesystem projectFilesystem,
-      ImmutableList.Builder<ArtifactCache> builder) {
+      ImmutableList.Builder<ArtifactCache> builder,
+      boolean dedup) {
     for (DirCacheEntry cacheEntry : artifactCacheEntries.getDirCacheEntries()) {
       builder.add(
-          createDirArtifactCache(Optional.ofNullable(buckEventBus), cacheEntry, projectFilesystem));
+          createDirArtifactCache(
+              Optional.ofNullable(buckEventBus), cacheEntry, projectFilesystem, dedup));
     }
   }
 
@@ -294,16 +309,25 @@ public class ArtifactCaches implements ArtifactCacheFactory {
   private static ArtifactCache createDirArtifactCache(
       Optional<BuckEventBus> buckEventBus,
       DirCacheEntry dirCacheConfig,
-      ProjectFilesystem projectFilesystem) {
+      ProjectFilesystem projectFilesystem,
+      boolean dedup) {
     Path cacheDir = dirCacheConfig.getCacheDir();
     try {
-      DirArtifactCache dirArtifactCache =
-          new DirArtifactCache(
-              "dir",
-              projectFilesystem,
-              cacheDir,
-              dirCacheConfig.getCacheReadMode(),
-              dirCacheConfig.getMaxSizeBytes());
+      ArtifactCache dirArtifactCache =
+          dedup
+              ? new DedupDirArtifactCache(
+                  "dedup_dir",
+                  projectFilesystem,
+                  cacheDir,
+                  dirCacheConfig.getCacheReadMode(),
+                  dirCacheConfig.getMaxSizeBytes())
+              : new DirArtifactCache(
+                  "dir",
+                  projectFilesystem,
+                  cacheDir,
+                  dirCacheConfig.getCacheReadMode(),
+                  dirCacheConfig.getMaxSizeBytes(),
+                  dirCacheConfig.isEvictionIndexEnabled());
 
       if (!buckEventBus.isPresent()) {
         return dirArtifactCache;
@@ -483,7 +507,11 @@ public class ArtifactCaches implements ArtifactCacheFactory {
               cacheDir,
               cacheConfig.getMaxSizeBytes(),
               cacheConfig.getMaxInlinedSizeBytes(),
-              cacheConfig.getCacheReadMode());
+              cacheConfig.getCacheReadMode(),
+              /* backgroundMaintenance */ true);
+      buckEventBus.post(
+          new CounterRegistry.AsyncCounterRegistrationEvent(
+              sqLiteArtifactCache.getMaintenanceCounters()));
 
       return new LoggingArtifactCacheDecorator(
           buckEventBus,
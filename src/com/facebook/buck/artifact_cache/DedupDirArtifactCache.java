@@ -0,0 +1,383 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import com.facebook.buck.io.BorrowablePath;
+import com.facebook.buck.io.LazyPath;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.util.DirectoryCleaner;
+import com.facebook.buck.util.DirectoryCleanerArgs;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A local directory cache which stores each distinct artifact only once.
+ *
+ * <p>Like the {@link TwoLevelArtifactCacheDecorator}, it splits the rulekey -> (metadata, artifact)
+ * mapping into rulekey -> (metadata, content hash) and content hash -> artifact. The first level is
+ * kept as small index files under {@code index/}, the artifacts themselves as blobs named after
+ * their SHA-1 under {@code blobs/}. Rules with different keys but identical outputs (e.g. the
+ * default, input-based and manifest keys of a single rule) therefore share a single blob.
+ *
+ * <p>Fetches hard link the blob to the requested output when both are on the same filesystem, and
+ * fall back to copying it otherwise. Fetched artifacts are only read and then deleted by the build
+ * engine, so the shared blob is never modified.
+ */
+public class DedupDirArtifactCache implements ArtifactCache {
+
+  private static final Logger LOG = Logger.get(DedupDirArtifactCache.class);
+
+  private static final ArtifactCacheMode CACHE_MODE = ArtifactCacheMode.dedup_dir;
+  // Ratio of bytes stored to max size that expresses how many bytes need to be stored after we
+  // attempt to delete old files.
+  private static final float STORED_TO_MAX_BYTES_RATIO_TRIM_TRIGGER = 0.5f;
+  // How much of the max size to leave if we decide to delete old files.
+  private static final float MAX_BYTES_TRIM_RATIO = 2 / 3f;
+  private static final String TMP_EXTENSION = ".tmp";
+
+  private final String name;
+  private final ProjectFilesystem filesystem;
+  private final Path cacheDir;
+  private final Optional<Long> maxCacheSizeBytes;
+  private final CacheReadMode cacheMode;
+  private long bytesSinceLastDeleteOldFiles;
+
+  public DedupDirArtifactCache(
+      String name,
+      ProjectFilesystem filesystem,
+      Path cacheDir,
+      CacheReadMode cacheMode,
+      Optional<Long> maxCacheSizeBytes)
+      throws IOException {
+    this.name = name;
+    this.filesystem = filesystem;
+    this.cacheDir = cacheDir;
+    this.maxCacheSizeBytes = maxCacheSizeBytes;
+    this.cacheMode = cacheMode;
+    this.bytesSinceLastDeleteOldFiles = 0L;
+
+    // Check first, as mkdirs will fail if the path is a symlink.
+    if (!filesystem.isDirectory(cacheDir)) {
+      filesystem.mkdirs(cacheDir);
+    }
+  }
+
+  @Override
+  public ListenableFuture<CacheResult> fetchAsync(RuleKey ruleKey, LazyPath output) {
+    return Futures.immediateFuture(fetch(ruleKey, output));
+  }
+
+  private CacheResult fetch(RuleKey ruleKey, LazyPath output) {
+    CacheResult result;
+    try {
+      IndexEntry entry = readIndexEntry(ruleKey);
+      Path blobPath = getBlobPath(entry.contentHash);
+      if (!filesystem.exists(blobPath)) {
+        // The blob was evicted from under the index entry.
+        result = CacheResult.miss();
+      } else {
+        linkOrCopyBlob(blobPath, output.get());
+        result =
+            CacheResult.hit(name, CACHE_MODE, entry.metadata, filesystem.getFileSize(blobPath));
+      }
+    } catch (NoSuchFileException e) {
+      result = CacheResult.miss();
+    } catch (IOException e) {
+      LOG.warn(e, "Artifact fetch(%s, %s) error", ruleKey, output);
+      result =
+          CacheResult.error(
+              name, CACHE_MODE, String.format("%s: %s", e.getClass(), e.getMessage()));
+    }
+
+    LOG.verbose(
+        "Artifact fetch(%s, %s) cache %s",
+        ruleKey, output, (result.getType().isSuccess() ? "hit" : "miss"));
+    return result;
+  }
+
+  @Override
+  public ListenableFuture<CacheResult> containsAsync(RuleKey ruleKey) {
+    CacheResult result;
+    try {
+      result =
+          filesystem.exists(getBlobPath(readIndexEntry(ruleKey).contentHash))
+              ? CacheResult.contains(name, CACHE_MODE)
+              : CacheResult.miss();
+    } catch (NoSuchFileException e) {
+      result = CacheResult.miss();
+    } catch (IOException e) {
+      LOG.warn(e, "Artifact contains(%s) error", ruleKey);
+      result =
+          CacheResult.error(
+              name, CACHE_MODE, String.format("%s: %s", e.getClass(), e.getMessage()));
+    }
+    LOG.verbose("Artifact contains(%s) cache %s", ruleKey, result.getType());
+    return Futures.immediateFuture(result);
+  }
+
+  @Override
+  public ListenableFuture<Void> store(ArtifactInfo info, BorrowablePath output) {
+
+    if (!getCacheReadMode().isWritable()) {
+      return Futures.immediateFuture(null);
+    }
+
+    try {
+      String contentHash = filesystem.computeSha1(output.getPath()).getHash();
+      Path blobPath = getBlobPath(contentHash);
+      if (!filesystem.exists(blobPath)) {
+        filesystem.mkdirs(blobPath.getParent());
+        // Write to a temporary file and move it to its final location atomically, so that partial
+        // blobs never pose as valid ones.
+        Path tmp = filesystem.createTempFile(getPreparedTempFolder(), "artifact", TMP_EXTENSION);
+        try {
+          if (output.canBorrow()) {
+            filesystem.move(output.getPath(), tmp, StandardCopyOption.REPLACE_EXISTING);
+          } else {
+            filesystem.copyFile(output.getPath(), tmp);
+          }
+          filesystem.move(tmp, blobPath, StandardCopyOption.REPLACE_EXISTING);
+          bytesSinceLastDeleteOldFiles += filesystem.getFileSize(blobPath);
+        } finally {
+          filesystem.deleteFileAtPathIfExists(tmp);
+        }
+      } else {
+        LOG.verbose("Artifact store(%s): blob %s already present", info.getRuleKeys(), contentHash);
+      }
+
+      for (RuleKey ruleKey : info.getRuleKeys()) {
+        writeIndexEntry(ruleKey, contentHash, info.getMetadata());
+      }
+    } catch (IOException e) {
+      LOG.warn(e, "Artifact store(%s, %s) error", info.getRuleKeys(), output);
+    }
+
+    if (maxCacheSizeBytes.isPresent()
+        && bytesSinceLastDeleteOldFiles
+            > (maxCacheSizeBytes.get() * STORED_TO_MAX_BYTES_RATIO_TRIM_TRIGGER)) {
+      bytesSinceLastDeleteOldFiles = 0L;
+      deleteOldFiles();
+    }
+
+    return Futures.immediateFuture(null);
+  }
+
+  private void linkOrCopyBlob(Path blobPath, Path output) throws IOException {
+    filesystem.deleteFileAtPathIfExists(output);
+    try {
+      Files.createLink(filesystem.resolve(output), filesystem.resolve(blobPath));
+    } catch (IOException | UnsupportedOperationException e) {
+      // Most likely the output lives on another filesystem.
+      LOG.verbose("Could not link %s to %s, copying it instead: %s", blobPath, output, e);
+      filesystem.copyFile(blobPath, output);
+    }
+  }
+
+  private IndexEntry readIndexEntry(RuleKey ruleKey) throws IOException {
+    try (DataInputStream in =
+        new DataInputStream(filesystem.newFileInputStream(getIndexPath(ruleKey)))) {
+      String contentHash = in.readUTF();
+      ImmutableMap.Builder<String, String> metadata = ImmutableMap.builder();
+      int sz = in.readInt();
+      for (int i = 0; i < sz; i++) {
+        String key = in.readUTF();
+        int valSize = in.readInt();
+        byte[] val = new byte[valSize];
+        ByteStreams.readFully(in, val);
+        metadata.put(key, new String(val, Charsets.UTF_8));
+      }
+      return new IndexEntry(contentHash, metadata.build());
+    }
+  }
+
+  private void writeIndexEntry(
+      RuleKey ruleKey, String contentHash, ImmutableMap<String, String> metadata)
+      throws IOException {
+    Path indexPath = getIndexPath(ruleKey);
+    filesystem.mkdirs(indexPath.getParent());
+    Path tmp = filesystem.createTempFile(getPreparedTempFolder(), "index", TMP_EXTENSION);
+    try {
+      try (DataOutputStream out = new DataOutputStream(filesystem.newFileOutputStream(tmp))) {
+        out.writeUTF(contentHash);
+        out.writeInt(metadata.size());
+        for (Map.Entry<String, String> ent : metadata.entrySet()) {
+          out.writeUTF(ent.getKey());
+          byte[] val = ent.getValue().getBytes(Charsets.UTF_8);
+          out.writeInt(val.length);
+          out.write(val);
+        }
+      }
+      filesystem.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING);
+      bytesSinceLastDeleteOldFiles += filesystem.getFileSize(indexPath);
+    } finally {
+      filesystem.deleteFileAtPathIfExists(tmp);
+    }
+  }
+
+  private Path getPathToTempFolder() {
+    return cacheDir.resolve("tmp");
+  }
+
+  private Path getPreparedTempFolder() throws IOException {
+    Path tmp = getPathToTempFolder();
+    if (!filesystem.exists(tmp)) {
+      filesystem.mkdirs(tmp);
+    }
+    return tmp;
+  }
+
+  @VisibleForTesting
+  Path getIndexPath(RuleKey ruleKey) {
+    return getShardedPath(cacheDir.resolve("index"), ruleKey.toString());
+  }
+
+  @VisibleForTesting
+  Path getBlobPath(String contentHash) {
+    return getShardedPath(cacheDir.resolve("blobs"), contentHash);
+  }
+
+  private static Path getShardedPath(Path root, String key) {
+    if (key.length() < 4) {
+      return root.resolve(key);
+    }
+    return root.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+  }
+
+  @Override
+  public CacheReadMode getCacheReadMode() {
+    return cacheMode;
+  }
+
+  @Override
+  public void close() {
+    // Do a cache clean up on exit only if cache was written to.
+    if (bytesSinceLastDeleteOldFiles > 0) {
+      deleteOldFiles();
+    }
+  }
+
+  /**
+   * Deletes index entries and blobs that haven't been accessed recently. Index entries left
+   * pointing at a deleted blob are treated as misses, and blobs left without any index entry are
+   * not accessed anymore and age out on a later clean up.
+   */
+  @VisibleForTesting
+  void deleteOldFiles() {
+    if (!maxCacheSizeBytes.isPresent()) {
+      return;
+    }
+
+    Path cacheDirInFs = filesystem.resolve(cacheDir);
+    try {
+      synchronized (this) {
+        newDirectoryCleaner().clean(cacheDirInFs);
+      }
+    } catch (IOException e) {
+      LOG.error(e, "Failed to clean path [%s].", cacheDirInFs);
+    }
+  }
+
+  private List<Path> getAllFilesInCache() {
+    final List<Path> allFiles = new ArrayList<>();
+    final Path tempFolderPath = filesystem.resolve(getPathToTempFolder());
+    try {
+      Files.walkFileTree(
+          filesystem.resolve(cacheDir),
+          new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                throws IOException {
+              // do not work with files in temp folder as they will be moved later
+              if (dir.equals(tempFolderPath)) {
+                return FileVisitResult.SKIP_SUBTREE;
+              }
+              return super.preVisitDirectory(dir, attrs);
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                throws IOException {
+              allFiles.add(file);
+              return super.visitFile(file, attrs);
+            }
+          });
+    } catch (IOException e) {
+      LOG.error(e, "Error getting a list of files in %s", cacheDir);
+    }
+
+    return allFiles;
+  }
+
+  private DirectoryCleaner newDirectoryCleaner() {
+    DirectoryCleanerArgs cleanerArgs =
+        DirectoryCleanerArgs.builder()
+            .setPathSelector(
+                new DirectoryCleaner.PathSelector() {
+                  @Override
+                  public Iterable<Path> getCandidatesToDelete(Path rootPath) throws IOException {
+                    return getAllFilesInCache();
+                  }
+
+                  @Override
+                  public int comparePaths(
+                      DirectoryCleaner.PathStats path1, DirectoryCleaner.PathStats path2) {
+                    return ComparisonChain.start()
+                        .compare(path1.getLastAccessMillis(), path2.getLastAccessMillis())
+                        .compare(path1.getCreationMillis(), path2.getCreationMillis())
+                        .result();
+                  }
+                })
+            .setMaxTotalSizeBytes(maxCacheSizeBytes.get())
+            .setMaxBytesAfterDeletion((long) (maxCacheSizeBytes.get() * MAX_BYTES_TRIM_RATIO))
+            .setMinAmountOfEntriesToKeep(0)
+            .build();
+
+    return new DirectoryCleaner(cleanerArgs);
+  }
+
+  private static class IndexEntry {
+    private final String contentHash;
+    private final ImmutableMap<String, String> metadata;
+
+    private IndexEntry(String contentHash, ImmutableMap<String, String> metadata) {
+      this.contentHash = contentHash;
+      this.metadata = metadata;
+    }
+  }
+}
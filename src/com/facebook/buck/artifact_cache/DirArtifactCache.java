@@ -43,6 +43,7 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -58,12 +59,17 @@ public class DirArtifactCache implements ArtifactCache {
   // How much of the max size to leave if we decide to delete old files.
   private static final float MAX_BYTES_TRIM_RATIO = 2 / 3f;
   private static final String TMP_EXTENSION = ".tmp";
+  private static final String METADATA_EXTENSION = ".metadata";
+  // Holds the eviction index, when enabled.  Skipped when looking for cache entries.
+  private static final String INDEX_DIR = ".index";
+  private static final String INDEX_FILE = "index.db";
 
   private final String name;
   private final ProjectFilesystem filesystem;
   private final Path cacheDir;
   private final Optional<Long> maxCacheSizeBytes;
   private final CacheReadMode cacheMode;
+  private final Optional<DirArtifactCacheIndex> index;
   private long bytesSinceLastDeleteOldFiles;
 
   public DirArtifactCache(
@@ -73,6 +79,23 @@ public class DirArtifactCache implements ArtifactCache {
       CacheReadMode cacheMode,
       Optional<Long> maxCacheSizeBytes)
       throws IOException {
+    this(name, filesystem, cacheDir, cacheMode, maxCacheSizeBytes, /* useEvictionIndex */ false);
+  }
+
+  /**
+   * @param useEvictionIndex whether to track the size and last access time of entries in an index
+   *     stored alongside them, so that trimming the cache does not need to walk and stat every file
+   *     in it. Entries which other processes add to the cache without the index are only picked up
+   *     the first time the index is used.
+   */
+  public DirArtifactCache(
+      String name,
+      ProjectFilesystem filesystem,
+      Path cacheDir,
+      CacheReadMode cacheMode,
+      Optional<Long> maxCacheSizeBytes,
+      boolean useEvictionIndex)
+      throws IOException {
     this.name = name;
     this.filesystem = filesystem;
     this.cacheDir = cacheDir;
@@ -84,6 +107,15 @@ public class DirArtifactCache implements ArtifactCache {
     if (!filesystem.isDirectory(cacheDir)) {
       filesystem.mkdirs(cacheDir);
     }
+
+    if (useEvictionIndex) {
+      Path indexDir = cacheDir.resolve(INDEX_DIR);
+      filesystem.mkdirs(indexDir);
+      this.index =
+          Optional.of(new DirArtifactCacheIndex(filesystem.resolve(indexDir.resolve(INDEX_FILE))));
+    } else {
+      this.index = Optional.empty();
+    }
   }
 
   @Override
@@ -99,7 +131,7 @@ public class DirArtifactCache implements ArtifactCache {
       try (DataInputStream in =
           new DataInputStream(
               filesystem.newFileInputStream(
-                  getPathForRuleKey(ruleKey, Optional.of(".metadata"))))) {
+                  getPathForRuleKey(ruleKey, Optional.of(METADATA_EXTENSION))))) {
         int sz = in.readInt();
         for (int i = 0; i < sz; i++) {
           String key = in.readUTF();
@@ -115,8 +147,14 @@ public class DirArtifactCache implements ArtifactCache {
 
       result =
           CacheResult.hit(name, CACHE_MODE, metadata.build(), filesystem.getFileSize(output.get()));
+      if (index.isPresent()) {
+        recordAccess(ruleKey);
+      }
     } catch (NoSuchFileException e) {
       result = CacheResult.miss();
+      if (index.isPresent()) {
+        recordRemoval(ruleKey);
+      }
     } catch (IOException e) {
       LOG.warn(e, "Artifact fetch(%s, %s) error", ruleKey, output);
       result =
@@ -130,6 +168,18 @@ public class DirArtifactCache implements ArtifactCache {
     return result;
   }
 
+  @Override
+  public ListenableFuture<CacheResult> containsAsync(RuleKey ruleKey) {
+    // A fetch needs both the artifact and its metadata.
+    CacheResult result =
+        filesystem.exists(getPathForRuleKey(ruleKey, Optional.empty()))
+                && filesystem.exists(getPathForRuleKey(ruleKey, Optional.of(METADATA_EXTENSION)))
+            ? CacheResult.contains(name, CACHE_MODE)
+            : CacheResult.miss();
+    LOG.verbose("Artifact contains(%s) cache %s", ruleKey, result.getType());
+    return Futures.immediateFuture(result);
+  }
+
   @Override
   public ListenableFuture<Void> store(ArtifactInfo info, BorrowablePath output) {
 
@@ -141,9 +191,12 @@ public class DirArtifactCache implements ArtifactCache {
       Optional<Path> borrowedAndStoredArtifactPath = Optional.empty();
       for (RuleKey ruleKey : info.getRuleKeys()) {
         Path artifactPath = getPathForRuleKey(ruleKey, Optional.empty());
-        Path metadataPath = getPathForRuleKey(ruleKey, Optional.of(".metadata"));
+        Path metadataPath = getPathForRuleKey(ruleKey, Optional.of(METADATA_EXTENSION));
 
         if (filesystem.exists(artifactPath) && filesystem.exists(metadataPath)) {
+          if (index.isPresent()) {
+            recordAccess(ruleKey);
+          }
           continue;
         }
 
@@ -181,6 +234,15 @@ public class DirArtifactCache implements ArtifactCache {
         } finally {
           filesystem.deleteFileAtPathIfExists(tmp);
         }
+
+        if (index.isPresent()) {
+          index
+              .get()
+              .recordStore(
+                  getIndexKey(ruleKey),
+                  filesystem.getFileSize(artifactPath) + filesystem.getFileSize(metadataPath),
+                  System.currentTimeMillis());
+        }
       }
 
     } catch (IOException e) {
@@ -201,6 +263,10 @@ public class DirArtifactCache implements ArtifactCache {
     return cacheDir.resolve("tmp");
   }
 
+  private Path getPathToIndexFolder() {
+    return cacheDir.resolve(INDEX_DIR);
+  }
+
   private Path getPreparedTempFolder() throws IOException {
     Path tmp = getPathToTempFolder();
     if (!filesystem.exists(tmp)) {
@@ -223,6 +289,27 @@ public class DirArtifactCache implements ArtifactCache {
     return getParentDirForRuleKey(ruleKey).resolve(ruleKey.toString() + extension.orElse(""));
   }
 
+  // Entries are keyed in the index by the path of their artifact, relative to the cache directory.
+  private String getIndexKey(RuleKey ruleKey) {
+    return cacheDir.relativize(getPathForRuleKey(ruleKey, Optional.empty())).toString();
+  }
+
+  private void recordAccess(RuleKey ruleKey) {
+    try {
+      index.get().recordAccess(getIndexKey(ruleKey), System.currentTimeMillis());
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to record access to %s in the index of %s", ruleKey, cacheDir);
+    }
+  }
+
+  private void recordRemoval(RuleKey ruleKey) {
+    try {
+      index.get().recordRemoval(getIndexKey(ruleKey));
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to remove %s from the index of %s", ruleKey, cacheDir);
+    }
+  }
+
   @VisibleForTesting
   Path getParentDirForRuleKey(RuleKey ruleKey) {
     ImmutableList<String> folders = subfolders(ruleKey);
@@ -258,6 +345,7 @@ public class DirArtifactCache implements ArtifactCache {
     if (bytesSinceLastDeleteOldFiles > 0) {
       deleteOldFiles();
     }
+    index.ifPresent(DirArtifactCacheIndex::close);
   }
 
   /** Deletes files that haven't been accessed recently from the directory cache. */
@@ -270,17 +358,93 @@ public class DirArtifactCache implements ArtifactCache {
     Path cacheDirInFs = filesystem.resolve(cacheDir);
     try {
       synchronized (this) {
-        newDirectoryCleaner().clean(cacheDirInFs);
+        if (index.isPresent()) {
+          deleteLeastRecentlyUsedEntries(index.get(), cacheDirInFs);
+        } else {
+          newDirectoryCleaner().clean(cacheDirInFs);
+        }
       }
     } catch (IOException e) {
       LOG.error(e, "Failed to clean path [%s].", cacheDirInFs);
     }
   }
 
+  /**
+   * Trims the cache using the eviction index. Only the first call on a cache which predates the
+   * index needs to look at all the files in it.
+   */
+  private void deleteLeastRecentlyUsedEntries(DirArtifactCacheIndex index, Path cacheDirInFs)
+      throws IOException {
+    if (!index.isPopulated()) {
+      index.populate(getAllEntriesInCache(cacheDirInFs));
+    }
+
+    if (index.getTotalSizeBytes() <= maxCacheSizeBytes.get()) {
+      return;
+    }
+
+    // Entries are only removed from the index once their files are gone, so that an entry which
+    // could not be deleted is still accounted for and is retried by the next trim.
+    List<String> deletedEntries = new ArrayList<>();
+    for (String entry :
+        index.getLeastRecentlyUsed((long) (maxCacheSizeBytes.get() * MAX_BYTES_TRIM_RATIO))) {
+      Path artifactPath = cacheDirInFs.resolve(entry);
+      try {
+        Files.deleteIfExists(artifactPath);
+        Files.deleteIfExists(
+            artifactPath.resolveSibling(artifactPath.getFileName() + METADATA_EXTENSION));
+      } catch (IOException e) {
+        LOG.warn(e, "Failed to delete %s from %s, keeping it in the index", entry, cacheDir);
+        continue;
+      }
+      deletedEntries.add(entry);
+    }
+    index.recordRemovals(deletedEntries);
+  }
+
+  /**
+   * Groups the files in the cache into entries, made of an artifact and its metadata, keyed by the
+   * path of the artifact relative to the cache directory.
+   */
+  private Map<String, DirectoryCleaner.PathStats> getAllEntriesInCache(Path cacheDirInFs)
+      throws IOException {
+    Map<String, DirectoryCleaner.PathStats> entries = new HashMap<>();
+    for (Path file : getAllFilesInCache()) {
+      String relativePath = cacheDirInFs.relativize(file).toString();
+      String key =
+          relativePath.endsWith(METADATA_EXTENSION)
+              ? relativePath.substring(0, relativePath.length() - METADATA_EXTENSION.length())
+              : relativePath;
+      BasicFileAttributes attributes;
+      try {
+        attributes = Files.readAttributes(file, BasicFileAttributes.class);
+      } catch (NoSuchFileException e) {
+        continue;
+      }
+      DirectoryCleaner.PathStats fileStats =
+          new DirectoryCleaner.PathStats(
+              file,
+              attributes.size(),
+              attributes.creationTime().toMillis(),
+              attributes.lastAccessTime().toMillis());
+      entries.merge(
+          key,
+          fileStats,
+          (first, second) ->
+              new DirectoryCleaner.PathStats(
+                  cacheDirInFs.resolve(key),
+                  first.getTotalSizeBytes() + second.getTotalSizeBytes(),
+                  Math.min(first.getCreationMillis(), second.getCreationMillis()),
+                  Math.max(first.getLastAccessMillis(), second.getLastAccessMillis())));
+    }
+    return entries;
+  }
+
   @VisibleForTesting
   List<Path> getAllFilesInCache() {
     final List<Path> allFiles = new ArrayList<>();
     final Path tempFolderPath = getPathToTempFolder();
+    final Path indexFolderPath = filesystem.resolve(getPathToIndexFolder());
     try {
       Files.walkFileTree(
           filesystem.resolve(cacheDir),
@@ -292,7 +456,7 @@ public class DirArtifactCache implements ArtifactCache {
             public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
                 throws IOException {
               // do not work with files in temp folder as they will be moved later
-              if (dir.equals(tempFolderPath)) {
+              if (dir.equals(tempFolderPath) || dir.equals(indexFolderPath)) {
                 return FileVisitResult.SKIP_SUBTREE;
               }
               return super.preVisitDirectory(dir, attrs);
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import com.facebook.buck.sqlite.RetryBusyHandler;
+import com.facebook.buck.sqlite.SQLiteUtils;
+import com.facebook.buck.util.DirectoryCleaner;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.Map;
+import org.sqlite.BusyHandler;
+
+/**
+ * Persistent size and access time index of the entries of a {@link DirArtifactCache}.
+ *
+ * <p>Each entry is keyed by the path of its artifact, relative to the cache directory, and is
+ * updated as entries are stored and fetched. The total size of the cache is maintained by triggers,
+ * so that finding out whether the cache must be trimmed, and picking the least recently used
+ * entries to evict, does not need to look at the whole cache.
+ */
+class DirArtifactCacheIndex implements AutoCloseable {
+
+  private final Connection connection;
+  private final PreparedStatement insertEntry;
+  private final PreparedStatement updateAccessed;
+  private final PreparedStatement deleteEntry;
+  private final PreparedStatement selectEntry;
+  private final PreparedStatement selectTotalSize;
+  private final PreparedStatement selectLeastRecentlyUsed;
+  private final PreparedStatement selectPopulated;
+  private final PreparedStatement updatePopulated;
+
+  static {
+    SQLiteUtils.initialize();
+  }
+
+  DirArtifactCacheIndex(Path dbPath) throws IOException {
+    try {
+      Class.forName("org.sqlite.JDBC");
+      connection = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+      try (Statement statement = connection.createStatement()) {
+        statement.executeUpdate("PRAGMA SYNCHRONOUS = OFF");
+        statement.executeUpdate("PRAGMA JOURNAL_MODE = WAL");
+        statement.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS entries "
+                + "(path TEXT PRIMARY KEY NOT NULL, "
+                + "size INTEGER NOT NULL, "
+                + "accessed INTEGER NOT NULL)");
+        statement.executeUpdate(
+            "CREATE INDEX IF NOT EXISTS entries_by_accessed ON entries (accessed)");
+        // A single row holding the total size of the entries, and whether entries stored before
+        // the index existed have been added to it.
+        statement.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS totals "
+                + "(id INTEGER PRIMARY KEY CHECK (id = 0), "
+                + "size INTEGER NOT NULL, "
+                + "populated INTEGER NOT NULL)");
+        statement.executeUpdate(
+            "INSERT OR IGNORE INTO totals (id, size, populated) VALUES (0, 0, 0)");
+        statement.executeUpdate(
+            "CREATE TRIGGER IF NOT EXISTS entries_insert AFTER INSERT ON entries BEGIN "
+                + "UPDATE totals SET size = size + NEW.size; END");
+        statement.executeUpdate(
+            "CREATE TRIGGER IF NOT EXISTS entries_delete AFTER DELETE ON entries BEGIN "
+                + "UPDATE totals SET size = size - OLD.size; END");
+      }
+
+      // An explicit delete (rather than REPLACE) keeps the totals correct when an entry is
+      // overwritten, as REPLACE does not fire delete triggers.
+      insertEntry =
+          connection.prepareStatement(
+              "INSERT INTO entries (path, size, accessed) VALUES (?, ?, ?)");
+      deleteEntry = connection.prepareStatement("DELETE FROM entries WHERE path = ?");
+      selectEntry = connection.prepareStatement("SELECT 1 FROM entries WHERE path = ?");
+      updateAccessed =
+          connection.prepareStatement("UPDATE entries SET accessed = ? WHERE path = ?");
+      selectTotalSize = connection.prepareStatement("SELECT size FROM totals");
+      selectLeastRecentlyUsed =
+          connection.prepareStatement(
+              "SELECT path, size FROM entries ORDER BY accessed ASC");
+      selectPopulated = connection.prepareStatement("SELECT populated FROM totals");
+      updatePopulated = connection.prepareStatement("UPDATE totals SET populated = 1");
+
+      BusyHandler.setHandler(connection, new RetryBusyHandler());
+    } catch (ClassNotFoundException | SQLException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /** Records that an entry was stored, replacing any previous entry for the same path. */
+  synchronized void recordStore(String path, long sizeBytes, long timestampMillis)
+      throws IOException {
+    try {
+      connection.setAutoCommit(false);
+      try {
+        putEntry(path, sizeBytes, timestampMillis);
+        connection.commit();
+      } catch (SQLException e) {
+        connection.rollback();
+        throw e;
+      } finally {
+        connection.setAutoCommit(true);
+      }
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /** Records that an entry was fetched. */
+  synchronized void recordAccess(String path, long timestampMillis) throws IOException {
+    try {
+      updateAccessed.setLong(1, timestampMillis);
+      updateAccessed.setString(2, path);
+      updateAccessed.executeUpdate();
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /** Records that an entry is no longer in the cache. */
+  synchronized void recordRemoval(String path) throws IOException {
+    try {
+      deleteEntry.setString(1, path);
+      deleteEntry.executeUpdate();
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /** @return whether the entries that predate the index have been added with {@link #populate}. */
+  synchronized boolean isPopulated() throws IOException {
+    try (ResultSet rs = selectPopulated.executeQuery()) {
+      return rs.next() && rs.getInt(1) != 0;
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Adds the entries found in the cache directory when the index was first used. Entries which the
+   * index already knows about are kept as they are.
+   *
+   * @param entries the size and last access time of each entry, keyed by its path.
+   */
+  synchronized void populate(Map<String, DirectoryCleaner.PathStats> entries) throws IOException {
+    try {
+      connection.setAutoCommit(false);
+      try {
+        for (Map.Entry<String, DirectoryCleaner.PathStats> entry : entries.entrySet()) {
+          if (!hasEntry(entry.getKey())) {
+            putEntry(
+                entry.getKey(),
+                entry.getValue().getTotalSizeBytes(),
+                entry.getValue().getLastAccessMillis());
+          }
+        }
+        updatePopulated.executeUpdate();
+        connection.commit();
+      } catch (SQLException e) {
+        connection.rollback();
+        throw e;
+      } finally {
+        connection.setAutoCommit(true);
+      }
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+  }
+
+  synchronized long getTotalSizeBytes() throws IOException {
+    try (ResultSet rs = selectTotalSize.executeQuery()) {
+      return rs.next() ? rs.getLong(1) : 0L;
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Finds the least recently used entries which must be removed for the total size of the
+   * remaining ones to be at most {@code maxBytesAfterDeletion}. The entries are left in the index;
+   * the caller is expected to delete them and then call {@link #recordRemovals} for the ones that
+   * it actually deleted.
+   *
+   * @return the paths of the entries to evict, least recently used first.
+   */
+  synchronized ImmutableList<String> getLeastRecentlyUsed(long maxBytesAfterDeletion)
+      throws IOException {
+    ImmutableList.Builder<String> paths = ImmutableList.builder();
+    try {
+      long totalSizeBytes = getTotalSizeBytes();
+      if (totalSizeBytes <= maxBytesAfterDeletion) {
+        return paths.build();
+      }
+      try (ResultSet rs = selectLeastRecentlyUsed.executeQuery()) {
+        while (totalSizeBytes > maxBytesAfterDeletion && rs.next()) {
+          paths.add(rs.getString(1));
+          totalSizeBytes -= rs.getLong(2);
+        }
+      }
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+    return paths.build();
+  }
+
+  /** Records that the given entries are no longer in the cache. */
+  synchronized void recordRemovals(Collection<String> paths) throws IOException {
+    if (paths.isEmpty()) {
+      return;
+    }
+    try {
+      connection.setAutoCommit(false);
+      try {
+        for (String path : paths) {
+          deleteEntry.setString(1, path);
+          deleteEntry.addBatch();
+        }
+        deleteEntry.executeBatch();
+        connection.commit();
+      } catch (SQLException e) {
+        deleteEntry.clearBatch();
+        connection.rollback();
+        throw e;
+      } finally {
+        connection.setAutoCommit(true);
+      }
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private boolean hasEntry(String path) throws SQLException {
+    selectEntry.setString(1, path);
+    try (ResultSet rs = selectEntry.executeQuery()) {
+      return rs.next();
+    }
+  }
+
+  private void putEntry(String path, long sizeBytes, long timestampMillis) throws SQLException {
+    deleteEntry.setString(1, path);
+    deleteEntry.executeUpdate();
+    insertEntry.setString(1, path);
+    insertEntry.setLong(2, sizeBytes);
+    insertEntry.setLong(3, timestampMillis);
+    insertEntry.executeUpdate();
+  }
+
+  @Override
+  public synchronized void close() {
+    try {
+      connection.close();
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
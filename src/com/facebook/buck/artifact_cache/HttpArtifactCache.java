@@ -125,6 +125,31 @@ public final class HttpArtifactCache extends AbstractNetworkCache {
     }
   }
 
+  @Override
+  protected CacheResult containsImpl(RuleKey ruleKey) throws IOException {
+    // A HEAD request on the fetch endpoint: the server answers as for a GET, without the body.
+    Request.Builder requestBuilder = new Request.Builder().head();
+    try (HttpResponse response =
+        fetchClient.makeRequest("/artifacts/key/" + ruleKey.toString(), requestBuilder)) {
+      if (response.statusCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+        LOG.verbose("contains(%s, %s): cache miss", response.requestUrl(), ruleKey);
+        return CacheResult.miss();
+      }
+
+      if (response.statusCode() != HttpURLConnection.HTTP_OK) {
+        String msg =
+            String.format(
+                "unexpected server response: [%d:%s]",
+                response.statusCode(), response.statusMessage());
+        LOG.debug("contains(%s, %s): %s", response.requestUrl(), ruleKey, msg);
+        return CacheResult.error(name, mode, msg);
+      }
+
+      LOG.verbose("contains(%s, %s): cache hit", response.requestUrl(), ruleKey);
+      return CacheResult.contains(name, mode);
+    }
+  }
+
   @Override
   protected void storeImpl(ArtifactInfo info, final Path file, final Finished.Builder eventBuilder)
       throws IOException {
@@ -49,6 +49,12 @@ public class LoggingArtifactCacheDecorator implements ArtifactCache, CacheDecora
     return Futures.immediateFuture(fetchResult);
   }
 
+  @Override
+  public ListenableFuture<CacheResult> containsAsync(RuleKey ruleKey) {
+    // Existence checks don't transfer any artifacts, so they aren't reported as fetches.
+    return delegate.containsAsync(ruleKey);
+  }
+
   @Override
   public ListenableFuture<Void> store(ArtifactInfo info, BorrowablePath output) {
     ArtifactCacheEvent.Started started =
@@ -22,13 +22,17 @@ import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.util.MoreCollectors;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Functions;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * MultiArtifactCache encapsulates a set of ArtifactCache instances such that fetch() succeeds if
@@ -93,6 +97,106 @@ public class MultiArtifactCache implements ArtifactCache {
         MoreExecutors.directExecutor());
   }
 
+  /**
+   * Fetch the artifacts matching ruleKeys. Each encapsulated ArtifactCache is asked, in order, for
+   * the artifacts that none of the previous caches had, with a single batched request. Artifacts
+   * found are stored to the higher-priority writable caches, as with {@link #fetchAsync}.
+   */
+  @Override
+  public ListenableFuture<ImmutableList<CacheResult>> multiFetchAsync(
+      List<RuleKey> ruleKeys, List<LazyPath> outputs) {
+    Preconditions.checkArgument(ruleKeys.size() == outputs.size());
+    CacheResult[] results = new CacheResult[ruleKeys.size()];
+    Arrays.fill(results, CacheResult.miss());
+    // For each key, the list of higher-priority caches that we should write the artifact to.
+    List<ImmutableList.Builder<ArtifactCache>> cachesToFill = new ArrayList<>(ruleKeys.size());
+    for (int i = 0; i < ruleKeys.size(); i++) {
+      cachesToFill.add(ImmutableList.builder());
+    }
+
+    ListenableFuture<Void> done = Futures.immediateFuture(null);
+    for (ArtifactCache artifactCache : artifactCaches) {
+      done =
+          Futures.transformAsync(
+              done,
+              ignored -> {
+                List<Integer> pending = new ArrayList<>();
+                for (int i = 0; i < results.length; i++) {
+                  if (!results[i].getType().isSuccess()) {
+                    pending.add(i);
+                  }
+                }
+                if (pending.isEmpty()) {
+                  return Futures.immediateFuture(null);
+                }
+                if (artifactCache.getCacheReadMode().isWritable()) {
+                  pending.forEach(i -> cachesToFill.get(i).add(artifactCache));
+                }
+                return Futures.transform(
+                    artifactCache.multiFetchAsync(
+                        pending.stream().map(ruleKeys::get).collect(Collectors.toList()),
+                        pending.stream().map(outputs::get).collect(Collectors.toList())),
+                    (ImmutableList<CacheResult> fetched) -> {
+                      for (int i = 0; i < pending.size(); i++) {
+                        results[pending.get(i)] = fetched.get(i);
+                      }
+                      return null;
+                    },
+                    MoreExecutors.directExecutor());
+              },
+              MoreExecutors.directExecutor());
+    }
+
+    // Propagate the artifacts to previous writable caches.
+    return Futures.transform(
+        done,
+        ignored -> {
+          for (int i = 0; i < results.length; i++) {
+            if (!results[i].getType().isSuccess()) {
+              continue;
+            }
+            storeToCaches(
+                cachesToFill.get(i).build(),
+                ArtifactInfo.builder()
+                    .addRuleKeys(ruleKeys.get(i))
+                    .setMetadata(results[i].getMetadata())
+                    .build(),
+                BorrowablePath.notBorrowablePath(outputs.get(i).getUnchecked()));
+          }
+          return ImmutableList.copyOf(results);
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Check whether any of the encapsulated ArtifactCaches contains the artifact matching ruleKey.
+   * If none of them does, but one of them could not tell, its error is returned instead of a miss.
+   */
+  @Override
+  public ListenableFuture<CacheResult> containsAsync(RuleKey ruleKey) {
+    ListenableFuture<CacheResult> cacheResult = Futures.immediateFuture(CacheResult.miss());
+    for (ArtifactCache artifactCache : artifactCaches) {
+      cacheResult =
+          Futures.transformAsync(
+              cacheResult,
+              (result) -> {
+                if (result.getType() == CacheResultType.CONTAINS) {
+                  return Futures.immediateFuture(result);
+                }
+                return Futures.transform(
+                    artifactCache.containsAsync(ruleKey),
+                    (CacheResult next) ->
+                        result.getType() == CacheResultType.ERROR
+                                && next.getType() != CacheResultType.CONTAINS
+                            ? result
+                            : next,
+                    MoreExecutors.directExecutor());
+              },
+              MoreExecutors.directExecutor());
+    }
+    return cacheResult;
+  }
+
   private static ListenableFuture<Void> storeToCaches(
       ImmutableList<ArtifactCache> caches, ArtifactInfo info, BorrowablePath output) {
     // TODO(cjhopman): support BorrowablePath with multiple writable caches.
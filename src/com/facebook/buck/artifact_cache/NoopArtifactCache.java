@@ -29,6 +29,11 @@ public class NoopArtifactCache implements ArtifactCache {
     return Futures.immediateFuture(CacheResult.miss());
   }
 
+  @Override
+  public ListenableFuture<CacheResult> containsAsync(RuleKey ruleKey) {
+    return Futures.immediateFuture(CacheResult.miss());
+  }
+
   @Override
   public ListenableFuture<Void> store(ArtifactInfo info, BorrowablePath output) {
     return Futures.immediateFuture(null);
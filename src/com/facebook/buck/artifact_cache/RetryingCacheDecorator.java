@@ -24,10 +24,12 @@ import com.facebook.buck.log.Logger;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.slb.NoHealthyServersException;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public class RetryingCacheDecorator implements ArtifactCache, CacheDecorator {
 
@@ -72,22 +74,90 @@ public class RetryingCacheDecorator implements ArtifactCache, CacheDecorator {
               });
     }
     return Futures.transform(
-        resultFuture,
-        result -> {
-          if (result.getType() != CacheResultType.ERROR) {
-            return result;
-          }
-          String msg = String.join("\n", allCacheErrors);
-          if (!msg.contains(NoHealthyServersException.class.getName())) {
-            buckEventBus.post(
-                ConsoleEvent.warning(
-                    "Failed to fetch %s over %s after %d attempts.",
-                    ruleKey, cacheMode.name(), maxFetchRetries));
+        resultFuture, result -> joinCacheErrors(ruleKey, result, allCacheErrors));
+  }
+
+  @Override
+  public ListenableFuture<ImmutableList<CacheResult>> multiFetchAsync(
+      List<RuleKey> ruleKeys, List<LazyPath> outputs) {
+    Preconditions.checkArgument(ruleKeys.size() == outputs.size());
+    List<List<String>> allCacheErrors = new ArrayList<>(ruleKeys.size());
+    for (int i = 0; i < ruleKeys.size(); i++) {
+      allCacheErrors.add(new ArrayList<>());
+    }
+    ListenableFuture<ImmutableList<CacheResult>> resultsFuture =
+        delegate.multiFetchAsync(ruleKeys, outputs);
+    for (int retryCount = 1; retryCount < maxFetchRetries; retryCount++) {
+      int retryCountForLambda = retryCount;
+      resultsFuture =
+          Futures.transformAsync(
+              resultsFuture,
+              results -> {
+                // Only the keys that failed are retried, as one batch.
+                List<Integer> failed = new ArrayList<>();
+                for (int i = 0; i < results.size(); i++) {
+                  CacheResult result = results.get(i);
+                  if (result.getType() != CacheResultType.ERROR) {
+                    continue;
+                  }
+                  failed.add(i);
+                  result.cacheError().ifPresent(allCacheErrors.get(i)::add);
+                  LOG.info(
+                      "Failed to fetch %s after %d/%d attempts, exception: %s",
+                      ruleKeys.get(i),
+                      retryCountForLambda + 1,
+                      maxFetchRetries,
+                      result.cacheError());
+                }
+                if (failed.isEmpty()) {
+                  return Futures.immediateFuture(results);
+                }
+                return Futures.transform(
+                    delegate.multiFetchAsync(
+                        failed.stream().map(ruleKeys::get).collect(Collectors.toList()),
+                        failed.stream().map(outputs::get).collect(Collectors.toList())),
+                    retried -> {
+                      List<CacheResult> merged = new ArrayList<>(results);
+                      for (int i = 0; i < failed.size(); i++) {
+                        merged.set(failed.get(i), retried.get(i));
+                      }
+                      return ImmutableList.copyOf(merged);
+                    });
+              });
+    }
+    return Futures.transform(
+        resultsFuture,
+        results -> {
+          ImmutableList.Builder<CacheResult> joined = ImmutableList.builder();
+          for (int i = 0; i < results.size(); i++) {
+            joined.add(joinCacheErrors(ruleKeys.get(i), results.get(i), allCacheErrors.get(i)));
           }
-          return CacheResult.builder().from(result).setCacheError(msg).build();
+          return joined.build();
         });
   }
 
+  @Override
+  public ListenableFuture<CacheResult> containsAsync(RuleKey ruleKey) {
+    // Callers treat a failed existence check like a miss of the check and fall back to a fetch,
+    // which is retried, so there is no point in retrying the check itself.
+    return delegate.containsAsync(ruleKey);
+  }
+
+  private CacheResult joinCacheErrors(
+      RuleKey ruleKey, CacheResult result, List<String> allCacheErrors) {
+    if (result.getType() != CacheResultType.ERROR) {
+      return result;
+    }
+    String msg = String.join("\n", allCacheErrors);
+    if (!msg.contains(NoHealthyServersException.class.getName())) {
+      buckEventBus.post(
+          ConsoleEvent.warning(
+              "Failed to fetch %s over %s after %d attempts.",
+              ruleKey, cacheMode.name(), maxFetchRetries));
+    }
+    return CacheResult.builder().from(result).setCacheError(msg).build();
+  }
+
   @Override
   public ArtifactCache getDelegate() {
     return delegate;
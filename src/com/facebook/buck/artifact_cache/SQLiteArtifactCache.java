@@ -16,6 +16,9 @@
 
 package com.facebook.buck.artifact_cache;
 
+import com.facebook.buck.counters.Counter;
+import com.facebook.buck.counters.IntegerCounter;
+import com.facebook.buck.counters.SamplingCounter;
 import com.facebook.buck.io.BorrowablePath;
 import com.facebook.buck.io.LazyPath;
 import com.facebook.buck.io.MoreFiles;
@@ -35,6 +38,7 @@ import com.google.common.hash.HashCode;
 import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
@@ -48,6 +52,7 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.time.Duration;
 import java.time.Instant;
@@ -55,6 +60,12 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
 import org.sqlite.BusyHandler;
 import org.sqlite.SQLiteConfig;
 
@@ -64,6 +75,11 @@ import org.sqlite.SQLiteConfig;
  * <p>Cache entries are either metadata or content. All metadata contains a mapping to a content
  * entry. Content entries with sufficiently small content will have their artifacts inlined into the
  * database for improved performance.
+ *
+ * <p>Old entries are evicted in small batches, so that stores and fetches from other threads and
+ * processes are not kept waiting on the database for long. With background maintenance enabled,
+ * eviction happens on a dedicated thread in time-boxed runs, which also checkpoint the write-ahead
+ * log and incrementally vacuum the database, rather than as part of every store.
  */
 public class SQLiteArtifactCache implements ArtifactCache {
 
@@ -75,6 +91,19 @@ public class SQLiteArtifactCache implements ArtifactCache {
   private static final String TMP_EXTENSION = ".tmp";
   private static final long DEFAULT_MAX_INLINED_BYTES = 0;
   private static final Duration DEFAULT_EVICTION_TIME = Duration.ofDays(7);
+  // Number of rows looked at, and deleted, while holding the database.
+  private static final int EVICTION_BATCH_SIZE = 100;
+  // How long a background maintenance run may evict for, before yielding to other work.
+  private static final Duration MAINTENANCE_TIME_BUDGET = Duration.ofMillis(100);
+  // Delay before a background maintenance run, so that the stores of a build are handled together.
+  private static final Duration MAINTENANCE_DELAY = Duration.ofSeconds(1);
+  // How long closing the cache may evict for, covering runs that were still delayed.
+  private static final Duration CLOSE_EVICTION_TIME_BUDGET = Duration.ofSeconds(1);
+  // How long closing the cache waits for a running background maintenance run to finish.
+  private static final Duration CLOSE_MAINTENANCE_TIMEOUT = Duration.ofSeconds(10);
+  // Number of free pages returned to the filesystem by each background maintenance run.
+  private static final int INCREMENTAL_VACUUM_PAGES = 1000;
+  private static final String COUNTER_CATEGORY = "buck_sqlite_cache_stats";
 
   private final String name;
   private final ProjectFilesystem filesystem;
@@ -83,6 +112,14 @@ public class SQLiteArtifactCache implements ArtifactCache {
   private final Optional<Long> maxBytesAfterDeletion;
   private final long maxInlinedBytes;
   private final CacheReadMode cacheMode;
+  private final Optional<ScheduledExecutorService> maintenanceExecutor;
+  private final AtomicBoolean maintenanceScheduled = new AtomicBoolean(false);
+
+  private final SamplingCounter maintenanceTimeMs;
+  private final IntegerCounter evictedMetadata;
+  private final IntegerCounter evictedArtifacts;
+  private final IntegerCounter evictedBytes;
+  private final IntegerCounter checkpointedPages;
 
   private final ConnectionInfo db;
 
@@ -98,6 +135,29 @@ public class SQLiteArtifactCache implements ArtifactCache {
       Optional<Long> maxInlinedSizeBytes,
       CacheReadMode cacheMode)
       throws IOException, SQLException {
+    this(
+        name,
+        filesystem,
+        cacheDir,
+        maxCacheSizeBytes,
+        maxInlinedSizeBytes,
+        cacheMode,
+        /* backgroundMaintenance */ false);
+  }
+
+  /**
+   * @param backgroundMaintenance whether to evict old entries, checkpoint and vacuum on a
+   *     background thread owned by this cache, rather than on the thread storing to it.
+   */
+  SQLiteArtifactCache(
+      String name,
+      ProjectFilesystem filesystem,
+      Path cacheDir,
+      Optional<Long> maxCacheSizeBytes,
+      Optional<Long> maxInlinedSizeBytes,
+      CacheReadMode cacheMode,
+      boolean backgroundMaintenance)
+      throws IOException, SQLException {
     this.name = name;
     this.filesystem = filesystem;
     this.cacheDir = cacheDir;
@@ -122,6 +182,34 @@ public class SQLiteArtifactCache implements ArtifactCache {
     }
 
     this.db = new ConnectionInfo(cacheDir);
+
+    if (backgroundMaintenance) {
+      ScheduledThreadPoolExecutor executor =
+          new ScheduledThreadPoolExecutor(
+              1,
+              new ThreadFactoryBuilder()
+                  .setNameFormat("SQLiteArtifactCache maintenance %d")
+                  .setDaemon(true)
+                  .build());
+      // Delayed runs are dropped on close, which evicts in their place.
+      executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+      this.maintenanceExecutor = Optional.of(executor);
+    } else {
+      this.maintenanceExecutor = Optional.empty();
+    }
+
+    ImmutableMap<String, String> tags = ImmutableMap.of("cache", name);
+    this.maintenanceTimeMs = new SamplingCounter(COUNTER_CATEGORY, "maintenance_time_ms", tags);
+    this.evictedMetadata = new IntegerCounter(COUNTER_CATEGORY, "evicted_metadata", tags);
+    this.evictedArtifacts = new IntegerCounter(COUNTER_CATEGORY, "evicted_artifacts", tags);
+    this.evictedBytes = new IntegerCounter(COUNTER_CATEGORY, "evicted_bytes", tags);
+    this.checkpointedPages = new IntegerCounter(COUNTER_CATEGORY, "checkpointed_pages", tags);
+  }
+
+  /** @return the counters tracking the cost of evicting entries and maintaining the database. */
+  ImmutableSet<Counter> getMaintenanceCounters() {
+    return ImmutableSet.of(
+        maintenanceTimeMs, evictedMetadata, evictedArtifacts, evictedBytes, checkpointedPages);
   }
 
   @Override
@@ -211,18 +299,74 @@ public class SQLiteArtifactCache implements ArtifactCache {
     }
   }
 
+  @Override
+  public ListenableFuture<CacheResult> containsAsync(RuleKey ruleKey) {
+    return Futures.immediateFuture(contains(ruleKey));
+  }
+
+  /** Mirrors {@link #fetch}: the key is looked up as a content hash first, then as a rule key. */
+  private CacheResult contains(RuleKey ruleKey) {
+    CacheResult result =
+        CacheResult.error(
+            name,
+            CACHE_MODE,
+            String.format("Artifact contains(%s) stopped unexpectedly", ruleKey));
+    try {
+      ResultSet rs = db.selectContentFilepath(ruleKey);
+      if (rs.next()) {
+        String filepath = rs.getString(1);
+        if (filepath == null || filesystem.exists(filesystem.resolve(filepath))) {
+          db.accessContent(ruleKey);
+          return result = CacheResult.contains(name, CACHE_MODE);
+        }
+        // artifact stored on disk was removed by another cache, remove database entry
+        db.deleteContent(ruleKey);
+        return result = CacheResult.miss();
+      }
+
+      rs = db.selectMetadata(ruleKey);
+      if (rs.next()) {
+        db.accessMetadata(ruleKey);
+        return result = CacheResult.contains(name, CACHE_MODE);
+      }
+
+      return result = CacheResult.miss();
+    } catch (SQLException e) {
+      LOG.warn(e, "Artifact contains(%s) error", ruleKey);
+      return result =
+          CacheResult.error(
+              name, CACHE_MODE, String.format("%s: %s", e.getClass(), e.getMessage()));
+    } finally {
+      LOG.verbose("Artifact contains(%s) cache %s", ruleKey, result.getType());
+    }
+  }
+
   @Override
   public ListenableFuture<Void> store(ArtifactInfo info, BorrowablePath content) {
     if (!getCacheReadMode().isWritable()) {
       return Futures.immediateFuture(null);
     }
 
-    if (info.getMetadata().containsKey(TwoLevelArtifactCacheDecorator.METADATA_KEY)) {
-      return Futures.transformAsync(storeMetadata(info), result -> removeOldMetadata());
-    } else {
-      return Futures.transformAsync(
-          storeContent(info.getRuleKeys(), content), result -> removeOldContent());
+    boolean isMetadata =
+        info.getMetadata().containsKey(TwoLevelArtifactCacheDecorator.METADATA_KEY);
+    ListenableFuture<Void> stored =
+        isMetadata ? storeMetadata(info) : storeContent(info.getRuleKeys(), content);
+
+    if (maintenanceExecutor.isPresent()) {
+      scheduleMaintenance();
+      return stored;
     }
+
+    return Futures.transformAsync(
+        stored,
+        result -> {
+          if (isMetadata) {
+            removeOldMetadata(() -> false);
+          } else {
+            removeOldContent(() -> false);
+          }
+          return Futures.immediateFuture(null);
+        });
   }
 
   private ListenableFuture<Void> storeMetadata(ArtifactInfo info) {
@@ -351,68 +495,143 @@ public class SQLiteArtifactCache implements ArtifactCache {
     }
   }
 
-  /** Removes metadata older than a computed eviction time. */
-  private ListenableFuture<Void> removeOldMetadata() {
+  /** Schedules a delayed background maintenance run, unless one is already pending. */
+  private void scheduleMaintenance() {
+    if (!maintenanceScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    if (!submitMaintenance(MAINTENANCE_DELAY)) {
+      maintenanceScheduled.set(false);
+    }
+  }
+
+  /** @return false if the run was rejected because the cache is being closed. */
+  private boolean submitMaintenance(Duration delay) {
+    try {
+      maintenanceExecutor
+          .get()
+          .schedule(this::runMaintenance, delay.toMillis(), TimeUnit.MILLISECONDS);
+      return true;
+    } catch (RejectedExecutionException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Evicts old entries for at most {@link #MAINTENANCE_TIME_BUDGET}, then checkpoints and vacuums
+   * the database. If there is eviction left to do, another run follows right away, so that the
+   * cache is brought back under its limit rather than trimmed a little after each delay.
+   */
+  @VisibleForTesting
+  void runMaintenance() {
+    maintenanceScheduled.set(false);
+    long startNanos = System.nanoTime();
+
+    boolean finished = evict(MAINTENANCE_TIME_BUDGET);
+
+    try {
+      checkpointedPages.inc(db.checkpoint());
+      db.incrementalVacuum(INCREMENTAL_VACUUM_PAGES);
+    } catch (SQLException e) {
+      LOG.warn(e, "Failed to checkpoint and vacuum the database in [%s].", cacheDir);
+    }
+
+    maintenanceTimeMs.addSample(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    if (!finished && maintenanceExecutor.isPresent()) {
+      submitMaintenance(Duration.ZERO);
+    }
+  }
+
+  /**
+   * Removes old metadata and content for at most {@code timeBudget}.
+   *
+   * @return false if the time budget ran out before the removal was done.
+   */
+  private boolean evict(Duration timeBudget) {
+    long deadlineNanos = System.nanoTime() + timeBudget.toNanos();
+    BooleanSupplier outOfTime = () -> System.nanoTime() - deadlineNanos > 0;
+    return removeOldMetadata(outOfTime) && removeOldContent(outOfTime);
+  }
+
+  /**
+   * Removes metadata older than a computed eviction time.
+   *
+   * @return false if {@code outOfTime} stopped the removal before it was done.
+   */
+  private boolean removeOldMetadata(BooleanSupplier outOfTime) {
     Timestamp evictionTime = Timestamp.from(Instant.now().minus(DEFAULT_EVICTION_TIME));
     try {
-      int deleted = db.deleteMetadata(evictionTime);
-      LOG.verbose("Removed %d metadata rows not accessed since %s", deleted, evictionTime);
+      int deleted;
+      do {
+        if (outOfTime.getAsBoolean()) {
+          return false;
+        }
+        deleted = db.deleteMetadata(evictionTime, EVICTION_BATCH_SIZE);
+        evictedMetadata.inc(deleted);
+        LOG.verbose("Removed %d metadata rows not accessed since %s", deleted, evictionTime);
+      } while (deleted == EVICTION_BATCH_SIZE);
     } catch (SQLException e) {
       LOG.error(e, "Failed to clean database");
     }
 
-    return Futures.immediateFuture(null);
+    return true;
   }
 
-  /** Deletes files that haven't been accessed recently from the directory cache. */
-  private ListenableFuture<Void> removeOldContent() {
+  /**
+   * Deletes the least recently accessed artifacts until the cache is back under its trimmed size.
+   * Artifacts accessed since the removal started are kept.
+   *
+   * @return false if {@code outOfTime} stopped the removal before it was done.
+   */
+  private boolean removeOldContent(BooleanSupplier outOfTime) {
     if (!maxCacheSizeBytes.isPresent()) {
-      return Futures.immediateFuture(null);
+      return true;
     }
 
     long totalSizeBytes;
     try {
       totalSizeBytes = db.totalSize();
       if (totalSizeBytes <= maxCacheSizeBytes.get()) {
-        return Futures.immediateFuture(null);
+        return true;
       }
     } catch (SQLException e) {
       LOG.error(e, "Failed to find total artifact size.");
-      return Futures.immediateFuture(null);
+      return true;
     }
 
+    Timestamp evictionCutoff = Timestamp.from(Instant.now());
     try {
-      ResultSet artifacts = db.selectContentByTime();
-      while (totalSizeBytes > maxBytesAfterDeletion.get() && artifacts.next()) {
-        String filepath = artifacts.getString(1);
-        long sizeBytes = artifacts.getLong(2);
-
-        // from database constraint, exactly one of filepath/artifact is null
-        if (Objects.nonNull(filepath)) {
-          LOG.verbose("Deleting path [%s] of total size [%d] bytes.", filepath, sizeBytes);
-          Path filePathInFS = filesystem.resolve(filepath);
-          MoreFiles.deleteRecursivelyIfExists(filePathInFS);
-        } else {
-          LOG.verbose("Deleting inlined artifact of size [%d] bytes.", sizeBytes);
+      while (totalSizeBytes > maxBytesAfterDeletion.get()) {
+        if (outOfTime.getAsBoolean()) {
+          return false;
         }
 
-        totalSizeBytes -= sizeBytes;
-      }
+        // Rows are deleted first, so that nothing fetches an artifact while its file is deleted.
+        EvictedContent evicted =
+            db.deleteOldestContent(
+                evictionCutoff, totalSizeBytes - maxBytesAfterDeletion.get(), EVICTION_BATCH_SIZE);
+        if (evicted.count == 0) {
+          break;
+        }
 
-      Timestamp evictionCutoff;
-      if (artifacts.next()) {
-        evictionCutoff = artifacts.getTimestamp(3);
-      } else {
-        evictionCutoff = Timestamp.from(Instant.now());
-      }
+        // from database constraint, inlined artifacts have no file to delete
+        for (String filepath : evicted.filepaths) {
+          LOG.verbose("Deleting path [%s].", filepath);
+          MoreFiles.deleteRecursivelyIfExists(filesystem.resolve(filepath));
+        }
 
-      int deleted = db.deleteContent(evictionCutoff);
-      LOG.verbose("Deleted %d cached artifacts last accessed before %s", deleted, evictionCutoff);
+        totalSizeBytes -= evicted.sizeBytes;
+        evictedArtifacts.inc(evicted.count);
+        evictedBytes.inc(evicted.sizeBytes);
+        LOG.verbose(
+            "Deleted %d cached artifacts of total size [%d] bytes.",
+            evicted.count, evicted.sizeBytes);
+      }
     } catch (IOException | SQLException e) {
       LOG.error(e, "Failed to clean path [%s].", filesystem.resolve(cacheDir));
     }
 
-    return Futures.immediateFuture(null);
+    return true;
   }
 
   @Override
@@ -422,6 +641,24 @@ public class SQLiteArtifactCache implements ArtifactCache {
 
   @Override
   public void close() {
+    if (maintenanceExecutor.isPresent()) {
+      // Lets a running maintenance run finish with the database, then evicts once more, so that
+      // builds shorter than the maintenance delay still keep the cache under its limit.
+      ScheduledExecutorService executor = maintenanceExecutor.get();
+      executor.shutdown();
+      try {
+        long timeoutMs = CLOSE_MAINTENANCE_TIMEOUT.toMillis();
+        if (executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+          if (cacheMode.isWritable()) {
+            evict(CLOSE_EVICTION_TIME_BUDGET);
+          }
+        } else {
+          LOG.warn("Timed out waiting for maintenance of the cache in [%s].", cacheDir);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
     db.close();
   }
 
@@ -500,11 +737,25 @@ public class SQLiteArtifactCache implements ArtifactCache {
     return keys.build();
   }
 
+  /** Content rows deleted by one eviction batch. */
+  private static class EvictedContent {
+    private final int count;
+    private final long sizeBytes;
+    private final ImmutableList<String> filepaths;
+
+    private EvictedContent(int count, long sizeBytes, ImmutableList<String> filepaths) {
+      this.count = count;
+      this.sizeBytes = sizeBytes;
+      this.filepaths = filepaths;
+    }
+  }
+
   private static class ConnectionInfo {
     private final Connection connection;
 
     private final PreparedStatement fetchMetadata;
     private final PreparedStatement fetchContent;
+    private final PreparedStatement fetchContentFilepath;
 
     private final PreparedStatement updateMetadataTime;
     private final PreparedStatement updateContentTime;
@@ -513,10 +764,9 @@ public class SQLiteArtifactCache implements ArtifactCache {
     private final PreparedStatement storeArtifact;
     private final PreparedStatement storeFilepath;
 
-    private final PreparedStatement selectContentByTime;
+    private final PreparedStatement selectOldestContent;
 
     private final PreparedStatement deleteMetadataBeforeCutoff;
-    private final PreparedStatement deleteContentBeforeCutoff;
     private final PreparedStatement deleteContentForHash;
 
     private final PreparedStatement contentSize;
@@ -530,6 +780,8 @@ public class SQLiteArtifactCache implements ArtifactCache {
           DriverManager.getConnection("jdbc:sqlite:" + cacheDir.resolve("dircache.db"), properties);
       connection.createStatement().executeUpdate("PRAGMA SYNCHRONOUS = OFF");
       connection.createStatement().executeUpdate("PRAGMA JOURNAL_MODE = WAL");
+      // Only takes effect for new databases: lets maintenance give space back incrementally.
+      connection.createStatement().executeUpdate("PRAGMA AUTO_VACUUM = INCREMENTAL");
 
       /*
        * This cache is used for two different layers, so we use two separate databases to encode these
@@ -567,6 +819,8 @@ public class SQLiteArtifactCache implements ArtifactCache {
       fetchContent =
           connection.prepareStatement(
               "SELECT artifact, filepath, size FROM content WHERE sha1 = ?");
+      fetchContentFilepath =
+          connection.prepareStatement("SELECT filepath FROM content WHERE sha1 = ?");
 
       updateMetadataTime =
           connection.prepareStatement(
@@ -584,14 +838,15 @@ public class SQLiteArtifactCache implements ArtifactCache {
           connection.prepareStatement(
               "INSERT INTO content (sha1, filepath, size) VALUES (?, ?, ?)");
 
-      selectContentByTime =
+      selectOldestContent =
           connection.prepareStatement(
-              "SELECT filepath, size, accessed FROM content ORDER BY accessed ASC, created ASC");
+              "SELECT sha1, filepath, size FROM content WHERE accessed < ? "
+                  + "ORDER BY accessed ASC, created ASC LIMIT ?");
 
       deleteMetadataBeforeCutoff =
-          connection.prepareStatement("DELETE FROM metadata WHERE accessed < ?");
-      deleteContentBeforeCutoff =
-          connection.prepareStatement("DELETE FROM content WHERE accessed < ?");
+          connection.prepareStatement(
+              "DELETE FROM metadata WHERE rulekey IN "
+                  + "(SELECT rulekey FROM metadata WHERE accessed < ? LIMIT ?)");
       deleteContentForHash = connection.prepareStatement("DELETE FROM content WHERE sha1 = ?");
 
       contentSize = connection.prepareStatement("SELECT sum(size) FROM content");
@@ -609,6 +864,12 @@ public class SQLiteArtifactCache implements ArtifactCache {
       return fetchContent.executeQuery();
     }
 
+    private synchronized ResultSet selectContentFilepath(RuleKey contentHash)
+        throws SQLException {
+      fetchContentFilepath.setBytes(1, getBytes(contentHash));
+      return fetchContentFilepath.executeQuery();
+    }
+
     private synchronized void accessMetadata(RuleKey ruleKey) throws SQLException {
       updateMetadataTime.setBytes(1, getBytes(ruleKey));
       updateMetadataTime.executeUpdate();
@@ -651,14 +912,49 @@ public class SQLiteArtifactCache implements ArtifactCache {
       storeFilepath.executeBatch();
     }
 
-    private synchronized int deleteMetadata(Timestamp evictionCutoff) throws SQLException {
+    private synchronized int deleteMetadata(Timestamp evictionCutoff, int limit)
+        throws SQLException {
       deleteMetadataBeforeCutoff.setTimestamp(1, evictionCutoff);
+      deleteMetadataBeforeCutoff.setInt(2, limit);
       return deleteMetadataBeforeCutoff.executeUpdate();
     }
 
-    private synchronized int deleteContent(Timestamp evictionCutoff) throws SQLException {
-      deleteContentBeforeCutoff.setTimestamp(1, evictionCutoff);
-      return deleteContentBeforeCutoff.executeUpdate();
+    /**
+     * Deletes up to {@code limit} of the least recently accessed content rows last accessed before
+     * {@code evictionCutoff}, stopping once {@code bytesToFree} bytes have been deleted.
+     */
+    private synchronized EvictedContent deleteOldestContent(
+        Timestamp evictionCutoff, long bytesToFree, int limit) throws SQLException {
+      int count = 0;
+      long sizeBytes = 0;
+      ImmutableList.Builder<String> filepaths = ImmutableList.builder();
+
+      connection.setAutoCommit(false);
+      try {
+        selectOldestContent.setTimestamp(1, evictionCutoff);
+        selectOldestContent.setInt(2, limit);
+        try (ResultSet rs = selectOldestContent.executeQuery()) {
+          while (sizeBytes < bytesToFree && rs.next()) {
+            deleteContentForHash.setBytes(1, rs.getBytes(1));
+            deleteContentForHash.addBatch();
+            String filepath = rs.getString(2);
+            if (Objects.nonNull(filepath)) {
+              filepaths.add(filepath);
+            }
+            sizeBytes += rs.getLong(3);
+            count++;
+          }
+        }
+        deleteContentForHash.executeBatch();
+        connection.commit();
+      } catch (SQLException e) {
+        connection.rollback();
+        throw e;
+      } finally {
+        connection.setAutoCommit(true);
+      }
+
+      return new EvictedContent(count, sizeBytes, filepaths.build());
     }
 
     private synchronized void deleteContent(RuleKey contentHash) throws SQLException {
@@ -675,8 +971,23 @@ public class SQLiteArtifactCache implements ArtifactCache {
       return rs.getLong(1);
     }
 
-    private synchronized ResultSet selectContentByTime() throws SQLException {
-      return selectContentByTime.executeQuery();
+    /**
+     * Copies the write-ahead log back into the database, without waiting for readers.
+     *
+     * @return the number of pages checkpointed.
+     */
+    private synchronized int checkpoint() throws SQLException {
+      try (Statement statement = connection.createStatement();
+          ResultSet rs = statement.executeQuery("PRAGMA WAL_CHECKPOINT(PASSIVE)")) {
+        // The result is (busy, pages in the log, pages checkpointed), with -1 when not in WAL mode.
+        return rs.next() ? Math.max(0, rs.getInt(3)) : 0;
+      }
+    }
+
+    private synchronized void incrementalVacuum(int pages) throws SQLException {
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("PRAGMA INCREMENTAL_VACUUM(" + pages + ")");
+      }
     }
 
     private static byte[] getBytes(RuleKey ruleKey) {
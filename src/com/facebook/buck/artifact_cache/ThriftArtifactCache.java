@@ -16,8 +16,11 @@
 package com.facebook.buck.artifact_cache;
 
 import com.facebook.buck.artifact_cache.thrift.ArtifactMetadata;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheContainsRequest;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheContainsResponse;
 import com.facebook.buck.artifact_cache.thrift.BuckCacheFetchRequest;
 import com.facebook.buck.artifact_cache.thrift.BuckCacheFetchResponse;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheMultiFetchRequest;
 import com.facebook.buck.artifact_cache.thrift.BuckCacheRequest;
 import com.facebook.buck.artifact_cache.thrift.BuckCacheRequestType;
 import com.facebook.buck.artifact_cache.thrift.BuckCacheResponse;
@@ -40,6 +43,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import okhttp3.MediaType;
@@ -78,9 +82,7 @@ public class ThriftArtifactCache extends AbstractNetworkCache {
       throws IOException {
 
     BuckCacheFetchRequest fetchRequest = new BuckCacheFetchRequest();
-    com.facebook.buck.artifact_cache.thrift.RuleKey thriftRuleKey =
-        new com.facebook.buck.artifact_cache.thrift.RuleKey();
-    thriftRuleKey.setHashString(ruleKey.getHashCode().toString());
+    com.facebook.buck.artifact_cache.thrift.RuleKey thriftRuleKey = toThriftRuleKey(ruleKey);
     fetchRequest.setRuleKey(thriftRuleKey);
     fetchRequest.setRepository(repository);
     fetchRequest.setScheduleType(scheduleType);
@@ -128,84 +130,236 @@ public class ThriftArtifactCache extends AbstractNetworkCache {
               ThriftUtil.thriftToDebugJson(cacheResponse));
         }
 
-        if (!fetchResponse.isArtifactExists()) {
-          LOG.verbose("Artifact did not exist.");
-          return CacheResult.miss();
-        }
+        return readFetchResponse(ruleKey, output, fetchResponse, response, eventBuilder);
+      }
+    }
+  }
 
-        LOG.verbose("Got artifact.  Attempting to read payload.");
-        Path tmp = createTempFileForDownload();
-        ThriftArtifactCacheProtocol.Response.ReadPayloadInfo readResult;
-        try (OutputStream tmpFile = projectFilesystem.newFileOutputStream(tmp)) {
-          try {
-            readResult = response.readPayload(tmpFile);
-          } catch (IOException e) {
-            LOG.debug(e, "encountered an exception while receiving the payload for %s", ruleKey);
-            throw e;
-          }
-          LOG.verbose("Successfully read payload: %d bytes.", readResult.getBytesRead());
+  @Override
+  protected ImmutableList<CacheResult> multiFetchImpl(
+      List<RuleKey> ruleKeys,
+      List<LazyPath> outputs,
+      List<HttpArtifactCacheEvent.Finished.Builder> eventBuilders)
+      throws IOException {
+    if (ruleKeys.size() == 1) {
+      return ImmutableList.of(fetchImpl(ruleKeys.get(0), outputs.get(0), eventBuilders.get(0)));
+    }
+
+    BuckCacheMultiFetchRequest multiFetchRequest = new BuckCacheMultiFetchRequest();
+    for (RuleKey ruleKey : ruleKeys) {
+      multiFetchRequest.addToRuleKeys(toThriftRuleKey(ruleKey));
+    }
+    multiFetchRequest.setRepository(repository);
+    multiFetchRequest.setScheduleType(scheduleType);
+    multiFetchRequest.setDistributedBuildModeEnabled(distributedBuildModeEnabled);
+
+    BuckCacheRequest cacheRequest = new BuckCacheRequest();
+    cacheRequest.setType(BuckCacheRequestType.MULTI_FETCH);
+    cacheRequest.setMultiFetchRequest(multiFetchRequest);
+
+    LOG.verbose("Will multi-fetch %d keys", ruleKeys.size());
+
+    final ThriftArtifactCacheProtocol.Request request =
+        ThriftArtifactCacheProtocol.createRequest(PROTOCOL, cacheRequest);
+    Request.Builder builder = toOkHttpRequest(request);
+    try (HttpResponse httpResponse = fetchClient.makeRequest(hybridThriftEndpoint, builder)) {
+      if (httpResponse.statusCode() != 200) {
+        String message =
+            String.format(
+                "Failed to multi-fetch cache artifacts with HTTP status code [%d:%s] "
+                    + " to url [%s] for [%d] rule keys.",
+                httpResponse.statusCode(),
+                httpResponse.statusMessage(),
+                httpResponse.requestUrl(),
+                ruleKeys.size());
+        LOG.error(message);
+        return ImmutableList.copyOf(
+            Collections.nCopies(ruleKeys.size(), CacheResult.error(name, mode, message)));
+      }
+
+      try (ThriftArtifactCacheProtocol.Response response =
+          ThriftArtifactCacheProtocol.parseResponse(PROTOCOL, httpResponse.getBody())) {
+        BuckCacheResponse cacheResponse = response.getThriftData();
+        if (!cacheResponse.isWasSuccessful()) {
+          LOG.warn("Request was unsuccessful: %s", cacheResponse.getErrorMessage());
+          CacheResult error = CacheResult.error(name, mode, cacheResponse.getErrorMessage());
+          return ImmutableList.copyOf(Collections.nCopies(ruleKeys.size(), error));
         }
 
-        if (!fetchResponse.isSetMetadata()) {
-          String msg =
-              String.format(
-                  "ArtifactMetadata section is missing in the response. response=[%s]",
-                  ThriftUtil.thriftToDebugJson(fetchResponse));
-          return CacheResult.error(name, mode, msg);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(
+              "Debug info for cache multi-fetch request: request=[%s] response=[%s]",
+              ThriftUtil.thriftToDebugJson(cacheRequest),
+              ThriftUtil.thriftToDebugJson(cacheResponse));
         }
-        ArtifactMetadata metadata = fetchResponse.getMetadata();
-        if (LOG.isVerboseEnabled()) {
-          LOG.verbose(
+
+        List<BuckCacheFetchResponse> fetchResponses =
+            cacheResponse.getMultiFetchResponse().getResults();
+        if (fetchResponses.size() != ruleKeys.size()) {
+          throw new IOException(
               String.format(
-                  "Fetched artifact with rule key [%s] contains the following metadata: [%s].",
-                  ruleKey, ThriftUtil.thriftToDebugJson(metadata)));
+                  "Multi-fetch response contains [%d] results for [%d] requested rule keys.",
+                  fetchResponses.size(), ruleKeys.size()));
         }
 
-        if (!metadata.isSetRuleKeys()) {
-          return CacheResult.error(name, mode, "Rule key section in the metadata is not set.");
+        // Payloads are streamed in the same order as the results they belong to, so the results
+        // have to be processed in order.
+        long responseSizeBytes = httpResponse.contentLength() / ruleKeys.size();
+        ImmutableList.Builder<CacheResult> results = ImmutableList.builder();
+        for (int i = 0; i < ruleKeys.size(); i++) {
+          eventBuilders.get(i).getFetchBuilder().setResponseSizeBytes(responseSizeBytes);
+          results.add(
+              readFetchResponse(
+                  ruleKeys.get(i),
+                  outputs.get(i),
+                  fetchResponses.get(i),
+                  response,
+                  eventBuilders.get(i)));
         }
-        ImmutableSet<RuleKey> associatedRuleKeys = null;
-        try {
-          associatedRuleKeys = toImmutableSet(metadata.getRuleKeys());
-        } catch (IllegalArgumentException e) {
-          String msg =
-              String.format(
-                  "Exception parsing the rule keys in the metadata section [%s] with exception [%s].",
-                  ThriftUtil.thriftToDebugJson(metadata), e.toString());
-          return CacheResult.error(name, mode, msg);
+        return results.build();
+      }
+    }
+  }
+
+  @Override
+  protected CacheResult containsImpl(RuleKey ruleKey) throws IOException {
+    BuckCacheContainsRequest containsRequest = new BuckCacheContainsRequest();
+    containsRequest.setRuleKey(toThriftRuleKey(ruleKey));
+    containsRequest.setRepository(repository);
+    containsRequest.setScheduleType(scheduleType);
+    containsRequest.setDistributedBuildModeEnabled(distributedBuildModeEnabled);
+
+    BuckCacheRequest cacheRequest = new BuckCacheRequest();
+    cacheRequest.setType(BuckCacheRequestType.CONTAINS);
+    cacheRequest.setContainsRequest(containsRequest);
+
+    LOG.verbose("Will check for key %s", ruleKey);
+
+    final ThriftArtifactCacheProtocol.Request request =
+        ThriftArtifactCacheProtocol.createRequest(PROTOCOL, cacheRequest);
+    Request.Builder builder = toOkHttpRequest(request);
+    try (HttpResponse httpResponse = fetchClient.makeRequest(hybridThriftEndpoint, builder)) {
+      if (httpResponse.statusCode() != 200) {
+        String message =
+            String.format(
+                "Failed to check for cache artifact with HTTP status code [%d:%s] "
+                    + " to url [%s] for rule key [%s].",
+                httpResponse.statusCode(),
+                httpResponse.statusMessage(),
+                httpResponse.requestUrl(),
+                ruleKey.toString());
+        LOG.debug(message);
+        return CacheResult.error(name, mode, message);
+      }
+
+      try (ThriftArtifactCacheProtocol.Response response =
+          ThriftArtifactCacheProtocol.parseResponse(PROTOCOL, httpResponse.getBody())) {
+        BuckCacheResponse cacheResponse = response.getThriftData();
+        // Servers that don't know about CONTAINS requests reject them.
+        if (!cacheResponse.isWasSuccessful()) {
+          LOG.debug("Request was unsuccessful: %s", cacheResponse.getErrorMessage());
+          return CacheResult.error(name, mode, cacheResponse.getErrorMessage());
         }
 
-        eventBuilder
-            .setTarget(Optional.ofNullable(metadata.getBuildTarget()))
-            .getFetchBuilder()
-            .setAssociatedRuleKeys(associatedRuleKeys)
-            .setArtifactSizeBytes(readResult.getBytesRead());
-        if (!metadata.isSetArtifactPayloadMd5()) {
-          String msg = "Fetched artifact is missing the MD5 hash.";
-          LOG.warn(msg);
-        } else {
-          eventBuilder.getFetchBuilder().setArtifactContentHash(metadata.getArtifactPayloadMd5());
-          if (!readResult
-              .getMd5Hash()
-              .equals(fetchResponse.getMetadata().getArtifactPayloadMd5())) {
-            String msg =
-                String.format(
-                    "The artifact fetched from cache is corrupted. ExpectedMD5=[%s] ActualMD5=[%s]",
-                    fetchResponse.getMetadata().getArtifactPayloadMd5(), readResult.getMd5Hash());
-            LOG.error(msg);
-            return CacheResult.error(name, mode, msg);
-          }
+        BuckCacheContainsResponse containsResponse = cacheResponse.getContainsResponse();
+        if (containsResponse == null) {
+          return CacheResult.error(name, mode, "Contains section is missing in the response.");
         }
+        return containsResponse.isArtifactExists()
+            ? CacheResult.contains(name, mode)
+            : CacheResult.miss();
+      }
+    }
+  }
+
+  private CacheResult readFetchResponse(
+      RuleKey ruleKey,
+      LazyPath output,
+      BuckCacheFetchResponse fetchResponse,
+      ThriftArtifactCacheProtocol.Response response,
+      HttpArtifactCacheEvent.Finished.Builder eventBuilder)
+      throws IOException {
+    if (!fetchResponse.isArtifactExists()) {
+      LOG.verbose("Artifact did not exist.");
+      return CacheResult.miss();
+    }
 
-        // This makes sure we don't have 'half downloaded files' in the dir cache.
-        projectFilesystem.move(tmp, output.get(), StandardCopyOption.REPLACE_EXISTING);
-        return CacheResult.hit(
-            name,
-            mode,
-            ImmutableMap.copyOf(fetchResponse.getMetadata().getMetadata()),
-            readResult.getBytesRead());
+    LOG.verbose("Got artifact.  Attempting to read payload.");
+    Path tmp = createTempFileForDownload();
+    ThriftArtifactCacheProtocol.Response.ReadPayloadInfo readResult;
+    try (OutputStream tmpFile = projectFilesystem.newFileOutputStream(tmp)) {
+      try {
+        readResult = response.readPayload(tmpFile);
+      } catch (IOException e) {
+        LOG.debug(e, "encountered an exception while receiving the payload for %s", ruleKey);
+        throw e;
       }
+      LOG.verbose("Successfully read payload: %d bytes.", readResult.getBytesRead());
+    }
+
+    if (!fetchResponse.isSetMetadata()) {
+      String msg =
+          String.format(
+              "ArtifactMetadata section is missing in the response. response=[%s]",
+              ThriftUtil.thriftToDebugJson(fetchResponse));
+      return CacheResult.error(name, mode, msg);
+    }
+    ArtifactMetadata metadata = fetchResponse.getMetadata();
+    if (LOG.isVerboseEnabled()) {
+      LOG.verbose(
+          String.format(
+              "Fetched artifact with rule key [%s] contains the following metadata: [%s].",
+              ruleKey, ThriftUtil.thriftToDebugJson(metadata)));
+    }
+
+    if (!metadata.isSetRuleKeys()) {
+      return CacheResult.error(name, mode, "Rule key section in the metadata is not set.");
     }
+    ImmutableSet<RuleKey> associatedRuleKeys = null;
+    try {
+      associatedRuleKeys = toImmutableSet(metadata.getRuleKeys());
+    } catch (IllegalArgumentException e) {
+      String msg =
+          String.format(
+              "Exception parsing the rule keys in the metadata section [%s] with exception [%s].",
+              ThriftUtil.thriftToDebugJson(metadata), e.toString());
+      return CacheResult.error(name, mode, msg);
+    }
+
+    eventBuilder
+        .setTarget(Optional.ofNullable(metadata.getBuildTarget()))
+        .getFetchBuilder()
+        .setAssociatedRuleKeys(associatedRuleKeys)
+        .setArtifactSizeBytes(readResult.getBytesRead());
+    if (!metadata.isSetArtifactPayloadMd5()) {
+      String msg = "Fetched artifact is missing the MD5 hash.";
+      LOG.warn(msg);
+    } else {
+      eventBuilder.getFetchBuilder().setArtifactContentHash(metadata.getArtifactPayloadMd5());
+      if (!readResult.getMd5Hash().equals(fetchResponse.getMetadata().getArtifactPayloadMd5())) {
+        String msg =
+            String.format(
+                "The artifact fetched from cache is corrupted. ExpectedMD5=[%s] ActualMD5=[%s]",
+                fetchResponse.getMetadata().getArtifactPayloadMd5(), readResult.getMd5Hash());
+        LOG.error(msg);
+        return CacheResult.error(name, mode, msg);
+      }
+    }
+
+    // This makes sure we don't have 'half downloaded files' in the dir cache.
+    projectFilesystem.move(tmp, output.get(), StandardCopyOption.REPLACE_EXISTING);
+    return CacheResult.hit(
+        name,
+        mode,
+        ImmutableMap.copyOf(fetchResponse.getMetadata().getMetadata()),
+        readResult.getBytesRead());
+  }
+
+  private static com.facebook.buck.artifact_cache.thrift.RuleKey toThriftRuleKey(RuleKey ruleKey) {
+    com.facebook.buck.artifact_cache.thrift.RuleKey thriftRuleKey =
+        new com.facebook.buck.artifact_cache.thrift.RuleKey();
+    thriftRuleKey.setHashString(ruleKey.getHashCode().toString());
+    return thriftRuleKey;
   }
 
   private static ImmutableSet<RuleKey> toImmutableSet(
@@ -29,6 +29,7 @@ import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.util.HumanReadableException;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Functions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.AsyncFunction;
@@ -37,6 +38,8 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -129,43 +132,96 @@ public class TwoLevelArtifactCacheDecorator implements ArtifactCache, CacheDecor
           ListenableFuture<CacheResult> outputFileFetchResultFuture =
               delegate.fetchAsync(new RuleKey(contentHashKey), output);
 
-          return Futures.transformAsync(
+          return Futures.transform(
               outputFileFetchResultFuture,
-              (CacheResult outputFileFetchResult) -> {
-                outputFileFetchResult =
-                    outputFileFetchResult.withTwoLevelContentHashKey(contentHashKey);
-
-                if (!outputFileFetchResult.getType().isSuccess()) {
-                  LOG.verbose("Missed second-level lookup.");
-                  secondLevelCacheMisses.inc();
+              (CacheResult outputFileFetchResult) ->
+                  combineLevels(fetchResult, contentHashKey, outputFileFetchResult),
+              MoreExecutors.directExecutor());
+        },
+        MoreExecutors.directExecutor());
+  }
 
-                  // Note: for misses, the fetchResult metadata is not important, so we return
-                  // outputFileFetchResult to signal the miss (as fetchResult was a hit).
-                  return Futures.immediateFuture(outputFileFetchResult);
-                }
+  @Override
+  public ListenableFuture<ImmutableList<CacheResult>> multiFetchAsync(
+      List<RuleKey> ruleKeys, List<LazyPath> outputs) {
+    return Futures.transformAsync(
+        delegate.multiFetchAsync(ruleKeys, outputs),
+        (ImmutableList<CacheResult> fetchResults) -> {
+          // All second-level lookups of the batch are issued as a single batch as well.
+          List<Integer> twoLevelIndices = new ArrayList<>();
+          List<RuleKey> contentHashKeys = new ArrayList<>();
+          List<LazyPath> twoLevelOutputs = new ArrayList<>();
+          for (int i = 0; i < fetchResults.size(); i++) {
+            CacheResult fetchResult = fetchResults.get(i);
+            if (fetchResult.getType().isSuccess()
+                && fetchResult.getMetadata().containsKey(METADATA_KEY)) {
+              twoLevelIndices.add(i);
+              contentHashKeys.add(new RuleKey(fetchResult.getMetadata().get(METADATA_KEY)));
+              twoLevelOutputs.add(outputs.get(i));
+            }
+          }
+          if (twoLevelIndices.isEmpty()) {
+            return Futures.immediateFuture(fetchResults);
+          }
 
-                if (outputFileFetchResult.cacheSource().isPresent()) {
-                  secondLevelCacheHitTypes.add(outputFileFetchResult.cacheSource().get());
+          return Futures.transform(
+              delegate.multiFetchAsync(contentHashKeys, twoLevelOutputs),
+              (ImmutableList<CacheResult> outputFileFetchResults) -> {
+                List<CacheResult> results = new ArrayList<>(fetchResults);
+                for (int i = 0; i < twoLevelIndices.size(); i++) {
+                  int index = twoLevelIndices.get(i);
+                  CacheResult fetchResult = fetchResults.get(index);
+                  results.set(
+                      index,
+                      combineLevels(
+                          fetchResult,
+                          fetchResult.getMetadata().get(METADATA_KEY),
+                          outputFileFetchResults.get(i)));
                 }
-                if (outputFileFetchResult.artifactSizeBytes().isPresent()) {
-                  secondLevelCacheHitBytes.addSample(
-                      outputFileFetchResult.artifactSizeBytes().get());
-                }
-
-                LOG.verbose(
-                    "Found a second-level artifact with metadata: %s",
-                    outputFileFetchResult.getMetadata());
-                // Note: in the case of a hit, we return fetchResult, rather than outputFileFetchResult,
-                // so that the client gets the correct metadata.
-
-                CacheResult finalResult = fetchResult.withTwoLevelContentHashKey(contentHashKey);
-                return Futures.immediateFuture(finalResult);
+                return ImmutableList.copyOf(results);
               },
               MoreExecutors.directExecutor());
         },
         MoreExecutors.directExecutor());
   }
 
+  /**
+   * Only the first level is checked, as finding the content hash key requires fetching the
+   * first-level metadata. An entry whose second-level artifact has since been evicted is therefore
+   * reported as present, and will only be found missing once it is fetched.
+   */
+  @Override
+  public ListenableFuture<CacheResult> containsAsync(RuleKey ruleKey) {
+    return delegate.containsAsync(ruleKey);
+  }
+
+  private CacheResult combineLevels(
+      CacheResult fetchResult, String contentHashKey, CacheResult outputFileFetchResult) {
+    outputFileFetchResult = outputFileFetchResult.withTwoLevelContentHashKey(contentHashKey);
+
+    if (!outputFileFetchResult.getType().isSuccess()) {
+      LOG.verbose("Missed second-level lookup.");
+      secondLevelCacheMisses.inc();
+
+      // Note: for misses, the fetchResult metadata is not important, so we return
+      // outputFileFetchResult to signal the miss (as fetchResult was a hit).
+      return outputFileFetchResult;
+    }
+
+    if (outputFileFetchResult.cacheSource().isPresent()) {
+      secondLevelCacheHitTypes.add(outputFileFetchResult.cacheSource().get());
+    }
+    if (outputFileFetchResult.artifactSizeBytes().isPresent()) {
+      secondLevelCacheHitBytes.addSample(outputFileFetchResult.artifactSizeBytes().get());
+    }
+
+    LOG.verbose(
+        "Found a second-level artifact with metadata: %s", outputFileFetchResult.getMetadata());
+    // Note: in the case of a hit, we return fetchResult, rather than outputFileFetchResult,
+    // so that the client gets the correct metadata.
+    return fetchResult.withTwoLevelContentHashKey(contentHashKey);
+  }
+
   @Override
   public ListenableFuture<Void> store(final ArtifactInfo info, final BorrowablePath output) {
 
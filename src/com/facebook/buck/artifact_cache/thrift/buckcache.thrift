@@ -14,6 +14,8 @@ enum BuckCacheRequestType {
   UNKNOWN = 0,
   FETCH = 100,
   STORE = 101,
+  MULTI_FETCH = 102,
+  CONTAINS = 103,
 }
 
 struct RuleKey {
@@ -75,6 +77,33 @@ struct BuckCacheFetchResponse {
   100: optional binary payload;
 }
 
+struct BuckCacheMultiFetchRequest {
+  1: optional list<RuleKey> ruleKeys;
+  2: optional string repository;
+  3: optional string scheduleType;
+  4: optional bool distributedBuildModeEnabled;
+}
+
+struct BuckCacheMultiFetchResponse {
+  // There is exactly one result for each of the requested ruleKeys, in the
+  // same order. The payloads of the results that have artifactExists set are
+  // passed out of band in that order.
+  1: optional list<BuckCacheFetchResponse> results;
+}
+
+struct BuckCacheContainsRequest {
+  1: optional RuleKey ruleKey;
+  2: optional string repository;
+  3: optional string scheduleType;
+  4: optional bool distributedBuildModeEnabled;
+}
+
+struct BuckCacheContainsResponse {
+  // Whether a fetch of the same ruleKey would return an artifact. No payload
+  // is sent with this response.
+  1: optional bool artifactExists;
+}
+
 struct PayloadInfo {
   1: optional i64 sizeBytes;
 }
@@ -85,6 +114,8 @@ struct BuckCacheRequest {
   100: optional list<PayloadInfo> payloads;
   101: optional BuckCacheFetchRequest fetchRequest;
   102: optional BuckCacheStoreRequest storeRequest;
+  103: optional BuckCacheMultiFetchRequest multiFetchRequest;
+  104: optional BuckCacheContainsRequest containsRequest;
 }
 
 struct BuckCacheResponse {
@@ -96,4 +127,6 @@ struct BuckCacheResponse {
   100: optional list<PayloadInfo> payloads;
   101: optional BuckCacheFetchResponse fetchResponse;
   102: optional BuckCacheStoreResponse storeResponse;
+  103: optional BuckCacheMultiFetchResponse multiFetchResponse;
+  104: optional BuckCacheContainsResponse containsResponse;
 }
@@ -27,6 +27,7 @@ import com.facebook.buck.rules.BuildInfoStoreManager;
 import com.facebook.buck.rules.Cell;
 import com.facebook.buck.rules.KnownBuildRuleTypesFactory;
 import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.rules.TargetGraphHashCache;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.rules.keys.RuleKeyCacheRecycler;
 import com.facebook.buck.step.ExecutorPool;
@@ -96,6 +97,8 @@ public interface AbstractCommandRunnerParams {
 
   ActionGraphCache getActionGraphCache();
 
+  Optional<TargetGraphHashCache> getTargetGraphHashCache();
+
   KnownBuildRuleTypesFactory getKnownBuildRuleTypesFactory();
 
   BuildInfoStoreManager getBuildInfoStoreManager();
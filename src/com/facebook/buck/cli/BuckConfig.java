@@ -586,6 +586,25 @@ public class BuckConfig implements ConfigPathGetter {
     return getBooleanValue("cache", "action_graph_cache_check_enabled", false);
   }
 
+  /** @return the number of action graphs the daemon keeps in memory. */
+  public int getMaxActionGraphCacheEntries() {
+    int entries = getInteger("cache", "max_action_graph_cache_entries").orElse(1);
+    if (entries < 1) {
+      throw new HumanReadableException(
+          "[cache] max_action_graph_cache_entries must be at least 1, got %d", entries);
+    }
+    return entries;
+  }
+
+  public boolean isIncrementalActionGraphEnabled() {
+    return getBooleanValue("cache", "incremental_action_graph_enabled", false);
+  }
+
+  /** @return the number of threads creating the build rules of the action graph. */
+  public int getActionGraphThreads() {
+    return getBooleanValue("build", "parallel_action_graph", false) ? getNumThreads() : 1;
+  }
+
   public Optional<String> getRepository() {
     return config.get("cache", "repository");
   }
@@ -709,6 +728,11 @@ public class BuckConfig implements ConfigPathGetter {
         .orElse(projectFilesystem.getBuckPaths().getCacheDir().toString());
   }
 
+  /** @return the file in which the history of build rules is kept between builds. */
+  public Path getRuleHistoryPath() {
+    return projectFilesystem.resolve(projectFilesystem.getBuckPaths().getRuleHistoryFile());
+  }
+
   public int getKeySeed() {
     return parseInt(getValue("cache", "key_seed").orElse("0"));
   }
@@ -1052,6 +1076,11 @@ public class BuckConfig implements ConfigPathGetter {
     return getBooleanValue("build", "rule_key_caching", false);
   }
 
+  /** @return whether cached rule keys are also kept on disk, to survive restarts of the daemon. */
+  public boolean getPersistentRuleKeyCaching() {
+    return getRuleKeyCaching() && getBooleanValue("build", "persistent_rule_key_caching", false);
+  }
+
   public ImmutableList<String> getCleanAdditionalPaths() {
     return getListWithoutComments("clean", "additional_paths");
   }
@@ -1067,6 +1096,14 @@ public class BuckConfig implements ConfigPathGetter {
         .orElse(FileHashCacheMode.DEFAULT);
   }
 
+  /**
+   * @return whether the daemon saves the hashes of source files, to restore them after it restarts
+   *     rather than hashing all files again.
+   */
+  public boolean getFileHashCacheSnapshots() {
+    return getBooleanValue("build", "file_hash_cache_snapshots", false);
+  }
+
   public Config getConfig() {
     return config;
   }
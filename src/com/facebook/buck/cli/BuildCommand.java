@@ -16,6 +16,8 @@
 
 package com.facebook.buck.cli;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import com.facebook.buck.artifact_cache.ArtifactCache;
 import com.facebook.buck.artifact_cache.ArtifactCacheBuckConfig;
 import com.facebook.buck.artifact_cache.NoopArtifactCache;
@@ -41,6 +43,7 @@ import com.facebook.buck.distributed.thrift.RuleKeyLogEntry;
 import com.facebook.buck.event.BuckEventListener;
 import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.event.listener.DistBuildClientEventListener;
+import com.facebook.buck.graph.AcyclicDepthFirstPostOrderTraversal.CycleException;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.json.BuildFileParseException;
 import com.facebook.buck.jvm.java.JavaBuckConfig;
@@ -70,7 +73,9 @@ import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
 import com.facebook.buck.rules.TargetGraphAndBuildTargets;
+import com.facebook.buck.rules.TargetGraphHashing;
 import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.rules.TargetNodeFactory;
 import com.facebook.buck.rules.coercer.ConstructorArgMarshaller;
@@ -78,6 +83,7 @@ import com.facebook.buck.rules.coercer.DefaultTypeCoercerFactory;
 import com.facebook.buck.rules.coercer.PathTypeCoercer;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.rules.keys.DefaultRuleKeyFactory;
+import com.facebook.buck.rules.keys.PersistentRuleKeyCache;
 import com.facebook.buck.rules.keys.RuleKeyCacheRecycler;
 import com.facebook.buck.rules.keys.RuleKeyCacheScope;
 import com.facebook.buck.rules.keys.RuleKeyFactories;
@@ -100,9 +106,13 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import java.io.IOException;
 import java.io.StringWriter;
@@ -499,7 +509,7 @@ public class BuildCommand extends AbstractCommand {
         }
       }
     } else {
-      exitCode = executeLocalBuild(params, graphs.actionGraph, executorService);
+      exitCode = executeLocalBuild(params, graphs, executorService);
     }
     if (exitCode == 0) {
       exitCode = processSuccessfulBuild(params, graphs);
@@ -599,7 +609,12 @@ public class BuildCommand extends AbstractCommand {
             params.getFileHashCache(),
             cellIndexer,
             executorService,
-            params.getBuckConfig().getKeySeed(),
+            new RuleKeyFieldLoader(
+                params.getBuckConfig().getKeySeed(),
+                params
+                    .getBuckConfig()
+                    .getView(CachingBuildEngineBuckConfig.class)
+                    .getRuleKeyHashFunction()),
             params.getCell());
 
     return new Pair<>(
@@ -706,7 +721,7 @@ public class BuildCommand extends AbstractCommand {
         }
 
         distBuildClientStats.startPerformLocalBuildTimer();
-        int localBuildExitCode = executeLocalBuild(params, graphs.actionGraph, executorService);
+        int localBuildExitCode = executeLocalBuild(params, graphs, executorService);
         distBuildClientStats.stopPerformLocalBuildTimer();
         distBuildClientStats.setLocalBuildExitCode(localBuildExitCode);
         distBuildClientStats.setPerformedLocalBuild(true);
@@ -785,7 +800,13 @@ public class BuildCommand extends AbstractCommand {
         new SourcePathRuleFinder(actionGraphAndResolver.getResolver());
     SourcePathResolver pathResolver = DefaultSourcePathResolver.from(ruleFinder);
     if (showRuleKey) {
-      RuleKeyFieldLoader fieldLoader = new RuleKeyFieldLoader(params.getBuckConfig().getKeySeed());
+      RuleKeyFieldLoader fieldLoader =
+          new RuleKeyFieldLoader(
+              params.getBuckConfig().getKeySeed(),
+              params
+                  .getBuckConfig()
+                  .getView(CachingBuildEngineBuckConfig.class)
+                  .getRuleKeyHashFunction());
       ruleKeyFactory =
           Optional.of(
               new DefaultRuleKeyFactory(
@@ -894,9 +915,10 @@ public class BuildCommand extends AbstractCommand {
 
   protected int executeLocalBuild(
       CommandRunnerParams params,
-      ActionGraphAndResolver actionGraphAndResolver,
+      ActionAndTargetGraphs graphs,
       WeightedListeningExecutorService executor)
       throws IOException, InterruptedException {
+    ActionGraphAndResolver actionGraphAndResolver = graphs.actionGraph;
 
     ArtifactCache artifactCache = params.getArtifactCacheFactory().newInstance(useDistributedBuild);
     if (isArtifactCacheDisabled()) {
@@ -910,7 +932,57 @@ public class BuildCommand extends AbstractCommand {
         artifactCache,
         new LocalCachingBuildEngineDelegate(params.getFileHashCache()),
         params.getBuckConfig(),
-        buildTargets);
+        buildTargets,
+        getPersistentRuleKeyCacheContext(params, graphs.getTargetGraphForLocalBuild()));
+  }
+
+  /**
+   * @return the target graph and hashes against which rule keys stored by a {@link
+   *     PersistentRuleKeyCache} are validated, if the daemon keeps one.
+   */
+  private Optional<PersistentRuleKeyCache.BuildContext> getPersistentRuleKeyCacheContext(
+      CommandRunnerParams params, TargetGraphAndBuildTargets targetGraphAndBuildTargets)
+      throws InterruptedException {
+    if (!params.getDefaultRuleKeyFactoryCacheRecycler().map(r -> r.isPersistent()).orElse(false)) {
+      return Optional.empty();
+    }
+
+    // Anything outside of the target graph which may affect rule keys.
+    Hasher settingsHasher = Hashing.sha1().newHasher();
+    settingsHasher.putInt(params.getBuckConfig().getKeySeed());
+    settingsHasher.putString(com.facebook.buck.model.BuckVersion.getVersion(), UTF_8);
+    for (Cell cell : params.getCell().getAllCells()) {
+      settingsHasher.putString(cell.getRoot().toString(), UTF_8);
+      for (Map.Entry<String, ImmutableMap<String, String>> section :
+          ImmutableSortedMap.copyOf(cell.getBuckConfig().getConfig().getSectionToEntries())
+              .entrySet()) {
+        for (Map.Entry<String, String> field :
+            ImmutableSortedMap.copyOf(section.getValue()).entrySet()) {
+          settingsHasher.putString(section.getKey(), UTF_8);
+          settingsHasher.putString(field.getKey(), UTF_8);
+          settingsHasher.putString(field.getValue(), UTF_8);
+        }
+      }
+    }
+
+    TargetGraph targetGraph = targetGraphAndBuildTargets.getTargetGraph();
+    try {
+      return Optional.of(
+          new PersistentRuleKeyCache.BuildContext(
+              settingsHasher.hash(),
+              targetGraph,
+              new TargetGraphHashing(
+                      params.getBuckEventBus(),
+                      targetGraph,
+                      params.getFileHashCache(),
+                      targetGraph.getNodesWithNoIncomingEdges())
+                  .setNumThreads(params.getBuckConfig().getNumThreads())
+                  .setHashCache(params.getTargetGraphHashCache())
+                  .hashTargetGraph()));
+    } catch (CycleException e) {
+      LOG.warn(e, "not using stored rule keys, as the target graph could not be hashed");
+      return Optional.empty();
+    }
   }
 
   private int executeBuild(
@@ -920,7 +992,8 @@ public class BuildCommand extends AbstractCommand {
       ArtifactCache artifactCache,
       CachingBuildEngineDelegate cachingBuildEngineDelegate,
       BuckConfig rootCellBuckConfig,
-      Iterable<BuildTarget> targetsToBuild)
+      Iterable<BuildTarget> targetsToBuild,
+      Optional<PersistentRuleKeyCache.BuildContext> persistentRuleKeyCacheContext)
       throws IOException, InterruptedException {
     MetadataChecker.checkAndCleanIfNeeded(params.getCell());
     CachingBuildEngineBuckConfig cachingBuildEngineBuckConfig =
@@ -931,7 +1004,9 @@ public class BuildCommand extends AbstractCommand {
             getDefaultRuleKeyCacheScope(
                 params,
                 new RuleKeyCacheRecycler.SettingsAffectingCache(
-                    rootCellBuckConfig.getKeySeed(), actionGraphAndResolver.getActionGraph()));
+                    rootCellBuckConfig.getKeySeed(),
+                    actionGraphAndResolver.getActionGraph(),
+                    persistentRuleKeyCacheContext));
         CachingBuildEngine buildEngine =
             new CachingBuildEngine(
                 cachingBuildEngineDelegate,
@@ -943,12 +1018,16 @@ public class BuildCommand extends AbstractCommand {
                 cachingBuildEngineBuckConfig.getBuildDepFiles(),
                 cachingBuildEngineBuckConfig.getBuildMaxDepFileCacheEntries(),
                 cachingBuildEngineBuckConfig.getBuildArtifactCacheSizeLimit(),
+                cachingBuildEngineBuckConfig.getBuildArtifactCacheFetchBatchSize(),
                 actionGraphAndResolver.getResolver(),
                 params.getBuildInfoStoreManager(),
                 cachingBuildEngineBuckConfig.getResourceAwareSchedulingInfo(),
+                cachingBuildEngineBuckConfig.getCriticalPathDurationEstimator(),
                 cachingBuildEngineBuckConfig.getConsoleLogBuildRuleFailuresInline(),
                 RuleKeyFactories.of(
-                    rootCellBuckConfig.getKeySeed(),
+                    new RuleKeyFieldLoader(
+                        rootCellBuckConfig.getKeySeed(),
+                        cachingBuildEngineBuckConfig.getRuleKeyHashFunction()),
                     cachingBuildEngineDelegate.getFileHashCache(),
                     actionGraphAndResolver.getResolver(),
                     cachingBuildEngineBuckConfig.getBuildInputRuleKeyFileSizeLimit(),
@@ -184,6 +184,7 @@ public class CacheCommand extends AbstractCommand {
       case ERROR:
         return String.format("%s %s", typeString, cacheResult.getCacheError());
       case HIT:
+      case CONTAINS:
         return String.format("%s %s", typeString, cacheResult.getCacheSource());
       case MISS:
       case IGNORED:
@@ -33,10 +33,12 @@ import com.facebook.buck.parser.ParserConfig;
 import com.facebook.buck.rules.ActionGraphCache;
 import com.facebook.buck.rules.Cell;
 import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.rules.TargetGraphHashCache;
 import com.facebook.buck.rules.coercer.ConstructorArgMarshaller;
 import com.facebook.buck.rules.coercer.DefaultTypeCoercerFactory;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.rules.keys.DefaultRuleKeyCache;
+import com.facebook.buck.rules.keys.PersistentRuleKeyCache;
 import com.facebook.buck.rules.keys.RuleKeyCacheRecycler;
 import com.facebook.buck.util.RichStream;
 import com.facebook.buck.util.WatchmanWatcher;
@@ -47,14 +49,17 @@ import com.facebook.buck.versions.VersionedTargetGraphCache;
 import com.facebook.buck.worker.WorkerProcessPool;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.eventbus.EventBus;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Path;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Daemon used to monitor the file system and cache build rules between Main() method invocations is
@@ -76,10 +81,17 @@ final class Daemon implements Closeable {
   private final ConcurrentMap<String, WorkerProcessPool> persistentWorkerPools;
   private final VersionedTargetGraphCache versionedTargetGraphCache;
   private final ActionGraphCache actionGraphCache;
+  private final TargetGraphHashCache targetGraphHashCache;
   private final BroadcastEventListener broadcastEventListener;
   private final RuleKeyCacheRecycler<RuleKey> defaultRuleKeyFactoryCacheRecycler;
   private final ImmutableMap<Path, WatchmanCursor> cursor;
 
+  // The hash caches of the cells, by cell root, if they are snapshotted between daemon runs.
+  private Optional<ImmutableMap<Path, WatchedFileHashCache>> fileHashCacheSnapshots =
+      Optional.empty();
+  // Whether hashes were restored from a snapshot, and have yet to be brought up to date.
+  private final AtomicBoolean restoredFileHashCacheSnapshots = new AtomicBoolean(false);
+
   Daemon(Cell rootCell, Optional<WebServer> webServerToReuse) {
     this.rootCell = rootCell;
     this.fileEventBus = new EventBus("file-change-events");
@@ -88,6 +100,8 @@ final class Daemon implements Closeable {
 
     // Setup the stacked file hash cache from all cells.
     ImmutableList.Builder<ProjectFileHashCache> hashCachesBuilder = ImmutableList.builder();
+    ImmutableMap.Builder<Path, WatchedFileHashCache> watchedHashCachesBuilder =
+        ImmutableMap.builder();
     allCells.forEach(
         subCell -> {
           WatchedFileHashCache watchedCache =
@@ -95,6 +109,7 @@ final class Daemon implements Closeable {
                   subCell.getFilesystem(), rootCell.getBuckConfig().getFileHashCacheMode());
           fileEventBus.register(watchedCache);
           hashCachesBuilder.add(watchedCache);
+          watchedHashCachesBuilder.put(subCell.getRoot(), watchedCache);
         });
     hashCachesBuilder.add(
         DefaultFileHashCache.createBuckOutFileHashCache(
@@ -102,8 +117,14 @@ final class Daemon implements Closeable {
     this.hashCaches = hashCachesBuilder.build();
 
     this.broadcastEventListener = new BroadcastEventListener();
-    this.actionGraphCache = new ActionGraphCache(broadcastEventListener);
+    this.actionGraphCache =
+        new ActionGraphCache(
+            broadcastEventListener,
+            rootCell.getBuckConfig().getMaxActionGraphCacheEntries(),
+            rootCell.getBuckConfig().isIncrementalActionGraphEnabled(),
+            rootCell.getBuckConfig().getActionGraphThreads());
     this.versionedTargetGraphCache = new VersionedTargetGraphCache();
+    this.targetGraphHashCache = new TargetGraphHashCache();
 
     typeCoercerFactory = new DefaultTypeCoercerFactory();
     this.parser =
@@ -114,13 +135,28 @@ final class Daemon implements Closeable {
             new ConstructorArgMarshaller(typeCoercerFactory));
     fileEventBus.register(parser);
     fileEventBus.register(actionGraphCache);
+    fileEventBus.register(targetGraphHashCache);
 
     // Build the the rule key cache recycler.
-    this.defaultRuleKeyFactoryCacheRecycler =
-        RuleKeyCacheRecycler.createAndRegister(
-            fileEventBus,
-            new DefaultRuleKeyCache<>(),
-            RichStream.from(allCells).map(Cell::getFilesystem).toImmutableSet());
+    ImmutableSet<ProjectFilesystem> watchedFilesystems =
+        RichStream.from(allCells).map(Cell::getFilesystem).toImmutableSet();
+    if (rootCell.getBuckConfig().getPersistentRuleKeyCaching()) {
+      this.defaultRuleKeyFactoryCacheRecycler =
+          RuleKeyCacheRecycler.createAndRegister(
+              fileEventBus,
+              new PersistentRuleKeyCache(
+                  new DefaultRuleKeyCache<>(),
+                  rootCell
+                      .getFilesystem()
+                      .resolve(rootCell.getFilesystem().getBuckPaths().getDaemonStateDir())
+                      .resolve("rule_keys"),
+                  watchedFilesystems),
+              watchedFilesystems);
+    } else {
+      this.defaultRuleKeyFactoryCacheRecycler =
+          RuleKeyCacheRecycler.createAndRegister(
+              fileEventBus, new DefaultRuleKeyCache<>(), watchedFilesystems);
+    }
 
     if (webServerToReuse.isPresent()) {
       webServer = webServerToReuse;
@@ -133,7 +169,13 @@ final class Daemon implements Closeable {
     if (rootCell.getBuckConfig().getView(ParserConfig.class).getWatchmanCursor()
             == WatchmanWatcher.CursorType.CLOCK_ID
         && !rootCell.getWatchman().getClockIds().isEmpty()) {
-      cursor = rootCell.getWatchman().buildClockWatchmanCursorMap();
+      ImmutableMap<Path, WatchmanCursor> clockCursor =
+          rootCell.getWatchman().buildClockWatchmanCursorMap();
+      if (rootCell.getBuckConfig().getFileHashCacheSnapshots()) {
+        fileHashCacheSnapshots = Optional.of(watchedHashCachesBuilder.build());
+        clockCursor = restoreFileHashCacheSnapshots(fileHashCacheSnapshots.get(), clockCursor);
+      }
+      cursor = clockCursor;
     } else {
       LOG.debug("Falling back to named cursors: %s", rootCell.getWatchman().getProjectWatches());
       cursor = rootCell.getWatchman().buildNamedWatchmanCursorMap();
@@ -147,6 +189,66 @@ final class Daemon implements Closeable {
     return rootCell;
   }
 
+  private static Path getFileHashCacheSnapshotPath(ProjectFilesystem filesystem) {
+    return filesystem
+        .resolve(filesystem.getBuckPaths().getDaemonStateDir())
+        .resolve("file_hashes");
+  }
+
+  /**
+   * Restores the file hashes saved by a previous daemon, and starts watching for changes from the
+   * clock they were saved at, so that only the files changed since are hashed again.
+   *
+   * @return the cursors to use for each cell.
+   */
+  private ImmutableMap<Path, WatchmanCursor> restoreFileHashCacheSnapshots(
+      ImmutableMap<Path, WatchedFileHashCache> hashCaches,
+      ImmutableMap<Path, WatchmanCursor> clockCursor) {
+    ImmutableMap.Builder<Path, WatchmanCursor> restoredCursor = ImmutableMap.builder();
+    for (Map.Entry<Path, WatchmanCursor> entry : clockCursor.entrySet()) {
+      WatchedFileHashCache hashCache = hashCaches.get(entry.getKey());
+      Optional<String> clock =
+          hashCache == null
+              ? Optional.empty()
+              : hashCache.loadSnapshot(getFileHashCacheSnapshotPath(hashCache.getFilesystem()));
+      if (clock.isPresent()) {
+        restoredFileHashCacheSnapshots.set(true);
+        restoredCursor.put(entry.getKey(), new WatchmanCursor(clock.get()));
+      } else {
+        restoredCursor.put(entry);
+      }
+    }
+    return restoredCursor.build();
+  }
+
+  /**
+   * Saves the file hashes of all cells, along with the Watchman clock they are up to date with,
+   * for the next daemon to restore.
+   */
+  void saveFileHashCacheSnapshots() {
+    if (!fileHashCacheSnapshots.isPresent()) {
+      return;
+    }
+    // Watch events are processed while holding the parser lock, so holding it here makes sure the
+    // cursors and the hashes are consistent.
+    synchronized (parser) {
+      for (Map.Entry<Path, WatchedFileHashCache> entry :
+          fileHashCacheSnapshots.get().entrySet()) {
+        WatchmanCursor cellCursor = cursor.get(entry.getKey());
+        if (cellCursor == null) {
+          continue;
+        }
+        WatchedFileHashCache hashCache = entry.getValue();
+        try {
+          hashCache.saveSnapshot(
+              getFileHashCacheSnapshotPath(hashCache.getFilesystem()), cellCursor.get());
+        } catch (IOException e) {
+          LOG.warn(e, "Failed to save file hashes of %s", entry.getKey());
+        }
+      }
+    }
+  }
+
   private static Optional<WebServer> createWebServer(
       BuckConfig config, ProjectFilesystem filesystem) {
     Optional<Integer> port = getValidWebServerPort(config);
@@ -207,6 +309,10 @@ final class Daemon implements Closeable {
     return actionGraphCache;
   }
 
+  TargetGraphHashCache getTargetGraphHashCache() {
+    return targetGraphHashCache;
+  }
+
   BroadcastEventListener getBroadcastEventListener() {
     return broadcastEventListener;
   }
@@ -256,7 +362,12 @@ final class Daemon implements Closeable {
       FileHashCacheEvent.InvalidationStarted started = FileHashCacheEvent.invalidationStarted();
       eventBus.post(started);
       try {
-        watchmanWatcher.postEvents(eventBus, watchmanFreshInstanceAction);
+        // Hashes restored from a snapshot are only valid if Watchman can tell what changed since.
+        watchmanWatcher.postEvents(
+            eventBus,
+            restoredFileHashCacheSnapshots.getAndSet(false)
+                ? WatchmanWatcher.FreshInstanceAction.POST_OVERFLOW_EVENT
+                : watchmanFreshInstanceAction);
       } finally {
         eventBus.post(FileHashCacheEvent.invalidationFinished(started));
         hashCaches.forEach(
@@ -37,6 +37,7 @@ import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.facebook.buck.rules.TargetGraph;
 import com.facebook.buck.rules.keys.DefaultRuleKeyCache;
 import com.facebook.buck.rules.keys.RuleKeyFactories;
+import com.facebook.buck.rules.keys.RuleKeyFieldLoader;
 import com.facebook.buck.step.DefaultStepRunner;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.ExecutorPool;
@@ -135,12 +136,16 @@ final class JavaBuildGraphProcessor {
               cachingBuildEngineBuckConfig.getBuildDepFiles(),
               cachingBuildEngineBuckConfig.getBuildMaxDepFileCacheEntries(),
               cachingBuildEngineBuckConfig.getBuildArtifactCacheSizeLimit(),
+              cachingBuildEngineBuckConfig.getBuildArtifactCacheFetchBatchSize(),
               buildRuleResolver,
               params.getBuildInfoStoreManager(),
               cachingBuildEngineBuckConfig.getResourceAwareSchedulingInfo(),
+              cachingBuildEngineBuckConfig.getCriticalPathDurationEstimator(),
               cachingBuildEngineBuckConfig.getConsoleLogBuildRuleFailuresInline(),
               RuleKeyFactories.of(
-                  params.getBuckConfig().getKeySeed(),
+                  new RuleKeyFieldLoader(
+                      params.getBuckConfig().getKeySeed(),
+                      cachingBuildEngineBuckConfig.getRuleKeyHashFunction()),
                   cachingBuildEngineDelegate.getFileHashCache(),
                   buildRuleResolver,
                   cachingBuildEngineBuckConfig.getBuildInputRuleKeyFileSizeLimit(),
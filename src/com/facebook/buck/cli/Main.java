@@ -42,6 +42,7 @@ import com.facebook.buck.event.DaemonEvent;
 import com.facebook.buck.event.DefaultBuckEventBus;
 import com.facebook.buck.event.listener.AbstractConsoleEventBusListener;
 import com.facebook.buck.event.listener.BroadcastEventListener;
+import com.facebook.buck.event.listener.BuildRuleHistoryListener;
 import com.facebook.buck.event.listener.CacheRateStatsListener;
 import com.facebook.buck.event.listener.ChromeTraceBuckConfig;
 import com.facebook.buck.event.listener.ChromeTraceBuildListener;
@@ -80,12 +81,14 @@ import com.facebook.buck.parser.Parser;
 import com.facebook.buck.parser.ParserConfig;
 import com.facebook.buck.rules.ActionGraphCache;
 import com.facebook.buck.rules.BuildInfoStoreManager;
+import com.facebook.buck.rules.CachingBuildEngineBuckConfig;
 import com.facebook.buck.rules.Cell;
 import com.facebook.buck.rules.CellProvider;
 import com.facebook.buck.rules.DefaultCellPathResolver;
 import com.facebook.buck.rules.KnownBuildRuleTypesFactory;
 import com.facebook.buck.rules.RelativeCellName;
 import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.rules.TargetGraphHashCache;
 import com.facebook.buck.rules.coercer.ConstructorArgMarshaller;
 import com.facebook.buck.rules.coercer.DefaultTypeCoercerFactory;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
@@ -723,6 +726,11 @@ public final class Main {
             ExecutorPool.PROJECT,
             listeningDecorator(
                 MostExecutors.newMultiThreadExecutor("Project", buckConfig.getNumThreads())));
+        // Create a thread pool for disk I/O heavy tasks, such as unpacking cache artifacts
+        executors.put(
+            ExecutorPool.DISK_IO,
+            listeningDecorator(
+                MostExecutors.newMultiThreadExecutor("Disk I/O Pool", buckConfig.getNumThreads())));
 
         // Create and register the event buses that should listen to broadcast events.
         // If the build doesn't have a daemon create a new instance.
@@ -885,6 +893,7 @@ public final class Main {
           Parser parser = null;
           VersionedTargetGraphCache versionedTargetGraphCache = null;
           ActionGraphCache actionGraphCache = null;
+          Optional<TargetGraphHashCache> targetGraphHashCache = Optional.empty();
           Optional<RuleKeyCacheRecycler<RuleKey>> defaultRuleKeyFactoryCacheRecycler =
               Optional.empty();
 
@@ -912,6 +921,7 @@ public final class Main {
               parser = pair.getSecond();
               versionedTargetGraphCache = daemon.get().getVersionedTargetGraphCache();
               actionGraphCache = daemon.get().getActionGraphCache();
+              targetGraphHashCache = Optional.of(daemon.get().getTargetGraphHashCache());
               if (buckConfig.getRuleKeyCaching()) {
                 LOG.debug("Using rule key calculation caching");
                 defaultRuleKeyFactoryCacheRecycler =
@@ -930,7 +940,12 @@ public final class Main {
           }
 
           if (actionGraphCache == null) {
-            actionGraphCache = new ActionGraphCache(broadcastEventListener);
+            actionGraphCache =
+                new ActionGraphCache(
+                    broadcastEventListener,
+                    /* maxEntries */ 1,
+                    /* incremental */ false,
+                    buckConfig.getActionGraphThreads());
           }
 
           if (typeCoercerFactory == null || parser == null) {
@@ -1008,6 +1023,7 @@ public final class Main {
                         .setBuildEnvironmentDescription(buildEnvironmentDescription)
                         .setVersionedTargetGraphCache(versionedTargetGraphCache)
                         .setActionGraphCache(actionGraphCache)
+                        .setTargetGraphHashCache(targetGraphHashCache)
                         .setKnownBuildRuleTypesFactory(factory)
                         .setInvocationInfo(Optional.of(invocationInfo))
                         .setDefaultRuleKeyFactoryCacheRecycler(defaultRuleKeyFactoryCacheRecycler)
@@ -1064,6 +1080,10 @@ public final class Main {
           context.get().in.close(); // Avoid client exit triggering client disconnection handling.
           context.get().exit(exitCode); // Allow nailgun client to exit while outputting traces.
         }
+        if (daemon.isPresent()) {
+          // Save file hashes for the next daemon, without keeping the client waiting if possible.
+          daemon.get().saveFileHashCacheSnapshots();
+        }
 
         closeDiskIoExecutorService(diskIoExecutorService);
         flushAndCloseEventListeners(console, buildId, eventListeners);
@@ -1408,6 +1428,11 @@ public final class Main {
 
     eventListenersBuilder.add(new ParserProfilerLoggerListener(invocationInfo, projectFilesystem));
 
+    Optional<Path> ruleHistoryPath =
+        buckConfig.getView(CachingBuildEngineBuckConfig.class).getRuleHistoryPath();
+    if (ruleHistoryPath.isPresent()) {
+      eventListenersBuilder.add(new BuildRuleHistoryListener(ruleHistoryPath.get(), clock));
+    }
 
     eventListenersBuilder.add(new LoadBalancerEventsListener(counterRegistry));
     eventListenersBuilder.add(new CacheRateStatsListener(buckEventBus));
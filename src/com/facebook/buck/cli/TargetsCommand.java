@@ -39,6 +39,7 @@ import com.facebook.buck.rules.ActionGraphAndResolver;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.BuildRuleType;
+import com.facebook.buck.rules.CachingBuildEngineBuckConfig;
 import com.facebook.buck.rules.DefaultSourcePathResolver;
 import com.facebook.buck.rules.Description;
 import com.facebook.buck.rules.HasTests;
@@ -47,6 +48,7 @@ import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.facebook.buck.rules.TargetGraph;
 import com.facebook.buck.rules.TargetGraphAndBuildTargets;
 import com.facebook.buck.rules.TargetGraphAndTargets;
+import com.facebook.buck.rules.TargetGraphHashCache;
 import com.facebook.buck.rules.TargetGraphHashing;
 import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.rules.TargetNodes;
@@ -830,7 +832,12 @@ public class TargetsCommand extends AbstractCommand {
         ruleKeyFactory =
             Optional.of(
                 new DefaultRuleKeyFactory(
-                    new RuleKeyFieldLoader(params.getBuckConfig().getKeySeed()),
+                    new RuleKeyFieldLoader(
+                        params.getBuckConfig().getKeySeed(),
+                        params
+                            .getBuckConfig()
+                            .getView(CachingBuildEngineBuckConfig.class)
+                            .getRuleKeyHashFunction()),
                     params.getFileHashCache(),
                     DefaultSourcePathResolver.from(ruleFinder),
                     ruleFinder));
@@ -1003,6 +1010,12 @@ public class TargetsCommand extends AbstractCommand {
     TargetGraph targetGraphWithTests = targetGraphAndNodesWithTests.getFirst();
 
     FileHashLoader fileHashLoader = createOrGetFileHashLoader(params);
+    // The hashes kept across commands were computed from the contents of files, so they may only
+    // be reused when hashing with those.
+    Optional<TargetGraphHashCache> hashCache =
+        getTargetHashFileMode() == TargetHashFileMode.PATHS_AND_CONTENTS
+            ? params.getTargetGraphHashCache()
+            : Optional.empty();
 
     // Hash each target's rule description and contents of any files.
     ImmutableMap<BuildTarget, HashCode> buildTargetHashes =
@@ -1012,6 +1025,7 @@ public class TargetsCommand extends AbstractCommand {
                 fileHashLoader,
                 targetGraphAndNodesWithTests.getSecond())
             .setNumThreads(params.getBuckConfig().getNumThreads())
+            .setHashCache(hashCache)
             .hashTargetGraph();
 
     ImmutableMap<BuildTarget, HashCode> finalHashes =
@@ -18,6 +18,7 @@ package com.facebook.buck.cli;
 
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.CachingBuildEngineBuckConfig;
 import com.facebook.buck.rules.DefaultSourcePathResolver;
 import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
 import com.facebook.buck.rules.RuleKey;
@@ -56,11 +57,10 @@ public class VerifyCachesCommand extends AbstractCommand {
 
   private boolean verifyRuleKeyCache(
       PrintStream stdOut,
-      int ruleKeySeed,
+      RuleKeyFieldLoader fieldLoader,
       FileHashCache fileHashCache,
       RuleKeyCacheRecycler<RuleKey> recycler) {
     ImmutableList<Map.Entry<BuildRule, RuleKey>> contents = recycler.getCachedBuildRules();
-    RuleKeyFieldLoader fieldLoader = new RuleKeyFieldLoader(ruleKeySeed);
     BuildRuleResolver resolver =
         new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
     contents.forEach(e -> resolver.addToIndex(e.getKey()));
@@ -102,7 +102,12 @@ public class VerifyCachesCommand extends AbstractCommand {
                 recycler ->
                     verifyRuleKeyCache(
                         params.getConsole().getStdOut(),
-                        params.getBuckConfig().getKeySeed(),
+                        new RuleKeyFieldLoader(
+                            params.getBuckConfig().getKeySeed(),
+                            params
+                                .getBuckConfig()
+                                .getView(CachingBuildEngineBuckConfig.class)
+                                .getRuleKeyHashFunction()),
                         params.getFileHashCache(),
                         recycler))
             .orElse(true);
@@ -36,10 +36,12 @@ import com.facebook.buck.rules.BuildEvent;
 import com.facebook.buck.rules.BuildResult;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.CachingBuildEngineBuckConfig;
 import com.facebook.buck.rules.Cell;
 import com.facebook.buck.rules.DefaultSourcePathResolver;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.modern.execution.ActionExecutor;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.StepFailedException;
 import com.facebook.buck.timing.Clock;
@@ -166,6 +168,12 @@ public class Build implements Closeable {
                     .setEventBus(executionContext.getBuckEventBus())
                     .setAndroidPlatformTargetSupplier(
                         executionContext.getAndroidPlatformTargetSupplier())
+                    .setActionExecutor(
+                        ActionExecutor.local(
+                            rootCell
+                                .getBuckConfig()
+                                .getView(CachingBuildEngineBuckConfig.class)
+                                .getActionCacheSize()))
                     .build())
             .setClock(clock)
             .setArtifactCache(artifactCache)
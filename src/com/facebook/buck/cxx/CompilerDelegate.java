@@ -59,8 +59,9 @@ class CompilerDelegate implements RuleKeyAppendable {
   @Override
   public void appendToRuleKey(RuleKeyObjectSink sink) {
     sink.setReflectively("compiler", compiler);
-    sink.setReflectively("platformCompilerFlags", compilerFlags.getPlatformFlags());
-    sink.setReflectively("ruleCompilerFlags", compilerFlags.getRuleFlags());
+    // The flags are mostly the same for all the sources of a library, so add them as a whole to
+    // share their rule key between the compile rules.
+    sink.setReflectively("compilerFlags", compilerFlags);
   }
 
   /** Returns the argument list for executing the compiler. */
@@ -1192,13 +1192,12 @@ public class CxxDescriptionEnhancer {
       Predicate<Object> traverse)
       throws NoSuchBuildTargetException {
     BuildTarget target = createSharedLibrarySymlinkTreeTarget(buildTarget, cxxPlatform.getFlavor());
-    SymlinkTree tree = resolver.getRuleOptionalWithType(target, SymlinkTree.class).orElse(null);
-    if (tree == null) {
-      tree =
-          resolver.addToIndex(
-              createSharedLibrarySymlinkTree(buildTarget, filesystem, cxxPlatform, deps, traverse));
-    }
-    return tree;
+    return (SymlinkTree)
+        resolver.computeIfAbsentThrowing(
+            target,
+            ignored ->
+                createSharedLibrarySymlinkTree(
+                    buildTarget, filesystem, cxxPlatform, deps, traverse));
   }
 
   public static Flavor flavorForLinkableDepType(Linker.LinkableDepType linkableDepType) {
@@ -172,15 +172,15 @@ public final class CxxInferEnhancer {
     BuildTarget targetWithInferFlavor =
         cleanTarget.withAppendedFlavors(InferFlavors.INFER.getFlavor());
 
-    Optional<CxxInferComputeReport> existingRule =
-        ruleResolver.getRuleOptionalWithType(targetWithInferFlavor, CxxInferComputeReport.class);
-    if (existingRule.isPresent()) {
-      return existingRule.get();
-    }
-
-    CxxInferAnalyze analysisRule =
-        requireInferAnalyzeBuildRuleForCxxDescriptionArg(cleanTarget, cellRoots, filesystem, args);
-    return createInferReportRule(targetWithInferFlavor, filesystem, analysisRule);
+    return (CxxInferComputeReport)
+        ruleResolver.computeIfAbsentThrowing(
+            targetWithInferFlavor,
+            reportTarget -> {
+              CxxInferAnalyze analysisRule =
+                  requireInferAnalyzeBuildRuleForCxxDescriptionArg(
+                      cleanTarget, cellRoots, filesystem, args);
+              return createInferReportRule(reportTarget, filesystem, analysisRule);
+            });
   }
 
   private CxxInferAnalyze requireInferAnalyzeBuildRuleForCxxDescriptionArg(
@@ -196,23 +196,23 @@ public final class CxxInferEnhancer {
 
     BuildTarget targetWithInferAnalyzeFlavor = cleanTarget.withAppendedFlavors(inferAnalyze);
 
-    Optional<CxxInferAnalyze> existingRule =
-        ruleResolver.getRuleOptionalWithType(targetWithInferAnalyzeFlavor, CxxInferAnalyze.class);
-    if (existingRule.isPresent()) {
-      return existingRule.get();
-    }
-
-    ImmutableSet<BuildRule> deps = args.getCxxDeps().get(ruleResolver, cxxPlatform);
-
-    ImmutableSet<CxxInferAnalyze> transitiveDepsLibraryRules =
-        requireTransitiveDependentLibraries(cxxPlatform, deps, inferAnalyze, CxxInferAnalyze.class);
-
-    return createInferAnalyzeRule(
-        targetWithInferAnalyzeFlavor,
-        filesystem,
-        requireInferCaptureBuildRules(
-            cleanTarget, cellRoots, filesystem, collectSources(cleanTarget, args), args),
-        transitiveDepsLibraryRules);
+    return (CxxInferAnalyze)
+        ruleResolver.computeIfAbsentThrowing(
+            targetWithInferAnalyzeFlavor,
+            analyzeTarget -> {
+              ImmutableSet<BuildRule> deps = args.getCxxDeps().get(ruleResolver, cxxPlatform);
+
+              ImmutableSet<CxxInferAnalyze> transitiveDepsLibraryRules =
+                  requireTransitiveDependentLibraries(
+                      cxxPlatform, deps, inferAnalyze, CxxInferAnalyze.class);
+
+              return createInferAnalyzeRule(
+                  analyzeTarget,
+                  filesystem,
+                  requireInferCaptureBuildRules(
+                      cleanTarget, cellRoots, filesystem, collectSources(cleanTarget, args), args),
+                  transitiveDepsLibraryRules);
+            });
   }
 
   private CxxInferCaptureRulesAggregator requireInferCaptureAggregatorBuildRuleForCxxDescriptionArg(
@@ -227,25 +227,23 @@ public final class CxxInferEnhancer {
     BuildTarget targetWithInferCaptureOnlyFlavor =
         InferFlavors.targetWithoutAnyInferFlavor(target).withAppendedFlavors(inferCaptureOnly);
 
-    Optional<CxxInferCaptureRulesAggregator> existingRule =
-        ruleResolver.getRuleOptionalWithType(
-            targetWithInferCaptureOnlyFlavor, CxxInferCaptureRulesAggregator.class);
-    if (existingRule.isPresent()) {
-      return existingRule.get();
-    }
-
     BuildTarget cleanTarget = InferFlavors.targetWithoutAnyInferFlavor(target);
 
-    ImmutableMap<String, CxxSource> sources = collectSources(cleanTarget, args);
+    return (CxxInferCaptureRulesAggregator)
+        ruleResolver.computeIfAbsentThrowing(
+            targetWithInferCaptureOnlyFlavor,
+            aggregatorTarget -> {
+              ImmutableMap<String, CxxSource> sources = collectSources(cleanTarget, args);
 
-    ImmutableSet<CxxInferCapture> captureRules =
-        requireInferCaptureBuildRules(cleanTarget, cellRoots, filesystem, sources, args);
+              ImmutableSet<CxxInferCapture> captureRules =
+                  requireInferCaptureBuildRules(cleanTarget, cellRoots, filesystem, sources, args);
 
-    ImmutableSet<CxxInferCaptureRulesAggregator> transitiveAggregatorRules =
-        requireTransitiveCaptureAndAggregatingRules(args, inferCaptureOnly);
+              ImmutableSet<CxxInferCaptureRulesAggregator> transitiveAggregatorRules =
+                  requireTransitiveCaptureAndAggregatingRules(args, inferCaptureOnly);
 
-    return createInferCaptureAggregatorRule(
-        targetWithInferCaptureOnlyFlavor, filesystem, captureRules, transitiveAggregatorRules);
+              return createInferCaptureAggregatorRule(
+                  aggregatorTarget, filesystem, captureRules, transitiveAggregatorRules);
+            });
   }
 
   private ImmutableSet<CxxInferCaptureRulesAggregator> requireTransitiveCaptureAndAggregatingRules(
@@ -418,8 +416,7 @@ public final class CxxInferEnhancer {
       ProjectFilesystem filesystem,
       ImmutableSet<CxxInferCapture> captureRules,
       ImmutableSet<CxxInferAnalyze> analyzeRules) {
-    return ruleResolver.addToIndex(
-        new CxxInferAnalyze(target, filesystem, inferBuckConfig, captureRules, analyzeRules));
+    return new CxxInferAnalyze(target, filesystem, inferBuckConfig, captureRules, analyzeRules);
   }
 
   private CxxInferCaptureRulesAggregator createInferCaptureAggregatorRule(
@@ -427,13 +424,12 @@ public final class CxxInferEnhancer {
       ProjectFilesystem projectFilesystem,
       ImmutableSet<CxxInferCapture> captureRules,
       ImmutableSet<CxxInferCaptureRulesAggregator> transitiveAggregatorRules) {
-    return ruleResolver.addToIndex(
-        new CxxInferCaptureRulesAggregator(
-            buildTarget, projectFilesystem, captureRules, transitiveAggregatorRules));
+    return new CxxInferCaptureRulesAggregator(
+        buildTarget, projectFilesystem, captureRules, transitiveAggregatorRules);
   }
 
   private CxxInferComputeReport createInferReportRule(
       BuildTarget target, ProjectFilesystem filesystem, CxxInferAnalyze analysisToReport) {
-    return ruleResolver.addToIndex(new CxxInferComputeReport(target, filesystem, analysisToReport));
+    return new CxxInferComputeReport(target, filesystem, analysisToReport);
   }
 }
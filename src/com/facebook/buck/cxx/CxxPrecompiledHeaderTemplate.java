@@ -203,19 +203,14 @@ public class CxxPrecompiledHeaderTemplate extends NoopBuildRuleWithDeclaredAndEx
       BuildRuleResolver ruleResolver, SourcePathRuleFinder ruleFinder, CxxPlatform cxxPlatform) {
     BuildTarget depAggTarget = createAggregatedDepsTarget(cxxPlatform);
 
-    Optional<DependencyAggregation> existingRule =
-        ruleResolver.getRuleOptionalWithType(depAggTarget, DependencyAggregation.class);
-    if (existingRule.isPresent()) {
-      return existingRule.get();
-    }
-
-    DependencyAggregation depAgg =
-        new DependencyAggregation(
+    return (DependencyAggregation)
+        ruleResolver.computeIfAbsent(
             depAggTarget,
-            getProjectFilesystem(),
-            getPreprocessDeps(ruleResolver, ruleFinder, cxxPlatform));
-    ruleResolver.addToIndex(depAgg);
-    return depAgg;
+            target ->
+                new DependencyAggregation(
+                    target,
+                    getProjectFilesystem(),
+                    getPreprocessDeps(ruleResolver, ruleFinder, cxxPlatform)));
   }
 
   public PreprocessorDelegate buildPreprocessorDelegate(
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.cxx;
 
+import com.facebook.buck.rules.AddsToRuleKeyByValue;
 import com.facebook.buck.rules.RuleKeyAppendable;
 import com.facebook.buck.rules.RuleKeyObjectSink;
 import com.facebook.buck.rules.args.Arg;
@@ -34,7 +35,7 @@ import org.immutables.value.Value;
  *
  * <p>Users should use the API in this class instead of the concrete implementations.
  */
-public abstract class CxxToolFlags implements RuleKeyAppendable {
+public abstract class CxxToolFlags implements RuleKeyAppendable, AddsToRuleKeyByValue {
   private static final CxxToolFlags EMPTY_FLAGS = CxxToolFlags.explicitBuilder().build();
 
   /** Flags that precede flags from {@code #getRuleFlags()}. */
@@ -22,6 +22,7 @@ import com.facebook.buck.rules.CachingBuildEngineDelegate;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.facebook.buck.rules.keys.DefaultRuleKeyFactory;
+import com.facebook.buck.rules.keys.RuleKeyFieldLoader;
 import com.facebook.buck.util.cache.FileHashCache;
 import com.facebook.buck.util.cache.StackedFileHashCache;
 import com.google.common.cache.LoadingCache;
@@ -51,7 +52,10 @@ public class DistBuildCachingEngineDelegate implements CachingBuildEngineDelegat
     this.remoteStackedFileHashCache = remoteStackedFileHashCache;
     materializingRuleKeyFactories =
         DistBuildFileHashes.createRuleKeyFactories(
-            sourcePathResolver, ruleFinder, materializingStackedFileHashCache, /* keySeed */ 0);
+            sourcePathResolver,
+            ruleFinder,
+            materializingStackedFileHashCache,
+            new RuleKeyFieldLoader(/* keySeed */ 0));
   }
 
   @Override
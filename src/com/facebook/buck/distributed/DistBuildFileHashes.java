@@ -74,7 +74,7 @@ public class DistBuildFileHashes {
       StackedFileHashCache originalHashCache,
       DistBuildCellIndexer cellIndexer,
       ListeningExecutorService executorService,
-      int keySeed,
+      RuleKeyFieldLoader ruleKeyFieldLoader,
       final Cell rootCell) {
 
     this.remoteFileHashes = new HashMap<>();
@@ -96,7 +96,8 @@ public class DistBuildFileHashes {
             });
 
     this.ruleKeyFactories =
-        createRuleKeyFactories(sourcePathResolver, ruleFinder, recordingHashCache, keySeed);
+        createRuleKeyFactories(
+            sourcePathResolver, ruleFinder, recordingHashCache, ruleKeyFieldLoader);
     this.ruleKeys = ruleKeyComputation(actionGraph, this.ruleKeyFactories, executorService);
     this.fileHashes =
         fileHashesComputation(
@@ -118,7 +119,7 @@ public class DistBuildFileHashes {
       final SourcePathResolver sourcePathResolver,
       final SourcePathRuleFinder ruleFinder,
       final FileHashCache fileHashCache,
-      final int keySeed) {
+      final RuleKeyFieldLoader ruleKeyFieldLoader) {
 
     return CacheBuilder.newBuilder()
         .build(
@@ -126,7 +127,7 @@ public class DistBuildFileHashes {
               @Override
               public DefaultRuleKeyFactory load(ProjectFilesystem key) throws Exception {
                 return new DefaultRuleKeyFactory(
-                    new RuleKeyFieldLoader(keySeed), fileHashCache, sourcePathResolver, ruleFinder);
+                    ruleKeyFieldLoader, fileHashCache, sourcePathResolver, ruleFinder);
               }
             });
   }
@@ -50,6 +50,7 @@ import com.facebook.buck.rules.coercer.PathTypeCoercer;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.rules.keys.DefaultRuleKeyCache;
 import com.facebook.buck.rules.keys.RuleKeyFactories;
+import com.facebook.buck.rules.keys.RuleKeyFieldLoader;
 import com.facebook.buck.step.DefaultStepRunner;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.util.DefaultProcessExecutor;
@@ -341,12 +342,15 @@ public class DistBuildSlaveExecutor {
                   engineConfig.getBuildDepFiles(),
                   engineConfig.getBuildMaxDepFileCacheEntries(),
                   engineConfig.getBuildArtifactCacheSizeLimit(),
+                  engineConfig.getBuildArtifactCacheFetchBatchSize(),
                   Preconditions.checkNotNull(actionGraphAndResolver).getResolver(),
                   args.getBuildInfoStoreManager(),
                   engineConfig.getResourceAwareSchedulingInfo(),
+                  engineConfig.getCriticalPathDurationEstimator(),
                   engineConfig.getConsoleLogBuildRuleFailuresInline(),
                   RuleKeyFactories.of(
-                      distBuildConfig.getKeySeed(),
+                      new RuleKeyFieldLoader(
+                          distBuildConfig.getKeySeed(), engineConfig.getRuleKeyHashFunction()),
                       cachingBuildEngineDelegate.getFileHashCache(),
                       actionGraphAndResolver.getResolver(),
                       engineConfig.getBuildInputRuleKeyFileSizeLimit(),
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.event.listener;
+
+import com.facebook.buck.event.BuckEventListener;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildId;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.BuildRuleEvent;
+import com.facebook.buck.rules.BuildRuleHistory;
+import com.facebook.buck.rules.BuildRuleStatus;
+import com.facebook.buck.rules.BuildRuleSuccessType;
+import com.facebook.buck.timing.Clock;
+import com.google.common.eventbus.Subscribe;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Records how long each successfully built rule took, and how large its outputs were, in the
+ * {@link BuildRuleHistory} kept between builds.
+ */
+public class BuildRuleHistoryListener implements BuckEventListener {
+
+  private static final Logger LOG = Logger.get(BuildRuleHistoryListener.class);
+
+  private final Path historyPath;
+  private final Clock clock;
+
+  // Only holds the samples of this command: saving adds them to the stored history.
+  private final BuildRuleHistory history = BuildRuleHistory.empty();
+
+  public BuildRuleHistoryListener(Path historyPath, Clock clock) {
+    this.historyPath = historyPath;
+    this.clock = clock;
+  }
+
+  @Subscribe
+  public void buildRuleFinished(BuildRuleEvent.Finished finished) {
+    if (finished.getStatus() != BuildRuleStatus.SUCCESS
+        || !finished.getSuccessType().isPresent()) {
+      return;
+    }
+    BuildRule rule = finished.getBuildRule();
+    BuildRuleSuccessType successType = finished.getSuccessType().get();
+    long durationMillis = finished.getDuration().getWallMillisDuration();
+    long nowMillis = clock.currentTimeMillis();
+    if (successType == BuildRuleSuccessType.BUILT_LOCALLY) {
+      history.recordExecution(rule.getBuildTarget(), rule.getType(), durationMillis, nowMillis);
+    } else if (successType == BuildRuleSuccessType.FETCHED_FROM_CACHE
+        || successType == BuildRuleSuccessType.FETCHED_FROM_CACHE_INPUT_BASED
+        || successType == BuildRuleSuccessType.FETCHED_FROM_CACHE_MANIFEST_BASED) {
+      history.recordCacheFetch(rule.getBuildTarget(), rule.getType(), durationMillis, nowMillis);
+    }
+    Optional<Long> outputSize = finished.getOutputSize();
+    if (outputSize.isPresent()) {
+      history.recordOutputSize(rule.getBuildTarget(), rule.getType(), outputSize.get(), nowMillis);
+    }
+  }
+
+  @Override
+  public void outputTrace(BuildId buildId) {
+    try {
+      history.save(historyPath, clock.currentTimeMillis());
+    } catch (IOException e) {
+      LOG.warn(e, "failed to save rule history to %s", historyPath);
+    }
+  }
+}
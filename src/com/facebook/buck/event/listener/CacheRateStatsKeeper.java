@@ -64,6 +64,7 @@ public class CacheRateStatsKeeper {
         cacheErrors.incrementAndGet();
         break;
       case HIT:
+      case CONTAINS:
         cacheHits.incrementAndGet();
         break;
       case IGNORED:
@@ -147,6 +147,9 @@ public class MachineReadableLoggerListener implements BuckEventListener {
       }
     } else if (cacheResult.getType() == CacheResultType.ERROR) {
       cacheResult.cacheMode().ifPresent(mode -> cacheModeErrors.get(mode).incrementAndGet());
+    } else if (cacheResult.getType() == CacheResultType.CONTAINS) {
+      // The rule's outputs were found in the cache, they just did not need to be fetched.
+      cacheResult.cacheMode().ifPresent(mode -> cacheModeHits.get(mode).incrementAndGet());
     } else if (cacheResult.getType() == CacheResultType.IGNORED) {
       cacheIgnores.incrementAndGet();
     } else {
@@ -17,42 +17,159 @@
 package com.facebook.buck.graph;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.ImmutableSetMultimap;
-import com.google.common.collect.Sets;
-import java.util.Objects;
+import com.google.common.collect.UnmodifiableIterator;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
 
+/**
+ * An immutable directed acyclic graph.
+ *
+ * <p>Nodes are numbered in iteration order, and the edges in each direction are stored in
+ * compressed sparse row form: the neighbours of node {@code i} are the node numbers in {@code
+ * edges[offsets[i]]} to {@code edges[offsets[i + 1] - 1]}. For graphs of hundreds of thousands of
+ * nodes this is a fraction of the memory taken by multimaps of nodes.
+ */
 public class DirectedAcyclicGraph<T> implements TraversableGraph<T> {
 
   private final ImmutableSet<T> nodes;
-  private final ImmutableSetMultimap<T, T> outgoingEdges;
-  private final ImmutableSetMultimap<T, T> incomingEdges;
+  private final ImmutableList<T> nodeList;
+
+  // Open addressing hash table of node number + 1, or 0 for empty slots.
+  private final int[] nodeTable;
+
+  private final int[] outgoingOffsets;
+  private final int[] outgoingEdges;
+  private final int[] incomingOffsets;
+  private final int[] incomingEdges;
 
   public DirectedAcyclicGraph(MutableDirectedGraph<T> graph) {
+    this(checkAcyclic(graph).createImmutableCopyOfNodes(), graph::getOutgoingNodesFor);
+  }
+
+  /**
+   * @param nodes the nodes of the graph.
+   * @param getOutgoingNodes returns the sinks of the edges from a node, which must all be in {@code
+   *     nodes} and must not form a cycle.
+   */
+  protected DirectedAcyclicGraph(
+      ImmutableSet<T> nodes,
+      Function<? super T, ? extends Iterable<? extends T>> getOutgoingNodes) {
+    this.nodes = nodes;
+    this.nodeList = nodes.asList();
+    int nodeCount = nodeList.size();
+
+    this.nodeTable = new int[Math.max(2, Integer.highestOneBit(Math.max(1, nodeCount)) << 2)];
+    for (int i = 0; i < nodeCount; i++) {
+      int slot = smear(nodeList.get(i).hashCode()) & (nodeTable.length - 1);
+      while (nodeTable[slot] != 0) {
+        slot = (slot + 1) & (nodeTable.length - 1);
+      }
+      nodeTable[slot] = i + 1;
+    }
+
+    this.outgoingOffsets = new int[nodeCount + 1];
+    this.incomingOffsets = new int[nodeCount + 1];
+    int[] edges = new int[Math.max(16, nodeCount)];
+    // The last source + 1 with an edge to each node, to drop duplicate edges.
+    int[] lastSource = new int[nodeCount];
+    int edgeCount = 0;
+    for (int source = 0; source < nodeCount; source++) {
+      outgoingOffsets[source] = edgeCount;
+      for (T sink : getOutgoingNodes.apply(nodeList.get(source))) {
+        int sinkId = getId(sink);
+        Preconditions.checkArgument(sinkId >= 0, "%s is not a node of the graph", sink);
+        if (lastSource[sinkId] == source + 1) {
+          continue;
+        }
+        lastSource[sinkId] = source + 1;
+        if (edgeCount == edges.length) {
+          edges = Arrays.copyOf(edges, edgeCount * 2);
+        }
+        edges[edgeCount++] = sinkId;
+        incomingOffsets[sinkId + 1]++;
+      }
+    }
+    outgoingOffsets[nodeCount] = edgeCount;
+    this.outgoingEdges = Arrays.copyOf(edges, edgeCount);
+
+    for (int sink = 0; sink < nodeCount; sink++) {
+      incomingOffsets[sink + 1] += incomingOffsets[sink];
+    }
+    this.incomingEdges = new int[edgeCount];
+    int[] nextIncomingEdge = Arrays.copyOf(incomingOffsets, nodeCount);
+    for (int source = 0; source < nodeCount; source++) {
+      for (int edge = outgoingOffsets[source]; edge < outgoingOffsets[source + 1]; edge++) {
+        incomingEdges[nextIncomingEdge[outgoingEdges[edge]]++] = source;
+      }
+    }
+  }
+
+  private static <T> MutableDirectedGraph<T> checkAcyclic(MutableDirectedGraph<T> graph) {
     Preconditions.checkState(graph.isAcyclic(), "Graph must by acyclic");
-    this.nodes = graph.createImmutableCopyOfNodes();
-    this.outgoingEdges = graph.createImmutableCopyOfOutgoingEdges();
-    this.incomingEdges = graph.createImmutableCopyOfIncomingEdges();
+    return graph;
+  }
+
+  /** Spreads the bits of hash codes, as consecutive ones would otherwise fill runs of slots. */
+  private static int smear(int hashCode) {
+    return 0x1b873593 * Integer.rotateLeft(hashCode * 0xcc9e2d51, 15);
   }
 
+  /** @return the number of {@code node}, or -1 if it is not a node of the graph. */
+  private int getId(Object node) {
+    int slot = smear(node.hashCode()) & (nodeTable.length - 1);
+    while (nodeTable[slot] != 0) {
+      int id = nodeTable[slot] - 1;
+      if (nodeList.get(id).equals(node)) {
+        return id;
+      }
+      slot = (slot + 1) & (nodeTable.length - 1);
+    }
+    return -1;
+  }
+
+  private Set<T> getNodes(int id, int[] offsets, int[] edges) {
+    if (id < 0) {
+      return ImmutableSet.of();
+    }
+    return new EdgeSet(edges, offsets[id], offsets[id + 1]);
+  }
+
+  private ImmutableSet<T> getNodesWithNoEdges(int[] offsets) {
+    ImmutableSet.Builder<T> builder = ImmutableSet.builder();
+    for (int id = 0; id < nodeList.size(); id++) {
+      if (offsets[id] == offsets[id + 1]) {
+        builder.add(nodeList.get(id));
+      }
+    }
+    return builder.build();
+  }
+
+  /** @return an unmodifiable view of the sinks of the edges from {@code source}. */
   @Override
-  public ImmutableSet<T> getOutgoingNodesFor(T source) {
-    return outgoingEdges.get(source);
+  public Set<T> getOutgoingNodesFor(T source) {
+    return getNodes(getId(source), outgoingOffsets, outgoingEdges);
   }
 
+  /** @return an unmodifiable view of the sources of the edges to {@code sink}. */
   @Override
-  public ImmutableSet<T> getIncomingNodesFor(T sink) {
-    return incomingEdges.get(sink);
+  public Set<T> getIncomingNodesFor(T sink) {
+    return getNodes(getId(sink), incomingOffsets, incomingEdges);
   }
 
   @Override
   public ImmutableSet<T> getNodesWithNoOutgoingEdges() {
-    return ImmutableSet.copyOf(Sets.difference(nodes, outgoingEdges.keySet()));
+    return getNodesWithNoEdges(outgoingOffsets);
   }
 
   @Override
   public ImmutableSet<T> getNodesWithNoIncomingEdges() {
-    return ImmutableSet.copyOf(Sets.difference(nodes, incomingEdges.keySet()));
+    return getNodesWithNoEdges(incomingOffsets);
   }
 
   @Override
@@ -67,13 +184,82 @@ public class DirectedAcyclicGraph<T> implements TraversableGraph<T> {
     }
 
     DirectedAcyclicGraph<?> that = (DirectedAcyclicGraph<?>) other;
-    return Objects.equals(this.nodes, that.nodes)
-        && Objects.equals(this.outgoingEdges, that.outgoingEdges)
-        && Objects.equals(this.incomingEdges, that.incomingEdges);
+    if (!this.nodes.equals(that.nodes) || this.outgoingEdges.length != that.outgoingEdges.length) {
+      return false;
+    }
+    // Nodes may be numbered differently, so compare the sets of sinks of each node.
+    for (int id = 0; id < nodeList.size(); id++) {
+      int thatId = that.getId(nodeList.get(id));
+      if (!getNodes(id, outgoingOffsets, outgoingEdges)
+          .equals(that.getNodes(thatId, that.outgoingOffsets, that.outgoingEdges))) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(nodes, outgoingEdges, incomingEdges);
+    // Independent of the numbering of nodes and of the order of edges.
+    int edgesHashCode = 0;
+    for (int source = 0; source < nodeList.size(); source++) {
+      int sourceHashCode = nodeList.get(source).hashCode();
+      for (int edge = outgoingOffsets[source]; edge < outgoingOffsets[source + 1]; edge++) {
+        edgesHashCode += sourceHashCode ^ (31 * nodeList.get(outgoingEdges[edge]).hashCode());
+      }
+    }
+    return 31 * nodes.hashCode() + edgesHashCode;
+  }
+
+  /** The nodes numbered in a range of an edge array, which holds no duplicates. */
+  private class EdgeSet extends AbstractSet<T> {
+    private final int[] edges;
+    private final int start;
+    private final int end;
+
+    EdgeSet(int[] edges, int start, int end) {
+      this.edges = edges;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      return new UnmodifiableIterator<T>() {
+        private int edge = start;
+
+        @Override
+        public boolean hasNext() {
+          return edge < end;
+        }
+
+        @Override
+        public T next() {
+          if (edge >= end) {
+            throw new NoSuchElementException();
+          }
+          return nodeList.get(edges[edge++]);
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return end - start;
+    }
+
+    @Override
+    public boolean contains(Object node) {
+      if (node == null) {
+        return false;
+      }
+      int id = getId(node);
+      for (int edge = start; edge < end; edge++) {
+        if (edges[edge] == id) {
+          return true;
+        }
+      }
+      return false;
+    }
   }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.graph;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * Visits the nodes of a DAG in parallel, bottom-up: a node is visited on the supplied executor as
+ * soon as all of its children have been visited, and is given the values computed for them.
+ *
+ * <p>Cycles are reported by {@link #traverse(Iterable)} before any node is visited. The first
+ * exception thrown by a visit fails the returned future, and no more nodes are visited after it
+ * fails or is cancelled. Visits already running are left to finish.
+ *
+ * @param <T> the type of node in the graph
+ * @param <V> the type of value computed for each node
+ */
+public class ParallelBottomUpTraversal<T, V> {
+
+  /** Computes the value of a node from those of its children. */
+  @FunctionalInterface
+  public interface Visitor<T, V> {
+    /**
+     * @param childValues the values of the children of {@code node}, in the order in which they
+     *     were returned by the {@link GraphTraversable}.
+     */
+    V visit(T node, ImmutableList<V> childValues) throws Exception;
+  }
+
+  private final GraphTraversable<T> traversable;
+  private final Executor executor;
+  private final Visitor<T, V> visitor;
+
+  public ParallelBottomUpTraversal(
+      GraphTraversable<T> traversable, Executor executor, Visitor<T, V> visitor) {
+    this.traversable = traversable;
+    this.executor = executor;
+    this.visitor = visitor;
+  }
+
+  /**
+   * Visits {@code initialNodes} and all their transitive children.
+   *
+   * @return a future of the values of all visited nodes, in bottom-up order. Cancelling it stops
+   *     the traversal.
+   * @throws AcyclicDepthFirstPostOrderTraversal.CycleException if the nodes form a cycle.
+   */
+  public ListenableFuture<ImmutableMap<T, V>> traverse(Iterable<? extends T> initialNodes)
+      throws AcyclicDepthFirstPostOrderTraversal.CycleException {
+    Iterable<T> postOrder =
+        new AcyclicDepthFirstPostOrderTraversal<>(traversable).traverse(initialNodes);
+    return new Traversal(postOrder).start();
+  }
+
+  private class Node {
+    private final T node;
+    private final ImmutableList<Node> children;
+    private final List<Node> parents = new ArrayList<>();
+    private final AtomicInteger pendingChildren;
+    @Nullable private volatile V value;
+
+    Node(T node, ImmutableList<Node> children) {
+      this.node = node;
+      this.children = children;
+      this.pendingChildren = new AtomicInteger(children.size());
+    }
+  }
+
+  private class Traversal {
+    private final ImmutableList<Node> bottomUpOrder;
+    private final AtomicInteger pendingNodes;
+    private final SettableFuture<ImmutableMap<T, V>> result = SettableFuture.create();
+
+    Traversal(Iterable<T> postOrder) {
+      // Children come before their parents in post order, so they are always found in the map.
+      Map<T, Node> nodes = new HashMap<>();
+      ImmutableList.Builder<Node> order = ImmutableList.builder();
+      for (T node : postOrder) {
+        ImmutableList.Builder<Node> children = ImmutableList.builder();
+        for (Iterator<T> iterator = traversable.findChildren(node); iterator.hasNext(); ) {
+          children.add(Preconditions.checkNotNull(nodes.get(iterator.next())));
+        }
+        Node entry = new Node(node, children.build());
+        for (Node child : entry.children) {
+          child.parents.add(entry);
+        }
+        nodes.put(node, entry);
+        order.add(entry);
+      }
+      this.bottomUpOrder = order.build();
+      this.pendingNodes = new AtomicInteger(bottomUpOrder.size());
+    }
+
+    ListenableFuture<ImmutableMap<T, V>> start() {
+      if (bottomUpOrder.isEmpty()) {
+        result.set(ImmutableMap.of());
+      }
+      for (Node node : bottomUpOrder) {
+        if (node.children.isEmpty()) {
+          dispatch(node);
+        }
+      }
+      return result;
+    }
+
+    private void dispatch(Node node) {
+      if (result.isDone()) {
+        return;
+      }
+      try {
+        executor.execute(() -> visit(node));
+      } catch (RejectedExecutionException e) {
+        result.setException(e);
+      }
+    }
+
+    private void visit(Node first) {
+      // Rather than dispatching every parent which became ready, keep visiting one of them on this
+      // thread, which avoids a round trip through the executor on long chains of nodes.
+      Node node = first;
+      while (node != null && !result.isDone()) {
+        ImmutableList.Builder<V> childValues = ImmutableList.builder();
+        for (Node child : node.children) {
+          childValues.add(Preconditions.checkNotNull(child.value));
+        }
+        try {
+          node.value =
+              Preconditions.checkNotNull(
+                  visitor.visit(node.node, childValues.build()),
+                  "visiting %s returned null",
+                  node.node);
+        } catch (Throwable t) {
+          result.setException(t);
+          return;
+        }
+
+        Node next = null;
+        for (Node parent : node.parents) {
+          if (parent.pendingChildren.decrementAndGet() == 0) {
+            if (next == null) {
+              next = parent;
+            } else {
+              dispatch(parent);
+            }
+          }
+        }
+        if (pendingNodes.decrementAndGet() == 0) {
+          ImmutableMap.Builder<T, V> values = ImmutableMap.builder();
+          for (Node visited : bottomUpOrder) {
+            values.put(visited.node, Preconditions.checkNotNull(visited.value));
+          }
+          result.set(values.build());
+        }
+        node = next;
+      }
+    }
+  }
+}
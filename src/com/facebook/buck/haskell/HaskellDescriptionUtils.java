@@ -217,29 +217,25 @@ public class HaskellDescriptionUtils {
 
     BuildTarget target = getCompileBuildTarget(buildTarget, cxxPlatform, depType, hsProfile);
 
-    // If this rule has already been generated, return it.
-    Optional<HaskellCompileRule> existing =
-        resolver.getRuleOptionalWithType(target, HaskellCompileRule.class);
-    if (existing.isPresent()) {
-      return existing.get();
-    }
-
-    return resolver.addToIndex(
-        HaskellDescriptionUtils.createCompileRule(
+    return (HaskellCompileRule)
+        resolver.computeIfAbsentThrowing(
             target,
-            projectFilesystem,
-            params,
-            resolver,
-            ruleFinder,
-            deps,
-            cxxPlatform,
-            haskellConfig,
-            depType,
-            hsProfile,
-            main,
-            packageInfo,
-            flags,
-            srcs));
+            compileTarget ->
+                HaskellDescriptionUtils.createCompileRule(
+                    compileTarget,
+                    projectFilesystem,
+                    params,
+                    resolver,
+                    ruleFinder,
+                    deps,
+                    cxxPlatform,
+                    haskellConfig,
+                    depType,
+                    hsProfile,
+                    main,
+                    packageInfo,
+                    flags,
+                    srcs));
   }
 
   /**
@@ -232,24 +232,22 @@ public class HaskellLibraryDescription
       target = target.withoutFlavors(HaskellDescriptionUtils.PROF);
     }
 
-    Optional<Archive> archive = resolver.getRuleOptionalWithType(target, Archive.class);
-    if (archive.isPresent()) {
-      return archive.get();
-    }
-
-    return resolver.addToIndex(
-        createStaticLibrary(
+    return (Archive)
+        resolver.computeIfAbsentThrowing(
             target,
-            projectFilesystem,
-            baseParams,
-            resolver,
-            pathResolver,
-            ruleFinder,
-            cxxPlatform,
-            args,
-            deps,
-            depType,
-            hsProfile));
+            archiveTarget ->
+                createStaticLibrary(
+                    archiveTarget,
+                    projectFilesystem,
+                    baseParams,
+                    resolver,
+                    pathResolver,
+                    ruleFinder,
+                    cxxPlatform,
+                    args,
+                    deps,
+                    depType,
+                    hsProfile));
   }
 
   private HaskellPackageRule createPackage(
@@ -439,24 +437,22 @@ public class HaskellLibraryDescription
       target = target.withAppendedFlavors(HaskellDescriptionUtils.PROF);
     }
 
-    Optional<HaskellPackageRule> packageRule =
-        resolver.getRuleOptionalWithType(target, HaskellPackageRule.class);
-    if (packageRule.isPresent()) {
-      return packageRule.get();
-    }
-    return resolver.addToIndex(
-        createPackage(
+    return (HaskellPackageRule)
+        resolver.computeIfAbsentThrowing(
             target,
-            projectFilesystem,
-            baseParams,
-            resolver,
-            pathResolver,
-            ruleFinder,
-            cxxPlatform,
-            args,
-            deps,
-            depType,
-            hsProfile));
+            packageTarget ->
+                createPackage(
+                    packageTarget,
+                    projectFilesystem,
+                    baseParams,
+                    resolver,
+                    pathResolver,
+                    ruleFinder,
+                    cxxPlatform,
+                    args,
+                    deps,
+                    depType,
+                    hsProfile));
   }
 
   private HaskellLinkRule createSharedLibrary(
@@ -526,22 +522,20 @@ public class HaskellLibraryDescription
     BuildTarget target =
         baseTarget.withAppendedFlavors(Type.SHARED.getFlavor(), cxxPlatform.getFlavor());
 
-    Optional<HaskellLinkRule> linkRule =
-        resolver.getRuleOptionalWithType(target, HaskellLinkRule.class);
-    if (linkRule.isPresent()) {
-      return linkRule.get();
-    }
-    return resolver.addToIndex(
-        createSharedLibrary(
+    return (HaskellLinkRule)
+        resolver.computeIfAbsentThrowing(
             target,
-            projectFilesystem,
-            baseParams,
-            resolver,
-            pathResolver,
-            ruleFinder,
-            cxxPlatform,
-            args,
-            deps));
+            linkTarget ->
+                createSharedLibrary(
+                    linkTarget,
+                    projectFilesystem,
+                    baseParams,
+                    resolver,
+                    pathResolver,
+                    ruleFinder,
+                    cxxPlatform,
+                    args,
+                    deps));
   }
 
   @Override
@@ -80,6 +80,24 @@ abstract class AbstractBuckPaths {
     return getBuckOut().resolve("cache");
   }
 
+  /** @return the directory for state the daemon keeps between runs. */
+  @Value.Derived
+  public Path getDaemonStateDir() {
+    return getBuckOut().resolve("daemon");
+  }
+
+  /** @return the directory for the stored results of parsing build files. */
+  @Value.Derived
+  public Path getParserCacheDir() {
+    return getBuckOut().resolve("parser");
+  }
+
+  /** @return the file in which the history of build rules is kept between builds. */
+  @Value.Derived
+  public Path getRuleHistoryFile() {
+    return getBuckOut().resolve(".rulehistory");
+  }
+
   @Value.Derived
   public Path getTmpDir() {
     return getBuckOut().resolve("tmp");
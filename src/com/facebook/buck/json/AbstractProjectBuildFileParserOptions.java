@@ -80,6 +80,12 @@ abstract class AbstractProjectBuildFileParserOptions {
     return false;
   }
 
+  /** Whether buck.py is queried, and answers, in BSER rather than in JSON. */
+  @Value.Default
+  public boolean getUseBserProtocol() {
+    return false;
+  }
+
   abstract Optional<Long> getWatchmanQueryTimeoutMs();
 
   abstract List<String> getBuildFileImportWhitelist();
@@ -17,6 +17,7 @@
 package com.facebook.buck.json;
 
 import com.facebook.buck.util.ImmutableMapWithNullValues;
+import com.facebook.buck.util.ObjectMappers;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
@@ -37,12 +38,24 @@ import javax.annotation.Nullable;
  * <p>Uses Guava {@link ImmutableMap} and {@link ImmutableList} to reduce memory pressure, along
  * with {@link ImmutableMapWithNullValues} to allow {@code null} values in the maps.
  */
-final class BuildFilePythonResultDeserializer extends StdDeserializer<BuildFilePythonResult> {
+public final class BuildFilePythonResultDeserializer
+    extends StdDeserializer<BuildFilePythonResult> {
 
   public BuildFilePythonResultDeserializer() {
     super(BuildFilePythonResult.class);
   }
 
+  /**
+   * Reads the {@code values} of a result in the JSON format of {@code buck.py}, such as one stored
+   * earlier, into the same types as the results of {@code buck.py} itself.
+   */
+  public static ImmutableList<Map<String, Object>> deserializeValues(byte[] json)
+      throws IOException {
+    try (JsonParser parser = ObjectMappers.createParser(json)) {
+      return parser.readValueAs(BuildFilePythonResult.class).getValues();
+    }
+  }
+
   @Override
   public BuildFilePythonResult deserialize(JsonParser jp, DeserializationContext ctxt)
       throws IOException, JsonParseException {
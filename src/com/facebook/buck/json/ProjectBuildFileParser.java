@@ -16,6 +16,8 @@
 
 package com.facebook.buck.json;
 
+import com.facebook.buck.bser.BserDeserializer;
+import com.facebook.buck.bser.BserSerializer;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.event.PerfEventId;
@@ -33,6 +35,8 @@ import com.facebook.buck.util.MoreThrowables;
 import com.facebook.buck.util.ObjectMappers;
 import com.facebook.buck.util.ProcessExecutor;
 import com.facebook.buck.util.ProcessExecutorParams;
+import com.facebook.buck.util.ProcessHelper;
+import com.facebook.buck.util.ProcessResourceConsumption;
 import com.facebook.buck.util.Threads;
 import com.facebook.buck.util.concurrent.AssertScopeExclusiveAccess;
 import com.fasterxml.jackson.core.JsonGenerator;
@@ -83,6 +87,8 @@ public class ProjectBuildFileParser implements AutoCloseable {
   @Nullable private CountingInputStream buckPyProcessInput;
   @Nullable private JsonGenerator buckPyProcessJsonGenerator;
   @Nullable private JsonParser buckPyProcessJsonParser;
+  @Nullable private BserSerializer buckPyProcessBserSerializer;
+  @Nullable private BserDeserializer buckPyProcessBserDeserializer;
 
   private final ProjectBuildFileParserOptions options;
   private final TypeCoercerFactory typeCoercerFactory;
@@ -161,6 +167,27 @@ public class ProjectBuildFileParser implements AutoCloseable {
     return isClosed;
   }
 
+  /**
+   * @return the resident memory of the buck.py process in bytes, if it has been started and the
+   *     platform lets us measure it.
+   */
+  public Optional<Long> getResidentMemoryBytes() {
+    ProcessExecutor.LaunchedProcess process = buckPyProcess;
+    if (!(process instanceof ProcessExecutor.LaunchedProcessImpl)) {
+      return Optional.empty();
+    }
+    ProcessHelper processHelper = ProcessHelper.getInstance();
+    Long pid = processHelper.getPid(((ProcessExecutor.LaunchedProcessImpl) process).process);
+    if (pid == null) {
+      return Optional.empty();
+    }
+    ProcessResourceConsumption consumption = processHelper.getProcessResourceConsumption(pid);
+    if (consumption == null) {
+      return Optional.empty();
+    }
+    return Optional.of(consumption.getMemResident());
+  }
+
   private void ensureNotClosed() {
     Preconditions.checkState(!isClosed);
   }
@@ -217,16 +244,24 @@ public class ProjectBuildFileParser implements AutoCloseable {
       buckPyProcess = processExecutor.launchProcess(params);
       LOG.debug("Started process %s successfully", buckPyProcess);
       buckPyProcessInput = new CountingInputStream(buckPyProcess.getInputStream());
-      buckPyProcessJsonGenerator = ObjectMappers.createGenerator(buckPyProcess.getOutputStream());
-      // We have to wait to create the JsonParser until after we write our
-      // first request, because Jackson "helpfully" synchronously reads
-      // from the InputStream trying to detect whether the encoding is
-      // UTF-8 or UTF-16 as soon as you create a JsonParser:
-      //
-      // https://git.io/vSgnA
-      //
-      // Since buck.py doesn't write any data until after it receives
-      // a query, creating the JsonParser here would hang indefinitely.
+      if (options.getUseBserProtocol()) {
+        buckPyProcessBserSerializer = new BserSerializer();
+        // Keys are sorted to match the order buck.py writes them in when encoding JSON.
+        buckPyProcessBserDeserializer =
+            new BserDeserializer(BserDeserializer.KeyOrdering.SORTED);
+      } else {
+        buckPyProcessJsonGenerator =
+            ObjectMappers.createGenerator(buckPyProcess.getOutputStream());
+        // We have to wait to create the JsonParser until after we write our
+        // first request, because Jackson "helpfully" synchronously reads
+        // from the InputStream trying to detect whether the encoding is
+        // UTF-8 or UTF-16 as soon as you create a JsonParser:
+        //
+        // https://git.io/vSgnA
+        //
+        // Since buck.py doesn't write any data until after it receives
+        // a query, creating the JsonParser here would hang indefinitely.
+      }
 
       InputStream stderr = buckPyProcess.getErrorStream();
 
@@ -246,7 +281,7 @@ public class ProjectBuildFileParser implements AutoCloseable {
   }
 
   private ImmutableList<String> buildArgs() throws IOException {
-    // Invoking buck.py and read JSON-formatted build rules from its stdout.
+    // Invoking buck.py and read JSON or BSER-formatted build rules from its stdout.
     ImmutableList.Builder<String> argBuilder = ImmutableList.builder();
 
     argBuilder.add(options.getPythonInterpreter());
@@ -323,6 +358,10 @@ public class ProjectBuildFileParser implements AutoCloseable {
     // Add ignore paths.
     argBuilder.add("--ignore_paths", ignorePathsJson.get().toString());
 
+    if (options.getUseBserProtocol()) {
+      argBuilder.add("--use_bser");
+    }
+
     return argBuilder.build();
   }
 
@@ -385,7 +424,7 @@ public class ProjectBuildFileParser implements AutoCloseable {
         }
       }
       BuildFilePythonResult resultObject =
-          performJsonRequest(
+          performRequest(
               ImmutableMap.of(
                   "buildFile", buildFile.toString(),
                   "watchRoot", watchRoot,
@@ -410,6 +449,14 @@ public class ProjectBuildFileParser implements AutoCloseable {
     }
   }
 
+  private BuildFilePythonResult performRequest(ImmutableMap<String, String> request)
+      throws IOException {
+    if (options.getUseBserProtocol()) {
+      return performBserRequest(request);
+    }
+    return performJsonRequest(request);
+  }
+
   private BuildFilePythonResult performJsonRequest(ImmutableMap<String, String> request)
       throws IOException {
     Preconditions.checkNotNull(request);
@@ -459,6 +506,63 @@ public class ProjectBuildFileParser implements AutoCloseable {
     return resultObject;
   }
 
+  private BuildFilePythonResult performBserRequest(ImmutableMap<String, String> request)
+      throws IOException {
+    Preconditions.checkNotNull(request);
+    Preconditions.checkNotNull(buckPyProcessBserSerializer);
+    Preconditions.checkNotNull(buckPyProcessBserDeserializer);
+    Preconditions.checkNotNull(buckPyProcess);
+    try {
+      OutputStream outputStream = buckPyProcess.getOutputStream();
+      buckPyProcessBserSerializer.serializeToStream(request, outputStream);
+      outputStream.flush();
+    } catch (IOException e) {
+      // https://issues.apache.org/jira/browse/EXEC-101 -- Java 8 throws
+      // IOException if the child process exited before writing/flushing
+      LOG.debug(e, "Swallowing exception on flush");
+    }
+
+    LOG.verbose("Parsing output of process %s...", buckPyProcess);
+    try {
+      // Each result is a single BSER value, which is decoded straight into the maps of the rules,
+      // without going through a stream of tokens first.
+      return toBuildFilePythonResult(
+          buckPyProcessBserDeserializer.deserializeBserValue(
+              Preconditions.checkNotNull(buckPyProcessInput)));
+    } catch (IOException e) {
+      LOG.warn(e, "Parser exited while decoding BSER data");
+      throw e;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @VisibleForTesting
+  static BuildFilePythonResult toBuildFilePythonResult(@Nullable Object result)
+      throws IOException {
+    if (!(result instanceof Map)) {
+      throw new IOException("Expected a BSER object, got: " + result);
+    }
+    ImmutableList<Map<String, Object>> values = ImmutableList.of();
+    ImmutableList<Map<String, Object>> diagnostics = ImmutableList.of();
+    Optional<String> profile = Optional.empty();
+    for (Map.Entry<String, Object> entry : ((Map<String, Object>) result).entrySet()) {
+      switch (entry.getKey()) {
+        case "values":
+          values = ImmutableList.copyOf((List<Map<String, Object>>) entry.getValue());
+          break;
+        case "diagnostics":
+          diagnostics = ImmutableList.copyOf((List<Map<String, Object>>) entry.getValue());
+          break;
+        case "profile":
+          profile = Optional.of((String) entry.getValue());
+          break;
+        default:
+          throw new IOException("Unexpected field name: " + entry.getKey());
+      }
+    }
+    return BuildFilePythonResult.of(values, diagnostics, profile);
+  }
+
   private static void handleDiagnostics(
       Path buildFile,
       Path buckPyDir,
@@ -652,7 +756,7 @@ public class ProjectBuildFileParser implements AutoCloseable {
 
   public void reportProfile() throws IOException {
     BuildFilePythonResult resultObject =
-        performJsonRequest(ImmutableMap.of("command", "report_profile"));
+        performRequest(ImmutableMap.of("command", "report_profile"));
     Optional<String> profile = resultObject.getProfile();
     if (profile.isPresent()) {
       LOG.debug("buck parser profiler trace available");
@@ -697,6 +801,19 @@ public class ProjectBuildFileParser implements AutoCloseable {
           }
         }
 
+        if (buckPyProcessBserSerializer != null) {
+          try {
+            LOG.debug("Closing buck.py process stdin");
+            buckPyProcess.getOutputStream().close();
+          } catch (IOException e) {
+            // Safe to ignore since we've already flushed everything we wanted
+            // to write.
+          } finally {
+            buckPyProcessBserSerializer = null;
+            buckPyProcessBserDeserializer = null;
+          }
+        }
+
         if (stderrConsumerThread != null) {
           stderrConsumerThread.join();
           stderrConsumerThread = null;
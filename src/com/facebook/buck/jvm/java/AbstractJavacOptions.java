@@ -17,6 +17,7 @@
 package com.facebook.buck.jvm.java;
 
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.rules.AddsToRuleKeyByValue;
 import com.facebook.buck.rules.RuleKeyAppendable;
 import com.facebook.buck.rules.RuleKeyObjectSink;
 import com.facebook.buck.rules.SourcePathResolver;
@@ -46,7 +47,7 @@ import org.immutables.value.Value;
  */
 @Value.Immutable
 @BuckStyleImmutable
-abstract class AbstractJavacOptions implements RuleKeyAppendable {
+abstract class AbstractJavacOptions implements RuleKeyAppendable, AddsToRuleKeyByValue {
 
   // Default combined source and target level.
   public static final String TARGETED_JAVA_VERSION = "7";
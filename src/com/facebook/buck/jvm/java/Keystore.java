@@ -23,11 +23,13 @@ import com.facebook.buck.rules.AddToRuleKey;
 import com.facebook.buck.rules.BuildContext;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildableContext;
+import com.facebook.buck.rules.ReusableAcrossActionGraphs;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.step.Step;
 import com.google.common.collect.ImmutableList;
 import javax.annotation.Nullable;
 
+@ReusableAcrossActionGraphs
 public class Keystore extends AbstractBuildRuleWithDeclaredAndExtraDeps {
 
   @AddToRuleKey private final SourcePath pathToStore;
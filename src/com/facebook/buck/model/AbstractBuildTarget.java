@@ -27,6 +27,8 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 import java.nio.file.Path;
@@ -47,6 +49,13 @@ abstract class AbstractBuildTarget implements Comparable<AbstractBuildTarget> {
   private static final Ordering<Iterable<Flavor>> LEXICOGRAPHICAL_ORDERING =
       Ordering.<Flavor>natural().lexicographical();
 
+  /** Interner for instances of BuildTarget. */
+  private static final Interner<BuildTarget> interner = Interners.newWeakInterner();
+
+  /** Interner for the flavor sets of BuildTargets, of which there are few distinct ones. */
+  private static final Interner<SortedSet<Flavor>> flavorSetInterner =
+      Interners.newWeakInterner();
+
   @Value.Parameter
   public abstract UnflavoredBuildTarget getUnflavoredBuildTarget();
 
@@ -54,11 +63,29 @@ abstract class AbstractBuildTarget implements Comparable<AbstractBuildTarget> {
   @Value.Parameter
   public abstract SortedSet<Flavor> getFlavors();
 
+  /**
+   * Routes every new instance, however it was created, through an interner, so that equal targets
+   * share one instance and one set of flavors.
+   *
+   * <p>Flavors are equal by name, so targets with a {@link UserFlavor} are left alone: interning
+   * would swap its description, or the flavor itself for an {@link InternalFlavor} of that name.
+   */
   @Value.Check
-  protected void check() {
+  protected AbstractBuildTarget normalize() {
     Preconditions.checkArgument(
         getFlavors().comparator() == Ordering.natural(),
         "Flavors must be ordered using natural ordering.");
+
+    SortedSet<Flavor> flavors = getFlavors();
+    if (flavors.stream().anyMatch(UserFlavor.class::isInstance)) {
+      return this;
+    }
+    SortedSet<Flavor> internedFlavors = flavorSetInterner.intern(flavors);
+    if (internedFlavors != flavors) {
+      // The shared set is kept as is by the constructor, and the new target is normalized in turn.
+      return BuildTarget.of(getUnflavoredBuildTarget(), internedFlavors);
+    }
+    return interner.intern((BuildTarget) this);
   }
 
   @JsonProperty("cell")
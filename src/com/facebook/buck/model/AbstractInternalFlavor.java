@@ -17,6 +17,8 @@
 package com.facebook.buck.model;
 
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import org.immutables.value.Value;
 
 /**
@@ -27,14 +29,18 @@ import org.immutables.value.Value;
 @BuckStyleImmutable
 abstract class AbstractInternalFlavor implements Flavor {
 
+  /** Interner for instances of InternalFlavor. */
+  private static final Interner<InternalFlavor> interner = Interners.newWeakInterner();
+
   @Override
   @Value.Parameter
   public abstract String getName();
 
-  @Override
+  /** Routes every new instance through an interner, so that equal flavors share one instance. */
   @Value.Check
-  public void check() {
-    Flavor.super.check();
+  protected AbstractInternalFlavor normalize() {
+    check();
+    return interner.intern((InternalFlavor) this);
   }
 
   @Override
@@ -44,6 +50,9 @@ abstract class AbstractInternalFlavor implements Flavor {
 
   @Override
   public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
     if (!(obj instanceof Flavor)) {
       return false;
     }
@@ -34,7 +34,7 @@ import org.immutables.value.Value;
  * .
  */
 @BuckStyleImmutable
-@Value.Immutable(copy = false)
+@Value.Immutable(copy = false, prehash = true)
 abstract class AbstractUnflavoredBuildTarget implements Comparable<AbstractUnflavoredBuildTarget> {
 
   /** Interner for instances of UnflavoredBuildTarget. */
@@ -22,6 +22,7 @@ import com.facebook.buck.python.PythonBuckConfig;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.WatchmanWatcher;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
+import com.facebook.buck.util.unit.SizeUnit;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
@@ -41,6 +42,7 @@ abstract class AbstractParserConfig implements ConfigView<BuckConfig> {
   public static final String INCLUDES_PROPERTY_NAME = "includes";
 
   private static final long NUM_PARSING_THREADS_DEFAULT = 1L;
+  private static final long PARSER_POOL_IDLE_TIMEOUT_MS_DEFAULT = 10000L;
 
   public enum GlobHandler {
     PYTHON,
@@ -68,6 +70,13 @@ abstract class AbstractParserConfig implements ConfigView<BuckConfig> {
     ;
   }
 
+  /** The encoding of the queries to, and results from, the build file parser process. */
+  public enum PythonProtocol {
+    JSON,
+    BSER,
+    ;
+  }
+
   /** Controls whether default flavors should be applied to unflavored targets. */
   public enum ApplyDefaultFlavorsMode {
     ENABLED,
@@ -172,15 +181,56 @@ abstract class AbstractParserConfig implements ConfigView<BuckConfig> {
       return 1;
     }
 
+    // An adaptive pool only starts as many parsers as it needs, so it may use every thread.
     int value =
         getDelegate()
             .getLong("project", "parsing_threads")
-            .orElse(NUM_PARSING_THREADS_DEFAULT)
+            .orElse(
+                getEnableAdaptiveParserPool()
+                    ? getDelegate().getNumThreads()
+                    : NUM_PARSING_THREADS_DEFAULT)
             .intValue();
 
     return Math.min(value, getDelegate().getNumThreads());
   }
 
+  /**
+   * Whether the number of parsers of each cell is adjusted to the number of waiting parse requests,
+   * up to {@link #getNumParsingThreads()}, instead of always growing to it.
+   */
+  @Value.Lazy
+  public boolean getEnableAdaptiveParserPool() {
+    return getDelegate().getBooleanValue("project", "adaptive_parser_pool", false);
+  }
+
+  /** The resident memory all parsers of an adaptive parser pool may use. */
+  @Value.Lazy
+  public Optional<Long> getParserPoolMemoryBudgetBytes() {
+    return getDelegate()
+        .getValue("project", "parser_pool_memory_budget")
+        .map(SizeUnit::parseBytes);
+  }
+
+  /** How long a parser of an adaptive parser pool may stay unused before it is shut down. */
+  @Value.Lazy
+  public long getParserPoolIdleTimeoutMs() {
+    return getDelegate()
+        .getLong("project", "parser_pool_idle_timeout_ms")
+        .orElse(PARSER_POOL_IDLE_TIMEOUT_MS_DEFAULT);
+  }
+
+  @Value.Lazy
+  public PythonProtocol getPythonProtocol() {
+    return getDelegate()
+        .getEnum("parser", "python_protocol", PythonProtocol.class)
+        .orElse(PythonProtocol.JSON);
+  }
+
+  @Value.Lazy
+  public boolean getEnablePersistentRawNodeCache() {
+    return getDelegate().getBooleanValue("parser", "persistent_raw_node_cache", false);
+  }
+
   @Value.Lazy
   public ApplyDefaultFlavorsMode getDefaultFlavorsMode() {
     return getDelegate()
@@ -23,15 +23,10 @@ import com.facebook.buck.model.UnflavoredBuildTarget;
 import com.facebook.buck.rules.CellPathResolver;
 import com.facebook.buck.util.RichStream;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Interner;
-import com.google.common.collect.Interners;
 import java.nio.file.Path;
-import java.util.HashSet;
-import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.Set;
 
 public class BuildTargetParser {
 
@@ -40,10 +35,12 @@ public class BuildTargetParser {
 
   private static final String BUILD_RULE_PREFIX = "//";
   private static final String BUILD_RULE_SEPARATOR = ":";
-  private static final Splitter BUILD_RULE_SEPARATOR_SPLITTER = Splitter.on(BUILD_RULE_SEPARATOR);
-  private static final Set<String> INVALID_BASE_NAME_PARTS = ImmutableSet.of(".", "..");
 
-  private final Interner<BuildTarget> flavoredTargetCache = Interners.newWeakInterner();
+  // Bound the parsed targets remembered for each cell, as a daemon may see many over its lifetime.
+  private static final long MAX_CACHED_TARGETS_PER_CELL = 100_000;
+
+  private final ParseCache<CacheKey, BuildTarget> cache =
+      new ParseCache<>(MAX_CACHED_TARGETS_PER_CELL);
 
   private final FlavorParser flavorParser = new FlavorParser();
 
@@ -66,37 +63,56 @@ public class BuildTargetParser {
       String buildTargetName,
       BuildTargetPatternParser<?> buildTargetPatternParser,
       CellPathResolver cellNames) {
+    String baseName = buildTargetPatternParser.getBaseName();
+    boolean wildCardAllowed = buildTargetPatternParser.isWildCardAllowed();
+    return cache.get(
+        cellNames,
+        new CacheKey(buildTargetName, baseName, wildCardAllowed),
+        () -> parseUncached(buildTargetName, baseName, wildCardAllowed, cellNames));
+  }
+
+  private BuildTarget parseUncached(
+      String buildTargetName,
+      String contextBaseName,
+      boolean wildCardAllowed,
+      CellPathResolver cellNames) {
 
-    if (buildTargetName.endsWith(BUILD_RULE_SEPARATOR)
-        && !buildTargetPatternParser.isWildCardAllowed()) {
+    if (buildTargetName.endsWith(BUILD_RULE_SEPARATOR) && !wildCardAllowed) {
       throw new BuildTargetParseException(
           String.format("%s cannot end with a colon", buildTargetName));
     }
 
     Optional<String> givenCellName = Optional.empty();
-    String targetAfterCell = buildTargetName;
-    if (buildTargetName.contains(BUILD_RULE_PREFIX)
-        && !buildTargetName.startsWith(BUILD_RULE_PREFIX)) {
-      int slashIndex = buildTargetName.indexOf(BUILD_RULE_PREFIX);
+    int targetStart = 0;
+    int slashIndex = buildTargetName.indexOf(BUILD_RULE_PREFIX);
+    if (slashIndex > 0) {
       givenCellName = Optional.of(buildTargetName.substring(0, slashIndex));
-      targetAfterCell = buildTargetName.substring(slashIndex);
+      targetStart = slashIndex;
     }
 
     if (givenCellName.isPresent() && givenCellName.get().isEmpty()) {
       throw new BuildTargetParseException("Cell name must not be empty.");
     }
 
-    List<String> parts = BUILD_RULE_SEPARATOR_SPLITTER.splitToList(targetAfterCell);
-    if (parts.size() != 2) {
+    int colonIndex = buildTargetName.indexOf(BUILD_RULE_SEPARATOR, targetStart);
+    if (colonIndex == -1
+        || buildTargetName.indexOf(BUILD_RULE_SEPARATOR, colonIndex + 1) != -1) {
+      int colons = 0;
+      for (int i = targetStart; i < buildTargetName.length(); i++) {
+        if (buildTargetName.charAt(i) == ':') {
+          colons++;
+        }
+      }
       throw new BuildTargetParseException(
-          String.format(
-              "%s must contain exactly one colon (found %d)", buildTargetName, parts.size() - 1));
+          String.format("%s must contain exactly one colon (found %d)", buildTargetName, colons));
     }
 
     String baseName =
-        parts.get(0).isEmpty() ? buildTargetPatternParser.getBaseName() : parts.get(0);
-    String shortName = parts.get(1);
-    Iterable<String> flavorNames = new HashSet<>();
+        colonIndex == targetStart
+            ? contextBaseName
+            : buildTargetName.substring(targetStart, colonIndex);
+    String shortName = buildTargetName.substring(colonIndex + 1);
+    Iterable<String> flavorNames = ImmutableSet.of();
     int hashIndex = shortName.indexOf('#');
     if (hashIndex != -1 && hashIndex < shortName.length()) {
       flavorNames = flavorParser.parseFlavorString(shortName.substring(hashIndex + 1));
@@ -122,10 +138,9 @@ public class BuildTargetParser {
             .setCell(cellNames.getCanonicalCellName(cellPath));
 
     UnflavoredBuildTarget unflavoredBuildTarget = unflavoredBuilder.build();
-    return flavoredTargetCache.intern(
-        BuildTarget.of(
-            unflavoredBuildTarget,
-            RichStream.from(flavorNames).map(InternalFlavor::of).toImmutableSet()));
+    return BuildTarget.of(
+        unflavoredBuildTarget,
+        RichStream.from(flavorNames).map(InternalFlavor::of).toImmutableSet());
   }
 
   protected static void checkBaseName(String baseName, String buildTargetName) {
@@ -136,26 +151,65 @@ public class BuildTargetParser {
       throw new BuildTargetParseException(
           String.format("Path in %s must start with %s", buildTargetName, BUILD_RULE_PREFIX));
     }
-    String baseNamePath = baseName.substring(BUILD_RULE_PREFIX.length());
-    if (baseNamePath.startsWith("/")) {
+    if (baseName.startsWith("/", BUILD_RULE_PREFIX.length())) {
       throw new BuildTargetParseException(
           String.format(
               "Build target path should start with an optional cell name, then // and then a "
                   + "relative directory name, not an absolute directory path (found %s)",
               buildTargetName));
     }
-    for (String baseNamePart : Splitter.on('/').split(baseNamePath)) {
-      if ("".equals(baseNamePart)) {
+    // Check each part between slashes without splitting the path into new strings.
+    for (int partStart = BUILD_RULE_PREFIX.length(); partStart <= baseName.length(); ) {
+      int partEnd = baseName.indexOf('/', partStart);
+      if (partEnd == -1) {
+        partEnd = baseName.length();
+      }
+      int partLength = partEnd - partStart;
+      if (partLength == 0) {
         throw new BuildTargetParseException(
             String.format(
                 "Build target path cannot contain // other than at the start "
                     + "(or after a cell name) (found %s)",
                 buildTargetName));
       }
-      if (INVALID_BASE_NAME_PARTS.contains(baseNamePart)) {
+      if (baseName.charAt(partStart) == '.'
+          && (partLength == 1 || (partLength == 2 && baseName.charAt(partStart + 1) == '.'))) {
         throw new BuildTargetParseException(
             String.format("Build target path cannot contain . or .. (found %s)", buildTargetName));
       }
+      partStart = partEnd + 1;
+    }
+  }
+
+  /** Everything about a call to {@link #parse} which the parsed target depends on. */
+  private static final class CacheKey {
+    private final String buildTargetName;
+    private final String baseName;
+    private final boolean wildCardAllowed;
+    private final int hashCode;
+
+    CacheKey(String buildTargetName, String baseName, boolean wildCardAllowed) {
+      this.buildTargetName = buildTargetName;
+      this.baseName = baseName;
+      this.wildCardAllowed = wildCardAllowed;
+      this.hashCode = Objects.hash(buildTargetName, baseName, wildCardAllowed);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof CacheKey)) {
+        return false;
+      }
+      CacheKey that = (CacheKey) obj;
+      return hashCode == that.hashCode
+          && wildCardAllowed == that.wildCardAllowed
+          && buildTargetName.equals(that.buildTargetName)
+          && baseName.equals(that.baseName);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
     }
   }
 }
@@ -25,11 +25,15 @@ import com.facebook.buck.rules.CellPathResolver;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import java.nio.file.Path;
+import java.util.Objects;
 import java.util.Optional;
 
 /**
  * Context for parsing build target names. Fully-qualified target names are parsed the same
  * regardless of the context.
+ *
+ * <p>Parsed patterns are remembered across parsers of the same class and base name, so subclasses
+ * must create them from their arguments alone.
  */
 public abstract class BuildTargetPatternParser<T> {
 
@@ -37,6 +41,13 @@ public abstract class BuildTargetPatternParser<T> {
   private static final String WILDCARD_BUILD_RULE_SUFFIX = "...";
   private static final String BUILD_RULE_SEPARATOR = ":";
 
+  // Bound the parsed patterns remembered for each cell, as a daemon may see many over its lifetime.
+  private static final long MAX_CACHED_PATTERNS_PER_CELL = 10_000;
+
+  // Shared by all parsers, as most are created for a single build file or command.
+  private static final ParseCache<CacheKey, Object> cache =
+      new ParseCache<>(MAX_CACHED_PATTERNS_PER_CELL);
+
   private final String baseName;
 
   protected BuildTargetPatternParser(String baseName) {
@@ -58,9 +69,21 @@ public abstract class BuildTargetPatternParser<T> {
    * parseContext is expected to be {@link BuildTargetPatternParser#forVisibilityArgument()}.
    */
   public final T parse(CellPathResolver cellNames, String buildTargetPattern) {
+    @SuppressWarnings("unchecked")
+    T pattern =
+        (T)
+            cache.get(
+                cellNames,
+                new CacheKey(getClass(), baseName, buildTargetPattern),
+                () -> parseUncached(cellNames, buildTargetPattern));
+    return pattern;
+  }
+
+  private T parseUncached(CellPathResolver cellNames, String buildTargetPattern) {
     Preconditions.checkArgument(
         buildTargetPattern.contains(BUILD_RULE_PREFIX),
-        String.format("'%s' must start with '//' or a cell followed by '//'", buildTargetPattern));
+        "'%s' must start with '//' or a cell followed by '//'",
+        buildTargetPattern);
 
     if (buildTargetPattern.endsWith("/" + WILDCARD_BUILD_RULE_SUFFIX)) {
       return createWildCardPattern(cellNames, buildTargetPattern);
@@ -193,4 +216,36 @@ public abstract class BuildTargetPatternParser<T> {
       return true;
     }
   }
+
+  /** Everything about a call to {@link #parse} which the parsed pattern depends on. */
+  private static final class CacheKey {
+    private final Class<?> parserClass;
+    private final String baseName;
+    private final String buildTargetPattern;
+    private final int hashCode;
+
+    CacheKey(Class<?> parserClass, String baseName, String buildTargetPattern) {
+      this.parserClass = parserClass;
+      this.baseName = baseName;
+      this.buildTargetPattern = buildTargetPattern;
+      this.hashCode = Objects.hash(parserClass, baseName, buildTargetPattern);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof CacheKey)) {
+        return false;
+      }
+      CacheKey that = (CacheKey) obj;
+      return hashCode == that.hashCode
+          && parserClass.equals(that.parserClass)
+          && baseName.equals(that.baseName)
+          && buildTargetPattern.equals(that.buildTargetPattern);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
 }
@@ -16,9 +16,11 @@
 
 package com.facebook.buck.parser;
 
+import com.facebook.buck.cli.BuckConfig;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetException;
+import com.facebook.buck.model.Pair;
 import com.facebook.buck.model.UnflavoredBuildTarget;
 import com.facebook.buck.parser.thrift.BuildFileEnvProperty;
 import com.facebook.buck.parser.thrift.RemoteDaemonicCellState;
@@ -99,6 +101,17 @@ class DaemonicCellState {
   @GuardedBy("rawAndComputedNodesLock")
   private final Map<Path, ImmutableMap<String, Optional<String>>> buildFileEnv;
 
+  // The value of each configuration setting read with `read_config`, by section and field, and the
+  // build files which read it, so that a change only invalidates those build files.
+  @GuardedBy("rawAndComputedNodesLock")
+  private final Map<Pair<String, String>, Optional<String>> usedConfigs;
+
+  @GuardedBy("rawAndComputedNodesLock")
+  private final SetMultimap<Pair<String, String>, Path> configDependents;
+
+  // The configuration the used settings were last compared with.
+  private final AtomicReference<BuckConfig> checkedBuckConfig;
+
   @GuardedBy("rawAndComputedNodesLock")
   private final ConcurrentMapCache<Path, ImmutableSet<Map<String, Object>>> allRawNodes;
   // Tracks all targets in `allRawNodes`.  Used to verify that every target in `allComputedNodes`
@@ -120,6 +133,9 @@ class DaemonicCellState {
     this.buildFileDependents = HashMultimap.create();
     this.targetsCornucopia = HashMultimap.create();
     this.buildFileEnv = new HashMap<>();
+    this.usedConfigs = new HashMap<>();
+    this.configDependents = HashMultimap.create();
+    this.checkedBuckConfig = new AtomicReference<>(cell.getBuckConfig());
     this.allRawNodes = new ConcurrentMapCache<>(parsingThreads);
     this.allRawNodeTargets = new HashSet<>();
     this.typedNodeCaches = Maps.newConcurrentMap();
@@ -166,7 +182,8 @@ class DaemonicCellState {
       final Path buildFile,
       final ImmutableSet<Map<String, Object>> withoutMetaIncludes,
       final ImmutableSet<Path> dependentsOfEveryNode,
-      ImmutableMap<String, Optional<String>> env) {
+      ImmutableMap<String, Optional<String>> env,
+      ImmutableMap<Pair<String, String>, Optional<String>> configs) {
     try (AutoCloseableLock writeLock = rawAndComputedNodesLock.writeLock()) {
       ImmutableSet<Map<String, Object>> updated =
           allRawNodes.putIfAbsentAndGet(buildFile, withoutMetaIncludes);
@@ -182,6 +199,10 @@ class DaemonicCellState {
         for (Path dependent : dependentsOfEveryNode) {
           buildFileDependents.put(dependent, buildFile);
         }
+        for (Map.Entry<Pair<String, String>, Optional<String>> config : configs.entrySet()) {
+          usedConfigs.put(config.getKey(), config.getValue());
+          configDependents.put(config.getKey(), buildFile);
+        }
       }
       return updated;
     }
@@ -252,6 +273,46 @@ class DaemonicCellState {
     return Optional.empty();
   }
 
+  /**
+   * Invalidates the build files which read a configuration setting whose value differs in the
+   * configuration of {@code cell}.
+   *
+   * @return the changed settings, as "section.field".
+   */
+  ImmutableSet<String> invalidateIfBuckConfigHasChanged(Cell cell) {
+    BuckConfig buckConfig = cell.getBuckConfig();
+    if (checkedBuckConfig.get() == buckConfig) {
+      return ImmutableSet.of();
+    }
+    try (AutoCloseableLock writeLock = rawAndComputedNodesLock.writeLock()) {
+      if (checkedBuckConfig.get() == buckConfig) {
+        return ImmutableSet.of();
+      }
+      // The parser is given the raw configuration, so compare with that.
+      ImmutableMap<String, ImmutableMap<String, String>> rawConfig =
+          buckConfig.getRawConfigForParser();
+      ImmutableSet.Builder<String> changedConfigs = ImmutableSet.builder();
+      for (Map.Entry<Pair<String, String>, Optional<String>> config :
+          ImmutableList.copyOf(usedConfigs.entrySet())) {
+        Pair<String, String> key = config.getKey();
+        Optional<String> value =
+            Optional.ofNullable(
+                rawConfig.getOrDefault(key.getFirst(), ImmutableMap.of()).get(key.getSecond()));
+        if (!value.equals(config.getValue())) {
+          LOG.verbose(
+              "invalidating for config change: %s (%s != %s)", key, value, config.getValue());
+          usedConfigs.remove(key);
+          for (Path buildFile : configDependents.removeAll(key)) {
+            invalidatePath(buildFile);
+          }
+          changedConfigs.add(key.getFirst() + "." + key.getSecond());
+        }
+      }
+      checkedBuckConfig.set(buckConfig);
+      return changedConfigs.build();
+    }
+  }
+
   private Map<String, String> getAllRawNodesForSerialisation() throws IOException {
     Map<String, String> result = new HashMap<>();
     Path root = getCellRoot();
@@ -28,6 +28,7 @@ import com.facebook.buck.model.BuildFileTree;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetException;
 import com.facebook.buck.model.FilesystemBackedBuildFileTree;
+import com.facebook.buck.model.Pair;
 import com.facebook.buck.parser.thrift.RemoteDaemonicCellState;
 import com.facebook.buck.parser.thrift.RemoteDaemonicParserState;
 import com.facebook.buck.rules.Cell;
@@ -88,6 +89,7 @@ public class DaemonicParserState {
 
   private static final String COUNTER_CATEGORY = "buck_parser_state";
   private static final String INVALIDATED_BY_ENV_VARS_COUNTER_NAME = "invalidated_by_env_vars";
+  private static final String INVALIDATED_BY_CONFIGS_COUNTER_NAME = "invalidated_by_configs";
   private static final String INVALIDATED_BY_DEFAULT_INCLUDES_COUNTER_NAME =
       "invalidated_by_default_includes";
   private static final String INVALIDATED_BY_WATCH_OVERFLOW_COUNTER_NAME =
@@ -207,6 +209,7 @@ public class DaemonicParserState {
           ImmutableSet.builder();
       ImmutableSet.Builder<Path> dependentsOfEveryNode = ImmutableSet.builder();
       ImmutableMap<String, Optional<String>> env = ImmutableMap.of();
+      ImmutableMap.Builder<Pair<String, String>, Optional<String>> configs = ImmutableMap.builder();
       for (Map<String, Object> rawNode : rawNodes) {
         if (rawNode.containsKey(INCLUDES_META_RULE)) {
           for (String path :
@@ -214,6 +217,16 @@ public class DaemonicParserState {
             dependentsOfEveryNode.add(cell.getFilesystem().resolve(path));
           }
         } else if (rawNode.containsKey(CONFIGS_META_RULE)) {
+          for (Map.Entry<String, Map<String, String>> section :
+              Preconditions.checkNotNull(
+                      (Map<String, Map<String, String>>) rawNode.get(CONFIGS_META_RULE))
+                  .entrySet()) {
+            for (Map.Entry<String, String> field : section.getValue().entrySet()) {
+              configs.put(
+                  new Pair<>(section.getKey(), field.getKey()),
+                  Optional.ofNullable(field.getValue()));
+            }
+          }
         } else if (rawNode.containsKey(ENV_META_RULE)) {
           env =
               ImmutableMap.copyOf(
@@ -234,22 +247,19 @@ public class DaemonicParserState {
       Iterable<String> defaultIncludes =
           buckConfig.getView(ParserConfig.class).getDefaultIncludes();
       for (String include : defaultIncludes) {
-        // Default includes are given as "//path/to/file". They look like targets
-        // but they are not. However, I bet someone will try and treat it like a
-        // target, so find the owning cell if necessary, and then fully resolve
-        // the path against the owning cell's root.
-        Preconditions.checkState(include.startsWith("//"));
-        dependentsOfEveryNode.add(cell.getFilesystem().resolve(include.substring(2)));
+        // An include of an unknown cell would have failed the parse.
+        resolveDefaultInclude(cell, include).ifPresent(dependentsOfEveryNode::add);
       }
 
       return getOrCreateCellState(cell)
           .putRawNodesIfNotPresentAndStripMetaEntries(
-              buildFile, withoutMetaIncludes, dependentsOfEveryNode.build(), env);
+              buildFile, withoutMetaIncludes, dependentsOfEveryNode.build(), env, configs.build());
     }
   }
 
   private final TypeCoercerFactory typeCoercerFactory;
   private final TagSetCounter cacheInvalidatedByEnvironmentVariableChangeCounter;
+  private final TagSetCounter cacheInvalidatedByConfigChangeCounter;
   private final IntegerCounter cacheInvalidatedByDefaultIncludesChangeCounter;
   private final IntegerCounter cacheInvalidatedByWatchOverflowCounter;
   private final IntegerCounter buildFilesInvalidatedByFileAddOrRemoveCounter;
@@ -275,7 +285,7 @@ public class DaemonicParserState {
 
   /**
    * The default includes used by the previous run of the parser in each cell (the key is the cell's
-   * root path). If this value changes, then we need to invalidate all the caches.
+   * root path). If this value changes, then we need to invalidate the build files parsed with them.
    */
   @GuardedBy("cachedStateLock")
   private Map<Path, Iterable<String>> cachedIncludes;
@@ -294,6 +304,8 @@ public class DaemonicParserState {
     this.cacheInvalidatedByEnvironmentVariableChangeCounter =
         new TagSetCounter(
             COUNTER_CATEGORY, INVALIDATED_BY_ENV_VARS_COUNTER_NAME, ImmutableMap.of());
+    this.cacheInvalidatedByConfigChangeCounter =
+        new TagSetCounter(COUNTER_CATEGORY, INVALIDATED_BY_CONFIGS_COUNTER_NAME, ImmutableMap.of());
     this.cacheInvalidatedByDefaultIncludesChangeCounter =
         new IntegerCounter(
             COUNTER_CATEGORY, INVALIDATED_BY_DEFAULT_INCLUDES_COUNTER_NAME, ImmutableMap.of());
@@ -528,8 +540,14 @@ public class DaemonicParserState {
       // Keep track of any invalidations.
       boolean hasInvalidated = false;
 
-      // Currently, if `.buckconfig` settings change, we restart the entire daemon, meaning checking
-      // for `.buckconfig`-based invalidations is redundant.
+      // A change to the `.buckconfig` of the root cell restarts the daemon, but those of other
+      // cells do not. Invalidate the build files which read a setting that has since changed.
+      ImmutableSet<String> configChanges = state.invalidateIfBuckConfigHasChanged(cell);
+      if (!configChanges.isEmpty()) {
+        hasInvalidated = true;
+        LOG.warn("Invalidating cache on config change (%s)", configChanges);
+        cacheInvalidatedByConfigChangeCounter.addAll(configChanges);
+      }
 
       // Invalidate based on env vars.
       Optional<MapDifference<String, String>> envDiff =
@@ -573,7 +591,14 @@ public class DaemonicParserState {
     try (AutoCloseableLock writeLock = cachedStateLock.writeLock()) {
       cachedIncludes.put(cell.getRoot(), defaultIncludes);
     }
-    if (invalidateCellCaches(cell) && invalidatedByDefaultIncludesChange) {
+    boolean invalidated;
+    if (expected == null || Iterables.isEmpty(expected)) {
+      // Nothing records which build files were parsed without default includes.
+      invalidated = invalidateCellCaches(cell);
+    } else {
+      invalidated = invalidateDependentsOfDefaultIncludes(cell, expected);
+    }
+    if (invalidated && invalidatedByDefaultIncludesChange) {
       LOG.warn(
           "Invalidating cache on default includes change (%s != %s)", expected, defaultIncludes);
       cacheInvalidatedByDefaultIncludesChangeCounter.inc();
@@ -581,6 +606,50 @@ public class DaemonicParserState {
     return true;
   }
 
+  /**
+   * Invalidates the build files which were parsed with {@code defaultIncludes}, keeping the rest of
+   * the state of the cell.
+   */
+  private boolean invalidateDependentsOfDefaultIncludes(
+      Cell cell, Iterable<String> defaultIncludes) {
+    DaemonicCellState state = getCellState(cell);
+    if (state == null) {
+      return false;
+    }
+    int invalidatedNodes = 0;
+    for (String include : defaultIncludes) {
+      Optional<Path> path = resolveDefaultInclude(cell, include);
+      if (!path.isPresent()) {
+        // The cell it was in is no longer known, so we cannot tell which build files used it.
+        return invalidateCellCaches(cell);
+      }
+      invalidatedNodes += state.invalidatePath(path.get());
+    }
+    return invalidatedNodes > 0;
+  }
+
+  /**
+   * Resolves a default include of {@code cell} the way {@code buck.py} does. Default includes are
+   * given as "//path/to/file" or "cellname//path/to/file". They look like targets, but they are
+   * not.
+   *
+   * @return the absolute path of the include, or {@link Optional#empty()} if it names a cell
+   *     unknown to {@code cell}.
+   */
+  static Optional<Path> resolveDefaultInclude(Cell cell, String include) {
+    int separator = include.indexOf("//");
+    Preconditions.checkState(separator >= 0, "Default include %s has no //", include);
+    String cellName = include.substring(0, separator);
+    Path cellRoot =
+        cellName.isEmpty()
+            ? cell.getRoot()
+            : cell.getCellPathResolver().getCellPaths().get(cellName);
+    if (cellRoot == null) {
+      return Optional.empty();
+    }
+    return Optional.of(cellRoot.resolve(include.substring(separator + 2)).normalize());
+  }
+
   public boolean invalidateCellCaches(Cell cell) {
     LOG.debug("Starting to invalidate caches for %s..", cell.getRoot());
     try (AutoCloseableLock writeLock = cellStateLock.writeLock()) {
@@ -614,6 +683,7 @@ public class DaemonicParserState {
   public ImmutableList<Counter> getCounters() {
     return ImmutableList.of(
         cacheInvalidatedByEnvironmentVariableChangeCounter,
+        cacheInvalidatedByConfigChangeCounter,
         cacheInvalidatedByDefaultIncludesChangeCounter,
         cacheInvalidatedByWatchOverflowCounter,
         buildFilesInvalidatedByFileAddOrRemoveCounter,
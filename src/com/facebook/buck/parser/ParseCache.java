@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.facebook.buck.rules.CellPathResolver;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the results of parsing target names and patterns, which are parsed again and again
+ * from build files, visibility arguments and the command line.
+ *
+ * <p>Cell names resolve differently in each cell, so results are kept separately for each {@link
+ * CellPathResolver}, and dropped along with it. Failed parses are not remembered.
+ */
+class ParseCache<K, V> {
+
+  private final LoadingCache<CellPathResolver, Cache<K, V>> caches;
+
+  ParseCache(long maximumSizePerCell) {
+    this.caches =
+        CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(
+                CacheLoader.from(
+                    () -> CacheBuilder.newBuilder().maximumSize(maximumSizePerCell).build()));
+  }
+
+  V get(CellPathResolver cellNames, K key, Supplier<V> parse) {
+    Cache<K, V> cache = caches.getUnchecked(cellNames);
+    V value = cache.getIfPresent(key);
+    if (value == null) {
+      value = parse.get();
+      cache.put(key, value);
+    }
+    return value;
+  }
+}
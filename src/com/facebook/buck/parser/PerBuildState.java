@@ -51,6 +51,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class PerBuildState implements AutoCloseable {
@@ -116,11 +117,24 @@ public class PerBuildState implements AutoCloseable {
         new ProjectBuildFileParserPool(
             numParsingThreads, // Max parsers to create per cell.
             input -> createBuildFileParser(input),
-            enableProfiling);
+            enableProfiling,
+            parserConfig.getEnableAdaptiveParserPool()
+                ? Optional.of(
+                    new ProjectBuildFileParserPool.AdaptiveSizing(
+                        eventBus,
+                        parserConfig.getParserPoolMemoryBudgetBytes(),
+                        TimeUnit.MILLISECONDS.toNanos(parserConfig.getParserPoolIdleTimeoutMs())))
+                : Optional.empty());
 
     this.rawNodeParsePipeline =
         new RawNodeParsePipeline(
-            parser.getPermState().getRawNodeCache(), projectBuildFileParserPool, executorService);
+            parser.getPermState().getRawNodeCache(),
+            projectBuildFileParserPool,
+            executorService,
+            parserConfig.getEnablePersistentRawNodeCache()
+                ? Optional.of(
+                    new PersistentRawNodeCache(parser.getPermState().getTypeCoercerFactory()))
+                : Optional.empty());
     this.targetNodeParsePipeline =
         new TargetNodeParsePipeline(
             parser.getPermState().getOrCreateNodeCache(TargetNode.class),
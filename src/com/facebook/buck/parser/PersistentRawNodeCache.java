@@ -0,0 +1,286 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.facebook.buck.io.ExecutableFinder;
+import com.facebook.buck.io.MorePaths;
+import com.facebook.buck.io.PathOrGlobMatcher;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.io.Watchman;
+import com.facebook.buck.json.BuildFilePythonResultDeserializer;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuckVersion;
+import com.facebook.buck.rules.BuckPyFunction;
+import com.facebook.buck.rules.Cell;
+import com.facebook.buck.rules.Description;
+import com.facebook.buck.rules.coercer.CoercedTypeCache;
+import com.facebook.buck.rules.coercer.TypeCoercerFactory;
+import com.facebook.buck.util.ObjectMappers;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the raw nodes returned by the build file parser on disk, so that build files which have not
+ * changed since are not evaluated again by a new daemon, or by a build without one.
+ *
+ * <p>Raw nodes are stored per build file, including the meta rules listing the files it included
+ * and the environment variables it read. They are only reused when the configuration and parser
+ * settings of the cell, the contents of the build file and of every file it included, the values of
+ * the environment variables it read, and the files in its package, which globs may have matched,
+ * are all unchanged.
+ */
+class PersistentRawNodeCache {
+
+  private static final Logger LOG = Logger.get(PersistentRawNodeCache.class);
+
+  // Bump this whenever the layout of the files changes.
+  private static final int FORMAT_VERSION = 2;
+
+  private static final String INCLUDES_META_RULE = "__includes";
+  private static final String ENV_META_RULE = "__env";
+
+  private final TypeCoercerFactory typeCoercerFactory;
+
+  // The hash of everything about a cell which may affect how its build files are parsed, by cell
+  // root.
+  private final ConcurrentMap<Path, HashCode> settingsHashes = new ConcurrentHashMap<>();
+
+  PersistentRawNodeCache(TypeCoercerFactory typeCoercerFactory) {
+    this.typeCoercerFactory = typeCoercerFactory;
+  }
+
+  /** @return the stored raw nodes of {@code buildFile}, if they are still valid. */
+  Optional<ImmutableSet<Map<String, Object>>> lookup(Cell cell, Path buildFile) {
+    Path storePath = getStorePath(cell, buildFile);
+    try (DataInputStream input =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(storePath)))) {
+      if (input.readInt() != FORMAT_VERSION
+          || !input.readUTF().equals(getSettingsHash(cell).toString())
+          || !input.readUTF().equals(cell.getRoot().relativize(buildFile).toString())
+          || !input.readUTF().equals(hashPackageFiles(cell, buildFile).toString())) {
+        return Optional.empty();
+      }
+      int includes = input.readInt();
+      for (int i = 0; i < includes; i++) {
+        Path include = cell.getFilesystem().resolve(input.readUTF());
+        String hash = input.readUTF();
+        if (!Files.isRegularFile(include)
+            || !hash.equals(cell.getFilesystem().computeSha1(include).toString())) {
+          return Optional.empty();
+        }
+      }
+      byte[] json = new byte[input.readInt()];
+      input.readFully(json);
+      // Read the nodes into the same types as those the parser returns.
+      List<Map<String, Object>> rawNodes =
+          BuildFilePythonResultDeserializer.deserializeValues(json);
+
+      ImmutableMap<String, String> environment = cell.getBuckConfig().getEnvironment();
+      for (Map<String, Object> rawNode : rawNodes) {
+        if (rawNode.containsKey(ENV_META_RULE)) {
+          @SuppressWarnings("unchecked")
+          Map<String, String> usedEnv = (Map<String, String>) rawNode.get(ENV_META_RULE);
+          for (Map.Entry<String, String> entry : usedEnv.entrySet()) {
+            if (!Objects.equals(entry.getValue(), environment.get(entry.getKey()))) {
+              return Optional.empty();
+            }
+          }
+        }
+      }
+      LOG.verbose("using stored raw nodes of %s", buildFile);
+      return Optional.of(ImmutableSet.copyOf(rawNodes));
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    } catch (IOException | RuntimeException e) {
+      LOG.warn(e, "could not read stored raw nodes of %s", buildFile);
+      return Optional.empty();
+    }
+  }
+
+  /** Stores the raw nodes, including meta rules, returned by the parser for {@code buildFile}. */
+  void store(Cell cell, Path buildFile, ImmutableSet<Map<String, Object>> rawNodes) {
+    ProjectFilesystem filesystem = cell.getFilesystem();
+    Path storePath = getStorePath(cell, buildFile);
+    try {
+      // The build file is listed as one of its own includes, but default includes are not.
+      List<String> includes = new ArrayList<>();
+      for (Map<String, Object> rawNode : rawNodes) {
+        if (rawNode.containsKey(INCLUDES_META_RULE)) {
+          @SuppressWarnings("unchecked")
+          List<String> paths = (List<String>) rawNode.get(INCLUDES_META_RULE);
+          includes.addAll(paths);
+        }
+      }
+      for (String include : cell.getBuckConfig().getView(ParserConfig.class).getDefaultIncludes()) {
+        DaemonicParserState.resolveDefaultInclude(cell, include)
+            .ifPresent(path -> includes.add(path.toString()));
+      }
+
+      Files.createDirectories(storePath.getParent());
+      Path tmp =
+          Files.createTempFile(storePath.getParent(), storePath.getFileName().toString(), "");
+      try {
+        try (DataOutputStream output =
+            new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+          output.writeInt(FORMAT_VERSION);
+          output.writeUTF(getSettingsHash(cell).toString());
+          output.writeUTF(cell.getRoot().relativize(buildFile).toString());
+          output.writeUTF(hashPackageFiles(cell, buildFile).toString());
+          output.writeInt(includes.size());
+          for (String include : includes) {
+            output.writeUTF(include);
+            output.writeUTF(filesystem.computeSha1(filesystem.resolve(include)).toString());
+          }
+          byte[] json =
+              ObjectMappers.WRITER.writeValueAsBytes(ImmutableMap.of("values", rawNodes.asList()));
+          output.writeInt(json.length);
+          output.write(json);
+        }
+        Files.move(
+            tmp, storePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    } catch (IOException e) {
+      LOG.warn(e, "could not store raw nodes of %s", buildFile);
+    }
+  }
+
+  private Path getStorePath(Cell cell, Path buildFile) {
+    return cell.getFilesystem()
+        .resolve(cell.getFilesystem().getBuckPaths().getParserCacheDir())
+        .resolve(
+            Hashing.sha1()
+                .hashString(cell.getRoot().relativize(buildFile).toString(), UTF_8)
+                .toString());
+  }
+
+  private HashCode getSettingsHash(Cell cell) {
+    return settingsHashes.computeIfAbsent(
+        cell.getRoot(),
+        root -> {
+          Hasher hasher = Hashing.sha1().newHasher();
+          hasher.putString(BuckVersion.getVersion(), UTF_8);
+          hasher.putString(root.toString(), UTF_8);
+          hashParserSettings(cell, hasher);
+          for (Map.Entry<String, ImmutableMap<String, String>> section :
+              ImmutableSortedMap.copyOf(cell.getBuckConfig().getConfig().getSectionToEntries())
+                  .entrySet()) {
+            for (Map.Entry<String, String> field :
+                ImmutableSortedMap.copyOf(section.getValue()).entrySet()) {
+              hasher.putString(section.getKey(), UTF_8);
+              hasher.putString(field.getKey(), UTF_8);
+              hasher.putString(field.getValue(), UTF_8);
+            }
+          }
+          return hasher.hash();
+        });
+  }
+
+  /**
+   * Hashes the settings the build file parser of {@code cell} is created with which do not come
+   * from its configuration. This mirrors {@link Cell#createBuildFileParser}.
+   */
+  private void hashParserSettings(Cell cell, Hasher hasher) {
+    ParserConfig parserConfig = cell.getBuckConfig().getView(ParserConfig.class);
+    hasher.putString(parserConfig.getPythonInterpreter(new ExecutableFinder()), UTF_8);
+    for (Map.Entry<String, Path> cellPath :
+        ImmutableSortedMap.copyOf(cell.getCellPathResolver().getCellPaths()).entrySet()) {
+      hasher.putString(cellPath.getKey(), UTF_8);
+      hasher.putString(cellPath.getValue().toString(), UTF_8);
+    }
+    hasher.putString(cell.getCanonicalName().orElse(""), UTF_8);
+    for (PathOrGlobMatcher ignorePath : cell.getFilesystem().getIgnorePaths()) {
+      hasher.putString(ignorePath.getPathOrGlob(), UTF_8);
+    }
+    Watchman watchman = cell.getWatchman();
+    hasher.putBoolean(watchman.hasWildmatchGlob());
+    hasher.putBoolean(watchman.getCapabilities().contains(Watchman.Capability.GLOB_GENERATOR));
+    // The functions defining the rules, with their arguments and default values.
+    BuckPyFunction function = new BuckPyFunction(typeCoercerFactory, CoercedTypeCache.INSTANCE);
+    for (Description<?> description : cell.getAllDescriptions()) {
+      hasher.putString(
+          function.toPythonFunction(
+              Description.getBuildRuleType(description), description.getConstructorArgType()),
+          UTF_8);
+    }
+  }
+
+  /**
+   * Hashes the paths of the files in the package of {@code buildFile}, which are the ones its globs
+   * may match, leaving out those of nested packages. This mirrors how the daemon invalidates build
+   * files when files are added or removed.
+   */
+  private static HashCode hashPackageFiles(Cell cell, Path buildFile) throws IOException {
+    ProjectFilesystem filesystem = cell.getFilesystem();
+    String buildFileName = cell.getBuckConfig().getView(ParserConfig.class).getBuildFileName();
+    Path packageDir = filesystem.relativize(MorePaths.getParentOrEmpty(buildFile));
+    ImmutableSortedSet.Builder<String> files = ImmutableSortedSet.naturalOrder();
+    filesystem.walkRelativeFileTree(
+        packageDir,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            if (!dir.equals(packageDir)
+                && (filesystem.isIgnored(dir) || filesystem.isFile(dir.resolve(buildFileName)))) {
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (!filesystem.isIgnored(file)) {
+              files.add(MorePaths.pathWithUnixSeparators(packageDir.relativize(file)));
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    Hasher hasher = Hashing.sha1().newHasher();
+    for (String file : files.build()) {
+      hasher.putString(file, UTF_8);
+      hasher.putByte((byte) 0);
+    }
+    return hasher.hash();
+  }
+}
@@ -16,19 +16,27 @@
 
 package com.facebook.buck.parser;
 
+import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.json.ProjectBuildFileParser;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.rules.Cell;
 import com.facebook.buck.util.concurrent.ResourcePool;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multiset;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.concurrent.GuardedBy;
@@ -39,10 +47,16 @@ import javax.annotation.concurrent.GuardedBy;
  * <p>Parser instances are lazily created up till a fixed maximum. If more than max parser are
  * requested the associated 'requests' are queued up. As soon as a parser is returned it will be
  * used to satisfy the first pending request, otherwise it is "parked".
+ *
+ * <p>With {@link AdaptiveSizing}, each cell starts with a single parser, and the maximum is only a
+ * ceiling: a parser is added whenever requests are waiting for one and the resident memory of the
+ * parsers stays within budget, and parsers which stayed idle for a while are shut down.
  */
 class ProjectBuildFileParserPool implements AutoCloseable {
   private static final Logger LOG = Logger.get(ProjectBuildFileParserPool.class);
 
+  private static final long MEMORY_MEASUREMENT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
   private final int maxParsersPerCell;
 
   @GuardedBy("this")
@@ -51,6 +65,24 @@ class ProjectBuildFileParserPool implements AutoCloseable {
   private final Function<Cell, ProjectBuildFileParser> parserFactory;
   private final AtomicBoolean closing;
   private final boolean enableProfiler;
+  private final Optional<AdaptiveSizing> adaptiveSizing;
+
+  // Cells whose pool was last kept from growing by the memory budget, so it is reported only once.
+  @GuardedBy("this")
+  private final Set<Cell> cellsCappedByMemory;
+
+  @GuardedBy("this")
+  private Optional<Long> parserMemoryBytes = Optional.empty();
+
+  @GuardedBy("this")
+  private boolean parserMemoryMeasured;
+
+  @GuardedBy("this")
+  private long parserMemoryMeasuredNanos;
+
+  // Requests which have been scheduled and are not finished yet, by cell.
+  @GuardedBy("this")
+  private final Multiset<Cell> pendingRequests;
 
   /**
    * @param maxParsersPerCell maximum number of parsers to create for a single cell.
@@ -60,6 +92,19 @@ class ProjectBuildFileParserPool implements AutoCloseable {
       int maxParsersPerCell,
       Function<Cell, ProjectBuildFileParser> parserFactory,
       boolean enableProfiler) {
+    this(maxParsersPerCell, parserFactory, enableProfiler, Optional.empty());
+  }
+
+  /**
+   * @param maxParsersPerCell maximum number of parsers to create for a single cell.
+   * @param parserFactory function used to create a new parser.
+   * @param adaptiveSizing if present, how to size the pool of each cell to its load.
+   */
+  public ProjectBuildFileParserPool(
+      int maxParsersPerCell,
+      Function<Cell, ProjectBuildFileParser> parserFactory,
+      boolean enableProfiler,
+      Optional<AdaptiveSizing> adaptiveSizing) {
     Preconditions.checkArgument(maxParsersPerCell > 0);
 
     this.maxParsersPerCell = maxParsersPerCell;
@@ -67,6 +112,9 @@ class ProjectBuildFileParserPool implements AutoCloseable {
     this.parserFactory = parserFactory;
     this.closing = new AtomicBoolean(false);
     this.enableProfiler = enableProfiler;
+    this.adaptiveSizing = adaptiveSizing;
+    this.cellsCappedByMemory = new HashSet<>();
+    this.pendingRequests = HashMultiset.create();
   }
 
   /**
@@ -83,11 +131,119 @@ class ProjectBuildFileParserPool implements AutoCloseable {
       final ListeningExecutorService executorService) {
     Preconditions.checkState(!closing.get());
 
-    return getResourcePoolForCell(cell)
-        .scheduleOperationWithResource(
+    ResourcePool<ProjectBuildFileParser> pool = getResourcePoolForCell(cell);
+    if (adaptiveSizing.isPresent()) {
+      // Count the request before it is scheduled, so that the pool grows before it would wait.
+      requestStarted(cell, pool, adaptiveSizing.get());
+    }
+    ListenableFuture<ImmutableSet<Map<String, Object>>> result =
+        pool.scheduleOperationWithResource(
             parser ->
                 ImmutableSet.copyOf(parser.getAllRulesAndMetaRules(buildFile, processedBytes)),
             executorService);
+    if (adaptiveSizing.isPresent()) {
+      result.addListener(() -> requestFinished(cell), MoreExecutors.directExecutor());
+    }
+    return result;
+  }
+
+  private synchronized void requestStarted(
+      Cell cell, ResourcePool<ProjectBuildFileParser> pool, AdaptiveSizing sizing) {
+    pendingRequests.add(cell);
+    resizeResourcePool(cell, pool, sizing);
+  }
+
+  private synchronized void requestFinished(Cell cell) {
+    pendingRequests.remove(cell);
+  }
+
+  @GuardedBy("this")
+  private void resizeResourcePool(
+      Cell cell, ResourcePool<ProjectBuildFileParser> pool, AdaptiveSizing sizing) {
+    if (closing.get()) {
+      return;
+    }
+    int queuedRequests = Math.max(0, pendingRequests.count(cell) - pool.getMaxResources());
+    if (queuedRequests == 0) {
+      if (pool.retireIdleResources(sizing.idleNanos) > 0) {
+        sizing.eventBus.post(
+            ProjectBuildFileParserPoolEvent.of(
+                ProjectBuildFileParserPoolEvent.Decision.SHRUNK,
+                cell.getRoot(),
+                pool.getMaxResources(),
+                queuedRequests,
+                parserMemoryBytes));
+      }
+      return;
+    }
+
+    int maxParsers = pool.getMaxResources();
+    if (maxParsers >= maxParsersPerCell) {
+      return;
+    }
+    if (sizing.memoryBudgetBytes.isPresent()) {
+      measureParserMemory();
+      if (parserMemoryBytes.isPresent()
+          && parserMemoryBytes.get() * (getParserCount() + 1) > sizing.memoryBudgetBytes.get()) {
+        if (cellsCappedByMemory.add(cell)) {
+          sizing.eventBus.post(
+              ProjectBuildFileParserPoolEvent.of(
+                  ProjectBuildFileParserPoolEvent.Decision.CAPPED_BY_MEMORY,
+                  cell.getRoot(),
+                  maxParsers,
+                  queuedRequests,
+                  parserMemoryBytes));
+        }
+        return;
+      }
+    }
+    cellsCappedByMemory.remove(cell);
+    pool.setMaxResources(maxParsers + 1);
+    sizing.eventBus.post(
+        ProjectBuildFileParserPoolEvent.of(
+            ProjectBuildFileParserPoolEvent.Decision.GROWN,
+            cell.getRoot(),
+            maxParsers + 1,
+            queuedRequests,
+            parserMemoryBytes));
+  }
+
+  @GuardedBy("this")
+  private int getParserCount() {
+    int parsers = 0;
+    for (ResourcePool<ProjectBuildFileParser> pool : parserResourcePools.values()) {
+      parsers += pool.getCreatedResourceCount();
+    }
+    return parsers;
+  }
+
+  /**
+   * Updates the average resident memory of a parser, measuring the parsers of every cell at most
+   * once per interval since reading the memory of processes is not free.
+   */
+  @GuardedBy("this")
+  private void measureParserMemory() {
+    long now = System.nanoTime();
+    if (parserMemoryMeasured
+        && now - parserMemoryMeasuredNanos < MEMORY_MEASUREMENT_INTERVAL_NANOS) {
+      return;
+    }
+    parserMemoryMeasured = true;
+    parserMemoryMeasuredNanos = now;
+    long[] totalAndCount = new long[2];
+    for (ResourcePool<ProjectBuildFileParser> pool : parserResourcePools.values()) {
+      pool.callOnEachResource(
+          parser -> {
+            Optional<Long> residentMemory = parser.getResidentMemoryBytes();
+            if (residentMemory.isPresent()) {
+              totalAndCount[0] += residentMemory.get();
+              totalAndCount[1]++;
+            }
+          });
+    }
+    if (totalAndCount[1] > 0) {
+      parserMemoryBytes = Optional.of(totalAndCount[0] / totalAndCount[1]);
+    }
   }
 
   private synchronized ResourcePool<ProjectBuildFileParser> getResourcePoolForCell(Cell cell) {
@@ -95,7 +251,7 @@ class ProjectBuildFileParserPool implements AutoCloseable {
     if (pool == null) {
       pool =
           new ResourcePool<>(
-              maxParsersPerCell,
+              adaptiveSizing.isPresent() ? 1 : maxParsersPerCell,
               // If the Python process garbles the output stream then the bser codec doesn't always
               // recover and subsequent attempts at invoking the parser will fail.
               ResourcePool.ResourceUsageErrorPolicy.RETIRE,
@@ -139,4 +295,22 @@ class ProjectBuildFileParserPool implements AutoCloseable {
     }
     resourcePools.forEach(ResourcePool::close);
   }
+
+  /** How an adaptive pool grows and shrinks. */
+  public static class AdaptiveSizing {
+    private final BuckEventBus eventBus;
+    private final Optional<Long> memoryBudgetBytes;
+    private final long idleNanos;
+
+    /**
+     * @param eventBus where pool decisions are reported.
+     * @param memoryBudgetBytes if present, the resident memory the parsers of all cells may use.
+     * @param idleNanos how long a parser must stay unused before it is shut down.
+     */
+    public AdaptiveSizing(BuckEventBus eventBus, Optional<Long> memoryBudgetBytes, long idleNanos) {
+      this.eventBus = eventBus;
+      this.memoryBudgetBytes = memoryBudgetBytes;
+      this.idleNanos = idleNanos;
+    }
+  }
 }
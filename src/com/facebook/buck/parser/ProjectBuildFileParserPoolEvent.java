@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.facebook.buck.event.AbstractBuckEvent;
+import com.facebook.buck.event.EventKey;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/** Reports a decision of an adaptive {@link ProjectBuildFileParserPool} about its size. */
+public class ProjectBuildFileParserPoolEvent extends AbstractBuckEvent {
+
+  public enum Decision {
+    /** A parser was added, because parse requests were waiting for one. */
+    GROWN,
+    /** Idle parsers were shut down. */
+    SHRUNK,
+    /** No parser was added although parse requests were waiting, to stay within memory budget. */
+    CAPPED_BY_MEMORY,
+  }
+
+  private final Decision decision;
+  private final Path cellRoot;
+  private final int maxParsers;
+  private final int queuedRequests;
+  private final Optional<Long> parserMemoryBytes;
+
+  protected ProjectBuildFileParserPoolEvent(
+      EventKey eventKey,
+      Decision decision,
+      Path cellRoot,
+      int maxParsers,
+      int queuedRequests,
+      Optional<Long> parserMemoryBytes) {
+    super(eventKey);
+    this.decision = decision;
+    this.cellRoot = cellRoot;
+    this.maxParsers = maxParsers;
+    this.queuedRequests = queuedRequests;
+    this.parserMemoryBytes = parserMemoryBytes;
+  }
+
+  @Override
+  public String getValueString() {
+    return String.format(
+        "%s %s: %d parsers, %d queued requests, %s bytes per parser",
+        decision,
+        cellRoot,
+        maxParsers,
+        queuedRequests,
+        parserMemoryBytes.map(String::valueOf).orElse("unknown"));
+  }
+
+  @Override
+  public String getEventName() {
+    return "ProjectBuildFileParserPoolEvent";
+  }
+
+  public Decision getDecision() {
+    return decision;
+  }
+
+  public Path getCellRoot() {
+    return cellRoot;
+  }
+
+  /** @return the maximum number of parsers of the cell after the decision. */
+  public int getMaxParsers() {
+    return maxParsers;
+  }
+
+  public int getQueuedRequests() {
+    return queuedRequests;
+  }
+
+  /** @return the average resident memory of the parsers of all cells, when it was measured. */
+  public Optional<Long> getParserMemoryBytes() {
+    return parserMemoryBytes;
+  }
+
+  public static ProjectBuildFileParserPoolEvent of(
+      Decision decision,
+      Path cellRoot,
+      int maxParsers,
+      int queuedRequests,
+      Optional<Long> parserMemoryBytes) {
+    return new ProjectBuildFileParserPoolEvent(
+        EventKey.unique(), decision, cellRoot, maxParsers, queuedRequests, parserMemoryBytes);
+  }
+}
@@ -36,15 +36,25 @@ public class RawNodeParsePipeline extends ParsePipeline<Map<String, Object>> {
   private final PipelineNodeCache<Path, ImmutableSet<Map<String, Object>>> cache;
   private final ListeningExecutorService executorService;
   private final ProjectBuildFileParserPool projectBuildFileParserPool;
+  private final Optional<PersistentRawNodeCache> persistentCache;
 
   public RawNodeParsePipeline(
       Cache<Path, ImmutableSet<Map<String, Object>>> cache,
       ProjectBuildFileParserPool projectBuildFileParserPool,
       ListeningExecutorService executorService) {
+    this(cache, projectBuildFileParserPool, executorService, Optional.empty());
+  }
+
+  RawNodeParsePipeline(
+      Cache<Path, ImmutableSet<Map<String, Object>>> cache,
+      ProjectBuildFileParserPool projectBuildFileParserPool,
+      ListeningExecutorService executorService,
+      Optional<PersistentRawNodeCache> persistentCache) {
     super();
     this.executorService = executorService;
     this.cache = new PipelineNodeCache<>(cache);
     this.projectBuildFileParserPool = projectBuildFileParserPool;
+    this.persistentCache = persistentCache;
   }
 
   /**
@@ -95,8 +105,27 @@ public class RawNodeParsePipeline extends ParsePipeline<Map<String, Object>> {
             return Futures.immediateCancelledFuture();
           }
 
-          return projectBuildFileParserPool.getAllRulesAndMetaRules(
-              cell, buildFile, processedBytes, executorService);
+          if (!persistentCache.isPresent()) {
+            return projectBuildFileParserPool.getAllRulesAndMetaRules(
+                cell, buildFile, processedBytes, executorService);
+          }
+          PersistentRawNodeCache persistentCache = this.persistentCache.get();
+          return Futures.transformAsync(
+              executorService.submit(() -> persistentCache.lookup(cell, buildFile)),
+              storedRawNodes -> {
+                if (storedRawNodes.isPresent()) {
+                  return Futures.immediateFuture(storedRawNodes.get());
+                }
+                return Futures.transform(
+                    projectBuildFileParserPool.getAllRulesAndMetaRules(
+                        cell, buildFile, processedBytes, executorService),
+                    rawNodes -> {
+                      persistentCache.store(cell, buildFile, rawNodes);
+                      return rawNodes;
+                    },
+                    executorService);
+              },
+              executorService);
         });
   }
 
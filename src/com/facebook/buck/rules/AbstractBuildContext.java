@@ -19,6 +19,7 @@ package com.facebook.buck.rules;
 import com.facebook.buck.android.AndroidPlatformTarget;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.jvm.core.JavaPackageFinder;
+import com.facebook.buck.rules.modern.execution.ActionExecutor;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
 import com.google.common.base.Supplier;
 import java.nio.file.Path;
@@ -41,4 +42,13 @@ abstract class AbstractBuildContext {
   public Supplier<AndroidPlatformTarget> getAndroidPlatformTargetSupplier() {
     return AndroidPlatformTarget.EXPLODING_ANDROID_PLATFORM_TARGET_SUPPLIER;
   }
+
+  /**
+   * @return the executor of the actions of rules which run a single command, which only keeps
+   *     their results for the duration of the build.
+   */
+  @Value.Default
+  public ActionExecutor getActionExecutor() {
+    return ActionExecutor.local(0);
+  }
 }
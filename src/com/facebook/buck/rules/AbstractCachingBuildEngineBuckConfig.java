@@ -17,7 +17,10 @@ package com.facebook.buck.rules;
 
 import com.facebook.buck.cli.BuckConfig;
 import com.facebook.buck.config.ConfigView;
+import com.facebook.buck.rules.keys.RuleKeyHashFunction;
 import com.facebook.buck.util.immutables.BuckStyleTuple;
+import com.facebook.buck.util.unit.SizeUnit;
+import java.nio.file.Path;
 import java.util.Optional;
 import org.immutables.value.Value;
 
@@ -66,11 +69,66 @@ abstract class AbstractCachingBuildEngineBuckConfig implements ConfigView<BuckCo
     return getDelegate().getLong("build", "artifact_cache_size_limit");
   }
 
+  /**
+   * @return the maximum number of artifacts the build engine requests from the cache in a single
+   *     batched fetch. Batching is disabled when this is 1.
+   */
+  public int getBuildArtifactCacheFetchBatchSize() {
+    return getDelegate().getInteger("build", "artifact_cache_fetch_batch_size").orElse(1);
+  }
+
   /** @return the maximum size of files input based rule keys will be willing to hash. */
   public long getBuildInputRuleKeyFileSizeLimit() {
     return getDelegate().getLong("build", "input_rule_key_file_size_limit").orElse(Long.MAX_VALUE);
   }
 
+  /**
+   * @return the total size of the output files of actions whose results are kept in memory during
+   *     a build, so that identical actions only run once.
+   */
+  public long getActionCacheSize() {
+    return getDelegate()
+        .getValue("build", "action_cache_size")
+        .map(SizeUnit::parseBytes)
+        .orElse(64L * 1024 * 1024);
+  }
+
+  /** @return the hash function to compute rule keys with. */
+  public RuleKeyHashFunction getRuleKeyHashFunction() {
+    return getDelegate()
+        .getEnum("build", "rule_key_hash_function", RuleKeyHashFunction.class)
+        .orElse(RuleKeyHashFunction.SHA1);
+  }
+
+  /**
+   * @return the estimator of rule durations to prioritize rules on the critical path of the build
+   *     with, if rules should be prioritized at all, rather than started in the order they become
+   *     ready. Rules are estimated from their history when it is kept, and from their type
+   *     otherwise.
+   */
+  public Optional<BuildRuleDurationEstimator> getCriticalPathDurationEstimator() {
+    if (!getDelegate().getBooleanValue("build", "critical_path_scheduling", false)) {
+      return Optional.empty();
+    }
+    BuildRuleDurationEstimator estimator = new RuleTypeDurationEstimator();
+    Optional<Path> ruleHistoryPath = getRuleHistoryPath();
+    if (ruleHistoryPath.isPresent()) {
+      estimator = BuildRuleHistory.load(ruleHistoryPath.get()).asDurationEstimator(estimator);
+    }
+    return Optional.of(estimator);
+  }
+
+  /**
+   * @return the file in which to keep the history of how long build rules took and how large their
+   *     outputs were, if it should be kept at all.
+   */
+  public Optional<Path> getRuleHistoryPath() {
+    if (!getDelegate().getBooleanValue("build", "rule_history", false)) {
+      return Optional.empty();
+    }
+    return Optional.of(getDelegate().getRuleHistoryPath());
+  }
+
   public ResourceAwareSchedulingInfo getResourceAwareSchedulingInfo() {
     return ResourceAwareSchedulingInfo.of(
         getDelegate().isResourceAwareSchedulingEnabled(),
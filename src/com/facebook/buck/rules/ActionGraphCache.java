@@ -25,6 +25,7 @@ import com.facebook.buck.event.listener.BroadcastEventListener;
 import com.facebook.buck.graph.AbstractBottomUpTraversal;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.Pair;
+import com.facebook.buck.model.UnflavoredBuildTarget;
 import com.facebook.buck.parser.NoSuchBuildTargetException;
 import com.facebook.buck.rules.keys.ContentAgnosticRuleKeyFactory;
 import com.facebook.buck.rules.keys.RuleKeyFieldLoader;
@@ -32,34 +33,73 @@ import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.WatchmanOverflowEvent;
 import com.facebook.buck.util.WatchmanPathEvent;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.MapDifference;
 import com.google.common.collect.Maps;
 import com.google.common.eventbus.Subscribe;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import javax.annotation.Nullable;
 
 /**
  * Class that transforms {@link TargetGraph} to {@link ActionGraph}. It also holds a cache for the
- * last ActionGraph it generated.
+ * last ActionGraphs it generated.
  */
 public class ActionGraphCache {
   private static final Logger LOG = Logger.get(ActionGraphCache.class);
 
-  @Nullable private Pair<TargetGraph, ActionGraphAndResolver> lastActionGraph;
+  private final int maxEntries;
+  private final boolean incremental;
+  private final int threads;
+
+  // The cached action graphs, most recently used first.
+  private final LinkedList<CachedActionGraph> cachedActionGraphs = new LinkedList<>();
 
   @Nullable private HashCode lastTargetGraphHash;
 
   private BroadcastEventListener broadcastEventListener;
 
   public ActionGraphCache(BroadcastEventListener broadcastEventListener) {
+    this(broadcastEventListener, 1, false, 1);
+  }
+
+  /**
+   * @param maxEntries the number of action graphs to keep, so that alternating between commands
+   *     building different targets does not recreate the action graph each time.
+   * @param incremental whether to reuse the {@link BuildRule}s of the most recently used action
+   *     graph whose target nodes, and their transitive deps, have not changed, when creating a new
+   *     one.
+   * @param threads the number of threads creating the build rules of independent target nodes in
+   *     parallel. With a single thread, build rules are created on the calling thread.
+   */
+  public ActionGraphCache(
+      BroadcastEventListener broadcastEventListener,
+      int maxEntries,
+      boolean incremental,
+      int threads) {
+    Preconditions.checkArgument(maxEntries > 0);
+    Preconditions.checkArgument(threads > 0);
     this.broadcastEventListener = broadcastEventListener;
+    this.maxEntries = maxEntries;
+    this.incremental = incremental;
+    this.threads = threads;
   }
 
   /**
@@ -85,18 +125,19 @@ public class ActionGraphCache {
     ActionGraphAndResolver out;
     try {
       RuleKeyFieldLoader fieldLoader = new RuleKeyFieldLoader(keySeed);
-      if (lastActionGraph != null && lastActionGraph.getFirst().equals(targetGraph)) {
+      CachedActionGraph cached = getCachedActionGraph(targetGraph);
+      if (cached != null) {
         eventBus.post(ActionGraphEvent.Cache.hit());
         LOG.info("ActionGraph cache hit.");
         if (checkActionGraphs) {
-          compareActionGraphs(eventBus, lastActionGraph.getSecond(), targetGraph, fieldLoader);
+          compareActionGraphs(eventBus, cached.actionGraph, targetGraph, fieldLoader);
         }
-        out = lastActionGraph.getSecond();
+        out = cached.actionGraph;
       } else {
-        eventBus.post(ActionGraphEvent.Cache.miss(lastActionGraph == null));
+        eventBus.post(ActionGraphEvent.Cache.miss(cachedActionGraphs.isEmpty()));
         LOG.debug("Computing TargetGraph HashCode...");
         HashCode targetGraphHash = getTargetGraphHash(targetGraph);
-        if (lastActionGraph == null) {
+        if (cachedActionGraphs.isEmpty()) {
           LOG.info("ActionGraph cache miss. Cache was empty.");
         } else if (Objects.equals(lastTargetGraphHash, targetGraphHash)) {
           LOG.info("ActionGraph cache miss. TargetGraphs mismatched but hashes are the same.");
@@ -105,15 +146,31 @@ public class ActionGraphCache {
           LOG.info("ActionGraph cache miss. TargetGraphs mismatched.");
         }
         lastTargetGraphHash = targetGraphHash;
-        Pair<TargetGraph, ActionGraphAndResolver> freshActionGraph =
-            new Pair<TargetGraph, ActionGraphAndResolver>(
+
+        ImmutableSet<BuildRule> reusedRules = ImmutableSet.of();
+        if (incremental && !cachedActionGraphs.isEmpty()) {
+          reusedRules = getReusableBuildRules(cachedActionGraphs.getFirst(), targetGraph);
+          LOG.info("Reusing %d build rules from the last ActionGraph.", reusedRules.size());
+        }
+        CachedActionGraph freshActionGraph =
+            new CachedActionGraph(
                 targetGraph,
                 createActionGraph(
-                    eventBus, new DefaultTargetNodeToBuildRuleTransformer(), targetGraph));
-        out = freshActionGraph.getSecond();
+                    eventBus,
+                    new DefaultTargetNodeToBuildRuleTransformer(),
+                    targetGraph,
+                    reusedRules,
+                    threads));
+        out = freshActionGraph.actionGraph;
+        if (checkActionGraphs && !reusedRules.isEmpty()) {
+          compareActionGraphs(eventBus, out, targetGraph, fieldLoader);
+        }
         if (!skipActionGraphCache) {
           LOG.info("ActionGraph cache assignment. skipActionGraphCache? %s", skipActionGraphCache);
-          lastActionGraph = freshActionGraph;
+          cachedActionGraphs.addFirst(freshActionGraph);
+          while (cachedActionGraphs.size() > maxEntries) {
+            cachedActionGraphs.removeLast();
+          }
         }
       }
     } finally {
@@ -122,6 +179,21 @@ public class ActionGraphCache {
     return out;
   }
 
+  /** @return the cached action graph for {@code targetGraph}, marked as most recently used. */
+  @Nullable
+  private CachedActionGraph getCachedActionGraph(TargetGraph targetGraph) {
+    Iterator<CachedActionGraph> iterator = cachedActionGraphs.iterator();
+    while (iterator.hasNext()) {
+      CachedActionGraph cached = iterator.next();
+      if (cached.targetGraph.equals(targetGraph)) {
+        iterator.remove();
+        cachedActionGraphs.addFirst(cached);
+        return cached;
+      }
+    }
+    return null;
+  }
+
   /**
    * * It returns a new {@link ActionGraphAndResolver} based on the targetGraph without checking the
    * cache. It uses a {@link DefaultTargetNodeToBuildRuleTransformer}.
@@ -163,21 +235,35 @@ public class ActionGraphCache {
       final BuckEventBus eventBus,
       TargetNodeToBuildRuleTransformer transformer,
       TargetGraph targetGraph) {
+    return createActionGraph(eventBus, transformer, targetGraph, ImmutableSet.of(), 1);
+  }
+
+  private static ActionGraphAndResolver createActionGraph(
+      final BuckEventBus eventBus,
+      TargetNodeToBuildRuleTransformer transformer,
+      TargetGraph targetGraph,
+      ImmutableSet<BuildRule> reusedRules,
+      int threads) {
     final BuildRuleResolver resolver = new BuildRuleResolver(targetGraph, transformer, eventBus);
+    resolver.addAllToIndex(reusedRules);
 
-    AbstractBottomUpTraversal<TargetNode<?, ?>, RuntimeException> bottomUpTraversal =
-        new AbstractBottomUpTraversal<TargetNode<?, ?>, RuntimeException>(targetGraph) {
+    if (threads > 1) {
+      new ParallelBuildRuleCreator(targetGraph, resolver).createAll(threads);
+    } else {
+      AbstractBottomUpTraversal<TargetNode<?, ?>, RuntimeException> bottomUpTraversal =
+          new AbstractBottomUpTraversal<TargetNode<?, ?>, RuntimeException>(targetGraph) {
 
-          @Override
-          public void visit(TargetNode<?, ?> node) {
-            try {
-              resolver.requireRule(node.getBuildTarget());
-            } catch (NoSuchBuildTargetException e) {
-              throw new HumanReadableException(e);
+            @Override
+            public void visit(TargetNode<?, ?> node) {
+              try {
+                resolver.requireRule(node.getBuildTarget());
+              } catch (NoSuchBuildTargetException e) {
+                throw new HumanReadableException(e);
+              }
             }
-          }
-        };
-    bottomUpTraversal.traverse();
+          };
+      bottomUpTraversal.traverse();
+    }
 
     return ActionGraphAndResolver.builder()
         .setActionGraph(new ActionGraph(resolver.getBuildRules()))
@@ -194,6 +280,86 @@ public class ActionGraphCache {
     return hasher.hash();
   }
 
+  /**
+   * @return the unflavored targets which have a target node in {@code previous} or {@code
+   *     targetGraph} that is not in the other, or which transitively depends on such a node. Build
+   *     rules for flavored targets may be created from any of the nodes for the same unflavored
+   *     target, so they are all considered together.
+   */
+  private static Set<UnflavoredBuildTarget> getChangedTargets(
+      TargetGraph previous, TargetGraph targetGraph) {
+    Set<UnflavoredBuildTarget> changedTargets = new HashSet<>();
+    Set<TargetNode<?, ?>> changedNodes = new HashSet<>();
+    new AbstractBottomUpTraversal<TargetNode<?, ?>, RuntimeException>(targetGraph) {
+      @Override
+      public void visit(TargetNode<?, ?> node) {
+        boolean changed =
+            !previous.getOptional(node.getBuildTarget()).map(node::equals).orElse(false);
+        for (TargetNode<?, ?> dep : targetGraph.getOutgoingNodesFor(node)) {
+          changed |= changedNodes.contains(dep);
+        }
+        if (changed) {
+          changedNodes.add(node);
+          changedTargets.add(node.getBuildTarget().getUnflavoredBuildTarget());
+        }
+      }
+    }.traverse();
+    for (TargetNode<?, ?> node : previous.getNodes()) {
+      if (!targetGraph.getOptional(node.getBuildTarget()).isPresent()) {
+        changedTargets.add(node.getBuildTarget().getUnflavoredBuildTarget());
+      }
+    }
+    return changedTargets;
+  }
+
+  /**
+   * @return the build rules of {@code previous} which were created from target nodes that are
+   *     unchanged in {@code targetGraph}, and which only depend on such build rules. Only rules
+   *     of classes marked {@link ReusableAcrossActionGraphs} are reused: others may create or look
+   *     up rules through the resolver of the previous action graph.
+   */
+  private static ImmutableSet<BuildRule> getReusableBuildRules(
+      CachedActionGraph previous, TargetGraph targetGraph) {
+    Set<UnflavoredBuildTarget> targets = new HashSet<>();
+    for (TargetNode<?, ?> node : targetGraph.getNodes()) {
+      targets.add(node.getBuildTarget().getUnflavoredBuildTarget());
+    }
+    targets.removeAll(getChangedTargets(previous.targetGraph, targetGraph));
+
+    Set<BuildRule> reusable = new HashSet<>();
+    for (BuildRule rule : previous.actionGraph.getResolver().getBuildRules()) {
+      if (targets.contains(rule.getBuildTarget().getUnflavoredBuildTarget())
+          && rule.getClass().isAnnotationPresent(ReusableAcrossActionGraphs.class)) {
+        reusable.add(rule);
+      }
+    }
+
+    // Rules may depend on rules for other targets than those of their target node's deps, so drop
+    // rules until all the deps of the remaining ones are reused as well.
+    boolean changed;
+    do {
+      changed = false;
+      Iterator<BuildRule> iterator = reusable.iterator();
+      while (iterator.hasNext()) {
+        BuildRule rule = iterator.next();
+        Iterable<BuildRule> deps = rule.getBuildDeps();
+        if (rule instanceof HasDeclaredAndExtraDeps) {
+          deps =
+              Iterables.concat(deps, ((HasDeclaredAndExtraDeps) rule).getTargetGraphOnlyDeps());
+        }
+        for (BuildRule dep : deps) {
+          if (!reusable.contains(dep)) {
+            iterator.remove();
+            changed = true;
+            break;
+          }
+        }
+      }
+    } while (changed);
+
+    return ImmutableSet.copyOf(reusable);
+  }
+
   private static Map<BuildRule, RuleKey> getRuleKeysFromBuildRules(
       Iterable<BuildRule> buildRules,
       BuildRuleResolver buildRuleResolver,
@@ -305,12 +471,95 @@ public class ActionGraphCache {
   }
 
   private void invalidateCache() {
-    lastActionGraph = null;
+    cachedActionGraphs.clear();
     lastTargetGraphHash = null;
   }
 
   @VisibleForTesting
   boolean isCacheEmpty() {
-    return lastActionGraph == null;
+    return cachedActionGraphs.isEmpty();
+  }
+
+  /**
+   * Creates the build rules of a target graph, creating those of target nodes which do not depend
+   * on each other in parallel.
+   */
+  private static class ParallelBuildRuleCreator {
+    private final TargetGraph targetGraph;
+    private final BuildRuleResolver resolver;
+    private final ConcurrentHashMap<TargetNode<?, ?>, NodeAction> actions =
+        new ConcurrentHashMap<>();
+
+    private ParallelBuildRuleCreator(TargetGraph targetGraph, BuildRuleResolver resolver) {
+      this.targetGraph = targetGraph;
+      this.resolver = resolver;
+    }
+
+    private void createAll(int threads) {
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      try {
+        pool.invoke(
+            new RecursiveAction() {
+              @Override
+              protected void compute() {
+                process(targetGraph.getNodes());
+              }
+            });
+      } finally {
+        pool.shutdown();
+      }
+    }
+
+    /** Creates the build rules of {@code nodes} and of their deps, and waits for them. */
+    private void process(Iterable<TargetNode<?, ?>> nodes) {
+      List<NodeAction> newActions = new ArrayList<>();
+      List<NodeAction> oldActions = new ArrayList<>();
+      for (TargetNode<?, ?> node : nodes) {
+        NodeAction action = actions.get(node);
+        if (action == null) {
+          NodeAction newAction = new NodeAction(node);
+          action = actions.putIfAbsent(node, newAction);
+          if (action == null) {
+            newActions.add(newAction);
+            continue;
+          }
+        }
+        oldActions.add(action);
+      }
+
+      // Kick off the new actions in parallel, then wait for the ones other actions started.
+      ForkJoinTask.invokeAll(newActions);
+      for (NodeAction action : oldActions) {
+        action.join();
+      }
+    }
+
+    private class NodeAction extends RecursiveAction {
+      private final TargetNode<?, ?> node;
+
+      private NodeAction(TargetNode<?, ?> node) {
+        this.node = node;
+      }
+
+      @Override
+      protected void compute() {
+        process(targetGraph.getOutgoingNodesFor(node));
+        try {
+          resolver.requireRule(node.getBuildTarget());
+        } catch (NoSuchBuildTargetException e) {
+          throw new HumanReadableException(e);
+        }
+      }
+    }
+  }
+
+  private static class CachedActionGraph {
+    private final TargetGraph targetGraph;
+    private final ActionGraphAndResolver actionGraph;
+
+    private CachedActionGraph(TargetGraph targetGraph, ActionGraphAndResolver actionGraph) {
+      this.targetGraph = targetGraph;
+      this.actionGraph = actionGraph;
+    }
   }
 }
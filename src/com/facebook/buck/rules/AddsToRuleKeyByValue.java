@@ -0,0 +1,26 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+/**
+ * Identifies an {@link AddsToRuleKey} whose equal instances always add the same values to rule
+ * keys, so that the rule key computed for one of them can be reused for all of them.
+ *
+ * <p>Implement this only where {@link Object#equals(Object)} covers everything added to rule keys,
+ * such as value types whose rule key fields are all attributes.
+ */
+public interface AddsToRuleKeyByValue extends AddsToRuleKey {}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.facebook.buck.artifact_cache.ArtifactCache;
+import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.io.LazyPath;
+import com.facebook.buck.log.Logger;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Coalesces concurrent blocking fetches from an {@link ArtifactCache} into calls to {@link
+ * ArtifactCache#multiFetchAsync}.
+ *
+ * <p>Cache checks of rules that become ready at the same time run on separate threads. Each of
+ * them queues its request here. When fewer than {@code maxConcurrentBatches} batches are in flight,
+ * the calling thread takes up to {@code maxBatchSize} queued requests and fetches them on behalf of
+ * all their callers; otherwise it waits until its request has been served or a batch slot frees up.
+ * Requests that arrive while a batch is in flight are therefore sent together in the next one.
+ */
+class ArtifactCacheFetchBatcher {
+
+  private static final Logger LOG = Logger.get(ArtifactCacheFetchBatcher.class);
+
+  private final ArtifactCache artifactCache;
+  private final int maxBatchSize;
+  private final int maxConcurrentBatches;
+
+  private final Deque<PendingFetch> queue = new ArrayDeque<>();
+  private int batchesInFlight = 0;
+
+  ArtifactCacheFetchBatcher(
+      ArtifactCache artifactCache, int maxBatchSize, int maxConcurrentBatches) {
+    Preconditions.checkArgument(maxBatchSize > 0);
+    Preconditions.checkArgument(maxConcurrentBatches > 0);
+    this.artifactCache = artifactCache;
+    this.maxBatchSize = maxBatchSize;
+    this.maxConcurrentBatches = maxConcurrentBatches;
+  }
+
+  /**
+   * Fetches the artifact for {@code ruleKey} into {@code output}, blocking until it is available.
+   * Like {@link Futures#getUnchecked}, this waits uninterruptibly and rethrows failures of the
+   * cache unchecked.
+   */
+  public CacheResult fetch(RuleKey ruleKey, LazyPath output) {
+    PendingFetch request = new PendingFetch(ruleKey, output);
+    synchronized (this) {
+      queue.add(request);
+    }
+    boolean interrupted = false;
+    try {
+      while (true) {
+        List<PendingFetch> batch;
+        synchronized (this) {
+          if (request.isDone()) {
+            return request.get();
+          }
+          // An empty queue means our request is part of a batch that another thread is fetching.
+          if (batchesInFlight >= maxConcurrentBatches || queue.isEmpty()) {
+            try {
+              wait();
+            } catch (InterruptedException e) {
+              interrupted = true;
+            }
+            continue;
+          }
+          batch = new ArrayList<>(Math.min(maxBatchSize, queue.size()));
+          while (batch.size() < maxBatchSize && !queue.isEmpty()) {
+            batch.add(queue.poll());
+          }
+          batchesInFlight++;
+        }
+        runBatch(batch);
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void runBatch(List<PendingFetch> batch) {
+    LOG.verbose("Fetching a batch of %d artifacts.", batch.size());
+    List<RuleKey> ruleKeys = new ArrayList<>(batch.size());
+    List<LazyPath> outputs = new ArrayList<>(batch.size());
+    for (PendingFetch pending : batch) {
+      ruleKeys.add(pending.ruleKey);
+      outputs.add(pending.output);
+    }
+
+    ImmutableList<CacheResult> results = null;
+    RuntimeException failure = null;
+    try {
+      results = Futures.getUnchecked(artifactCache.multiFetchAsync(ruleKeys, outputs));
+      Preconditions.checkState(results.size() == batch.size());
+    } catch (RuntimeException e) {
+      failure = e;
+    }
+
+    synchronized (this) {
+      for (int i = 0; i < batch.size(); i++) {
+        if (failure != null) {
+          batch.get(i).failure = failure;
+        } else {
+          batch.get(i).result = Preconditions.checkNotNull(results).get(i);
+        }
+      }
+      batchesInFlight--;
+      notifyAll();
+    }
+  }
+
+  private static class PendingFetch {
+    private final RuleKey ruleKey;
+    private final LazyPath output;
+    @Nullable private CacheResult result;
+    @Nullable private RuntimeException failure;
+
+    PendingFetch(RuleKey ruleKey, LazyPath output) {
+      this.ruleKey = ruleKey;
+      this.output = output;
+    }
+
+    boolean isDone() {
+      return result != null || failure != null;
+    }
+
+    CacheResult get() {
+      if (failure != null) {
+        throw failure;
+      }
+      return Preconditions.checkNotNull(result);
+    }
+  }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Remembers how long build rules took to build locally and to fetch from the cache, and how large
+ * their outputs were, in a file kept between builds.
+ *
+ * <p>Rules are remembered by build target and rule type, as a running average of their recent
+ * builds. Older builds count for less the longer ago they happened, and rules which have not been
+ * built for {@link #MAX_AGE_MILLIS} are forgotten altogether, so that the history follows changes
+ * to the build and does not grow without bound.
+ *
+ * <p>Concurrent commands may share the file, so the samples recorded since it was loaded are
+ * applied again to its current contents when saving, under a lock on a sibling file.
+ */
+@ThreadSafe
+public class BuildRuleHistory {
+
+  private static final Logger LOG = Logger.get(BuildRuleHistory.class);
+
+  // Bump this whenever the layout of the file changes.
+  private static final int FORMAT_VERSION = 1;
+
+  /** How far the average moves towards each new sample. */
+  @VisibleForTesting static final double SAMPLE_WEIGHT = 0.3;
+
+  /** How long it takes for the weight of the previous average to halve. */
+  @VisibleForTesting static final long HALF_LIFE_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+  /** How long a rule is remembered after it was last built. */
+  @VisibleForTesting static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+  private static final long UNKNOWN = -1;
+
+  // The entries by rule type and fully qualified build target.
+  private final ConcurrentMap<String, Entry> entries;
+  // The samples recorded since the history was loaded or last saved.
+  private final Queue<Sample> unsavedSamples = new ConcurrentLinkedQueue<>();
+
+  private BuildRuleHistory(ConcurrentMap<String, Entry> entries) {
+    this.entries = entries;
+  }
+
+  public static BuildRuleHistory empty() {
+    return new BuildRuleHistory(new ConcurrentHashMap<>());
+  }
+
+  /** @return the history stored at {@code path}, or an empty one if it cannot be read. */
+  public static BuildRuleHistory load(Path path) {
+    return new BuildRuleHistory(readEntries(path));
+  }
+
+  private static ConcurrentMap<String, Entry> readEntries(Path path) {
+    ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    try (DataInputStream input =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+      if (input.readInt() != FORMAT_VERSION) {
+        LOG.debug("ignoring rule history in an older format");
+        return entries;
+      }
+      int size = input.readInt();
+      for (int i = 0; i < size; i++) {
+        String key = input.readUTF();
+        entries.put(
+            key, new Entry(input.readLong(), input.readLong(), input.readLong(), input.readLong()));
+      }
+      LOG.debug("loaded the history of %d rules from %s", size, path);
+    } catch (NoSuchFileException e) {
+      LOG.debug("no rule history at %s", path);
+    } catch (IOException e) {
+      LOG.warn(e, "failed to load rule history from %s", path);
+      entries.clear();
+    }
+    return entries;
+  }
+
+  /** @return what is known of the rule of type {@code ruleType} for {@code target}. */
+  public Optional<Entry> get(BuildTarget target, String ruleType) {
+    return Optional.ofNullable(entries.get(getKey(target, ruleType)));
+  }
+
+  public Optional<Entry> get(BuildRule rule) {
+    return get(rule.getBuildTarget(), rule.getType());
+  }
+
+  /** Records that the rule was built locally in {@code durationMillis}. */
+  public void recordExecution(
+      BuildTarget target, String ruleType, long durationMillis, long nowMillis) {
+    record(new Sample(getKey(target, ruleType), nowMillis, durationMillis, UNKNOWN, UNKNOWN));
+  }
+
+  /** Records that the outputs of the rule were fetched from the cache in {@code durationMillis}. */
+  public void recordCacheFetch(
+      BuildTarget target, String ruleType, long durationMillis, long nowMillis) {
+    record(new Sample(getKey(target, ruleType), nowMillis, UNKNOWN, durationMillis, UNKNOWN));
+  }
+
+  /** Records that the outputs of the rule took up {@code outputSize} bytes. */
+  public void recordOutputSize(
+      BuildTarget target, String ruleType, long outputSize, long nowMillis) {
+    record(new Sample(getKey(target, ruleType), nowMillis, UNKNOWN, UNKNOWN, outputSize));
+  }
+
+  private void record(Sample sample) {
+    apply(entries, sample);
+    unsavedSamples.add(sample);
+  }
+
+  private static void apply(ConcurrentMap<String, Entry> entries, Sample sample) {
+    entries.compute(
+        sample.key,
+        (key, previous) -> {
+          if (previous == null) {
+            return new Entry(
+                sample.executionMillis, sample.cacheFetchMillis, sample.outputSize, sample.millis);
+          }
+          double previousWeight =
+              (1 - SAMPLE_WEIGHT)
+                  * Math.pow(
+                      0.5,
+                      (double) Math.max(0, sample.millis - previous.lastUpdatedMillis)
+                          / HALF_LIFE_MILLIS);
+          return new Entry(
+              average(previous.executionMillis, sample.executionMillis, previousWeight),
+              average(previous.cacheFetchMillis, sample.cacheFetchMillis, previousWeight),
+              average(previous.outputSize, sample.outputSize, previousWeight),
+              Math.max(sample.millis, previous.lastUpdatedMillis));
+        });
+  }
+
+  private static long average(long previous, long sample, double previousWeight) {
+    if (sample == UNKNOWN) {
+      return previous;
+    }
+    if (previous == UNKNOWN) {
+      return sample;
+    }
+    return Math.round(previous * previousWeight + sample * (1 - previousWeight));
+  }
+
+  /**
+   * Adds the samples recorded since the history was loaded or last saved to the history stored at
+   * {@code path}, leaving out rules which have not been built for {@link #MAX_AGE_MILLIS}.
+   *
+   * <p>The stored history is read again, so samples saved meanwhile by other commands are kept.
+   */
+  public void save(Path path, long nowMillis) throws IOException {
+    if (unsavedSamples.isEmpty()) {
+      return;
+    }
+    Files.createDirectories(path.getParent());
+    Path lockPath = path.resolveSibling(path.getFileName() + ".lock");
+    // File locks are held by the whole JVM, so threads of one process take turns here first.
+    synchronized (BuildRuleHistory.class) {
+      try (FileChannel lockChannel =
+              FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+          FileLock lock = lockChannel.lock()) {
+        ConcurrentMap<String, Entry> stored = readEntries(path);
+        List<Sample> samples = new ArrayList<>();
+        for (Sample sample = unsavedSamples.poll();
+            sample != null;
+            sample = unsavedSamples.poll()) {
+          samples.add(sample);
+          apply(stored, sample);
+        }
+        try {
+          write(path, stored, nowMillis);
+        } catch (IOException e) {
+          // Keep the samples for the next attempt.
+          unsavedSamples.addAll(samples);
+          throw e;
+        }
+      }
+    }
+  }
+
+  private static void write(Path path, Map<String, Entry> entries, long nowMillis)
+      throws IOException {
+    ImmutableMap.Builder<String, Entry> builder = ImmutableMap.builder();
+    for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+      if (nowMillis - entry.getValue().lastUpdatedMillis <= MAX_AGE_MILLIS) {
+        builder.put(entry);
+      }
+    }
+    ImmutableMap<String, Entry> snapshot = builder.build();
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (DataOutputStream output =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      output.writeInt(FORMAT_VERSION);
+      output.writeInt(snapshot.size());
+      for (Map.Entry<String, Entry> entry : snapshot.entrySet()) {
+        output.writeUTF(entry.getKey());
+        output.writeLong(entry.getValue().executionMillis);
+        output.writeLong(entry.getValue().cacheFetchMillis);
+        output.writeLong(entry.getValue().outputSize);
+        output.writeLong(entry.getValue().lastUpdatedMillis);
+      }
+    }
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    LOG.debug("saved the history of %d rules to %s", snapshot.size(), path);
+  }
+
+  /**
+   * @return an estimator which uses the recorded local build times of rules, and {@code fallback}
+   *     for rules which were never built locally.
+   */
+  public BuildRuleDurationEstimator asDurationEstimator(BuildRuleDurationEstimator fallback) {
+    return rule -> {
+      Optional<Long> executionMillis = get(rule).flatMap(Entry::getExecutionMillis);
+      return executionMillis.isPresent()
+          ? executionMillis.get()
+          : fallback.estimateDurationMillis(rule);
+    };
+  }
+
+  private static String getKey(BuildTarget target, String ruleType) {
+    // Neither rule types nor build targets contain spaces.
+    return ruleType + " " + target.getFullyQualifiedName();
+  }
+
+  /** A single build of a rule, with {@link #UNKNOWN} for what was not measured. */
+  private static class Sample {
+    private final String key;
+    private final long millis;
+    private final long executionMillis;
+    private final long cacheFetchMillis;
+    private final long outputSize;
+
+    private Sample(
+        String key, long millis, long executionMillis, long cacheFetchMillis, long outputSize) {
+      this.key = key;
+      this.millis = millis;
+      this.executionMillis = executionMillis;
+      this.cacheFetchMillis = cacheFetchMillis;
+      this.outputSize = outputSize;
+    }
+  }
+
+  /** What is known of a single rule. */
+  public static class Entry {
+    private final long executionMillis;
+    private final long cacheFetchMillis;
+    private final long outputSize;
+    private final long lastUpdatedMillis;
+
+    private Entry(
+        long executionMillis, long cacheFetchMillis, long outputSize, long lastUpdatedMillis) {
+      this.executionMillis = executionMillis;
+      this.cacheFetchMillis = cacheFetchMillis;
+      this.outputSize = outputSize;
+      this.lastUpdatedMillis = lastUpdatedMillis;
+    }
+
+    /** @return the average time it took to build the rule locally. */
+    public Optional<Long> getExecutionMillis() {
+      return toOptional(executionMillis);
+    }
+
+    /** @return the average time it took to fetch the outputs of the rule from the cache. */
+    public Optional<Long> getCacheFetchMillis() {
+      return toOptional(cacheFetchMillis);
+    }
+
+    /** @return the average size of the outputs of the rule, in bytes. */
+    public Optional<Long> getOutputSize() {
+      return toOptional(outputSize);
+    }
+
+    public long getLastUpdatedMillis() {
+      return lastUpdatedMillis;
+    }
+
+    private static Optional<Long> toOptional(long value) {
+      return value == UNKNOWN ? Optional.empty() : Optional.of(value);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Entry)) {
+        return false;
+      }
+      Entry other = (Entry) obj;
+      return executionMillis == other.executionMillis
+          && cacheFetchMillis == other.cacheFetchMillis
+          && outputSize == other.outputSize
+          && lastUpdatedMillis == other.lastUpdatedMillis;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(executionMillis, cacheFetchMillis, outputSize, lastUpdatedMillis);
+    }
+  }
+}
@@ -32,8 +32,10 @@ import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Ordering;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
 import javax.annotation.Nullable;
 
@@ -55,6 +57,9 @@ public class BuildRuleResolver {
   @Nullable private final BuckEventBus eventBus;
 
   private final ConcurrentHashMap<BuildTarget, BuildRule> buildRuleIndex;
+  // The rules being computed, so that concurrent requests for the same target wait for the rule
+  // rather than computing it again.
+  private final ConcurrentHashMap<BuildTarget, PendingRule> pendingRules;
   private final LoadingCache<Pair<BuildTarget, Class<?>>, Optional<?>> metadataCache;
 
   public BuildRuleResolver(
@@ -74,6 +79,7 @@ public class BuildRuleResolver {
     final int initialCapacity = (int) (targetGraph.getNodes().size() * 5 * 1.1);
 
     this.buildRuleIndex = new ConcurrentHashMap<>(initialCapacity);
+    this.pendingRules = new ConcurrentHashMap<>();
     this.metadataCache =
         CacheBuilder.newBuilder()
             .initialCapacity(initialCapacity)
@@ -135,6 +141,9 @@ public class BuildRuleResolver {
    * Retrieve the {@code BuildRule} for the given {@code BuildTarget}. If no rules are associated
    * with the target, compute the rule using the given supplier and update the mapping.
    *
+   * <p>This is safe to call from several threads: the rule for a target is computed once, and
+   * other threads requesting it meanwhile wait for it.
+   *
    * @param target target with which the BuildRule is associated.
    * @param mappingFunction function to compute the rule.
    * @return the current value associated with the rule
@@ -146,14 +155,44 @@ public class BuildRuleResolver {
     if (rule != null) {
       return rule;
     }
-    rule = mappingFunction.apply(target);
+
+    PendingRule pending = new PendingRule();
+    PendingRule existing = pendingRules.putIfAbsent(target, pending);
+    if (existing != null) {
+      if (existing.thread == Thread.currentThread()) {
+        // The rule is requested while computing it, which only works if the description added it
+        // to the index beforehand.
+        return computeRule(target, mappingFunction);
+      }
+      return existing.get();
+    }
+
+    try {
+      // The rule may have been added by another thread since we looked it up.
+      rule = buildRuleIndex.get(target);
+      if (rule == null) {
+        rule = computeRule(target, mappingFunction);
+      }
+      pending.rule.complete(rule);
+      return rule;
+    } catch (NoSuchBuildTargetException | RuntimeException | Error e) {
+      pending.rule.completeExceptionally(e);
+      throw e;
+    } finally {
+      pendingRules.remove(target, pending);
+    }
+  }
+
+  private BuildRule computeRule(BuildTarget target, BuildRuleFunction mappingFunction)
+      throws NoSuchBuildTargetException {
+    BuildRule rule = mappingFunction.apply(target);
     Preconditions.checkState(
         // TODO(jakubzika): This should hold for flavored build targets as well.
         rule.getBuildTarget().getUnflavoredBuildTarget().equals(target.getUnflavoredBuildTarget()),
         "Computed rule for '%s' instead of '%s'.",
         rule.getBuildTarget(),
         target);
-    BuildRule oldRule = buildRuleIndex.put(target, rule);
+    BuildRule oldRule = buildRuleIndex.putIfAbsent(target, rule);
     Preconditions.checkState(
         // TODO(jakubzika): Eventually we should be able to remove the oldRule == rule part.
         // For now we need it to handle cases where a description adds a rule to the index before
@@ -249,11 +288,12 @@ public class BuildRuleResolver {
 
   /**
    * Adds to the index a mapping from {@code buildRule}'s target to itself and returns {@code
-   * buildRule}.
+   * buildRule}. If another rule is already indexed for that target, the index is left unchanged.
+   * Descriptions which may race on creating a rule should use {@link #computeIfAbsent} instead.
    */
   @VisibleForTesting
   public <T extends BuildRule> T addToIndex(T buildRule) {
-    BuildRule oldValue = buildRuleIndex.put(buildRule.getBuildTarget(), buildRule);
+    BuildRule oldValue = buildRuleIndex.putIfAbsent(buildRule.getBuildTarget(), buildRule);
     // Yuck! This is here to make it possible for a rule to depend on a flavor of itself but it
     // would be much much better if we just got rid of the BuildRuleResolver entirely.
     if (oldValue != null && oldValue != buildRule) {
@@ -275,4 +315,41 @@ public class BuildRuleResolver {
   public BuckEventBus getEventBus() {
     return eventBus;
   }
+
+  /** A rule being computed by {@link #thread}. */
+  private static class PendingRule implements ForkJoinPool.ManagedBlocker {
+    private final Thread thread = Thread.currentThread();
+    private final CompletableFuture<BuildRule> rule = new CompletableFuture<>();
+
+    @Override
+    public boolean block() throws InterruptedException {
+      try {
+        rule.get();
+      } catch (ExecutionException e) {
+        // Rethrown by get().
+      }
+      return true;
+    }
+
+    @Override
+    public boolean isReleasable() {
+      return rule.isDone();
+    }
+
+    private BuildRule get() throws NoSuchBuildTargetException {
+      try {
+        // Let a fork join pool add a worker while this one waits, so that many nodes waiting on
+        // the same shared rule do not starve the pool.
+        ForkJoinPool.managedBlock(this);
+        return rule.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        Throwables.throwIfInstanceOf(e.getCause(), NoSuchBuildTargetException.class);
+        Throwables.throwIfUnchecked(e.getCause());
+        throw new RuntimeException(e.getCause());
+      }
+    }
+  }
 }
@@ -40,6 +40,12 @@ public enum BuildRuleSuccessType {
   /** Computed {@link RuleKey} matches the one on disk. */
   MATCHING_RULE_KEY("FOUND"),
 
+  /**
+   * Found in the {@link com.facebook.buck.artifact_cache.ArtifactCache}, but not fetched, as none
+   * of its outputs were needed locally.
+   */
+  FOUND_IN_CACHE("CACHE"),
+
   /**
    * Fetched via the {@link com.facebook.buck.artifact_cache.ArtifactCache} using an input-based
    * rule key.
@@ -20,6 +20,7 @@ import com.facebook.buck.artifact_cache.ArtifactCache;
 import com.facebook.buck.artifact_cache.CacheResult;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.RuleKeyCalculationEvent;
+import com.facebook.buck.io.LazyPath;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.rules.keys.RuleKeyAndInputs;
 import com.facebook.buck.rules.keys.RuleKeyDiagnostics;
@@ -47,6 +48,7 @@ import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -72,6 +74,10 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       ResourceAmounts.of(0, 0, 1, 0);
   public static final ResourceAmounts SCHEDULING_MORE_WORK_RESOURCE_AMOUNTS = ResourceAmounts.ZERO;
 
+  // Batched fetches are issued one at a time, so that cache checks arriving while a batch is in
+  // flight accumulate into the next one.
+  private static final int MAX_CONCURRENT_CACHE_FETCH_BATCHES = 1;
+
   static final String BUILD_RULE_TYPE_CONTEXT_KEY = "build_rule_type";
   static final String STEP_TYPE_CONTEXT_KEY = "step_type";
   private final ConcurrentLinkedQueue<ListenableFuture<Void>> asyncCallbacks;
@@ -97,6 +103,11 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     // the top-level build targets from the remote cache, without building missing or changed
     // dependencies locally.
     POPULATE_FROM_REMOTE_CACHE,
+
+    // Perform a deep build, but only check that the outputs of rules are present in the cache
+    // rather than fetching them. Outputs are only materialized locally when they are needed to
+    // build a dependent rule locally, or by the top-level build targets.
+    DEEP_BUILD_AVOIDANCE,
   }
 
   /** Whether to use dependency files or not. */
@@ -119,6 +130,13 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
   private final ConcurrentMap<BuildTarget, ListenableFuture<BuildResult>> results =
       Maps.newConcurrentMap();
 
+  /**
+   * In {@link BuildMode#DEEP_BUILD_AVOIDANCE} mode, the results of rules whose outputs were fetched
+   * after they had only been found in the cache.
+   */
+  private final ConcurrentMap<BuildTarget, ListenableFuture<BuildResult>> materializedResults =
+      Maps.newConcurrentMap();
+
   private final ConcurrentMap<BuildTarget, ListenableFuture<RuleKey>> ruleKeys =
       Maps.newConcurrentMap();
 
@@ -137,9 +155,13 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
   private final SourcePathRuleFinder ruleFinder;
   private final SourcePathResolver pathResolver;
   private final Optional<Long> artifactCacheSizeLimit;
+  private final int artifactCacheFetchBatchSize;
+  private final ConcurrentMap<ArtifactCache, ArtifactCacheFetchBatcher> fetchBatchers =
+      Maps.newConcurrentMap();
   private final FileHashCache fileHashCache;
   private final RuleKeyFactories ruleKeyFactories;
   private final ResourceAwareSchedulingInfo resourceAwareSchedulingInfo;
+  private final Optional<CriticalPathPrioritizer> criticalPathPrioritizer;
 
   private final RuleDepsCache ruleDeps;
   private final Optional<UnskippedRulesTracker> unskippedRulesTracker;
@@ -163,9 +185,11 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       DepFiles depFiles,
       long maxDepFileCacheEntries,
       Optional<Long> artifactCacheSizeLimit,
+      int artifactCacheFetchBatchSize,
       final BuildRuleResolver resolver,
       BuildInfoStoreManager buildInfoStoreManager,
       ResourceAwareSchedulingInfo resourceAwareSchedulingInfo,
+      Optional<BuildRuleDurationEstimator> criticalPathDurationEstimator,
       boolean consoleLogBuildFailuresInline,
       RuleKeyFactories ruleKeyFactories,
       FileHashCacheMode fileHashCacheMode) {
@@ -179,6 +203,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     this.depFiles = depFiles;
     this.maxDepFileCacheEntries = maxDepFileCacheEntries;
     this.artifactCacheSizeLimit = artifactCacheSizeLimit;
+    this.artifactCacheFetchBatchSize = artifactCacheFetchBatchSize;
     this.resolver = resolver;
     this.ruleFinder = new SourcePathRuleFinder(resolver);
     this.pathResolver = DefaultSourcePathResolver.from(ruleFinder);
@@ -191,6 +216,9 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     this.consoleLogBuildFailuresInline = consoleLogBuildFailuresInline;
 
     this.ruleDeps = new RuleDepsCache(resolver);
+    this.criticalPathPrioritizer =
+        criticalPathDurationEstimator.map(
+            estimator -> new CriticalPathPrioritizer(ruleDeps, estimator));
     this.unskippedRulesTracker = createUnskippedRulesTracker(buildMode, ruleDeps, resolver);
     this.fileHashCacheMode = fileHashCacheMode;
     this.defaultRuleKeyDiagnostics =
@@ -235,6 +263,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     this.depFiles = depFiles;
     this.maxDepFileCacheEntries = maxDepFileCacheEntries;
     this.artifactCacheSizeLimit = artifactCacheSizeLimit;
+    this.artifactCacheFetchBatchSize = 1;
     this.resolver = resolver;
     this.ruleFinder = ruleFinder;
     this.pathResolver = pathResolver;
@@ -246,6 +275,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     this.fileHashCacheMode = fileHashCacheMode;
 
     this.ruleDeps = new RuleDepsCache(resolver);
+    this.criticalPathPrioritizer = Optional.empty();
     this.unskippedRulesTracker = createUnskippedRulesTracker(buildMode, ruleDeps, resolver);
     this.defaultRuleKeyDiagnostics = RuleKeyDiagnostics.nop();
     this.consoleLogBuildFailuresInline = consoleLogBuildFailuresInline;
@@ -283,9 +313,22 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     return service;
   }
 
+  /**
+   * When critical path scheduling is enabled, returns a service which runs work on behalf of the
+   * given rule ahead of that of rules with shorter critical paths.
+   */
+  private WeightedListeningExecutorService prioritizedFor(
+      BuildRule rule, WeightedListeningExecutorService service) {
+    return criticalPathPrioritizer
+        .map(prioritizer -> service.withPriority(prioritizer.getPriority(rule)))
+        .orElse(service);
+  }
+
   private static Optional<UnskippedRulesTracker> createUnskippedRulesTracker(
       BuildMode buildMode, RuleDepsCache ruleDeps, BuildRuleResolver resolver) {
-    if (buildMode == BuildMode.DEEP || buildMode == BuildMode.POPULATE_FROM_REMOTE_CACHE) {
+    if (buildMode == BuildMode.DEEP
+        || buildMode == BuildMode.POPULATE_FROM_REMOTE_CACHE
+        || buildMode == BuildMode.DEEP_BUILD_AVOIDANCE) {
       // Those modes never skip rules, there is no need to track unskipped rules.
       return Optional.empty();
     }
@@ -322,6 +365,22 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     return Futures.allAsList(depResults);
   }
 
+  // Like getDepResults, but also makes sure that the outputs of the dependencies, and of their
+  // runtime dependencies, are available locally.
+  private ListenableFuture<List<BuildResult>> getMaterializedDepResults(
+      BuildRule rule, BuildEngineBuildContext buildContext, ExecutionContext executionContext) {
+    if (buildMode != BuildMode.DEEP_BUILD_AVOIDANCE) {
+      return getDepResults(rule, buildContext, executionContext);
+    }
+    List<ListenableFuture<BuildResult>> depResults =
+        new ArrayList<>(SortedSets.sizeEstimate(rule.getBuildDeps()));
+    for (BuildRule dep : shuffled(rule.getBuildDeps())) {
+      depResults.add(
+          getMaterializedBuildRuleResultWithRuntimeDeps(dep, buildContext, executionContext));
+    }
+    return Futures.allAsList(depResults);
+  }
+
   private static List<BuildRule> shuffled(Iterable<BuildRule> rules) {
     ArrayList<BuildRule> rulesList = Lists.newArrayList(rules);
     Collections.shuffle(rulesList);
@@ -355,8 +414,11 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     ListenableFuture<BuildResult> result =
         Futures.transformAsync(
             ruleKey,
-            input -> processBuildRule(rule, buildContext, executionContext),
-            serviceByAdjustingDefaultWeightsTo(SCHEDULING_MORE_WORK_RESOURCE_AMOUNTS));
+            input ->
+                processBuildRule(
+                    rule, buildContext, executionContext, /* materializeOutputs */ false),
+            prioritizedFor(
+                rule, serviceByAdjustingDefaultWeightsTo(SCHEDULING_MORE_WORK_RESOURCE_AMOUNTS)));
     if (!(rule instanceof HasRuntimeDeps)) {
       results.put(rule.getBuildTarget(), result);
       return result;
@@ -403,6 +465,61 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     }
   }
 
+  // Provide a future that resolves to the result of executing this rule and its runtime
+  // dependencies once all of their outputs are available locally. Outside of
+  // DEEP_BUILD_AVOIDANCE mode, rules that succeed always have their outputs available.
+  private ListenableFuture<BuildResult> getMaterializedBuildRuleResultWithRuntimeDeps(
+      BuildRule rule, BuildEngineBuildContext buildContext, ExecutionContext executionContext) {
+    ListenableFuture<BuildResult> result =
+        getBuildRuleResultWithRuntimeDeps(rule, buildContext, executionContext);
+    if (buildMode != BuildMode.DEEP_BUILD_AVOIDANCE) {
+      return result;
+    }
+
+    ListenableFuture<BuildResult> materializedResult =
+        Futures.transformAsync(
+            result,
+            input ->
+                input.getStatus() == BuildRuleStatus.SUCCESS
+                        && input.getSuccess() == BuildRuleSuccessType.FOUND_IN_CACHE
+                    ? materializeRule(rule, buildContext, executionContext)
+                    : Futures.immediateFuture(input),
+            MoreExecutors.directExecutor());
+    if (!(rule instanceof HasRuntimeDeps)) {
+      return materializedResult;
+    }
+
+    List<ListenableFuture<BuildResult>> runtimeDepResults = new ArrayList<>();
+    ImmutableSet<BuildRule> runtimeDeps =
+        resolver.getAllRules(
+            ((HasRuntimeDeps) rule)
+                .getRuntimeDeps(ruleFinder)
+                .collect(MoreCollectors.toImmutableSet()));
+    for (BuildRule dep : runtimeDeps) {
+      runtimeDepResults.add(
+          getMaterializedBuildRuleResultWithRuntimeDeps(dep, buildContext, executionContext));
+    }
+    return Futures.transformAsync(
+        Futures.allAsList(runtimeDepResults),
+        results -> materializedResult,
+        MoreExecutors.directExecutor());
+  }
+
+  // Fetch the outputs of a rule which was only found in the cache, building it locally if they
+  // are no longer available. This happens at most once per rule.
+  private ListenableFuture<BuildResult> materializeRule(
+      BuildRule rule, BuildEngineBuildContext buildContext, ExecutionContext executionContext) {
+    SettableFuture<BuildResult> result = SettableFuture.create();
+    ListenableFuture<BuildResult> existingResult =
+        materializedResults.putIfAbsent(rule.getBuildTarget(), result);
+    if (existingResult != null) {
+      return existingResult;
+    }
+    result.setFuture(
+        processBuildRule(rule, buildContext, executionContext, /* materializeOutputs */ true));
+    return result;
+  }
+
   public ListenableFuture<?> walkRule(BuildRule rule, final Set<BuildRule> seen) {
     return Futures.transformAsync(
         Futures.immediateFuture(ruleDeps.get(rule)),
@@ -461,7 +578,8 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
               }
               return Futures.allAsList(depKeys1);
             },
-            serviceByAdjustingDefaultWeightsTo(RULE_KEY_COMPUTATION_RESOURCE_AMOUNTS));
+            prioritizedFor(
+                rule, serviceByAdjustingDefaultWeightsTo(RULE_KEY_COMPUTATION_RESOURCE_AMOUNTS)));
 
     // Setup a future to calculate this rule key once the dependencies have been calculated.
     ListenableFuture<RuleKey> calculated =
@@ -477,7 +595,8 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
                 return ruleKeyFactories.getDefaultRuleKeyFactory().build(rule);
               }
             },
-            serviceByAdjustingDefaultWeightsTo(RULE_KEY_COMPUTATION_RESOURCE_AMOUNTS));
+            prioritizedFor(
+                rule, serviceByAdjustingDefaultWeightsTo(RULE_KEY_COMPUTATION_RESOURCE_AMOUNTS)));
 
     // Record the rule key future.
     ruleKeys.put(rule.getBuildTarget(), calculated);
@@ -490,8 +609,9 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     // Keep track of all jobs that run asynchronously with respect to the build dep chain.  We want
     // to make sure we wait for these before calling yielding the final build result.
     registerTopLevelRule(rule, buildContext.getEventBus());
+    criticalPathPrioritizer.ifPresent(prioritizer -> prioritizer.addTopLevelRule(rule));
     ListenableFuture<BuildResult> resultFuture =
-        getBuildRuleResultWithRuntimeDeps(rule, buildContext, executionContext);
+        getMaterializedBuildRuleResultWithRuntimeDeps(rule, buildContext, executionContext);
     return BuildEngineResult.builder().setResult(resultFuture).build();
   }
 
@@ -499,7 +619,10 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
   @Override
   public BuildResult getBuildRuleResult(BuildTarget buildTarget)
       throws ExecutionException, InterruptedException {
-    ListenableFuture<BuildResult> result = results.get(buildTarget);
+    ListenableFuture<BuildResult> result = materializedResults.get(buildTarget);
+    if (result == null) {
+      result = results.get(buildTarget);
+    }
     if (result == null) {
       return null;
     }
@@ -530,7 +653,10 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
   }
 
   private ListenableFuture<BuildResult> processBuildRule(
-      BuildRule rule, BuildEngineBuildContext buildContext, ExecutionContext executionContext) {
+      BuildRule rule,
+      BuildEngineBuildContext buildContext,
+      ExecutionContext executionContext,
+      boolean materializeOutputs) {
 
     final BuildInfoStore buildInfoStore =
         buildInfoStoreManager.get(rule.getProjectFilesystem(), metadataStorage);
@@ -552,7 +678,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
             buildInfoStoreManager,
             buildMode,
             buildRuleDurationTracker,
-            cacheActivityService,
+            prioritizedFor(rule, cacheActivityService),
             consoleLogBuildFailuresInline,
             defaultRuleKeyDiagnostics,
             depFiles,
@@ -563,7 +689,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
             pathResolver,
             resourceAwareSchedulingInfo,
             ruleKeyFactories,
-            service,
+            prioritizedFor(rule, service),
             stepRunner,
             this.ruleDeps,
             rule,
@@ -572,10 +698,29 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
             onDiskBuildInfo,
             buildInfoRecorder,
             buildableContext,
-            pipelinesRunner)
+            pipelinesRunner,
+            materializeOutputs)
         .build();
   }
 
+  /**
+   * Fetches an artifact from the given cache. When batching is enabled, fetches issued concurrently
+   * by cache checks of different rules are coalesced into batched requests.
+   */
+  private CacheResult fetchFromCache(
+      ArtifactCache artifactCache, RuleKey ruleKey, LazyPath output) {
+    if (artifactCacheFetchBatchSize <= 1) {
+      return Futures.getUnchecked(artifactCache.fetchAsync(ruleKey, output));
+    }
+    return fetchBatchers
+        .computeIfAbsent(
+            artifactCache,
+            cache ->
+                new ArtifactCacheFetchBatcher(
+                    cache, artifactCacheFetchBatchSize, MAX_CONCURRENT_CACHE_FETCH_BATCHES))
+        .fetch(ruleKey, output);
+  }
+
   public static class DefaultBuildRuleBuilderDelegate
       implements CachingBuildRuleBuilder.BuildRuleBuilderDelegate {
     private final CachingBuildEngine cachingBuildEngine;
@@ -605,6 +750,12 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       return cachingBuildEngine.getDepResults(rule, buildContext, executionContext);
     }
 
+    @Override
+    public ListenableFuture<List<BuildResult>> getMaterializedDepResults(
+        BuildRule rule, BuildEngineBuildContext buildContext, ExecutionContext executionContext) {
+      return cachingBuildEngine.getMaterializedDepResults(rule, buildContext, executionContext);
+    }
+
     @Override
     public void addAsyncCallback(ListenableFuture<Void> callback) {
       cachingBuildEngine.asyncCallbacks.add(callback);
@@ -620,5 +771,11 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     public void onRuleAboutToBeBuilt(BuildRule rule) {
       cachingBuildEngine.cachingBuildEngineDelegate.onRuleAboutToBeBuilt(rule);
     }
+
+    @Override
+    public CacheResult fetchFromCache(
+        ArtifactCache artifactCache, RuleKey ruleKey, LazyPath output) {
+      return cachingBuildEngine.fetchFromCache(artifactCache, ruleKey, output);
+    }
   }
 }
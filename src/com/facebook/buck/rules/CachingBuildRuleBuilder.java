@@ -44,6 +44,7 @@ import com.facebook.buck.rules.keys.SizeLimiter;
 import com.facebook.buck.rules.keys.SupportsDependencyFileRuleKey;
 import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
 import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.ExecutorPool;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepFailedException;
 import com.facebook.buck.step.StepRunner;
@@ -131,6 +132,7 @@ class CachingBuildRuleBuilder {
   private final BuildInfoRecorder buildInfoRecorder;
   private final BuildableContext buildableContext;
   private final BuildRulePipelinesRunner pipelinesRunner;
+  private final boolean materializeOutputs;
 
   public CachingBuildRuleBuilder(
       BuildRuleBuilderDelegate buildRuleBuilderDelegate,
@@ -158,7 +160,8 @@ class CachingBuildRuleBuilder {
       OnDiskBuildInfo onDiskBuildInfo,
       BuildInfoRecorder buildInfoRecorder,
       BuildableContext buildableContext,
-      BuildRulePipelinesRunner pipelinesRunner) {
+      BuildRulePipelinesRunner pipelinesRunner,
+      boolean materializeOutputs) {
     this.buildRuleBuilderDelegate = buildRuleBuilderDelegate;
     this.artifactCacheSizeLimit = artifactCacheSizeLimit;
     this.buildInfoStoreManager = buildInfoStoreManager;
@@ -185,6 +188,7 @@ class CachingBuildRuleBuilder {
     this.buildInfoRecorder = buildInfoRecorder;
     this.buildableContext = buildableContext;
     this.pipelinesRunner = pipelinesRunner;
+    this.materializeOutputs = materializeOutputs;
   }
 
   /**
@@ -205,9 +209,12 @@ class CachingBuildRuleBuilder {
         Futures.immediateFuture(Collections.emptyList());
 
     // If we're performing a deep build, guarantee that all dependencies will *always* get
-    // materialized locally
+    // materialized locally. When materializing the outputs of a rule that was only found in the
+    // cache, its dependencies have already been processed.
     if (buildMode == CachingBuildEngine.BuildMode.DEEP
-        || buildMode == CachingBuildEngine.BuildMode.POPULATE_FROM_REMOTE_CACHE) {
+        || buildMode == CachingBuildEngine.BuildMode.POPULATE_FROM_REMOTE_CACHE
+        || (buildMode == CachingBuildEngine.BuildMode.DEEP_BUILD_AVOIDANCE
+            && !materializeOutputs)) {
       depResults = buildRuleBuilderDelegate.getDepResults(rule, buildContext, executionContext);
     }
 
@@ -255,6 +262,11 @@ class CachingBuildRuleBuilder {
             // We shouldn't see any build fail result at this point.
             BuildRuleSuccessType success = Preconditions.checkNotNull(input.getSuccess());
 
+            // If the outputs weren't fetched, there is nothing on disk to finalize.
+            if (success == BuildRuleSuccessType.FOUND_IN_CACHE) {
+              return Futures.immediateFuture(input);
+            }
+
             // If we didn't build the rule locally, reload the recorded paths from the build
             // metadata.
             if (success != BuildRuleSuccessType.BUILT_LOCALLY) {
@@ -635,6 +647,17 @@ class CachingBuildRuleBuilder {
                   }
                 }
 
+                // The rule has already been reported as finished when it was found in the cache.
+                if (materializeOutputs) {
+                  LOG.debug("Materialized outputs of %s: %s", rule, input.getSuccess());
+                  buildContext
+                      .getEventBus()
+                      .post(
+                          BuildRuleEvent.suspended(
+                              resumedEvent, ruleKeyFactories.getDefaultRuleKeyFactory()));
+                  return;
+                }
+
                 boolean failureOrBuiltLocally =
                     input.getStatus() == BuildRuleStatus.FAIL
                         || input.getSuccess() == BuildRuleSuccessType.BUILT_LOCALLY;
@@ -706,7 +729,7 @@ class CachingBuildRuleBuilder {
         Preconditions.checkNotNull(cacheResult.getMetadata().get(BuildInfo.MetadataKey.BUILD_ID)));
   }
 
-  private Optional<BuildResult> checkManifestBasedCaches() throws IOException {
+  private Optional<BuildResult> checkManifestBasedCaches() throws InterruptedException, IOException {
     Optional<RuleKeyAndInputs> manifestKey = calculateManifestKey(buildContext.getEventBus());
     if (manifestKey.isPresent()) {
       buildInfoRecorder.addBuildMetadata(
@@ -745,7 +768,7 @@ class CachingBuildRuleBuilder {
     return Optional.empty();
   }
 
-  private Optional<BuildResult> checkInputBasedCaches() throws IOException {
+  private Optional<BuildResult> checkInputBasedCaches() throws InterruptedException, IOException {
     // Calculate input-based rule key.
     Optional<RuleKey> inputRuleKey = calculateInputBasedRuleKey(buildContext.getEventBus());
     if (inputRuleKey.isPresent()) {
@@ -798,6 +821,15 @@ class CachingBuildRuleBuilder {
                     return Optional.of(
                         BuildResult.canceled(rule, buildRuleBuilderDelegate.getFirstFailure()));
                   }
+                  if (buildMode == CachingBuildEngine.BuildMode.DEEP_BUILD_AVOIDANCE
+                      && !materializeOutputs) {
+                    CacheResult probeResult = performRuleKeyCacheProbe();
+                    // If the cache couldn't tell, fall back to fetching the artifact.
+                    if (probeResult.getType() != CacheResultType.ERROR) {
+                      rulekeyCacheResult.set(probeResult);
+                      return getBuildResultForRuleKeyCacheProbeResult(probeResult);
+                    }
+                  }
                   CacheResult cacheResult = performRuleKeyCacheCheck();
                   rulekeyCacheResult.set(cacheResult);
                   return getBuildResultForRuleKeyCacheResult(cacheResult);
@@ -815,7 +847,8 @@ class CachingBuildRuleBuilder {
               }
 
               return Futures.transformAsync(
-                  buildRuleBuilderDelegate.getDepResults(rule, buildContext, executionContext),
+                  buildRuleBuilderDelegate.getMaterializedDepResults(
+                      rule, buildContext, executionContext),
                   (depResults) -> handleDepsResults(depResults),
                   serviceByAdjustingDefaultWeightsTo(
                       CachingBuildEngine.SCHEDULING_MORE_WORK_RESOURCE_AMOUNTS));
@@ -918,7 +951,7 @@ class CachingBuildRuleBuilder {
     return Optional.empty();
   }
 
-  private CacheResult performRuleKeyCacheCheck() throws IOException {
+  private CacheResult performRuleKeyCacheCheck() throws InterruptedException, IOException {
     final RuleKey defaultRuleKey = ruleKeyFactories.getDefaultRuleKeyFactory().build(rule);
     long cacheRequestTimestampMillis = System.currentTimeMillis();
     CacheResult cacheResult =
@@ -943,6 +976,37 @@ class CachingBuildRuleBuilder {
     return cacheResult;
   }
 
+  private CacheResult performRuleKeyCacheProbe() {
+    final RuleKey defaultRuleKey = ruleKeyFactories.getDefaultRuleKeyFactory().build(rule);
+    long cacheRequestTimestampMillis = System.currentTimeMillis();
+    CacheResult cacheResult =
+        rule.isCacheable()
+            ? Futures.getUnchecked(buildContext.getArtifactCache().containsAsync(defaultRuleKey))
+            : CacheResult.ignored();
+
+    RuleKeyCacheResult ruleKeyCacheResult =
+        RuleKeyCacheResult.builder()
+            .setBuildTarget(rule.getFullyQualifiedName())
+            .setRuleKey(defaultRuleKey.toString())
+            .setRuleKeyType(RuleKeyType.DEFAULT)
+            .setCacheResult(cacheResult.getType())
+            .setRequestTimestampMillis(cacheRequestTimestampMillis)
+            .setTwoLevelContentHashKey(cacheResult.twoLevelContentHashKey())
+            .build();
+
+    buildContext.getEventBus().post(new RuleKeyCacheResultEvent(ruleKeyCacheResult));
+
+    return cacheResult;
+  }
+
+  private Optional<BuildResult> getBuildResultForRuleKeyCacheProbeResult(CacheResult cacheResult) {
+    if (cacheResult.getType() != CacheResultType.CONTAINS) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        BuildResult.success(rule, BuildRuleSuccessType.FOUND_IN_CACHE, cacheResult));
+  }
+
   private Optional<BuildResult> getBuildResultForRuleKeyCacheResult(CacheResult cacheResult) {
     if (!cacheResult.getType().isSuccess()) {
       return Optional.empty();
@@ -1077,7 +1141,7 @@ class CachingBuildRuleBuilder {
 
   private CacheResult tryToFetchArtifactFromBuildCacheAndOverlayOnTopOfProjectFilesystem(
       final RuleKey ruleKey, final ArtifactCache artifactCache, final ProjectFilesystem filesystem)
-      throws IOException {
+      throws InterruptedException, IOException {
 
     if (!rule.isCacheable()) {
       return CacheResult.ignored();
@@ -1120,7 +1184,8 @@ class CachingBuildRuleBuilder {
   }
 
   private CacheResult fetch(ArtifactCache artifactCache, RuleKey ruleKey, LazyPath outputPath) {
-    CacheResult cacheResult = Futures.getUnchecked(artifactCache.fetchAsync(ruleKey, outputPath));
+    CacheResult cacheResult =
+        buildRuleBuilderDelegate.fetchFromCache(artifactCache, ruleKey, outputPath);
     if (cacheResult.getType() != CacheResultType.HIT) {
       return cacheResult;
     }
@@ -1155,7 +1220,7 @@ class CachingBuildRuleBuilder {
 
   private CacheResult unzipArtifactFromCacheResult(
       RuleKey ruleKey, LazyPath lazyZipPath, ProjectFilesystem filesystem, CacheResult cacheResult)
-      throws IOException {
+      throws InterruptedException, IOException {
 
     // We only unpack artifacts from hits.
     if (!cacheResult.getType().isSuccess()) {
@@ -1197,10 +1262,22 @@ class CachingBuildRuleBuilder {
           BuildInfo.getPathToMetadataDirectory(rule.getBuildTarget(), rule.getProjectFilesystem());
       rule.getProjectFilesystem().deleteRecursivelyIfExists(metadataDir);
 
-      Unzip.extractZipFile(
-          zipPath.toAbsolutePath(),
-          filesystem,
-          Unzip.ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES);
+      // Spread the extraction over the disk I/O pool when there is one, as large artifacts spend
+      // most of their fetch time here.
+      ListeningExecutorService diskIoExecutor =
+          executionContext.getExecutors().get(ExecutorPool.DISK_IO);
+      if (diskIoExecutor != null) {
+        Unzip.extractZipFile(
+            zipPath.toAbsolutePath(),
+            filesystem,
+            Unzip.ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES,
+            diskIoExecutor);
+      } else {
+        Unzip.extractZipFile(
+            zipPath.toAbsolutePath(),
+            filesystem,
+            Unzip.ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES);
+      }
 
       // We only delete the ZIP file when it has been unzipped successfully. Otherwise, we leave it
       // around for debugging purposes.
@@ -1426,7 +1503,7 @@ class CachingBuildRuleBuilder {
 
   // Fetch an artifact from the cache using manifest-based caching.
   private Optional<BuildResult> performManifestBasedCacheFetch(RuleKeyAndInputs manifestKey)
-      throws IOException {
+      throws InterruptedException, IOException {
     Preconditions.checkArgument(useManifestCaching());
 
     final LazyPath tempFile =
@@ -1515,7 +1592,7 @@ class CachingBuildRuleBuilder {
   }
 
   private Optional<BuildResult> performInputBasedCacheFetch(RuleKey inputRuleKey)
-      throws IOException {
+      throws InterruptedException, IOException {
     Preconditions.checkArgument(SupportsInputBasedRuleKey.isSupported(rule));
 
     buildInfoRecorder.addBuildMetadata(
@@ -1745,11 +1822,16 @@ class CachingBuildRuleBuilder {
     ListenableFuture<List<BuildResult>> getDepResults(
         BuildRule rule, BuildEngineBuildContext buildContext, ExecutionContext executionContext);
 
+    ListenableFuture<List<BuildResult>> getMaterializedDepResults(
+        BuildRule rule, BuildEngineBuildContext buildContext, ExecutionContext executionContext);
+
     void addAsyncCallback(ListenableFuture<Void> callback);
 
     @Nullable
     Throwable getFirstFailure();
 
     void onRuleAboutToBeBuilt(BuildRule rule);
+
+    CacheResult fetchFromCache(ArtifactCache artifactCache, RuleKey ruleKey, LazyPath output);
   }
 }
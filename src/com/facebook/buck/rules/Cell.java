@@ -287,6 +287,8 @@ public class Cell {
             .setWatchman(watchman)
             .setWatchmanQueryTimeoutMs(parserConfig.getWatchmanQueryTimeoutMs())
             .setUseMercurialGlob(useMercurialGlob)
+            .setUseBserProtocol(
+                parserConfig.getPythonProtocol() == ParserConfig.PythonProtocol.BSER)
             .setRawConfig(getBuckConfig().getRawConfigForParser())
             .setBuildFileImportWhitelist(parserConfig.getBuildFileImportWhitelist())
             .build(),
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Prioritizes rules by the estimated length of the critical path left in the build once they start:
+ * their own duration plus that of the longest chain of rules depending on them, up to a top-level
+ * rule. Starting the rules with the highest priorities first keeps long chains, such as dex merges
+ * leading up to an APK, from starting late while cheap leaves keep all the threads busy.
+ */
+@ThreadSafe
+class CriticalPathPrioritizer {
+
+  private final RuleDepsCache ruleDeps;
+  private final BuildRuleDurationEstimator estimator;
+
+  @GuardedBy("this")
+  private final Map<BuildRule, Entry> entries = new HashMap<>();
+
+  @GuardedBy("this")
+  private int nextOrder = 0;
+
+  CriticalPathPrioritizer(RuleDepsCache ruleDeps, BuildRuleDurationEstimator estimator) {
+    this.ruleDeps = ruleDeps;
+    this.estimator = estimator;
+  }
+
+  /**
+   * Computes the priorities of the given top-level rule and all its transitive deps, raising those
+   * of rules already added for other top-level rules where the new paths are longer.
+   */
+  synchronized void addTopLevelRule(BuildRule topLevelRule) {
+    number(topLevelRule);
+
+    // Every rule is numbered after all its deps, so visiting rules in decreasing order visits each
+    // one after all of its dependents, and once only.
+    PriorityQueue<Entry> queue =
+        new PriorityQueue<>(Comparator.comparingInt((Entry entry) -> entry.order).reversed());
+    Entry topLevelEntry = entries.get(topLevelRule);
+    if (topLevelEntry.priority < topLevelEntry.duration) {
+      topLevelEntry.priority = topLevelEntry.duration;
+      topLevelEntry.queued = true;
+      queue.add(topLevelEntry);
+    }
+    while (!queue.isEmpty()) {
+      Entry entry = queue.poll();
+      entry.queued = false;
+      for (BuildRule dep : ruleDeps.get(entry.rule)) {
+        Entry depEntry = entries.get(dep);
+        long depPriority = entry.priority + depEntry.duration;
+        if (depPriority > depEntry.priority) {
+          depEntry.priority = depPriority;
+          if (!depEntry.queued) {
+            depEntry.queued = true;
+            queue.add(depEntry);
+          }
+        }
+      }
+    }
+  }
+
+  /** @return the priority of the rule, or 0 if it isn't a dep of any top-level rule added. */
+  synchronized long getPriority(BuildRule rule) {
+    Entry entry = entries.get(rule);
+    return entry == null ? 0 : entry.priority;
+  }
+
+  /** Numbers the rules which haven't been seen yet in post order, estimating their durations. */
+  @GuardedBy("this")
+  private void number(BuildRule root) {
+    if (entries.containsKey(root)) {
+      return;
+    }
+    Deque<Iterator<BuildRule>> stack = new ArrayDeque<>();
+    Deque<BuildRule> path = new ArrayDeque<>();
+    entries.put(root, new Entry(root, estimator.estimateDurationMillis(root)));
+    path.push(root);
+    stack.push(ruleDeps.get(root).iterator());
+    while (!stack.isEmpty()) {
+      Iterator<BuildRule> deps = stack.peek();
+      if (deps.hasNext()) {
+        BuildRule dep = deps.next();
+        if (!entries.containsKey(dep)) {
+          entries.put(dep, new Entry(dep, estimator.estimateDurationMillis(dep)));
+          path.push(dep);
+          stack.push(ruleDeps.get(dep).iterator());
+        }
+      } else {
+        stack.pop();
+        entries.get(path.pop()).order = nextOrder++;
+      }
+    }
+  }
+
+  private static class Entry {
+    private final BuildRule rule;
+    private final long duration;
+    private int order = -1;
+    private long priority = 0;
+    private boolean queued = false;
+
+    private Entry(BuildRule rule, long duration) {
+      this.rule = rule;
+      this.duration = duration;
+    }
+  }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link BuildRule} class whose instances an incremental {@link ActionGraphCache} may carry
+ * over to a new action graph, when their target node and deps are unchanged.
+ *
+ * <p>Rules of such a class must not create rules, or look up rules other than their deps, through
+ * the resolver, rule finder or source path resolver they were created with, including those kept
+ * by their fields or captured by suppliers: those belong to the previous action graph.
+ * The annotation is not inherited, so each subclass has to be checked and marked on its own.
+ */
+@Retention(RUNTIME)
+@Target(TYPE)
+public @interface ReusableAcrossActionGraphs {}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.facebook.buck.rules;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Estimates the duration of rules from their type alone. Most rules are assumed to take about as
+ * long as each other, except for a few types which are known to be much more expensive.
+ */
+public class RuleTypeDurationEstimator implements BuildRuleDurationEstimator {
+
+  static final long DEFAULT_DURATION_MILLIS = 1000;
+
+  private static final ImmutableMap<String, Long> DURATION_MILLIS_BY_RULE_TYPE =
+      ImmutableMap.<String, Long>builder()
+          .put("aapt_package_resources", 10_000L)
+          .put("android_binary", 30_000L)
+          .put("cxx_link", 10_000L)
+          .put("default_java_library", 3_000L)
+          .put("pre_dex_merge", 60_000L)
+          .put("rust_compile_rule", 10_000L)
+          .put("swift_compile", 5_000L)
+          .build();
+
+  @Override
+  public long estimateDurationMillis(BuildRule rule) {
+    return DURATION_MILLIS_BY_RULE_TYPE.getOrDefault(rule.getType(), DEFAULT_DURATION_MILLIS);
+  }
+}
@@ -28,6 +28,7 @@ import com.google.common.collect.Iterables;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 import javax.annotation.Nullable;
 
 /**
@@ -49,6 +50,16 @@ public class TargetGraph extends DirectedAcyclicGraph<TargetNode<?, ?>> {
     verifyVisibilityIntegrity();
   }
 
+  private TargetGraph(
+      ImmutableSet<TargetNode<?, ?>> nodes,
+      Function<TargetNode<?, ?>, ImmutableSet<TargetNode<?, ?>>> getDependencies,
+      ImmutableMap<BuildTarget, TargetNode<?, ?>> index) {
+    super(nodes, getDependencies);
+    this.targetsToNodes = index;
+
+    verifyVisibilityIntegrity();
+  }
+
   private void verifyVisibilityIntegrity() {
     for (TargetNode<?, ?> node : getNodes()) {
       for (TargetNode<?, ?> dep : getOutgoingNodesFor(node)) {
@@ -107,13 +118,17 @@ public class TargetGraph extends DirectedAcyclicGraph<TargetNode<?, ?>> {
    * @return A subgraph of the current graph.
    */
   public <T> TargetGraph getSubgraph(Iterable<? extends TargetNode<? extends T, ?>> roots) {
-    final MutableDirectedGraph<TargetNode<?, ?>> subgraph = new MutableDirectedGraph<>();
+    // A subgraph of an acyclic graph is acyclic, so build the immutable graph directly rather than
+    // through an intermediate mutable one.
+    final ImmutableSet.Builder<TargetNode<?, ?>> nodes = ImmutableSet.builder();
+    final Map<TargetNode<?, ?>, ImmutableSet<TargetNode<?, ?>>> dependenciesByNode =
+        new HashMap<>();
     final Map<BuildTarget, TargetNode<?, ?>> index = new HashMap<>();
 
     new AbstractBreadthFirstTraversal<TargetNode<?, ?>>(roots) {
       @Override
       public Iterable<TargetNode<?, ?>> visit(TargetNode<?, ?> node) {
-        subgraph.addNode(node);
+        nodes.add(node);
         MoreMaps.putCheckEquals(index, node.getBuildTarget(), node);
         if (node.getBuildTarget().isFlavored()) {
           BuildTarget unflavoredBuildTarget =
@@ -123,14 +138,12 @@ public class TargetGraph extends DirectedAcyclicGraph<TargetNode<?, ?>> {
         }
         ImmutableSet<TargetNode<?, ?>> dependencies =
             ImmutableSet.copyOf(getAll(node.getParseDeps()));
-        for (TargetNode<?, ?> dependency : dependencies) {
-          subgraph.addEdge(node, dependency);
-        }
+        dependenciesByNode.put(node, dependencies);
         return dependencies;
       }
     }.start();
 
-    return new TargetGraph(subgraph, ImmutableMap.copyOf(index));
+    return new TargetGraph(nodes.build(), dependenciesByNode::get, ImmutableMap.copyOf(index));
   }
 
   @SuppressWarnings("serial")
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.util.WatchmanOverflowEvent;
+import com.facebook.buck.util.WatchmanPathEvent;
+import com.google.common.collect.ImmutableList;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.hash.HashCode;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the hashes computed by {@link TargetGraphHashing} across commands, so that only the nodes
+ * which changed, or one of whose dependencies changed, are hashed again.
+ *
+ * <p>A hash is reused for the same {@link TargetNode} instance, which the parser keeps until its
+ * build file is invalidated, as long as the hashes of its dependencies are unchanged and no
+ * Watchman event touched one of its inputs.
+ *
+ * <p>Hashes are not keyed by the {@link com.facebook.buck.hashing.FileHashLoader} they were
+ * computed with, so a cache must only be used with loaders hashing the contents of files.
+ */
+public class TargetGraphHashCache {
+  private static final Logger LOG = Logger.get(TargetGraphHashCache.class);
+
+  private final ConcurrentMap<BuildTarget, Entry> entries = new ConcurrentHashMap<>();
+
+  // The targets whose cached hash includes the contents of an input, by absolute path of the input.
+  private final ConcurrentMap<Path, Set<BuildTarget>> inputTargets = new ConcurrentHashMap<>();
+
+  /** @return the hash stored for {@code node}, if it was computed from the same dependencies. */
+  Optional<HashCode> get(TargetNode<?, ?> node, ImmutableList<HashCode> dependencyHashes) {
+    Entry entry = entries.get(node.getBuildTarget());
+    if (entry == null || entry.node != node || !entry.dependencyHashes.equals(dependencyHashes)) {
+      return Optional.empty();
+    }
+    return Optional.of(entry.hash);
+  }
+
+  void put(TargetNode<?, ?> node, ImmutableList<HashCode> dependencyHashes, HashCode hash) {
+    for (Path input : node.getInputs()) {
+      inputTargets
+          .computeIfAbsent(
+              node.getFilesystem().resolve(input), path -> ConcurrentHashMap.newKeySet())
+          .add(node.getBuildTarget());
+    }
+    entries.put(node.getBuildTarget(), new Entry(node, dependencyHashes, hash));
+  }
+
+  @Subscribe
+  public void invalidateBasedOn(WatchmanPathEvent event) {
+    // Inputs may be directories, so look the path and all its parents up.
+    for (Path path = event.getCellPath().resolve(event.getPath());
+        path != null;
+        path = path.getParent()) {
+      Set<BuildTarget> targets = inputTargets.remove(path);
+      if (targets != null) {
+        LOG.verbose("Invalidating hashes of %s due to Watchman event %s.", targets, event);
+        entries.keySet().removeAll(targets);
+      }
+    }
+  }
+
+  @Subscribe
+  public void invalidateBasedOn(WatchmanOverflowEvent event) {
+    LOG.info("TargetGraphHashCache invalidation due to Watchman event %s.", event);
+    entries.clear();
+    inputTargets.clear();
+  }
+
+  private static class Entry {
+    private final TargetNode<?, ?> node;
+    private final ImmutableList<HashCode> dependencyHashes;
+    private final HashCode hash;
+
+    Entry(TargetNode<?, ?> node, ImmutableList<HashCode> dependencyHashes, HashCode hash) {
+      this.node = node;
+      this.dependencyHashes = dependencyHashes;
+      this.hash = hash;
+    }
+  }
+}
@@ -19,30 +19,29 @@ package com.facebook.buck.rules;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.PerfEventId;
 import com.facebook.buck.event.SimplePerfEvent;
-import com.facebook.buck.graph.AcyclicDepthFirstPostOrderTraversal;
 import com.facebook.buck.graph.AcyclicDepthFirstPostOrderTraversal.CycleException;
+import com.facebook.buck.graph.ParallelBottomUpTraversal;
 import com.facebook.buck.hashing.FileHashLoader;
 import com.facebook.buck.hashing.StringHashing;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.util.HumanReadableException;
-import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
-import com.google.common.collect.Maps;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ListenableFuture;
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.ArrayDeque;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.Queue;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.ForkJoinTask;
-import java.util.concurrent.RecursiveTask;
 
 /**
  * Utility class to calculate hash codes for build targets in a {@link TargetGraph}.
@@ -58,6 +57,7 @@ public class TargetGraphHashing {
   private final FileHashLoader fileHashLoader;
   private final Iterable<TargetNode<?, ?>> roots;
   private int numThreads = 1;
+  private Optional<TargetGraphHashCache> hashCache = Optional.empty();
 
   public TargetGraphHashing(
       final BuckEventBus eventBus,
@@ -74,33 +74,34 @@ public class TargetGraphHashing {
    * Given a {@link TargetGraph} and any number of root nodes to traverse, returns a map of {@code
    * (BuildTarget, HashCode)} pairs for all root build targets and their dependencies.
    */
-  public ImmutableMap<BuildTarget, HashCode> hashTargetGraph() throws CycleException {
+  public ImmutableMap<BuildTarget, HashCode> hashTargetGraph()
+      throws CycleException, InterruptedException {
     try (SimplePerfEvent.Scope scope =
         SimplePerfEvent.scope(eventBus, PerfEventId.of("ShowTargetHashes"))) {
-
-      AcyclicDepthFirstPostOrderTraversal<TargetNode<?, ?>> traversal =
-          new AcyclicDepthFirstPostOrderTraversal<>(
-              node -> targetGraph.getAll(node.getParseDeps()).iterator());
-
-      final Map<BuildTarget, ForkJoinTask<HashCode>> buildTargetHashes = new HashMap<>();
-      Queue<ForkJoinTask<HashCode>> tasksToSchedule = new ArrayDeque<>();
-      // Create our mapping of build-rules to tasks and arrange in bottom-up order
-      // Start all the node tasks, bottom up
-      for (final TargetNode<?, ?> node : traversal.traverse(roots)) {
-        HashNodeTask task = new HashNodeTask(node, buildTargetHashes);
-        buildTargetHashes.put(node.getBuildTarget(), task);
-        tasksToSchedule.add(task);
-      }
-
-      // Execute tasks in parallel
       ForkJoinPool pool = new ForkJoinPool(numThreads);
-      for (ForkJoinTask<HashCode> task : tasksToSchedule) {
-        pool.execute(task);
+      try {
+        ListenableFuture<ImmutableMap<TargetNode<?, ?>, HashCode>> nodeHashes =
+            new ParallelBottomUpTraversal<TargetNode<?, ?>, HashCode>(
+                    node -> targetGraph.getAll(node.getParseDeps()).iterator(),
+                    pool,
+                    this::hashNodeOrGetCached)
+                .traverse(roots);
+        try {
+          ImmutableMap.Builder<BuildTarget, HashCode> buildTargetHashes = ImmutableMap.builder();
+          for (Map.Entry<TargetNode<?, ?>, HashCode> entry : nodeHashes.get().entrySet()) {
+            buildTargetHashes.put(entry.getKey().getBuildTarget(), entry.getValue());
+          }
+          return buildTargetHashes.build();
+        } catch (ExecutionException e) {
+          Throwables.throwIfUnchecked(e.getCause());
+          throw new RuntimeException(e.getCause());
+        } finally {
+          // Stops hashing if we were interrupted.
+          nodeHashes.cancel(true);
+        }
+      } finally {
+        pool.shutdown();
       }
-
-      // Wait for all scheduled tasks to complete
-      return ImmutableMap.copyOf(
-          Maps.transformEntries(buildTargetHashes, (key, value) -> value.join()));
     }
   }
 
@@ -110,58 +111,63 @@ public class TargetGraphHashing {
     return this;
   }
 
-  private class HashNodeTask extends RecursiveTask<HashCode> {
-    private final TargetNode<?, ?> node;
-    private Map<BuildTarget, ForkJoinTask<HashCode>> buildTargetHashes;
-
-    HashNodeTask(
-        final TargetNode<?, ?> node, Map<BuildTarget, ForkJoinTask<HashCode>> buildTargetHashes) {
-      this.node = node;
-      this.buildTargetHashes = buildTargetHashes;
-    }
+  // Reuse the hashes of nodes that are unchanged since a previous command
+  public TargetGraphHashing setHashCache(Optional<TargetGraphHashCache> hashCache) {
+    this.hashCache = hashCache;
+    return this;
+  }
 
-    @Override
-    protected HashCode compute() {
-      try (SimplePerfEvent.Scope scope = getHashNodeEventScope(eventBus, node.getBuildTarget())) {
-        return hashNode();
+  private HashCode hashNodeOrGetCached(
+      TargetNode<?, ?> node, ImmutableList<HashCode> dependencyHashes) {
+    if (hashCache.isPresent()) {
+      Optional<HashCode> cachedHash = hashCache.get().get(node, dependencyHashes);
+      if (cachedHash.isPresent()) {
+        LOG.verbose("Reusing hash for target %s: %s", node.getBuildTarget(), cachedHash.get());
+        return cachedHash.get();
       }
     }
+    HashCode result;
+    try (SimplePerfEvent.Scope scope = getHashNodeEventScope(eventBus, node.getBuildTarget())) {
+      result = hashNode(node, dependencyHashes);
+    }
+    if (hashCache.isPresent()) {
+      hashCache.get().put(node, dependencyHashes, result);
+    }
+    return result;
+  }
 
-    private HashCode hashNode() {
-      Hasher hasher = Hashing.sha1().newHasher();
-      LOG.verbose("Hashing node %s", node);
-      // Hash the node's build target and rules.
-      StringHashing.hashStringAndLength(hasher, node.getBuildTarget().toString());
-      HashCode targetRuleHashCode = node.getRawInputsHashCode();
-      LOG.verbose("Got rules hash %s", targetRuleHashCode);
-      hasher.putBytes(targetRuleHashCode.asBytes());
-
-      ProjectFilesystem cellFilesystem = node.getFilesystem();
-
-      // Hash the contents of all input files and directories.
-      for (Path input : ImmutableSortedSet.copyOf(node.getInputs())) {
-        try {
-          hasher.putBytes(fileHashLoader.get(cellFilesystem.resolve(input)).asBytes());
-        } catch (IOException e) {
-          throw new HumanReadableException(
-              e, "Error reading path %s for rule %s", input, node.getBuildTarget());
-        }
+  private HashCode hashNode(TargetNode<?, ?> node, ImmutableList<HashCode> dependencyHashes) {
+    Hasher hasher = Hashing.sha1().newHasher();
+    LOG.verbose("Hashing node %s", node);
+    // Hash the node's build target and rules.
+    StringHashing.hashStringAndLength(hasher, node.getBuildTarget().toString());
+    HashCode targetRuleHashCode = node.getRawInputsHashCode();
+    LOG.verbose("Got rules hash %s", targetRuleHashCode);
+    hasher.putBytes(targetRuleHashCode.asBytes());
+
+    ProjectFilesystem cellFilesystem = node.getFilesystem();
+
+    // Hash the contents of all input files and directories.
+    for (Path input : ImmutableSortedSet.copyOf(node.getInputs())) {
+      try {
+        hasher.putBytes(fileHashLoader.get(cellFilesystem.resolve(input)).asBytes());
+      } catch (IOException e) {
+        throw new HumanReadableException(
+            e, "Error reading path %s for rule %s", input, node.getBuildTarget());
       }
+    }
 
-      // hash each dependency's build target and that build target's own hash.
-      for (BuildTarget dependency : node.getParseDeps()) {
-        ForkJoinTask<HashCode> dependencyHashCodeTask = buildTargetHashes.get(dependency);
-        Preconditions.checkState(dependencyHashCodeTask != null);
-        HashCode dependencyHashCode = dependencyHashCodeTask.join();
-        Preconditions.checkState(dependencyHashCode != null);
-        LOG.verbose("Node %s: adding dependency %s (%s)", node, dependency, dependencyHashCode);
-        StringHashing.hashStringAndLength(hasher, dependency.toString());
-        hasher.putBytes(dependencyHashCode.asBytes());
-      }
-      HashCode result = hasher.hash();
-      LOG.debug("Hash for target %s: %s", node.getBuildTarget(), result);
-      return result;
+    // hash each dependency's build target and that build target's own hash.
+    Iterator<HashCode> dependencyHashCodes = dependencyHashes.iterator();
+    for (BuildTarget dependency : node.getParseDeps()) {
+      HashCode dependencyHashCode = dependencyHashCodes.next();
+      LOG.verbose("Node %s: adding dependency %s (%s)", node, dependency, dependencyHashCode);
+      StringHashing.hashStringAndLength(hasher, dependency.toString());
+      hasher.putBytes(dependencyHashCode.asBytes());
     }
+    HashCode result = hasher.hash();
+    LOG.debug("Hash for target %s: %s", node.getBuildTarget(), result);
+    return result;
   }
 
   private static SimplePerfEvent.Scope getHashNodeEventScope(
@@ -47,7 +47,20 @@ abstract class AbstractRuleKeyFactories {
       BuildRuleResolver resolver,
       long inputRuleKeyFileSizeLimit,
       RuleKeyCache<RuleKey> defaultRuleKeyFactoryCache) {
-    RuleKeyFieldLoader fieldLoader = new RuleKeyFieldLoader(keySeed);
+    return of(
+        new RuleKeyFieldLoader(keySeed),
+        fileHashCache,
+        resolver,
+        inputRuleKeyFileSizeLimit,
+        defaultRuleKeyFactoryCache);
+  }
+
+  public static RuleKeyFactories of(
+      RuleKeyFieldLoader fieldLoader,
+      FileHashCache fileHashCache,
+      BuildRuleResolver resolver,
+      long inputRuleKeyFileSizeLimit,
+      RuleKeyCache<RuleKey> defaultRuleKeyFactoryCache) {
     SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(resolver);
     SourcePathResolver pathResolver = DefaultSourcePathResolver.from(ruleFinder);
     return RuleKeyFactories.of(
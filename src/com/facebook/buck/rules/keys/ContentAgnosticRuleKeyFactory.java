@@ -70,13 +70,13 @@ public class ContentAgnosticRuleKeyFactory implements RuleKeyFactory<RuleKey> {
   }
 
   private RuleKey calculateBuildRuleKey(BuildRule buildRule) {
-    Builder<HashCode> builder = new Builder<>(RuleKeyBuilder.createDefaultHasher());
+    Builder<HashCode> builder = new Builder<>(ruleKeyFieldLoader.createHasher());
     ruleKeyFieldLoader.setFields(builder, buildRule, RuleKeyType.CONTENT_AGNOSTIC);
     return builder.build(RuleKey::new);
   }
 
   private RuleKey calculateAppendableKey(AddsToRuleKey appendable) {
-    Builder<HashCode> subKeyBuilder = new Builder<>(RuleKeyBuilder.createDefaultHasher());
+    Builder<HashCode> subKeyBuilder = new Builder<>(ruleKeyFieldLoader.createHasher());
     AlterRuleKeys.amendKey(subKeyBuilder, appendable);
     return subKeyBuilder.build(RuleKey::new);
   }
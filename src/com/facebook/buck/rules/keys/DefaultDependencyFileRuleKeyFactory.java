@@ -93,7 +93,7 @@ public final class DefaultDependencyFileRuleKeyFactory implements DependencyFile
             depFileEntries,
             rule.getCoveredByDepFilePredicate(pathResolver),
             rule.getExistenceOfInterestPredicate(pathResolver),
-            RuleKeyBuilder.createDefaultHasher());
+            ruleKeyFieldLoader.createHasher());
     ruleKeyFieldLoader.setFields(builder, rule, keyType.toRuleKeyType());
     Result<RuleKey> result = builder.buildResult(RuleKey::new);
     return RuleKeyAndInputs.of(result.getRuleKey(), result.getSourcePaths());
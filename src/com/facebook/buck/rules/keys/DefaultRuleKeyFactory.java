@@ -18,6 +18,7 @@ package com.facebook.buck.rules.keys;
 
 import com.facebook.buck.hashing.FileHashLoader;
 import com.facebook.buck.rules.AddsToRuleKey;
+import com.facebook.buck.rules.AddsToRuleKeyByValue;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildTargetSourcePath;
 import com.facebook.buck.rules.HasDeclaredAndExtraDeps;
@@ -30,6 +31,8 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.hash.HashCode;
 import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
 import javax.annotation.Nullable;
 
@@ -42,6 +45,13 @@ public class DefaultRuleKeyFactory implements RuleKeyFactoryWithDiagnostics<Rule
   private final SourcePathRuleFinder ruleFinder;
   private final RuleKeyCache<RuleKey> ruleKeyCache;
 
+  /**
+   * The first instance seen of each {@link AddsToRuleKeyByValue} value. Equal instances reuse its
+   * rule key, rather than walking the same fields again for each rule they are shared by.
+   */
+  private final ConcurrentMap<AddsToRuleKey, AddsToRuleKey> canonicalValues =
+      new ConcurrentHashMap<>();
+
   public DefaultRuleKeyFactory(
       RuleKeyFieldLoader ruleKeyFieldLoader,
       FileHashLoader hashLoader,
@@ -88,7 +98,7 @@ public class DefaultRuleKeyFactory implements RuleKeyFactoryWithDiagnostics<Rule
 
   @VisibleForTesting
   public Builder<HashCode> newBuilderForTesting(BuildRule buildRule) {
-    return newPopulatedBuilder(buildRule, RuleKeyBuilder.createDefaultHasher());
+    return newPopulatedBuilder(buildRule, ruleKeyFieldLoader.createHasher());
   }
 
   @Nullable
@@ -102,16 +112,25 @@ public class DefaultRuleKeyFactory implements RuleKeyFactoryWithDiagnostics<Rule
     return ruleKeyCache.get(
         buildRule,
         rule ->
-            newPopulatedBuilder(rule, RuleKeyBuilder.createDefaultHasher())
+            newPopulatedBuilder(rule, ruleKeyFieldLoader.createHasher())
                 .buildResult(RuleKey::new));
   }
 
   private RuleKey buildAppendableKey(AddsToRuleKey appendable) {
-    return ruleKeyCache.get(
-        appendable,
-        app ->
-            newPopulatedBuilder(app, RuleKeyBuilder.createDefaultHasher())
-                .buildResult(RuleKey::new));
+    return ruleKeyCache.get(appendable, this::calculateAppendableKey);
+  }
+
+  private RuleKeyResult<RuleKey> calculateAppendableKey(AddsToRuleKey appendable) {
+    if (appendable instanceof AddsToRuleKeyByValue) {
+      AddsToRuleKey canonical = canonicalValues.putIfAbsent(appendable, appendable);
+      if (canonical != null && canonical != appendable) {
+        // Depend on the canonical instance, so that this key is invalidated along with its key.
+        return new RuleKeyResult<>(
+            buildAppendableKey(canonical), ImmutableList.of(canonical), ImmutableList.of());
+      }
+    }
+    return newPopulatedBuilder(appendable, ruleKeyFieldLoader.createHasher())
+        .buildResult(RuleKey::new);
   }
 
   @Override
@@ -27,14 +27,21 @@ import com.facebook.buck.rules.SourceRoot;
 import com.facebook.buck.util.sha1.Sha1HashCode;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.regex.Pattern;
 
-/** An implementation of {@link RuleKeyHasher} that wraps Guava's {@link Hasher}. */
+/**
+ * An implementation of {@link RuleKeyHasher} that wraps Guava's {@link Hasher}.
+ *
+ * <p>Strings and hash codes are written to the hasher through a scratch buffer, rather than being
+ * copied into a new array each time, as they make up most of what goes into rule keys.
+ */
 public class GuavaRuleKeyHasher implements RuleKeyHasher<HashCode> {
 
+  private static final int SCRATCH_SIZE = 128;
+
   private final Hasher hasher;
+  private final byte[] scratch = new byte[SCRATCH_SIZE];
 
   public GuavaRuleKeyHasher(Hasher hasher) {
     this.hasher = hasher;
@@ -47,8 +54,57 @@ public class GuavaRuleKeyHasher implements RuleKeyHasher<HashCode> {
     return this;
   }
 
+  /** Same as {@code putBytes(type, hash.asBytes())}, without copying the hash. */
+  private GuavaRuleKeyHasher putHashCode(byte type, HashCode hash) {
+    int length = hash.bits() / Byte.SIZE;
+    if (length > SCRATCH_SIZE) {
+      return putBytes(type, hash.asBytes());
+    }
+    hash.writeBytesTo(scratch, 0, length);
+    hasher.putBytes(scratch, 0, length);
+    hasher.putInt(length);
+    hasher.putByte(type);
+    return this;
+  }
+
+  /** Same as {@code putBytes(type, val.getBytes(UTF_8))}, without encoding into a new array. */
   private GuavaRuleKeyHasher putStringified(byte type, String val) {
-    return putBytes(type, val.getBytes(StandardCharsets.UTF_8));
+    int length = 0;
+    int position = 0;
+    for (int i = 0; i < val.length(); i++) {
+      // Make sure there is room for the longest encoding of a code point.
+      if (position > SCRATCH_SIZE - 4) {
+        hasher.putBytes(scratch, 0, position);
+        length += position;
+        position = 0;
+      }
+      char c = val.charAt(i);
+      if (c < 0x80) {
+        scratch[position++] = (byte) c;
+      } else if (c < 0x800) {
+        scratch[position++] = (byte) (0xc0 | (c >>> 6));
+        scratch[position++] = (byte) (0x80 | (c & 0x3f));
+      } else if (!Character.isSurrogate(c)) {
+        scratch[position++] = (byte) (0xe0 | (c >>> 12));
+        scratch[position++] = (byte) (0x80 | ((c >>> 6) & 0x3f));
+        scratch[position++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < val.length()
+          && Character.isLowSurrogate(val.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, val.charAt(++i));
+        scratch[position++] = (byte) (0xf0 | (codePoint >>> 18));
+        scratch[position++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3f));
+        scratch[position++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3f));
+        scratch[position++] = (byte) (0x80 | (codePoint & 0x3f));
+      } else {
+        // Unpaired surrogates are replaced, as String.getBytes() does.
+        scratch[position++] = (byte) '?';
+      }
+    }
+    hasher.putBytes(scratch, 0, position);
+    hasher.putInt(length + position);
+    hasher.putByte(type);
+    return this;
   }
 
   private GuavaRuleKeyHasher putBuildTarget(byte type, BuildTarget target) {
@@ -123,14 +179,14 @@ public class GuavaRuleKeyHasher implements RuleKeyHasher<HashCode> {
   @Override
   public GuavaRuleKeyHasher putPath(Path path, HashCode hash) {
     this.putStringified(RuleKeyHasherTypes.PATH, path.toString());
-    this.putBytes(RuleKeyHasherTypes.PATH, hash.asBytes());
+    this.putHashCode(RuleKeyHasherTypes.PATH, hash);
     return this;
   }
 
   @Override
   public GuavaRuleKeyHasher putArchiveMemberPath(ArchiveMemberPath path, HashCode hash) {
     this.putStringified(RuleKeyHasherTypes.ARCHIVE_MEMBER_PATH, path.toString());
-    this.putBytes(RuleKeyHasherTypes.ARCHIVE_MEMBER_PATH, hash.asBytes());
+    this.putHashCode(RuleKeyHasherTypes.ARCHIVE_MEMBER_PATH, hash);
     return this;
   }
 
@@ -146,7 +202,7 @@ public class GuavaRuleKeyHasher implements RuleKeyHasher<HashCode> {
 
   @Override
   public GuavaRuleKeyHasher putRuleKey(RuleKey ruleKey) {
-    return this.putBytes(RuleKeyHasherTypes.RULE_KEY, ruleKey.getHashCode().asBytes());
+    return this.putHashCode(RuleKeyHasherTypes.RULE_KEY, ruleKey.getHashCode());
   }
 
   @Override
@@ -83,7 +83,7 @@ public final class InputBasedRuleKeyFactory implements RuleKeyFactory<RuleKey> {
   }
 
   private Result<RuleKey> calculateRuleKeyAppendableKey(AddsToRuleKey appendable) {
-    Builder<HashCode> subKeyBuilder = new Builder<>(RuleKeyBuilder.createDefaultHasher());
+    Builder<HashCode> subKeyBuilder = new Builder<>(ruleKeyFieldLoader.createHasher());
     AlterRuleKeys.amendKey(subKeyBuilder, appendable);
     return subKeyBuilder.buildResult(RuleKey::new);
   }
@@ -116,7 +116,7 @@ public final class InputBasedRuleKeyFactory implements RuleKeyFactory<RuleKey> {
   private Builder<HashCode> newVerifyingBuilder(final BuildRule rule) {
     final Iterable<DependencyAggregation> aggregatedRules =
         Iterables.filter(rule.getBuildDeps(), DependencyAggregation.class);
-    return new Builder<HashCode>(RuleKeyBuilder.createDefaultHasher()) {
+    return new Builder<HashCode>(ruleKeyFieldLoader.createHasher()) {
       private boolean hasEffectiveDirectDep(BuildRule dep) {
         for (BuildRule aggregationRule : aggregatedRules) {
           if (aggregationRule.getBuildDeps().contains(dep)) {
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.keys;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.rules.AddsToRuleKey;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.HasDeclaredAndExtraDeps;
+import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.util.MoreCollectors;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.hash.HashCode;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link RuleKeyCache} for default rule keys which keeps them in a file between runs, so that
+ * they survive restarts of the daemon.
+ *
+ * <p>Rule keys are stored by build target, along with the hash of the target node the rule was
+ * created from. As target node hashes cover a node's attributes, the contents of its inputs and the
+ * hashes of its dependencies, a stored rule key is only reused when none of the target graph it was
+ * computed from has changed. Rules which are not created from a target node, or whose rule keys
+ * depend on files outside of the watched filesystems, are never stored.
+ *
+ * <p>Everything else is delegated to an in-memory {@link RuleKeyCache}, which keeps serving rule
+ * keys between builds of the same daemon.
+ */
+public class PersistentRuleKeyCache implements RuleKeyCache<RuleKey> {
+
+  private static final Logger LOG = Logger.get(PersistentRuleKeyCache.class);
+
+  // Bump this whenever the layout of the file changes.
+  private static final int FORMAT_VERSION = 1;
+
+  private final RuleKeyCache<RuleKey> delegate;
+  private final Path storePath;
+  private final ImmutableSet<ProjectFilesystem> watchedFilesystems;
+
+  // The stored rule keys, by fully qualified build target, loaded on first use.
+  @Nullable private ConcurrentMap<String, StoredRuleKey> stored = null;
+  @Nullable private HashCode storedSettingsHash = null;
+  private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+  private volatile Optional<BuildContext> context = Optional.empty();
+
+  // Rules and appendables whose rule keys, and hence the rule keys of their dependents, must not
+  // be stored.
+  private final Set<Object> unpersistable = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+  // Rules served from the stored rule keys, with the target node hash they were validated against.
+  private final ConcurrentMap<BuildRule, HashCode> loaded = new ConcurrentHashMap<>();
+
+  private final LongAdder storedHitCount = new LongAdder();
+
+  public PersistentRuleKeyCache(
+      RuleKeyCache<RuleKey> delegate,
+      Path storePath,
+      ImmutableSet<ProjectFilesystem> watchedFilesystems) {
+    this.delegate = delegate;
+    this.storePath = storePath;
+    this.watchedFilesystems = watchedFilesystems;
+  }
+
+  /**
+   * Sets the target graph, and its hashes, which the following rule key lookups are made for.
+   * In-memory rule keys which were served from the stored ones are dropped if the hashes of their
+   * target nodes have changed since.
+   */
+  public void setBuildContext(Optional<BuildContext> context) {
+    this.context = context;
+    for (Map.Entry<BuildRule, HashCode> entry : loaded.entrySet()) {
+      Optional<HashCode> nodeHash =
+          context.flatMap(c -> c.getTargetNodeHash(entry.getKey().getBuildTarget()));
+      if (!nodeHash.equals(Optional.of(entry.getValue()))) {
+        LOG.debug(
+            "invalidating in-memory rule keys as the target node of %s has changed",
+            entry.getKey());
+        invalidateAll();
+        break;
+      }
+    }
+  }
+
+  @Nullable
+  @Override
+  public RuleKey get(BuildRule rule) {
+    return delegate.get(rule);
+  }
+
+  @Override
+  public RuleKey get(BuildRule rule, Function<? super BuildRule, RuleKeyResult<RuleKey>> create) {
+    return delegate.get(rule, r -> loadOrCreate(r, create));
+  }
+
+  @Override
+  public RuleKey get(
+      AddsToRuleKey appendable, Function<? super AddsToRuleKey, RuleKeyResult<RuleKey>> create) {
+    return delegate.get(
+        appendable,
+        a -> {
+          RuleKeyResult<RuleKey> result = create.apply(a);
+          if (!isPersistable(result)) {
+            unpersistable.add(a);
+          }
+          return result;
+        });
+  }
+
+  private RuleKeyResult<RuleKey> loadOrCreate(
+      BuildRule rule, Function<? super BuildRule, RuleKeyResult<RuleKey>> create) {
+    Optional<BuildContext> context = this.context;
+    Optional<TargetNode<?, ?>> node =
+        context.flatMap(c -> c.getTargetNode(rule.getBuildTarget()));
+    Optional<HashCode> nodeHash =
+        context.flatMap(c -> c.getTargetNodeHash(rule.getBuildTarget()));
+    if (!node.isPresent() || !nodeHash.isPresent()) {
+      unpersistable.add(rule);
+      return create.apply(rule);
+    }
+
+    String key = rule.getBuildTarget().getFullyQualifiedName();
+    ConcurrentMap<String, StoredRuleKey> stored = getStored(context.get().getSettingsHash());
+    StoredRuleKey storedRuleKey = stored.get(key);
+    if (storedRuleKey != null && storedRuleKey.nodeHash.equals(nodeHash.get())) {
+      storedHitCount.increment();
+      loaded.put(rule, nodeHash.get());
+      // Keep track of the node's inputs and the rule's deps, so that changes seen while the daemon
+      // is running still invalidate the in-memory rule key.
+      return new RuleKeyResult<>(
+          storedRuleKey.ruleKey,
+          getDeps(rule),
+          node.get()
+              .getInputs()
+              .stream()
+              .map(path -> RuleKeyInput.of(node.get().getFilesystem(), path))
+              .collect(MoreCollectors.toImmutableList()));
+    }
+
+    RuleKeyResult<RuleKey> result = create.apply(rule);
+    if (isPersistable(result)) {
+      stored.put(key, new StoredRuleKey(nodeHash.get(), result.result));
+      dirty.set(true);
+    } else {
+      unpersistable.add(rule);
+    }
+    return result;
+  }
+
+  private static Iterable<BuildRule> getDeps(BuildRule rule) {
+    if (rule instanceof HasDeclaredAndExtraDeps) {
+      return Iterables.concat(
+          rule.getBuildDeps(), ((HasDeclaredAndExtraDeps) rule).getTargetGraphOnlyDeps());
+    }
+    return rule.getBuildDeps();
+  }
+
+  private boolean isPersistable(RuleKeyResult<RuleKey> result) {
+    for (RuleKeyInput input : result.inputs) {
+      if (!watchedFilesystems.contains(input.getFilesystem())) {
+        return false;
+      }
+    }
+    for (Object dep : result.deps) {
+      if (unpersistable.contains(dep)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private synchronized ConcurrentMap<String, StoredRuleKey> getStored(HashCode settingsHash) {
+    if (stored == null || !settingsHash.equals(storedSettingsHash)) {
+      stored = new ConcurrentHashMap<>();
+      if (storedSettingsHash == null) {
+        load(settingsHash, stored);
+      }
+      storedSettingsHash = settingsHash;
+    }
+    return stored;
+  }
+
+  private void load(HashCode settingsHash, Map<String, StoredRuleKey> into) {
+    try (DataInputStream input =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(storePath)))) {
+      if (input.readInt() != FORMAT_VERSION) {
+        LOG.debug("ignoring stored rule keys in an older format");
+        return;
+      }
+      if (!HashCode.fromString(input.readUTF()).equals(settingsHash)) {
+        LOG.debug("ignoring stored rule keys computed with different settings");
+        return;
+      }
+      int size = input.readInt();
+      for (int i = 0; i < size; i++) {
+        String target = input.readUTF();
+        HashCode nodeHash = HashCode.fromString(input.readUTF());
+        RuleKey ruleKey = new RuleKey(input.readUTF());
+        into.put(target, new StoredRuleKey(nodeHash, ruleKey));
+      }
+      LOG.debug("loaded %d stored rule keys from %s", size, storePath);
+    } catch (NoSuchFileException e) {
+      LOG.debug("no stored rule keys at %s", storePath);
+    } catch (IOException | IllegalArgumentException e) {
+      LOG.warn(e, "failed to load stored rule keys from %s", storePath);
+      into.clear();
+    }
+  }
+
+  /** Writes the rule keys computed since the last call out to disk, if there are any. */
+  public synchronized void save() throws IOException {
+    if (stored == null || storedSettingsHash == null || !dirty.getAndSet(false)) {
+      return;
+    }
+    ImmutableMap<String, StoredRuleKey> snapshot = ImmutableMap.copyOf(stored);
+    Files.createDirectories(storePath.getParent());
+    Path tmp = storePath.resolveSibling(storePath.getFileName() + ".tmp");
+    try (DataOutputStream output =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      output.writeInt(FORMAT_VERSION);
+      output.writeUTF(storedSettingsHash.toString());
+      output.writeInt(snapshot.size());
+      for (Map.Entry<String, StoredRuleKey> entry : snapshot.entrySet()) {
+        output.writeUTF(entry.getKey());
+        output.writeUTF(entry.getValue().nodeHash.toString());
+        output.writeUTF(entry.getValue().ruleKey.toString());
+      }
+    }
+    Files.move(tmp, storePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    LOG.debug("saved %d rule keys to %s", snapshot.size(), storePath);
+  }
+
+  @Override
+  public ImmutableList<Map.Entry<BuildRule, RuleKey>> getCachedBuildRules() {
+    return delegate.getCachedBuildRules();
+  }
+
+  @Override
+  public void invalidateInputs(Iterable<RuleKeyInput> inputs) {
+    delegate.invalidateInputs(inputs);
+  }
+
+  @Override
+  public void invalidateInputsMatchingRelativePath(Path path) {
+    delegate.invalidateInputsMatchingRelativePath(path);
+  }
+
+  @Override
+  public void invalidateAllExceptFilesystems(ImmutableSet<ProjectFilesystem> filesystems) {
+    delegate.invalidateAllExceptFilesystems(filesystems);
+  }
+
+  @Override
+  public void invalidateFilesystem(ProjectFilesystem filesystem) {
+    delegate.invalidateFilesystem(filesystem);
+  }
+
+  /** Invalidates the in-memory rule keys. Stored rule keys remain, as they validate themselves. */
+  @Override
+  public void invalidateAll() {
+    delegate.invalidateAll();
+    unpersistable.clear();
+    loaded.clear();
+  }
+
+  @Override
+  public CacheStats getStats() {
+    return delegate.getStats();
+  }
+
+  /** @return the number of rule keys which were served from the stored ones. */
+  @VisibleForTesting
+  long getStoredHitCount() {
+    return storedHitCount.longValue();
+  }
+
+  private static class StoredRuleKey {
+    private final HashCode nodeHash;
+    private final RuleKey ruleKey;
+
+    private StoredRuleKey(HashCode nodeHash, RuleKey ruleKey) {
+      this.nodeHash = nodeHash;
+      this.ruleKey = ruleKey;
+    }
+  }
+
+  /** The target graph rule keys are looked up for, and everything needed to validate them. */
+  public static class BuildContext {
+
+    private final HashCode settingsHash;
+    private final TargetGraph targetGraph;
+    private final ImmutableMap<BuildTarget, HashCode> targetNodeHashes;
+
+    /**
+     * @param settingsHash a hash of everything outside of the target graph which affects rule
+     *     keys, such as the rule key seed and the configuration.
+     * @param targetGraph the target graph the action graph was created from.
+     * @param targetNodeHashes the hashes of the nodes of {@code targetGraph}, as computed by {@link
+     *     com.facebook.buck.rules.TargetGraphHashing}.
+     */
+    public BuildContext(
+        HashCode settingsHash,
+        TargetGraph targetGraph,
+        ImmutableMap<BuildTarget, HashCode> targetNodeHashes) {
+      this.settingsHash = settingsHash;
+      this.targetGraph = targetGraph;
+      this.targetNodeHashes = targetNodeHashes;
+    }
+
+    HashCode getSettingsHash() {
+      return settingsHash;
+    }
+
+    // Flavored rules are created from the node of their unflavored target.
+    private BuildTarget getNodeTarget(BuildTarget target) {
+      return targetNodeHashes.containsKey(target)
+          ? target
+          : BuildTarget.of(target.getUnflavoredBuildTarget());
+    }
+
+    Optional<TargetNode<?, ?>> getTargetNode(BuildTarget target) {
+      return targetGraph.getOptional(getNodeTarget(target));
+    }
+
+    Optional<HashCode> getTargetNodeHash(BuildTarget target) {
+      return Optional.ofNullable(targetNodeHashes.get(getNodeTarget(target)));
+    }
+  }
+}
@@ -43,7 +43,6 @@ import com.facebook.buck.util.sha1.Sha1HashCode;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.hash.HashCode;
-import com.google.common.hash.Hashing;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.regex.Pattern;
@@ -108,7 +107,11 @@ public abstract class RuleKeyBuilder<RULE_KEY> extends AbstractRuleKeyBuilder<RU
   }
 
   public static RuleKeyHasher<HashCode> createDefaultHasher() {
-    RuleKeyHasher<HashCode> hasher = new GuavaRuleKeyHasher(Hashing.sha1().newHasher());
+    return createDefaultHasher(RuleKeyHashFunction.SHA1);
+  }
+
+  public static RuleKeyHasher<HashCode> createDefaultHasher(RuleKeyHashFunction hashFunction) {
+    RuleKeyHasher<HashCode> hasher = new GuavaRuleKeyHasher(hashFunction.newHasher());
     if (logger.isVerboseEnabled()) {
       hasher =
           new ForwardingRuleKeyHasher<HashCode, String>(hasher, new StringRuleKeyHasher()) {
@@ -22,6 +22,7 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.rules.ActionGraph;
 import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.util.MoreCollectors;
 import com.facebook.buck.util.WatchmanOverflowEvent;
 import com.facebook.buck.util.WatchmanPathEvent;
@@ -29,8 +30,10 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Map;
+import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.IntStream;
@@ -43,13 +46,17 @@ public class RuleKeyCacheRecycler<V> {
 
   private final RuleKeyCache<V> cache;
   private final ImmutableSet<ProjectFilesystem> watchedFilesystems;
+  private final Optional<PersistentRuleKeyCache> persistentCache;
 
   @Nullable private SettingsAffectingCache previousSettings = null;
 
   private RuleKeyCacheRecycler(
-      RuleKeyCache<V> cache, ImmutableSet<ProjectFilesystem> watchedFilesystems) {
+      RuleKeyCache<V> cache,
+      ImmutableSet<ProjectFilesystem> watchedFilesystems,
+      Optional<PersistentRuleKeyCache> persistentCache) {
     this.cache = cache;
     this.watchedFilesystems = watchedFilesystems;
+    this.persistentCache = persistentCache;
   }
 
   /**
@@ -63,7 +70,29 @@ public class RuleKeyCacheRecycler<V> {
       RuleKeyCache<V> ruleKeyCache,
       ImmutableSet<ProjectFilesystem> watchedFilesystems) {
 
-    RuleKeyCacheRecycler<V> recycler = new RuleKeyCacheRecycler<>(ruleKeyCache, watchedFilesystems);
+    RuleKeyCacheRecycler<V> recycler =
+        new RuleKeyCacheRecycler<>(ruleKeyCache, watchedFilesystems, Optional.empty());
+
+    // Subscribe the recycler to receive filesystem watch events.
+    eventBus.register(recycler);
+
+    return recycler;
+  }
+
+  /**
+   * @param eventBus {@link EventBus} which delivers watchman events.
+   * @param watchedFilesystems all {@link ProjectFilesystem}s which use watchman to receive events
+   *     when files are changed.
+   * @return a new {@link RuleKeyCacheRecycler} which passes the target graph of each build to the
+   *     given {@link PersistentRuleKeyCache}, and saves it after each build.
+   */
+  public static RuleKeyCacheRecycler<RuleKey> createAndRegister(
+      EventBus eventBus,
+      PersistentRuleKeyCache ruleKeyCache,
+      ImmutableSet<ProjectFilesystem> watchedFilesystems) {
+
+    RuleKeyCacheRecycler<RuleKey> recycler =
+        new RuleKeyCacheRecycler<>(ruleKeyCache, watchedFilesystems, Optional.of(ruleKeyCache));
 
     // Subscribe the recycler to receive filesystem watch events.
     eventBus.register(recycler);
@@ -72,7 +101,12 @@ public class RuleKeyCacheRecycler<V> {
   }
 
   public static <V> RuleKeyCacheRecycler<V> create(RuleKeyCache<V> ruleKeyCache) {
-    return new RuleKeyCacheRecycler<>(ruleKeyCache, ImmutableSet.of());
+    return new RuleKeyCacheRecycler<>(ruleKeyCache, ImmutableSet.of(), Optional.empty());
+  }
+
+  /** @return whether rule keys are also kept on disk between runs of the daemon. */
+  public boolean isPersistent() {
+    return persistentCache.isPresent();
   }
 
   @Subscribe
@@ -135,6 +169,8 @@ public class RuleKeyCacheRecycler<V> {
 
         // Record the current settings for next time.
         previousSettings = currentSettings;
+
+        persistentCache.ifPresent(c -> c.setBuildContext(currentSettings.buildContext));
       }
 
       // Cache cleanup which is run after the caller is finished using the cache, at the conclusion
@@ -148,6 +184,14 @@ public class RuleKeyCacheRecycler<V> {
         LOG.verbose(
             "invalidating unwatched filesystems (everything except %s)", watchedFilesystems);
         cache.invalidateAllExceptFilesystems(watchedFilesystems);
+
+        if (persistentCache.isPresent()) {
+          try {
+            persistentCache.get().save();
+          } catch (IOException e) {
+            LOG.warn(e, "failed to save rule keys");
+          }
+        }
       }
     };
   }
@@ -189,10 +233,23 @@ public class RuleKeyCacheRecycler<V> {
 
     private final int ruleKeySeed;
     private final ActionGraph actionGraph;
+    private final Optional<PersistentRuleKeyCache.BuildContext> buildContext;
 
     public SettingsAffectingCache(int ruleKeySeed, ActionGraph actionGraph) {
+      this(ruleKeySeed, actionGraph, Optional.empty());
+    }
+
+    /**
+     * @param buildContext the target graph the action graph was created from, which a {@link
+     *     PersistentRuleKeyCache} validates its stored rule keys against.
+     */
+    public SettingsAffectingCache(
+        int ruleKeySeed,
+        ActionGraph actionGraph,
+        Optional<PersistentRuleKeyCache.BuildContext> buildContext) {
       this.ruleKeySeed = ruleKeySeed;
       this.actionGraph = actionGraph;
+      this.buildContext = buildContext;
     }
 
     private static boolean areIdentical(
@@ -21,14 +21,26 @@ import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.RuleKeyAppendable;
 import com.facebook.buck.rules.RuleKeyObjectSink;
 import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
 import java.nio.file.Path;
 
 public class RuleKeyFieldLoader {
 
   private final int seed;
+  private final RuleKeyHashFunction hashFunction;
 
   public RuleKeyFieldLoader(int seed) {
+    this(seed, RuleKeyHashFunction.SHA1);
+  }
+
+  public RuleKeyFieldLoader(int seed, RuleKeyHashFunction hashFunction) {
     this.seed = seed;
+    this.hashFunction = hashFunction;
+  }
+
+  /** @return a new hasher for rule keys, and their sub-keys, which share these fields. */
+  public RuleKeyHasher<HashCode> createHasher() {
+    return RuleKeyBuilder.createDefaultHasher(hashFunction);
   }
 
   public void setFields(RuleKeyObjectSink builder, BuildRule buildRule, RuleKeyType ruleKeyType) {
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.keys;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * The hash functions rule keys can be computed with. Each of them gives the same rule keys on every
+ * machine, and they give rule keys of different lengths, so that keys computed with one never
+ * collide with keys computed with another in a shared cache.
+ */
+public enum RuleKeyHashFunction {
+  /** 160-bit SHA-1. */
+  SHA1(Hashing.sha1()),
+
+  /**
+   * 128-bit Murmur3, which is several times cheaper to compute than SHA-1. It is not a
+   * cryptographic hash, so it should only be used where nobody would craft colliding rule keys.
+   */
+  MURMUR3_128(Hashing.murmur3_128()),
+  ;
+
+  private final HashFunction hashFunction;
+
+  RuleKeyHashFunction(HashFunction hashFunction) {
+    this.hashFunction = hashFunction;
+  }
+
+  public Hasher newHasher() {
+    return hashFunction.newHasher();
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.modern;
+
+import com.facebook.buck.event.EventDispatcher;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.rules.modern.execution.Action;
+import com.facebook.buck.rules.modern.execution.ActionExecutor;
+import com.facebook.buck.step.Step;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+
+/**
+ * A Buildable whose work is a single command. Rather than running steps in-process,
+ * ModernBuildRule runs the command as an {@link Action} with the {@link ActionExecutor} of the
+ * build, so that it may run in a sandbox, on another machine, or not at all when an identical
+ * action ran before.
+ *
+ * <p>The command runs from the root of the project and only sees the declared inputs. Everything it
+ * writes must go to the directories of the {@link OutputPathResolver}.
+ */
+public interface CommandBuildable extends Buildable {
+  /** @return all the inputs the command reads. */
+  ImmutableSortedSet<InputPath> getCommandInputs();
+
+  /**
+   * @param inputPathResolver resolves inputs to paths relative to the root of the project.
+   * @return the command to run, starting with the program.
+   */
+  ImmutableList<String> getCommand(
+      InputPathResolver inputPathResolver, OutputPathResolver outputPathResolver);
+
+  /** @return the whole environment of the command. */
+  default ImmutableSortedMap<String, String> getCommandEnvironment() {
+    return ImmutableSortedMap.of();
+  }
+
+  /**
+   * Runs the command as an action on this machine, without reusing the results of earlier identical
+   * actions. ModernBuildRule runs it with the executor of the build instead.
+   */
+  @Override
+  default ImmutableList<Step> getBuildSteps(
+      EventDispatcher eventDispatcher,
+      ProjectFilesystem filesystem,
+      InputPathResolver inputPathResolver,
+      InputDataRetriever inputDataRetriever,
+      OutputPathResolver outputPathResolver,
+      BuildCellRelativePathFactory buildCellPathFactory) {
+    return ImmutableList.of(
+        ModernBuildRule.createActionStep(
+            this, ActionExecutor.local(0), filesystem, inputPathResolver, outputPathResolver));
+  }
+}
@@ -31,8 +31,11 @@ import com.facebook.buck.rules.RuleKeyObjectSink;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
+import com.facebook.buck.rules.modern.execution.ActionExecutor;
+import com.facebook.buck.rules.modern.execution.ActionStep;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
+import com.facebook.buck.util.MoreCollectors;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
@@ -159,15 +162,25 @@ public class ModernBuildRule<T extends Buildable>
             BuildCellRelativePath.fromCellRelativePath(
                 context.getBuildCellRootPath(), filesystem, outputPathResolver.getTempPath())));
 
-    stepBuilder.addAll(
-        buildable.getBuildSteps(
-            context.getEventBus(),
-            filesystem,
-            new DefaultInputPathResolver(context.getSourcePathResolver()),
-            getInputDataRetriever(),
-            outputPathResolver,
-            new DefaultBuildCellRelativePathFactory(
-                context.getBuildCellRootPath(), filesystem, Optional.of(outputPathResolver))));
+    if (buildable instanceof CommandBuildable) {
+      stepBuilder.add(
+          createActionStep(
+              (CommandBuildable) buildable,
+              context.getActionExecutor(),
+              filesystem,
+              new DefaultInputPathResolver(context.getSourcePathResolver()),
+              outputPathResolver));
+    } else {
+      stepBuilder.addAll(
+          buildable.getBuildSteps(
+              context.getEventBus(),
+              filesystem,
+              new DefaultInputPathResolver(context.getSourcePathResolver()),
+              getInputDataRetriever(),
+              outputPathResolver,
+              new DefaultBuildCellRelativePathFactory(
+                  context.getBuildCellRootPath(), filesystem, Optional.of(outputPathResolver))));
+    }
 
     // TODO(cjhopman): Should this delete the scratch directory? Maybe delete by default but
     // preserve it based on verbosity. Currently, since CachingBuildEngine doesn't know what files
@@ -176,14 +189,42 @@ public class ModernBuildRule<T extends Buildable>
     // to the rule and so the engine could reliably clean old state and then leaving the scratch
     // directory would be fine.
     buildableContext.recordArtifact(outputPathResolver.getRootPath());
-    // All the outputs are already forced to be within getGenDirectory(), and so this recording
-    // isn't actually necessary.
-    classInfo.getOutputs(buildable, (name, output) -> recordOutput(buildableContext, output));
+    // The outputs of a command are the whole output root, and it has no output data.
+    if (!(buildable instanceof CommandBuildable)) {
+      // All the outputs are already forced to be within getGenDirectory(), and so this recording
+      // isn't actually necessary.
+      classInfo.getOutputs(buildable, (name, output) -> recordOutput(buildableContext, output));
 
-    classInfo.getOutputData(buildable, (name, data) -> recordData(buildableContext, name, data));
+      classInfo.getOutputData(buildable, (name, data) -> recordData(buildableContext, name, data));
+    }
     return stepBuilder.build();
   }
 
+  /**
+   * @param inputPathResolver resolves inputs to absolute paths, which must be within the root of
+   *     {@code filesystem}.
+   * @return a step running the command of {@code commandBuildable} as an action with {@code
+   *     executor}, and writing its outputs to {@code filesystem}.
+   */
+  static Step createActionStep(
+      CommandBuildable commandBuildable,
+      ActionExecutor executor,
+      ProjectFilesystem filesystem,
+      InputPathResolver inputPathResolver,
+      OutputPathResolver outputPathResolver) {
+    InputPathResolver projectRelativeInputPathResolver =
+        new ProjectRelativeInputPathResolver(filesystem, inputPathResolver);
+    return new ActionStep(
+        filesystem,
+        executor,
+        commandBuildable.getCommand(projectRelativeInputPathResolver, outputPathResolver),
+        commandBuildable.getCommandEnvironment(),
+        projectRelativeInputPathResolver
+            .resolveAllPaths(commandBuildable.getCommandInputs())
+            .collect(MoreCollectors.toImmutableSortedSet()),
+        ImmutableSortedSet.of(outputPathResolver.getRootPath()));
+  }
+
   private void recordOutput(BuildableContext buildableContext, OutputPath output) {
     buildableContext.recordArtifact(outputPathResolver.resolvePath(output));
   }
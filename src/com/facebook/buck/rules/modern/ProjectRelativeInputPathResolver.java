@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.modern;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.util.HumanReadableException;
+import com.facebook.buck.util.RichStream;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Resolves inputs to paths relative to the root of the project, which is where actions run. The
+ * limited SourcePathResolver still resolves to absolute paths.
+ */
+class ProjectRelativeInputPathResolver implements InputPathResolver {
+  private final ProjectFilesystem filesystem;
+  private final InputPathResolver delegate;
+
+  ProjectRelativeInputPathResolver(ProjectFilesystem filesystem, InputPathResolver delegate) {
+    this.filesystem = filesystem;
+    this.delegate = delegate;
+  }
+
+  @Override
+  public Path resolvePath(InputPath inputPath) {
+    Path path = delegate.resolvePath(inputPath);
+    return filesystem
+        .getPathRelativeToProjectRoot(path)
+        .orElseThrow(
+            () ->
+                new HumanReadableException(
+                    "%s is outside of %s and can't be an input of an action.",
+                    path, filesystem.getRootPath()));
+  }
+
+  @Override
+  public Stream<Path> resolveAllPaths(Iterable<InputPath> inputPaths) {
+    return RichStream.from(inputPaths).map(this::resolvePath);
+  }
+
+  @Override
+  public SourcePathResolver getLimitedSourcePathResolver() {
+    return delegate.getLimitedSourcePathResolver();
+  }
+}
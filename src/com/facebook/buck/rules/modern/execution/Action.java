@@ -0,0 +1,263 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.modern.execution;
+
+import com.facebook.buck.io.MorePaths;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import javax.annotation.Nullable;
+
+/**
+ * A command along with everything it may read and write: the contents and modes of its input files
+ * and the directories its outputs are written to. Running an action only depends on what it
+ * contains, so actions are identified by the digest of their serialized form, and may be run
+ * anywhere.
+ *
+ * <p>All paths are relative to the root of the project the action was created in, which is the
+ * working directory of the command.
+ */
+public final class Action {
+
+  // Bump this whenever the serialized form changes.
+  private static final int FORMAT_VERSION = 2;
+
+  private final ImmutableList<String> command;
+  private final ImmutableSortedMap<String, String> environment;
+  private final ImmutableSortedMap<Path, HashCode> inputs;
+  private final ImmutableSortedSet<Path> executableInputs;
+  private final ImmutableSortedSet<Path> outputDirectories;
+  private final Supplier<HashCode> digest = Suppliers.memoize(this::computeDigest);
+
+  public Action(
+      ImmutableList<String> command,
+      ImmutableSortedMap<String, String> environment,
+      ImmutableSortedMap<Path, HashCode> inputs,
+      ImmutableSortedSet<Path> executableInputs,
+      ImmutableSortedSet<Path> outputDirectories) {
+    Preconditions.checkArgument(!command.isEmpty(), "Actions need a command to run.");
+    for (Path path : inputs.keySet()) {
+      checkRelative(path);
+    }
+    Preconditions.checkArgument(
+        inputs.keySet().containsAll(executableInputs),
+        "Executable inputs must be inputs of the action: %s",
+        executableInputs);
+    for (Path path : outputDirectories) {
+      checkRelative(path);
+    }
+    this.command = command;
+    this.environment = environment;
+    this.inputs = inputs;
+    this.executableInputs = executableInputs;
+    this.outputDirectories = outputDirectories;
+  }
+
+  private static void checkRelative(Path path) {
+    Preconditions.checkArgument(
+        !path.isAbsolute() && !path.normalize().startsWith(".."),
+        "Paths of actions must be within the project: %s",
+        path);
+  }
+
+  /**
+   * Creates an action reading the files in {@code inputs}, which are hashed from {@code
+   * filesystem}. Directories stand for all the files they contain.
+   */
+  public static Action create(
+      ProjectFilesystem filesystem,
+      ImmutableList<String> command,
+      ImmutableSortedMap<String, String> environment,
+      Iterable<Path> inputs,
+      ImmutableSortedSet<Path> outputDirectories)
+      throws IOException {
+    ImmutableSortedMap.Builder<Path, HashCode> inputHashes = ImmutableSortedMap.naturalOrder();
+    ImmutableSortedSet.Builder<Path> executableInputs = ImmutableSortedSet.naturalOrder();
+    for (Path input : ImmutableSortedSet.copyOf(inputs)) {
+      if (filesystem.isDirectory(input)) {
+        filesystem.walkRelativeFileTree(
+            input,
+            new SimpleFileVisitor<Path>() {
+              @Override
+              public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                  throws IOException {
+                addInputFile(filesystem, file, inputHashes, executableInputs);
+                return FileVisitResult.CONTINUE;
+              }
+            });
+      } else {
+        addInputFile(filesystem, input, inputHashes, executableInputs);
+      }
+    }
+    return new Action(
+        command, environment, inputHashes.build(), executableInputs.build(), outputDirectories);
+  }
+
+  private static void addInputFile(
+      ProjectFilesystem filesystem,
+      Path file,
+      ImmutableSortedMap.Builder<Path, HashCode> inputHashes,
+      ImmutableSortedSet.Builder<Path> executableInputs)
+      throws IOException {
+    inputHashes.put(file, filesystem.computeSha1(file).asHashCode());
+    if (filesystem.isExecutable(file)) {
+      executableInputs.add(file);
+    }
+  }
+
+  public ImmutableList<String> getCommand() {
+    return command;
+  }
+
+  public ImmutableSortedMap<String, String> getEnvironment() {
+    return environment;
+  }
+
+  /** @return the files the action reads, with the SHA-1 of their contents. */
+  public ImmutableSortedMap<Path, HashCode> getInputs() {
+    return inputs;
+  }
+
+  /** @return the inputs whose executable bit is set. */
+  public ImmutableSortedSet<Path> getExecutableInputs() {
+    return executableInputs;
+  }
+
+  /** @return the directories all the outputs of the action are written to. */
+  public ImmutableSortedSet<Path> getOutputDirectories() {
+    return outputDirectories;
+  }
+
+  /** @return the SHA-1 of the serialized action, which identifies it. */
+  public HashCode getDigest() {
+    return digest.get();
+  }
+
+  private HashCode computeDigest() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      writeTo(output);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return Hashing.sha1().hashBytes(bytes.toByteArray());
+  }
+
+  /** Serializes the action, in a form which does not depend on the platform it is written on. */
+  public void writeTo(DataOutput output) throws IOException {
+    output.writeInt(FORMAT_VERSION);
+    output.writeInt(command.size());
+    for (String arg : command) {
+      output.writeUTF(arg);
+    }
+    output.writeInt(environment.size());
+    for (Map.Entry<String, String> entry : environment.entrySet()) {
+      output.writeUTF(entry.getKey());
+      output.writeUTF(entry.getValue());
+    }
+    output.writeInt(inputs.size());
+    for (Map.Entry<Path, HashCode> entry : inputs.entrySet()) {
+      output.writeUTF(MorePaths.pathWithUnixSeparators(entry.getKey()));
+      output.writeUTF(entry.getValue().toString());
+      output.writeBoolean(executableInputs.contains(entry.getKey()));
+    }
+    output.writeInt(outputDirectories.size());
+    for (Path path : outputDirectories) {
+      output.writeUTF(MorePaths.pathWithUnixSeparators(path));
+    }
+  }
+
+  /** Reads an action written by {@link #writeTo(DataOutput)}. */
+  public static Action readFrom(DataInput input) throws IOException {
+    int version = input.readInt();
+    if (version != FORMAT_VERSION) {
+      throw new IOException(String.format("Unsupported action format version %d.", version));
+    }
+    ImmutableList.Builder<String> command = ImmutableList.builder();
+    for (int i = input.readInt(); i > 0; i--) {
+      command.add(input.readUTF());
+    }
+    ImmutableSortedMap.Builder<String, String> environment = ImmutableSortedMap.naturalOrder();
+    for (int i = input.readInt(); i > 0; i--) {
+      environment.put(input.readUTF(), input.readUTF());
+    }
+    ImmutableSortedMap.Builder<Path, HashCode> inputs = ImmutableSortedMap.naturalOrder();
+    ImmutableSortedSet.Builder<Path> executableInputs = ImmutableSortedSet.naturalOrder();
+    for (int i = input.readInt(); i > 0; i--) {
+      Path path = Paths.get(input.readUTF());
+      inputs.put(path, HashCode.fromString(input.readUTF()));
+      if (input.readBoolean()) {
+        executableInputs.add(path);
+      }
+    }
+    ImmutableSortedSet.Builder<Path> outputDirectories = ImmutableSortedSet.naturalOrder();
+    for (int i = input.readInt(); i > 0; i--) {
+      outputDirectories.add(Paths.get(input.readUTF()));
+    }
+    return new Action(
+        command.build(),
+        environment.build(),
+        inputs.build(),
+        executableInputs.build(),
+        outputDirectories.build());
+  }
+
+  @Override
+  public boolean equals(@Nullable Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof Action)) {
+      return false;
+    }
+    Action other = (Action) obj;
+    return command.equals(other.command)
+        && environment.equals(other.environment)
+        && inputs.equals(other.inputs)
+        && executableInputs.equals(other.executableInputs)
+        && outputDirectories.equals(other.outputDirectories);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(command, environment, inputs, executableInputs, outputDirectories);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("action %s (%s)", getDigest(), String.join(" ", command));
+  }
+}
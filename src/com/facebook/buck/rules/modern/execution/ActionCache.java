@@ -0,0 +1,27 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.modern.execution;
+
+import com.google.common.hash.HashCode;
+import java.util.Optional;
+
+/** Keeps the results of successful {@link Action}s, by the digest of the action. */
+public interface ActionCache {
+  Optional<ActionResult> get(HashCode actionDigest);
+
+  void put(HashCode actionDigest, ActionResult result);
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.modern.execution;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import java.io.IOException;
+
+/** Runs {@link Action}s, on this machine or elsewhere. */
+public interface ActionExecutionStrategy {
+  /**
+   * Runs {@code action}, whose inputs can be read from {@code filesystem}, and returns the files it
+   * wrote without writing them to {@code filesystem}.
+   */
+  ActionResult execute(Action action, ProjectFilesystem filesystem, ExecutionContext context)
+      throws IOException, InterruptedException;
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.modern.execution;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.step.ExecutionContext;
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Runs {@link Action}s with an {@link ActionExecutionStrategy}, unless the result of an identical
+ * action is found in its {@link ActionCache}.
+ */
+public class ActionExecutor {
+
+  private static final Logger LOG = Logger.get(ActionExecutor.class);
+
+  private final ActionExecutionStrategy strategy;
+  private final ActionCache cache;
+
+  public ActionExecutor(ActionExecutionStrategy strategy, ActionCache cache) {
+    this.strategy = strategy;
+    this.cache = cache;
+  }
+
+  /**
+   * @return an executor which runs actions in sandboxes on this machine, and keeps the results of
+   *     actions in memory up to a total of {@code cacheSizeBytes} of output files.
+   */
+  public static ActionExecutor local(long cacheSizeBytes) {
+    return new ActionExecutor(
+        new LocalSandboxedExecutionStrategy(), new InMemoryActionCache(cacheSizeBytes));
+  }
+
+  /** Runs {@code action}, whose inputs can be read from {@code filesystem}. */
+  public ActionResult execute(Action action, ProjectFilesystem filesystem, ExecutionContext context)
+      throws IOException, InterruptedException {
+    Optional<ActionResult> cached = cache.get(action.getDigest());
+    if (cached.isPresent()) {
+      LOG.verbose("found the result of %s in the action cache", action);
+      return cached.get();
+    }
+    ActionResult result = strategy.execute(action, filesystem, context);
+    if (result.isSuccess()) {
+      cache.put(action.getDigest(), result);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.modern.execution;
+
+import com.facebook.buck.io.MoreFiles;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.io.ByteSource;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * What running an {@link Action} produced: its exit code, its output and the files it wrote, along
+ * with which of those are executable.
+ */
+public final class ActionResult {
+
+  private final int exitCode;
+  private final String stdout;
+  private final String stderr;
+  private final ImmutableSortedMap<Path, ByteSource> outputFiles;
+  private final ImmutableSortedSet<Path> executableOutputFiles;
+
+  public ActionResult(
+      int exitCode,
+      String stdout,
+      String stderr,
+      ImmutableSortedMap<Path, ByteSource> outputFiles,
+      ImmutableSortedSet<Path> executableOutputFiles) {
+    Preconditions.checkArgument(
+        outputFiles.keySet().containsAll(executableOutputFiles),
+        "Executable output files must be output files of the action: %s",
+        executableOutputFiles);
+    this.exitCode = exitCode;
+    this.stdout = stdout;
+    this.stderr = stderr;
+    this.outputFiles = outputFiles;
+    this.executableOutputFiles = executableOutputFiles;
+  }
+
+  public int getExitCode() {
+    return exitCode;
+  }
+
+  public boolean isSuccess() {
+    return exitCode == 0;
+  }
+
+  public String getStdout() {
+    return stdout;
+  }
+
+  public String getStderr() {
+    return stderr;
+  }
+
+  /** @return the contents of the files written to the output directories of the action. */
+  public ImmutableSortedMap<Path, ByteSource> getOutputFiles() {
+    return outputFiles;
+  }
+
+  /** @return the output files whose executable bit is set. */
+  public ImmutableSortedSet<Path> getExecutableOutputFiles() {
+    return executableOutputFiles;
+  }
+
+  /** @return the total size of the output files, where it is known without reading them. */
+  public long getOutputFilesSize() {
+    long size = 0;
+    for (ByteSource contents : outputFiles.values()) {
+      size += contents.sizeIfKnown().or(0L);
+    }
+    return size;
+  }
+
+  /** Writes the output files to {@code filesystem}, where the action would have written them. */
+  public void materialize(ProjectFilesystem filesystem) throws IOException {
+    for (Map.Entry<Path, ByteSource> entry : outputFiles.entrySet()) {
+      filesystem.createParentDirs(entry.getKey());
+      filesystem.writeBytesToPath(entry.getValue().read(), entry.getKey());
+      if (executableOutputFiles.contains(entry.getKey())) {
+        MoreFiles.makeExecutable(filesystem.resolve(entry.getKey()));
+      }
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.modern.execution;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Runs a command as an {@link Action} with an {@link ActionExecutor}, and writes its outputs to
+ * the project filesystem. The inputs are hashed when the step runs, once they have been built.
+ */
+public class ActionStep implements Step {
+
+  private final ProjectFilesystem filesystem;
+  private final ActionExecutor executor;
+  private final ImmutableList<String> command;
+  private final ImmutableSortedMap<String, String> environment;
+  private final ImmutableSortedSet<Path> inputs;
+  private final ImmutableSortedSet<Path> outputDirectories;
+
+  public ActionStep(
+      ProjectFilesystem filesystem,
+      ActionExecutor executor,
+      ImmutableList<String> command,
+      ImmutableSortedMap<String, String> environment,
+      ImmutableSortedSet<Path> inputs,
+      ImmutableSortedSet<Path> outputDirectories) {
+    this.filesystem = filesystem;
+    this.executor = executor;
+    this.command = command;
+    this.environment = environment;
+    this.inputs = inputs;
+    this.outputDirectories = outputDirectories;
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    Action action = Action.create(filesystem, command, environment, inputs, outputDirectories);
+    ActionResult result = executor.execute(action, filesystem, context);
+    if (!result.isSuccess()) {
+      return StepExecutionResult.of(result.getExitCode(), Optional.of(result.getStderr()));
+    }
+    result.materialize(filesystem);
+    return StepExecutionResult.SUCCESS;
+  }
+
+  @Override
+  public String getShortName() {
+    return "action";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.join(" ", command);
+  }
+}
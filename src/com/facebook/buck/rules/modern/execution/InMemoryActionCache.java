@@ -0,0 +1,47 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.modern.execution;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import java.util.Optional;
+
+/** An {@link ActionCache} which keeps results in memory, up to a total size of output files. */
+public class InMemoryActionCache implements ActionCache {
+
+  private final Cache<HashCode, ActionResult> results;
+
+  public InMemoryActionCache(long maximumOutputBytes) {
+    this.results =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maximumOutputBytes)
+            .<HashCode, ActionResult>weigher(
+                (digest, result) -> (int) Math.min(Integer.MAX_VALUE, result.getOutputFilesSize()))
+            .build();
+  }
+
+  @Override
+  public Optional<ActionResult> get(HashCode actionDigest) {
+    return Optional.ofNullable(results.getIfPresent(actionDigest));
+  }
+
+  @Override
+  public void put(HashCode actionDigest, ActionResult result) {
+    results.put(actionDigest, result);
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.modern.execution;
+
+import com.facebook.buck.io.MoreFiles;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.util.ProcessExecutor;
+import com.facebook.buck.util.ProcessExecutorParams;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.io.ByteSource;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Runs actions as subprocesses of this process, each in a directory of its own under buck-out
+ * which only contains the inputs of the action, and with only the environment of the action. The
+ * files written to the output directories are read back into memory, along with their executable
+ * bits, before the directory is deleted.
+ *
+ * <p>Nothing stops a command from reaching outside of its directory through absolute paths, but
+ * commands which read files they don't declare as inputs fail here rather than giving different
+ * results elsewhere.
+ */
+public class LocalSandboxedExecutionStrategy implements ActionExecutionStrategy {
+
+  @Override
+  public ActionResult execute(Action action, ProjectFilesystem filesystem, ExecutionContext context)
+      throws IOException, InterruptedException {
+    Path sandboxes = filesystem.resolve(filesystem.getBuckPaths().getTmpDir());
+    Files.createDirectories(sandboxes);
+    Path sandbox = Files.createTempDirectory(sandboxes, "action-");
+    try {
+      for (Path input : action.getInputs().keySet()) {
+        Path destination = sandbox.resolve(input);
+        Files.createDirectories(destination.getParent());
+        Files.copy(filesystem.resolve(input), destination);
+        if (action.getExecutableInputs().contains(input)) {
+          MoreFiles.makeExecutable(destination);
+        }
+      }
+      for (Path outputDirectory : action.getOutputDirectories()) {
+        Files.createDirectories(sandbox.resolve(outputDirectory));
+      }
+
+      ProcessExecutor.Result result =
+          context
+              .getProcessExecutor()
+              .launchAndExecute(
+                  ProcessExecutorParams.builder()
+                      .setCommand(action.getCommand())
+                      .setDirectory(sandbox)
+                      .setEnvironment(ImmutableMap.copyOf(action.getEnvironment()))
+                      .build());
+
+      ImmutableSortedMap.Builder<Path, ByteSource> outputFiles = ImmutableSortedMap.naturalOrder();
+      ImmutableSortedSet.Builder<Path> executableOutputFiles = ImmutableSortedSet.naturalOrder();
+      if (result.getExitCode() == 0) {
+        for (Path outputDirectory : action.getOutputDirectories()) {
+          Files.walkFileTree(
+              sandbox.resolve(outputDirectory),
+              new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                    throws IOException {
+                  Path outputFile = sandbox.relativize(file);
+                  outputFiles.put(outputFile, ByteSource.wrap(Files.readAllBytes(file)));
+                  if (Files.isExecutable(file)) {
+                    executableOutputFiles.add(outputFile);
+                  }
+                  return FileVisitResult.CONTINUE;
+                }
+              });
+        }
+      }
+      return new ActionResult(
+          result.getExitCode(),
+          result.getStdout().orElse(""),
+          result.getStderr().orElse(""),
+          outputFiles.build(),
+          executableOutputFiles.build());
+    } finally {
+      MoreFiles.deleteRecursivelyIfExists(sandbox);
+    }
+  }
+}
@@ -200,23 +200,20 @@ public class RustCompileUtils {
 
     String filename = crateType.filenameFor(crateName, cxxPlatform);
 
-    return resolver.addToIndex(
-        RustCompileRule.from(
-            ruleFinder,
-            target,
-            projectFilesystem,
-            params,
-            filename,
-            rustConfig.getRustCompiler().resolve(resolver),
-            rustConfig
-                .getLinkerProvider(cxxPlatform, cxxPlatform.getLd().getType())
-                .resolve(resolver),
-            args.build(),
-            depArgs.build(),
-            linkerArgs.build(),
-            CxxGenruleDescription.fixupSourcePaths(resolver, ruleFinder, cxxPlatform, sources),
-            CxxGenruleDescription.fixupSourcePath(resolver, ruleFinder, cxxPlatform, rootModule),
-            crateType.hasOutput()));
+    return RustCompileRule.from(
+        ruleFinder,
+        target,
+        projectFilesystem,
+        params,
+        filename,
+        rustConfig.getRustCompiler().resolve(resolver),
+        rustConfig.getLinkerProvider(cxxPlatform, cxxPlatform.getLd().getType()).resolve(resolver),
+        args.build(),
+        depArgs.build(),
+        linkerArgs.build(),
+        CxxGenruleDescription.fixupSourcePaths(resolver, ruleFinder, cxxPlatform, sources),
+        CxxGenruleDescription.fixupSourcePath(resolver, ruleFinder, cxxPlatform, rootModule),
+        crateType.hasOutput());
   }
 
   public static RustCompileRule requireBuild(
@@ -238,30 +235,27 @@ public class RustCompileUtils {
       throws NoSuchBuildTargetException {
     BuildTarget target = getCompileBuildTarget(buildTarget, cxxPlatform, crateType);
 
-    // If this rule has already been generated, return it.
-    Optional<RustCompileRule> existing =
-        resolver.getRuleOptionalWithType(target, RustCompileRule.class);
-    if (existing.isPresent()) {
-      return existing.get();
-    }
-
-    return createBuild(
-        target,
-        crateName,
-        projectFilesystem,
-        params,
-        resolver,
-        ruleFinder,
-        cxxPlatform,
-        rustConfig,
-        extraFlags,
-        extraLinkerFlags,
-        linkerInputs,
-        crateType,
-        depType,
-        true,
-        sources,
-        rootModule);
+    return (RustCompileRule)
+        resolver.computeIfAbsentThrowing(
+            target,
+            compileTarget ->
+                createBuild(
+                    compileTarget,
+                    crateName,
+                    projectFilesystem,
+                    params,
+                    resolver,
+                    ruleFinder,
+                    cxxPlatform,
+                    rustConfig,
+                    extraFlags,
+                    extraLinkerFlags,
+                    linkerInputs,
+                    crateType,
+                    depType,
+                    true,
+                    sources,
+                    rootModule));
   }
 
   public static Linker.LinkableDepType getLinkStyle(
@@ -352,14 +346,18 @@ public class RustCompileUtils {
       // Create a symlink tree with for all native shared (NativeLinkable) libraries
       // needed by this binary.
       SymlinkTree sharedLibraries =
-          resolver.addToIndex(
-              CxxDescriptionEnhancer.createSharedLibrarySymlinkTree(
-                  buildTarget,
-                  projectFilesystem,
-                  cxxPlatform,
-                  params.getBuildDeps(),
-                  RustLinkable.class::isInstance,
-                  RustLinkable.class::isInstance));
+          (SymlinkTree)
+              resolver.computeIfAbsentThrowing(
+                  CxxDescriptionEnhancer.createSharedLibrarySymlinkTreeTarget(
+                      buildTarget, cxxPlatform.getFlavor()),
+                  ignored ->
+                      CxxDescriptionEnhancer.createSharedLibrarySymlinkTree(
+                          buildTarget,
+                          projectFilesystem,
+                          cxxPlatform,
+                          params.getBuildDeps(),
+                          RustLinkable.class::isInstance,
+                          RustLinkable.class::isInstance));
 
       // Embed a origin-relative library path into the binary so it can find the shared libraries.
       // The shared libraries root is absolute. Also need an absolute path to the linkOutput
@@ -389,23 +387,24 @@ public class RustCompileUtils {
     }
 
     final RustCompileRule buildRule =
-        createBuild(
-            binaryTarget,
-            crate,
-            projectFilesystem,
-            params,
-            resolver,
-            ruleFinder,
-            cxxPlatform,
-            rustBuckConfig,
-            rustcArgs.build(),
-            linkerArgs.build(),
-            /* linkerInputs */ ImmutableList.of(),
-            isCheck ? CrateType.CHECKBIN : CrateType.BIN,
-            linkStyle,
-            rpath,
-            rootModuleAndSources.getSecond(),
-            rootModuleAndSources.getFirst());
+        resolver.addToIndex(
+            createBuild(
+                binaryTarget,
+                crate,
+                projectFilesystem,
+                params,
+                resolver,
+                ruleFinder,
+                cxxPlatform,
+                rustBuckConfig,
+                rustcArgs.build(),
+                linkerArgs.build(),
+                /* linkerInputs */ ImmutableList.of(),
+                isCheck ? CrateType.CHECKBIN : CrateType.BIN,
+                linkStyle,
+                rpath,
+                rootModuleAndSources.getSecond(),
+                rootModuleAndSources.getFirst()));
 
     // Add the binary as the first argument.
     executableBuilder.addArg(SourcePathArg.of(buildRule.getSourcePathToOutput()));
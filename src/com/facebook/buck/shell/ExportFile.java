@@ -28,6 +28,7 @@ import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildableContext;
 import com.facebook.buck.rules.ExplicitBuildTargetSourcePath;
 import com.facebook.buck.rules.HasRuntimeDeps;
+import com.facebook.buck.rules.ReusableAcrossActionGraphs;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePathRuleFinder;
@@ -91,6 +92,7 @@ import java.util.stream.Stream;
  * of the file to be saved.
  */
 // TODO(simons): Extend to also allow exporting a rule.
+@ReusableAcrossActionGraphs
 public class ExportFile extends AbstractBuildRuleWithDeclaredAndExtraDeps
     implements HasOutputName, HasRuntimeDeps {
 
@@ -345,30 +345,32 @@ public class SwiftLibraryDescription implements Description<SwiftLibraryDescript
                     cxxPlatform, Linker.LinkableDepType.SHARED))
             .addAllArgs(rule.getAstLinkArgs())
             .addArgs(rule.getFileListLinkArg());
-    return resolver.addToIndex(
-        CxxLinkableEnhancer.createCxxLinkableBuildRule(
-            cxxBuckConfig,
-            cxxPlatform,
-            projectFilesystem,
-            resolver,
-            sourcePathResolver,
-            ruleFinder,
-            buildTarget,
-            Linker.LinkType.SHARED,
-            Optional.of(sharedLibrarySoname),
-            sharedLibOutput,
-            Linker.LinkableDepType.SHARED,
-            /* thinLto */ false,
-            RichStream.from(params.getBuildDeps())
-                .filter(NativeLinkable.class)
-                .concat(RichStream.of(swiftRuntimeLinkable))
-                .collect(MoreCollectors.toImmutableSet()),
-            Optional.empty(),
-            Optional.empty(),
-            ImmutableSet.of(),
-            ImmutableSet.of(),
-            inputBuilder.build(),
-            Optional.empty()));
+    return resolver.computeIfAbsentThrowing(
+        buildTarget,
+        target ->
+            CxxLinkableEnhancer.createCxxLinkableBuildRule(
+                cxxBuckConfig,
+                cxxPlatform,
+                projectFilesystem,
+                resolver,
+                sourcePathResolver,
+                ruleFinder,
+                target,
+                Linker.LinkType.SHARED,
+                Optional.of(sharedLibrarySoname),
+                sharedLibOutput,
+                Linker.LinkableDepType.SHARED,
+                /* thinLto */ false,
+                RichStream.from(params.getBuildDeps())
+                    .filter(NativeLinkable.class)
+                    .concat(RichStream.of(swiftRuntimeLinkable))
+                    .collect(MoreCollectors.toImmutableSet()),
+                Optional.empty(),
+                Optional.empty(),
+                ImmutableSet.of(),
+                ImmutableSet.of(),
+                inputBuilder.build(),
+                Optional.empty()));
   }
 
   public Optional<BuildRule> createCompanionBuildRule(
@@ -401,15 +403,17 @@ public class SwiftLibraryDescription implements Description<SwiftLibraryDescript
     SwiftLibraryDescriptionArg delegateArgs = delegateArgsBuilder.build();
     if (!delegateArgs.getSrcs().isEmpty()) {
       return Optional.of(
-          resolver.addToIndex(
-              createBuildRule(
-                  targetGraph,
-                  buildTarget,
-                  projectFilesystem,
-                  params,
-                  resolver,
-                  cellRoots,
-                  delegateArgs)));
+          resolver.computeIfAbsentThrowing(
+              buildTarget,
+              target ->
+                  createBuildRule(
+                      targetGraph,
+                      target,
+                      projectFilesystem,
+                      params,
+                      resolver,
+                      cellRoots,
+                      delegateArgs)));
     } else {
       return Optional.empty();
     }
@@ -35,6 +35,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 
 public class DefaultFileHashCache implements ProjectFileHashCache {
@@ -47,6 +48,9 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
 
   @VisibleForTesting FileHashCacheEngine fileHashCacheEngine;
 
+  // Incremented whenever hashes are loaded, set or invalidated.
+  protected final AtomicLong modificationCount = new AtomicLong();
+
   protected DefaultFileHashCache(
       ProjectFilesystem projectFilesystem,
       Predicate<Path> ignoredPredicate,
@@ -55,6 +59,7 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
     this.ignoredPredicate = ignoredPredicate;
     FileHashCacheEngine.ValueLoader<HashCodeAndFileType> hashLoader =
         path -> {
+          modificationCount.incrementAndGet();
           try {
             return getHashCodeAndFileType(path);
           } catch (IOException e) {
@@ -187,11 +192,13 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
 
   @Override
   public void invalidate(Path relativePath) {
+    modificationCount.incrementAndGet();
     fileHashCacheEngine.invalidate(relativePath);
   }
 
   @Override
   public void invalidateAll() {
+    modificationCount.incrementAndGet();
     fileHashCacheEngine.invalidateAll();
   }
 
@@ -257,6 +264,7 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
       value = HashCodeAndFileType.ofFile(hashCode);
     }
 
+    modificationCount.incrementAndGet();
     fileHashCacheEngine.put(relativePath, value);
   }
 
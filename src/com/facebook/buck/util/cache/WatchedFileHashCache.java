@@ -20,13 +20,32 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.util.WatchmanOverflowEvent;
 import com.facebook.buck.util.WatchmanPathEvent;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.hash.HashCode;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
 
 public class WatchedFileHashCache extends DefaultFileHashCache {
 
   private static final Logger LOG = Logger.get(WatchedFileHashCache.class);
 
+  // Bump this whenever the layout of snapshots changes.
+  private static final int SNAPSHOT_FORMAT_VERSION = 1;
+
+  // The modification count as of the last snapshot saved or loaded.
+  private long snapshotModificationCount = -1;
+
   public WatchedFileHashCache(
       ProjectFilesystem projectFilesystem, FileHashCacheMode fileHashCacheMode) {
     super(projectFilesystem, getDefaultPathPredicate(projectFilesystem), fileHashCacheMode);
@@ -42,6 +61,7 @@ public class WatchedFileHashCache extends DefaultFileHashCache {
     // Path event, remove the path from the cache as it has been changed, added or deleted.
     Path path = event.getPath().normalize();
     LOG.verbose("Invalidating %s", path);
+    modificationCount.incrementAndGet();
     fileHashCacheEngine.invalidateWithParents(path);
   }
 
@@ -52,4 +72,95 @@ public class WatchedFileHashCache extends DefaultFileHashCache {
     LOG.debug("Invalidating all");
     invalidateAll();
   }
+
+  /**
+   * Writes the cached hashes to {@code snapshotPath}, along with the Watchman clock they are up to
+   * date with, unless nothing has changed since the last snapshot. The caller must make sure that
+   * all changes Watchman reported up to {@code clock} have been applied to this cache.
+   */
+  public synchronized void saveSnapshot(Path snapshotPath, String clock) throws IOException {
+    long modificationCount = this.modificationCount.get();
+    if (modificationCount == snapshotModificationCount) {
+      return;
+    }
+    ImmutableMap<Path, HashCodeAndFileType> entries =
+        ImmutableMap.copyOf(fileHashCacheEngine.asMap());
+
+    Files.createDirectories(snapshotPath.getParent());
+    Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+    try (DataOutputStream output =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      output.writeInt(SNAPSHOT_FORMAT_VERSION);
+      output.writeUTF(clock);
+      output.writeInt(entries.size());
+      for (Map.Entry<Path, HashCodeAndFileType> entry : entries.entrySet()) {
+        HashCodeAndFileType value = entry.getValue();
+        output.writeUTF(entry.getKey().toString());
+        output.writeUTF(value.getType().name());
+        byte[] hash = value.getHashCode().asBytes();
+        output.writeShort(hash.length);
+        output.write(hash);
+        output.writeInt(value.getChildren().size());
+        for (Path child : value.getChildren()) {
+          output.writeUTF(child.toString());
+        }
+      }
+    }
+    Files.move(
+        tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    snapshotModificationCount = modificationCount;
+    LOG.debug("Saved %d hashes as of clock %s to %s", entries.size(), clock, snapshotPath);
+  }
+
+  /**
+   * Restores the hashes written by {@link #saveSnapshot}. Changes made since then must be applied
+   * by replaying the Watchman changes since the returned clock.
+   *
+   * @return the Watchman clock the restored hashes are up to date with, or empty if no snapshot
+   *     could be restored.
+   */
+  public synchronized Optional<String> loadSnapshot(Path snapshotPath) {
+    ImmutableMap.Builder<Path, HashCodeAndFileType> entries = ImmutableMap.builder();
+    String clock;
+    try (DataInputStream input =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+      if (input.readInt() != SNAPSHOT_FORMAT_VERSION) {
+        LOG.debug("Ignoring snapshot %s in an older format", snapshotPath);
+        return Optional.empty();
+      }
+      clock = input.readUTF();
+      int size = input.readInt();
+      for (int i = 0; i < size; i++) {
+        Path path = getFilesystem().getPath(input.readUTF());
+        HashCodeAndFileType.Type type = HashCodeAndFileType.Type.valueOf(input.readUTF());
+        byte[] hash = new byte[input.readShort()];
+        input.readFully(hash);
+        HashCode hashCode = HashCode.fromBytes(hash);
+        ImmutableSet.Builder<Path> children = ImmutableSet.builder();
+        int numChildren = input.readInt();
+        for (int j = 0; j < numChildren; j++) {
+          children.add(getFilesystem().getPath(input.readUTF()));
+        }
+        if (type == HashCodeAndFileType.Type.DIRECTORY) {
+          entries.put(path, HashCodeAndFileType.ofDirectory(hashCode, children.build()));
+        } else if (type == HashCodeAndFileType.Type.ARCHIVE) {
+          entries.put(path, HashCodeAndFileType.ofArchive(hashCode, getFilesystem(), path));
+        } else {
+          entries.put(path, HashCodeAndFileType.ofFile(hashCode));
+        }
+      }
+    } catch (NoSuchFileException e) {
+      LOG.debug("No snapshot at %s", snapshotPath);
+      return Optional.empty();
+    } catch (IOException | IllegalArgumentException e) {
+      LOG.warn(e, "Failed to load snapshot %s", snapshotPath);
+      return Optional.empty();
+    }
+
+    ImmutableMap<Path, HashCodeAndFileType> restored = entries.build();
+    restored.forEach(fileHashCacheEngine::put);
+    snapshotModificationCount = modificationCount.get();
+    LOG.debug("Restored %d hashes as of clock %s from %s", restored.size(), clock, snapshotPath);
+    return Optional.of(clock);
+  }
 }
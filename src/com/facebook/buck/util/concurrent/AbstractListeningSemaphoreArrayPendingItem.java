@@ -25,4 +25,10 @@ abstract class AbstractListeningSemaphoreArrayPendingItem {
   public abstract SettableFuture<Void> getFuture();
 
   public abstract ResourceAmounts getResources();
+
+  /** @return the priority of the acquisition, higher priorities being granted first. */
+  public abstract long getPriority();
+
+  /** @return the order in which the acquisition was made, among those of the same priority. */
+  public abstract long getSequence();
 }
@@ -20,20 +20,31 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
 
 /**
  * A semaphore using {@link ListenableFuture}s for acquisition of different resource types rather
  * than blocking.
+ *
+ * <p>Acquisitions which have to wait are granted in decreasing order of priority, and in the order
+ * they were made among those with the same priority.
  */
 public class ListeningMultiSemaphore {
 
+  private static final Comparator<ListeningSemaphoreArrayPendingItem> PENDING_ORDER =
+      Comparator.comparingLong(ListeningSemaphoreArrayPendingItem::getPriority)
+          .reversed()
+          .thenComparingLong(ListeningSemaphoreArrayPendingItem::getSequence);
+
   private ResourceAmounts usedValues;
   private final ResourceAmounts maximumValues;
-  private final List<ListeningSemaphoreArrayPendingItem> pending = new LinkedList<>();
+  private final NavigableSet<ListeningSemaphoreArrayPendingItem> pending =
+      new TreeSet<>(PENDING_ORDER);
   private final ResourceAllocationFairness fairness;
+  private long nextSequence = 0;
 
   public ListeningMultiSemaphore(
       ResourceAmounts availableResources, ResourceAllocationFairness fairness) {
@@ -52,7 +63,15 @@ public class ListeningMultiSemaphore {
    *     amounts, they will be capped to them.
    * @return Future that will be completed once resource will be acquired.
    */
-  public synchronized ListenableFuture<Void> acquire(ResourceAmounts resources) {
+  public ListenableFuture<Void> acquire(ResourceAmounts resources) {
+    return acquire(resources, 0);
+  }
+
+  /**
+   * Like {@link #acquire(ResourceAmounts)}, but if the resources aren't available right away, the
+   * acquisition is granted before any waiting ones of lower priority.
+   */
+  public synchronized ListenableFuture<Void> acquire(ResourceAmounts resources, long priority) {
     if (resources.equals(ResourceAmounts.ZERO)) {
       return Futures.immediateFuture(null);
     }
@@ -60,7 +79,9 @@ public class ListeningMultiSemaphore {
     resources = capResourceAmounts(resources);
     if (!checkIfResourcesAvailable(resources)) {
       SettableFuture<Void> pendingFuture = SettableFuture.create();
-      pending.add(ListeningSemaphoreArrayPendingItem.of(pendingFuture, resources));
+      pending.add(
+          ListeningSemaphoreArrayPendingItem.of(
+              pendingFuture, resources, priority, nextSequence++));
       return pendingFuture;
     }
     increaseUsedResources(resources);
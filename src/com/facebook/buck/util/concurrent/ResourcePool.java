@@ -28,7 +28,10 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
@@ -54,11 +57,18 @@ import javax.annotation.concurrent.GuardedBy;
  * of errors when "using" a resource it is assumed to be defective, will be retired and a new
  * resource will be requested from the supplier. The Future associated with the failed attempt to
  * use the resource will contain the relevant exception.
+ *
+ * <p>The maximum number of resources may be changed while the pool is in use, and resources which
+ * have been parked for a while may be retired, so that the pool can be sized to its load. Parked
+ * resources are reused most recently parked first, so that resources the pool does not need stay
+ * parked and can be retired.
  */
 public class ResourcePool<R extends AutoCloseable> implements AutoCloseable {
   private static final Logger LOG = Logger.get(ResourcePool.class);
 
-  private final int maxResources;
+  @GuardedBy("this")
+  private int maxResources;
+
   private final ResourceUsageErrorPolicy resourceUsageErrorPolicy;
 
   @GuardedBy("this")
@@ -70,6 +80,9 @@ public class ResourcePool<R extends AutoCloseable> implements AutoCloseable {
   @GuardedBy("this")
   private final Deque<R> parkedResources;
 
+  @GuardedBy("this")
+  private final Map<R, Long> parkedSinceNanos;
+
   @GuardedBy("this")
   private final Deque<SettableFuture<Void>> resourceRequests;
 
@@ -97,6 +110,7 @@ public class ResourcePool<R extends AutoCloseable> implements AutoCloseable {
     this.resourceSupplier = resourceSupplier;
     this.createdResources = new ArrayList<>();
     this.parkedResources = new ArrayDeque<>();
+    this.parkedSinceNanos = new IdentityHashMap<>();
     this.resourceRequests = new ArrayDeque<>();
     this.closing = new AtomicBoolean(false);
     this.shutdownFuture = null;
@@ -193,8 +207,9 @@ public class ResourcePool<R extends AutoCloseable> implements AutoCloseable {
     if (closing.get()) {
       return Optional.empty();
     }
-    R resource = parkedResources.pollFirst();
+    R resource = parkedResources.pollLast();
     if (resource != null) {
+      parkedSinceNanos.remove(resource);
       return Optional.of(resource);
     }
     return createIfAllowed();
@@ -202,18 +217,88 @@ public class ResourcePool<R extends AutoCloseable> implements AutoCloseable {
 
   private synchronized void returnResource(R resource, boolean resourceIsDefunct) {
     if (resourceIsDefunct) {
-      createdResources.remove(resource);
-      try {
-        resource.close();
-      } catch (Exception e) {
-        LOG.info(e, "Error shutting down a defunct resource.");
-      }
+      retireResource(resource);
+    } else if (createdResources.size() > maxResources) {
+      // The pool was shrunk while this resource was in use.
+      retireResource(resource);
     } else {
       parkedResources.add(resource);
+      parkedSinceNanos.put(resource, System.nanoTime());
     }
     scheduleNextRequest();
   }
 
+  private synchronized void retireResource(R resource) {
+    createdResources.remove(resource);
+    try {
+      resource.close();
+    } catch (Exception e) {
+      LOG.info(e, "Error shutting down a retired resource.");
+    }
+  }
+
+  /** @return the maximum number of resources the pool currently uses concurrently. */
+  public synchronized int getMaxResources() {
+    return maxResources;
+  }
+
+  /** @return the number of resources currently created by the pool, in use or parked. */
+  public synchronized int getCreatedResourceCount() {
+    return createdResources.size();
+  }
+
+  /**
+   * Changes the maximum number of resources to use concurrently. Raising it lets waiting requests
+   * create new resources. Lowering it retires parked resources over the new maximum right away, and
+   * resources in use as they are returned.
+   */
+  public synchronized void setMaxResources(int maxResources) {
+    Preconditions.checkArgument(maxResources > 0);
+    if (closing.get()) {
+      return;
+    }
+    int previousMaxResources = this.maxResources;
+    this.maxResources = maxResources;
+    while (createdResources.size() > maxResources && !parkedResources.isEmpty()) {
+      R resource = parkedResources.pollFirst();
+      parkedSinceNanos.remove(resource);
+      retireResource(resource);
+    }
+    for (int i = previousMaxResources; i < maxResources; i++) {
+      scheduleNextRequest();
+    }
+  }
+
+  /**
+   * Retires the resources which have been parked for at least {@code idleNanos}, keeping at least
+   * one, and lowers the maximum number of resources to the number of remaining ones.
+   *
+   * @return the number of retired resources.
+   */
+  public synchronized int retireIdleResources(long idleNanos) {
+    if (closing.get()) {
+      return 0;
+    }
+    long now = System.nanoTime();
+    int retired = 0;
+    Iterator<R> iterator = parkedResources.iterator();
+    // Resources are parked at the end of the queue, so the longest parked ones come first.
+    while (iterator.hasNext() && createdResources.size() > 1) {
+      R resource = iterator.next();
+      if (now - parkedSinceNanos.get(resource) < idleNanos) {
+        break;
+      }
+      iterator.remove();
+      parkedSinceNanos.remove(resource);
+      retireResource(resource);
+      retired++;
+    }
+    if (retired > 0) {
+      maxResources = Math.max(1, createdResources.size());
+    }
+    return retired;
+  }
+
   private synchronized void scheduleNextRequest() {
     while (true) {
       SettableFuture<Void> nextRequest = resourceRequests.pollFirst();
@@ -28,7 +28,8 @@ import javax.annotation.Nullable;
 
 /**
  * A {@link ListeningExecutorService} which gates execution using a {@link ListeningMultiSemaphore}
- * and allows resources to be assigned to submitted tasks.
+ * and allows resources to be assigned to submitted tasks. Tasks waiting for resources start in
+ * decreasing order of the priority of the service they were submitted to.
  *
  * <p>NOTE: If futures for submitted jobs are cancelled while they are running, it's possible that
  * the semaphore will be released for that cancelled job before it is finished, meaning more jobs
@@ -37,14 +38,24 @@ import javax.annotation.Nullable;
 public class WeightedListeningExecutorService extends AbstractListeningExecutorService {
   private final ListeningMultiSemaphore semaphore;
   private final ResourceAmounts defaultValues;
+  private final long priority;
   private final ListeningExecutorService delegate;
 
   public WeightedListeningExecutorService(
       ListeningMultiSemaphore semaphore,
       ResourceAmounts defaultValues,
       ListeningExecutorService delegate) {
+    this(semaphore, defaultValues, 0, delegate);
+  }
+
+  private WeightedListeningExecutorService(
+      ListeningMultiSemaphore semaphore,
+      ResourceAmounts defaultValues,
+      long priority,
+      ListeningExecutorService delegate) {
     this.semaphore = semaphore;
     this.defaultValues = defaultValues;
+    this.priority = priority;
     this.delegate = delegate;
   }
 
@@ -65,14 +76,28 @@ public class WeightedListeningExecutorService extends AbstractListeningExecutorS
     if (newDefaultAmounts.equals(defaultValues)) {
       return this;
     }
-    return new WeightedListeningExecutorService(semaphore, newDefaultAmounts, delegate);
+    return new WeightedListeningExecutorService(semaphore, newDefaultAmounts, priority, delegate);
+  }
+
+  /**
+   * Creates a new service whose tasks are started before those of services with a lower priority
+   * when they have to wait for resources. The default priority is 0.
+   *
+   * @return Service that uses the same semaphore, delegate and default amounts, but with the given
+   *     priority.
+   */
+  public WeightedListeningExecutorService withPriority(long newPriority) {
+    if (newPriority == priority) {
+      return this;
+    }
+    return new WeightedListeningExecutorService(semaphore, defaultValues, newPriority, delegate);
   }
 
   private <T> ListenableFuture<T> submitWithSemaphore(
       final Callable<T> callable, final ResourceAmounts amounts) {
     ListenableFuture<T> future =
         Futures.transformAsync(
-            semaphore.acquire(amounts),
+            semaphore.acquire(amounts, priority),
             input -> {
               try {
                 return Futures.immediateFuture(callable.call());
@@ -24,6 +24,7 @@ import com.facebook.buck.util.MoreCollectors;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.Nullable;
 
@@ -52,6 +53,18 @@ public class VersionedTargetGraph extends TargetGraph {
     return nodeFinder.get(target).map(n -> n.withFlavors(target.getFlavors())).orElse(null);
   }
 
+  /** @return the node with exactly the given target, without searching for flavored nodes. */
+  Optional<TargetNode<?, ?>> getExactNode(BuildTarget target) {
+    return Optional.ofNullable(nodeFinder.getBuildTargetIndex().get(target));
+  }
+
+  /** @return the nodes of this graph, indexed by the base target each was added with. */
+  @SuppressWarnings("unchecked")
+  ImmutableMap<BuildTarget, TargetNode<?, ?>> getBaseTargetIndex() {
+    return (ImmutableMap<BuildTarget, TargetNode<?, ?>>)
+        (ImmutableMap<?, ?>) nodeFinder.getBaseTargetIndex();
+  }
+
   public static VersionedTargetGraph.Builder builder() {
     return new Builder();
   }
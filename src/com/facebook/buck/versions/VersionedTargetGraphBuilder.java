@@ -16,6 +16,7 @@
 
 package com.facebook.buck.versions;
 
+import com.facebook.buck.graph.AbstractBottomUpTraversal;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.Flavor;
@@ -41,12 +42,16 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
@@ -84,11 +89,47 @@ public class VersionedTargetGraphBuilder {
   /** Count of root nodes. */
   private final AtomicInteger roots = new AtomicInteger();
 
+  /** Count of root nodes whose sub-graphs were reused from a previous transformation. */
+  private final AtomicInteger reusedRoots = new AtomicInteger();
+
+  /** The result of a previous transformation, whose version sub-graphs may be reused. */
+  private final Optional<VersionedTargetGraph> previousVersionedTargetGraph;
+
+  /** Targets whose transitive deps are all unchanged since the previous transformation. */
+  private final Set<BuildTarget> unchangedTargets;
+
+  /** The base targets which nodes were indexed by in the previous transformation. */
+  private final Map<TargetNode<?, ?>, BuildTarget> previousBaseTargets;
+
   VersionedTargetGraphBuilder(
       ForkJoinPool pool,
       VersionSelector versionSelector,
       TargetGraphAndBuildTargets unversionedTargetGraphAndBuildTargets,
       TypeCoercerFactory typeCoercerFactory) {
+    this(
+        pool,
+        versionSelector,
+        unversionedTargetGraphAndBuildTargets,
+        typeCoercerFactory,
+        Optional.empty(),
+        Optional.empty());
+  }
+
+  /**
+   * @param previousUnversionedTargetGraph the un-versioned graph which {@code
+   *     previousVersionedTargetGraph} was transformed from, using the same version selections.
+   *     Roots whose transitive deps are all unchanged from it are not transformed again, and their
+   *     sub-graphs are copied from {@code previousVersionedTargetGraph} instead.
+   */
+  VersionedTargetGraphBuilder(
+      ForkJoinPool pool,
+      VersionSelector versionSelector,
+      TargetGraphAndBuildTargets unversionedTargetGraphAndBuildTargets,
+      TypeCoercerFactory typeCoercerFactory,
+      Optional<TargetGraph> previousUnversionedTargetGraph,
+      Optional<VersionedTargetGraph> previousVersionedTargetGraph) {
+    Preconditions.checkArgument(
+        previousUnversionedTargetGraph.isPresent() == previousVersionedTargetGraph.isPresent());
 
     this.pool = pool;
     this.versionSelector = versionSelector;
@@ -110,6 +151,46 @@ public class VersionedTargetGraphBuilder {
             2 * unversionedTargetGraphAndBuildTargets.getTargetGraph().getNodes().size(),
             0.75f,
             pool.getParallelism());
+
+    this.previousVersionedTargetGraph = previousVersionedTargetGraph;
+    if (previousVersionedTargetGraph.isPresent()) {
+      this.unchangedTargets =
+          findUnchangedTargets(
+              unversionedTargetGraphAndBuildTargets.getTargetGraph(),
+              previousUnversionedTargetGraph.get());
+      this.previousBaseTargets = new HashMap<>();
+      previousVersionedTargetGraph
+          .get()
+          .getBaseTargetIndex()
+          .forEach((baseTarget, node) -> previousBaseTargets.put(node, baseTarget));
+    } else {
+      this.unchangedTargets = ImmutableSet.of();
+      this.previousBaseTargets = ImmutableMap.of();
+    }
+  }
+
+  /**
+   * @return the targets in {@code graph} whose nodes, and those of all their transitive deps, are
+   *     equal to the ones in {@code previousGraph}.
+   */
+  private static Set<BuildTarget> findUnchangedTargets(
+      TargetGraph graph, TargetGraph previousGraph) {
+    Set<BuildTarget> unchanged = new HashSet<>();
+    new AbstractBottomUpTraversal<TargetNode<?, ?>, RuntimeException>(graph) {
+      @Override
+      public void visit(TargetNode<?, ?> node) {
+        Optional<TargetNode<?, ?>> previousNode = previousGraph.getOptional(node.getBuildTarget());
+        if (previousNode.isPresent()
+            && previousNode.get().equals(node)
+            && graph
+                .getOutgoingNodesFor(node)
+                .stream()
+                .allMatch(dep -> unchanged.contains(dep.getBuildTarget()))) {
+          unchanged.add(node.getBuildTarget());
+        }
+      }
+    }.traverse();
+    return unchanged;
   }
 
   private TargetNode<?, ?> getNode(BuildTarget target) {
@@ -260,8 +341,9 @@ public class VersionedTargetGraphBuilder {
 
     long end = System.currentTimeMillis();
     LOG.debug(
-        "Finished version target graph transformation in %.2f (nodes %d, roots: %d)",
-        (end - start) / 1000.0, index.size(), roots.get());
+        "Finished version target graph transformation in %.2f "
+            + "(nodes %d, roots: %d, reused roots: %d)",
+        (end - start) / 1000.0, index.size(), roots.get(), reusedRoots.get());
 
     return targetGraphBuilder.build();
   }
@@ -278,6 +360,30 @@ public class VersionedTargetGraphBuilder {
             .build());
   }
 
+  /**
+   * Like {@link #transform}, but reuses the version sub-graphs of roots which are unchanged since
+   * {@code previousVersionedTargetGraph} was transformed from {@code
+   * previousUnversionedTargetGraph}. Only the remaining roots are transformed again.
+   */
+  public static TargetGraphAndBuildTargets transformIncrementally(
+      VersionSelector versionSelector,
+      TargetGraphAndBuildTargets unversionedTargetGraphAndBuildTargets,
+      TargetGraph previousUnversionedTargetGraph,
+      VersionedTargetGraph previousVersionedTargetGraph,
+      ForkJoinPool pool,
+      TypeCoercerFactory typeCoercerFactory)
+      throws VersionException, InterruptedException {
+    return unversionedTargetGraphAndBuildTargets.withTargetGraph(
+        new VersionedTargetGraphBuilder(
+                pool,
+                versionSelector,
+                unversionedTargetGraphAndBuildTargets,
+                typeCoercerFactory,
+                Optional.of(previousUnversionedTargetGraph),
+                Optional.of(previousVersionedTargetGraph))
+            .build());
+  }
+
   /** Transform a version sub-graph at the given root node. */
   private class RootAction extends RecursiveAction {
 
@@ -438,6 +544,28 @@ public class VersionedTargetGraphBuilder {
       return newNode;
     }
 
+    /**
+     * Copy the sub-graph at the given node from the previous transformation, stopping at nodes
+     * which have already been added to the new graph.
+     */
+    private TargetNode<?, ?> reuseSubGraph(TargetNode<?, ?> previousRoot) {
+      VersionedTargetGraph previousGraph = previousVersionedTargetGraph.get();
+      Deque<TargetNode<?, ?>> toReuse = new ArrayDeque<>();
+      toReuse.push(previousRoot);
+      while (!toReuse.isEmpty()) {
+        TargetNode<?, ?> node = toReuse.pop();
+        if (indexPutIfAbsent(node) != null) {
+          continue;
+        }
+        targetGraphBuilder.addNode(Preconditions.checkNotNull(previousBaseTargets.get(node)), node);
+        for (TargetNode<?, ?> dep : previousGraph.getOutgoingNodesFor(node)) {
+          targetGraphBuilder.addEdge(node, dep);
+          toReuse.push(dep);
+        }
+      }
+      return index.get(previousRoot.getBuildTarget());
+    }
+
     // Transform a root node and its version sub-graph.
     private TargetNode<?, ?> processRoot(TargetNode<?, ?> root) throws VersionException {
 
@@ -450,6 +578,17 @@ public class VersionedTargetGraphBuilder {
       // For stats collection.
       roots.incrementAndGet();
 
+      // If nothing this root transitively depends on has changed, the versions selected for it and
+      // its translated sub-graph are also the same as last time, so just copy them over.
+      if (unchangedTargets.contains(root.getBuildTarget())) {
+        Optional<TargetNode<?, ?>> previousRoot =
+            previousVersionedTargetGraph.get().getExactNode(root.getBuildTarget());
+        if (previousRoot.isPresent()) {
+          reusedRoots.incrementAndGet();
+          return reuseSubGraph(previousRoot.get());
+        }
+      }
+
       VersionInfo versionInfo = getVersionInfo(root);
 
       // Select the versions to use for this sub-graph.
@@ -34,19 +34,38 @@ public class VersionedTargetGraphCache {
 
   @Nullable private CachedVersionedTargetGraph cachedVersionedTargetGraph = null;
 
-  /** @return a new versioned target graph. */
+  /**
+   * @return a new versioned target graph, reusing the version sub-graphs of the cached one which
+   *     are unaffected by the changes to the un-versioned target graph, if possible.
+   */
   private TargetGraphAndBuildTargets createdVersionedTargetGraph(
       TargetGraphAndBuildTargets targetGraphAndBuildTargets,
       ImmutableMap<String, VersionUniverse> versionUniverses,
       ForkJoinPool pool,
       TypeCoercerFactory typeCoercerFactory)
       throws VersionException, InterruptedException {
-    return VersionedTargetGraphBuilder.transform(
+    VersionSelector versionSelector =
         new VersionUniverseVersionSelector(
-            targetGraphAndBuildTargets.getTargetGraph(), versionUniverses),
-        targetGraphAndBuildTargets,
-        pool,
-        typeCoercerFactory);
+            targetGraphAndBuildTargets.getTargetGraph(), versionUniverses);
+
+    // Version selections only depend on the universes and on the nodes a root transitively
+    // depends on, so if the universes haven't changed, unchanged roots can be reused.
+    if (cachedVersionedTargetGraph != null
+        && versionUniverses.equals(cachedVersionedTargetGraph.getInputs().getVersionUniverses())
+        && cachedVersionedTargetGraph.getTargetGraphAndBuildTargets().getTargetGraph()
+            instanceof VersionedTargetGraph) {
+      return VersionedTargetGraphBuilder.transformIncrementally(
+          versionSelector,
+          targetGraphAndBuildTargets,
+          cachedVersionedTargetGraph.getInputs().getTargetGraphAndBuildTargets().getTargetGraph(),
+          (VersionedTargetGraph)
+              cachedVersionedTargetGraph.getTargetGraphAndBuildTargets().getTargetGraph(),
+          pool,
+          typeCoercerFactory);
+    }
+
+    return VersionedTargetGraphBuilder.transform(
+        versionSelector, targetGraphAndBuildTargets, pool, typeCoercerFactory);
   }
 
   private VersionedTargetGraphCacheResult getVersionedTargetGraph(
@@ -21,10 +21,15 @@ import com.facebook.buck.io.MorePosixFilePermissions;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.util.MoreCollectors;
 import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.Uninterruptibles;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -37,9 +42,15 @@ import java.nio.file.Paths;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.ZipError;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipFile;
@@ -177,6 +188,42 @@ public class Unzip {
       Path relativePath,
       ExistingFileMode existingFileMode)
       throws IOException {
+    try {
+      return extractZipFile(
+          zipFile, filesystem, relativePath, existingFileMode, Optional.empty());
+    } catch (InterruptedException e) {
+      // Entries are only written on other threads when an executor is given.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Unzips a file to a destination and returns the paths of the written files. The contents of
+   * the file entries are written by tasks submitted to {@code executorService}, so that large
+   * archives are decompressed and written out by several threads at once. The directory structure
+   * is still set up, and stale files are still removed, on the calling thread.
+   */
+  public static ImmutableList<Path> extractZipFile(
+      Path zipFile,
+      ProjectFilesystem filesystem,
+      ExistingFileMode existingFileMode,
+      ListeningExecutorService executorService)
+      throws InterruptedException, IOException {
+    return extractZipFile(
+        zipFile,
+        filesystem,
+        filesystem.getPath(""),
+        existingFileMode,
+        Optional.of(executorService));
+  }
+
+  private static ImmutableList<Path> extractZipFile(
+      Path zipFile,
+      ProjectFilesystem filesystem,
+      Path relativePath,
+      ExistingFileMode existingFileMode,
+      Optional<ListeningExecutorService> executorService)
+      throws InterruptedException, IOException {
 
     // We want to remove stale contents of directories listed in zipFile, but avoid deleting and
     // re-creating any directories that already exist. We *also* want to avoid a full recursive
@@ -184,6 +231,7 @@ public class Unzip {
     // contents of zipFile and then scan the existing filesystem to remove stale artifacts.
 
     ImmutableList.Builder<Path> filesWritten = ImmutableList.builder();
+    List<Callable<Void>> writes = new ArrayList<>();
     try (ZipFile zip = new ZipFile(zipFile.toFile())) {
       // Get the list of paths in zipFile.  Keep them sorted by path, so dirs come before contents.
       SortedMap<Path, ZipArchiveEntry> pathMap = new TreeMap<>();
@@ -226,13 +274,83 @@ public class Unzip {
             filesystem.createParentDirs(target);
           }
           filesWritten.add(target);
-          writeZipContents(zip, entry, filesystem, target);
+          if (executorService.isPresent()) {
+            // ZipFile serializes reads of the underlying archive, so entries can be inflated and
+            // written out concurrently.
+            writes.add(
+                () -> {
+                  writeZipContents(zip, entry, filesystem, target);
+                  return null;
+                });
+          } else {
+            writeZipContents(zip, entry, filesystem, target);
+          }
         }
       }
+      if (!writes.isEmpty()) {
+        runWrites(executorService.get(), writes);
+      }
     }
     return filesWritten.build();
   }
 
+  /**
+   * Runs {@code writes} on {@code executorService}, and only returns or throws once none of them is
+   * running anymore, so that the zip file is not closed under them and the caller never sees a
+   * directory which is still changing. Once a write fails, the writes which have not started yet
+   * are skipped.
+   */
+  private static void runWrites(
+      ListeningExecutorService executorService, List<Callable<Void>> writes)
+      throws InterruptedException, IOException {
+    AtomicBoolean failed = new AtomicBoolean(false);
+    List<ListenableFuture<Void>> futures = new ArrayList<>(writes.size());
+    boolean finished = false;
+    try {
+      for (Callable<Void> write : writes) {
+        futures.add(
+            executorService.submit(
+                () -> {
+                  if (failed.get()) {
+                    return null;
+                  }
+                  try {
+                    return write.call();
+                  } catch (Exception e) {
+                    failed.set(true);
+                    throw e;
+                  }
+                }));
+      }
+      Futures.successfulAsList(futures).get();
+      finished = true;
+    } catch (ExecutionException e) {
+      // successfulAsList does not fail when its inputs do.
+      throw new IllegalStateException(e);
+    } finally {
+      if (!finished) {
+        failed.set(true);
+        for (ListenableFuture<Void> future : futures) {
+          try {
+            Uninterruptibles.getUninterruptibly(future);
+          } catch (ExecutionException | CancellationException e) {
+            // Only waiting for the write to be done here.
+          }
+        }
+      }
+    }
+
+    for (ListenableFuture<Void> future : futures) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+        Throwables.throwIfUnchecked(e.getCause());
+        throw new RuntimeException(e.getCause());
+      }
+    }
+  }
+
   public static ImmutableList<Path> extractZipFile(
       Path zipFile, ProjectFilesystem filesystem, ExistingFileMode existingFileMode)
       throws IOException {
@@ -20,11 +20,16 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
 import com.facebook.buck.android.aapt.RDotTxtEntry;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusForTests;
+import com.facebook.buck.event.listener.BroadcastEventListener;
 import com.facebook.buck.jvm.java.JavaLibraryBuilder;
 import com.facebook.buck.jvm.java.Keystore;
 import com.facebook.buck.jvm.java.KeystoreBuilder;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.ActionGraphAndResolver;
+import com.facebook.buck.rules.ActionGraphCache;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
@@ -34,11 +39,15 @@ import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.rules.TestBuildRuleParams;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.facebook.buck.testutil.TargetGraphFactory;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import java.nio.file.Paths;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
@@ -78,6 +87,61 @@ public class AndroidBinaryDescriptionTest {
     assertThat(androidBinary.getBuildDeps(), Matchers.hasItem(transitiveDep));
   }
 
+  @Test
+  public void parallelActionGraphCreatesRulesSharedBetweenBinariesOnce() throws Exception {
+    TargetNode<?, ?> libraryNode =
+        AndroidLibraryBuilder.createBuilder(BuildTargetFactory.newInstance("//exciting:lib"))
+            .addSrc(Paths.get("Lib.java"))
+            .build();
+    TargetNode<?, ?> keystoreNode =
+        KeystoreBuilder.createBuilder(BuildTargetFactory.newInstance("//:keystore"))
+            .setStore(new FakeSourcePath("store"))
+            .setProperties(new FakeSourcePath("properties"))
+            .build();
+    ImmutableList.Builder<TargetNode<?, ?>> binaryNodes = ImmutableList.builder();
+    for (int i = 0; i < 8; i++) {
+      binaryNodes.add(
+          AndroidBinaryBuilder.createBuilder(BuildTargetFactory.newInstance("//:app" + i))
+              .setManifest(new FakeSourcePath("manifest.xml"))
+              .setKeystore(keystoreNode.getBuildTarget())
+              .setOriginalDeps(ImmutableSortedSet.of(libraryNode.getBuildTarget()))
+              .build());
+    }
+    TargetGraph targetGraph =
+        TargetGraphFactory.newInstance(
+            ImmutableSet.<TargetNode<?, ?>>builder()
+                .add(libraryNode, keystoreNode)
+                .addAll(binaryNodes.build())
+                .build());
+
+    BuckEventBus eventBus = BuckEventBusForTests.newInstance();
+    BroadcastEventListener broadcastEventListener = new BroadcastEventListener();
+    broadcastEventListener.addEventBus(eventBus);
+    ActionGraphAndResolver result =
+        new ActionGraphCache(broadcastEventListener, 1, /* incremental */ false, /* threads */ 4)
+            .getActionGraph(
+                eventBus,
+                /* checkActionGraphs */ false,
+                /* skipActionGraphCache */ false,
+                targetGraph,
+                /* keySeed */ 0);
+
+    // All binaries depend on the one dex rule of the library in the resolver.
+    BuildRuleResolver resolver = result.getResolver();
+    BuildTarget preDexTarget =
+        libraryNode.getBuildTarget().withFlavors(AndroidBinaryGraphEnhancer.DEX_FLAVOR);
+    Set<BuildRule> preDexDeps = new HashSet<>();
+    for (BuildRule rule : result.getActionGraph().getNodes()) {
+      for (BuildRule dep : rule.getBuildDeps()) {
+        assertEquals(Optional.of(dep), resolver.getRuleOptional(dep.getBuildTarget()));
+        if (dep.getBuildTarget().equals(preDexTarget)) {
+          preDexDeps.add(dep);
+        }
+      }
+    }
+    assertEquals(ImmutableSet.of(resolver.getRule(preDexTarget)), preDexDeps);
+  }
+
   @Test
   public void turkishCaseRulesDoNotCrashConstructor() throws Exception {
     BuildRuleResolver ruleResolver =
@@ -70,6 +70,25 @@ public class ArtifactCachesTest {
     assertThat(stripDecorators(artifactCache), Matchers.instanceOf(DirArtifactCache.class));
   }
 
+  @Test
+  public void testCreateDedupDirCacheOnly() throws Exception {
+    ArtifactCacheBuckConfig cacheConfig =
+        ArtifactCacheBuckConfigTest.createFromText("[cache]", "mode = dedup_dir");
+    ProjectFilesystem projectFilesystem = new FakeProjectFilesystem();
+    BuckEventBus buckEventBus = BuckEventBusForTests.newInstance();
+    ArtifactCache artifactCache =
+        new ArtifactCaches(
+                cacheConfig,
+                buckEventBus,
+                projectFilesystem,
+                Optional.empty(),
+                MoreExecutors.newDirectExecutorService(),
+                Optional.empty())
+            .newInstance();
+
+    assertThat(stripDecorators(artifactCache), Matchers.instanceOf(DedupDirArtifactCache.class));
+  }
+
   @Test
   public void testCreateSQLiteCacheOnly() throws Exception {
     ArtifactCacheBuckConfig cacheConfig =
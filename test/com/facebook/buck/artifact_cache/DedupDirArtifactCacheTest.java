@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.BorrowablePath;
+import com.facebook.buck.io.LazyPath;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class DedupDirArtifactCacheTest {
+  @Rule public TemporaryPaths tmpDir = new TemporaryPaths();
+
+  private static final RuleKey RULE_KEY_X = new RuleKey("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+  private static final RuleKey RULE_KEY_Y = new RuleKey("bbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbb");
+
+  private ProjectFilesystem cacheFilesystem;
+  private DedupDirArtifactCache cache;
+
+  @Before
+  public void setUp() throws InterruptedException, IOException {
+    cacheFilesystem = new ProjectFilesystem(tmpDir.newFolder());
+    cache =
+        new DedupDirArtifactCache(
+            "dedup_dir",
+            cacheFilesystem,
+            Paths.get("."),
+            CacheReadMode.READWRITE,
+            /* maxCacheSizeBytes */ Optional.empty());
+  }
+
+  @After
+  public void tearDown() {
+    cache.close();
+  }
+
+  @Test
+  public void testFetchMiss() throws IOException {
+    Path output = tmpDir.newFile("output");
+    assertEquals(
+        CacheResultType.MISS,
+        Futures.getUnchecked(cache.fetchAsync(RULE_KEY_X, LazyPath.ofInstance(output))).getType());
+    assertEquals(
+        CacheResultType.MISS, Futures.getUnchecked(cache.containsAsync(RULE_KEY_X)).getType());
+  }
+
+  @Test
+  public void testIdenticalArtifactsAreStoredOnce() throws IOException {
+    Path fileX = tmpDir.newFile("x");
+    Path fileY = tmpDir.newFile("y");
+    Files.write(fileX, "contents".getBytes(UTF_8));
+    Files.write(fileY, "contents".getBytes(UTF_8));
+
+    cache.store(
+        ArtifactInfo.builder().addRuleKeys(RULE_KEY_X).putMetadata("key", "x").build(),
+        BorrowablePath.notBorrowablePath(fileX));
+    cache.store(
+        ArtifactInfo.builder().addRuleKeys(RULE_KEY_Y).putMetadata("key", "y").build(),
+        BorrowablePath.borrowablePath(fileY));
+
+    // The second store found the blob already present, and left its borrowable output alone.
+    assertTrue(Files.exists(fileY));
+    assertEquals(1, getAllBlobs().length);
+
+    // Both rule keys are fetched from the same blob, with their own metadata.
+    for (RuleKey ruleKey : new RuleKey[] {RULE_KEY_X, RULE_KEY_Y}) {
+      Path output = tmpDir.getRoot().resolve("fetched_" + ruleKey);
+      CacheResult result =
+          Futures.getUnchecked(cache.fetchAsync(ruleKey, LazyPath.ofInstance(output)));
+      assertEquals(CacheResultType.HIT, result.getType());
+      assertEquals(ArtifactCacheMode.dedup_dir, result.cacheMode().get());
+      assertEquals(
+          ImmutableMap.of("key", ruleKey == RULE_KEY_X ? "x" : "y"), result.getMetadata());
+      assertEquals("contents", new String(Files.readAllBytes(output), UTF_8));
+      assertEquals(
+          CacheResultType.CONTAINS, Futures.getUnchecked(cache.containsAsync(ruleKey)).getType());
+    }
+  }
+
+  @Test
+  public void testEvictedBlobIsAMiss() throws IOException {
+    Path fileX = tmpDir.newFile("x");
+    Files.write(fileX, "contents".getBytes(UTF_8));
+    cache.store(
+        ArtifactInfo.builder().addRuleKeys(RULE_KEY_X).build(),
+        BorrowablePath.notBorrowablePath(fileX));
+
+    for (Path blob : getAllBlobs()) {
+      Files.delete(blob);
+    }
+
+    Path output = tmpDir.getRoot().resolve("fetched");
+    assertEquals(
+        CacheResultType.MISS,
+        Futures.getUnchecked(cache.fetchAsync(RULE_KEY_X, LazyPath.ofInstance(output))).getType());
+    assertFalse(Files.exists(output));
+    assertEquals(
+        CacheResultType.MISS, Futures.getUnchecked(cache.containsAsync(RULE_KEY_X)).getType());
+  }
+
+  private Path[] getAllBlobs() throws IOException {
+    try (Stream<Path> paths = Files.walk(cacheFilesystem.resolve("blobs"))) {
+      return paths.filter(Files::isRegularFile).toArray(Path[]::new);
+    }
+  }
+}
@@ -167,6 +167,44 @@ public class DirArtifactCacheTest {
     assertEquals(inputRuleX, new BuildRuleForTest(fileX));
   }
 
+  @Test
+  public void testCacheContains() throws InterruptedException, IOException {
+    Path cacheDir = tmpDir.newFolder();
+    Path fileX = tmpDir.newFile("x");
+
+    fileHashCache = new FakeFileHashCache(ImmutableMap.of(fileX, HashCode.fromInt(0)));
+
+    dirArtifactCache =
+        new DirArtifactCache(
+            "dir",
+            new ProjectFilesystem(cacheDir),
+            Paths.get("."),
+            CacheReadMode.READWRITE,
+            /* maxCacheSizeBytes */ Optional.empty());
+
+    Files.write(fileX, "x".getBytes(UTF_8));
+    BuildRule inputRuleX = new BuildRuleForTest(fileX);
+    BuildRuleResolver ruleResolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    ruleResolver.addToIndex(inputRuleX);
+    SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(ruleResolver);
+    SourcePathResolver resolver = DefaultSourcePathResolver.from(ruleFinder);
+    RuleKey ruleKeyX =
+        new DefaultRuleKeyFactory(0, fileHashCache, resolver, ruleFinder).build(inputRuleX);
+
+    assertEquals(
+        CacheResultType.MISS,
+        Futures.getUnchecked(dirArtifactCache.containsAsync(ruleKeyX)).getType());
+
+    dirArtifactCache.store(
+        ArtifactInfo.builder().addRuleKeys(ruleKeyX).build(),
+        BorrowablePath.notBorrowablePath(fileX));
+
+    assertEquals(
+        CacheResultType.CONTAINS,
+        Futures.getUnchecked(dirArtifactCache.containsAsync(ruleKeyX)).getType());
+  }
+
   @Test
   public void testCacheStoreOverwrite() throws InterruptedException, IOException {
     Path cacheDir = tmpDir.newFolder();
@@ -551,6 +589,113 @@ public class DirArtifactCacheTest {
     assertEquals(ImmutableSet.of(fileZ, fileW), ImmutableSet.copyOf(filesInCache));
   }
 
+  @Test
+  public void testDeleteSomeWithEvictionIndex() throws InterruptedException, IOException {
+    Path cacheDir = tmpDir.newFolder();
+
+    Path fileW = cacheDir.resolve("11").resolve("11").resolve("w");
+    Path fileX = cacheDir.resolve("22").resolve("22").resolve("x");
+    Path fileY = cacheDir.resolve("33").resolve("33").resolve("y");
+    Path fileZ = cacheDir.resolve("44").resolve("44").resolve("z");
+
+    Files.createDirectories(fileW.getParent());
+    Files.createDirectories(fileX.getParent());
+    Files.createDirectories(fileY.getParent());
+    Files.createDirectories(fileZ.getParent());
+
+    Files.write(fileW, "w".getBytes(UTF_8));
+    Files.write(fileX, "x".getBytes(UTF_8));
+    Files.write(fileY, "y".getBytes(UTF_8));
+    Files.write(fileZ, "z".getBytes(UTF_8));
+
+    Files.setAttribute(fileW, "lastAccessTime", FileTime.fromMillis(9000));
+    Files.setAttribute(fileX, "lastAccessTime", FileTime.fromMillis(0));
+    Files.setAttribute(fileY, "lastAccessTime", FileTime.fromMillis(1000));
+    Files.setAttribute(fileZ, "lastAccessTime", FileTime.fromMillis(2000));
+
+    // The files predate the index, so they are added to it the first time the cache is trimmed.
+    dirArtifactCache =
+        new DirArtifactCache(
+            "dir",
+            new ProjectFilesystem(cacheDir),
+            Paths.get("."),
+            CacheReadMode.READWRITE,
+            /* maxCacheSizeBytes */ Optional.of(3L),
+            /* useEvictionIndex */ true);
+
+    dirArtifactCache.deleteOldFiles();
+
+    List<Path> filesInCache = dirArtifactCache.getAllFilesInCache();
+    assertEquals(ImmutableSet.of(fileZ, fileW), ImmutableSet.copyOf(filesInCache));
+  }
+
+  @Test
+  public void testEntryWhichFailsToDeleteIsKeptInEvictionIndex()
+      throws InterruptedException, IOException {
+    Path cacheDir = tmpDir.newFolder();
+
+    Path fileW = cacheDir.resolve("11").resolve("11").resolve("w");
+    Path fileX = cacheDir.resolve("22").resolve("22").resolve("x");
+    Path fileY = cacheDir.resolve("33").resolve("33").resolve("y");
+    Path fileZ = cacheDir.resolve("44").resolve("44").resolve("z");
+
+    Files.createDirectories(fileW.getParent());
+    Files.createDirectories(fileX.getParent());
+    Files.createDirectories(fileY.getParent());
+    Files.createDirectories(fileZ.getParent());
+
+    Files.write(fileW, "w".getBytes(UTF_8));
+    Files.write(fileX, "x".getBytes(UTF_8));
+    Files.write(fileY, "y".getBytes(UTF_8));
+    Files.write(fileZ, "z".getBytes(UTF_8));
+
+    Files.setAttribute(fileW, "lastAccessTime", FileTime.fromMillis(9000));
+    Files.setAttribute(fileX, "lastAccessTime", FileTime.fromMillis(0));
+    Files.setAttribute(fileY, "lastAccessTime", FileTime.fromMillis(1000));
+    Files.setAttribute(fileZ, "lastAccessTime", FileTime.fromMillis(2000));
+
+    // Add the files to the index without evicting any of them.
+    dirArtifactCache =
+        new DirArtifactCache(
+            "dir",
+            new ProjectFilesystem(cacheDir),
+            Paths.get("."),
+            CacheReadMode.READWRITE,
+            /* maxCacheSizeBytes */ Optional.of(100L),
+            /* useEvictionIndex */ true);
+    dirArtifactCache.deleteOldFiles();
+    dirArtifactCache.close();
+
+    // Replace the least recently used entry with a non-empty directory, which cannot be deleted.
+    Files.delete(fileX);
+    Files.createDirectories(fileX);
+    Files.write(fileX.resolve("child"), "x".getBytes(UTF_8));
+
+    dirArtifactCache =
+        new DirArtifactCache(
+            "dir",
+            new ProjectFilesystem(cacheDir),
+            Paths.get("."),
+            CacheReadMode.READWRITE,
+            /* maxCacheSizeBytes */ Optional.of(3L),
+            /* useEvictionIndex */ true);
+    dirArtifactCache.deleteOldFiles();
+    dirArtifactCache.close();
+    dirArtifactCache = null;
+
+    // The failure does not stop the other evicted entries from being deleted.
+    assertFalse(Files.exists(fileY));
+    assertTrue(Files.exists(fileX.resolve("child")));
+    assertTrue(Files.exists(fileW));
+    assertTrue(Files.exists(fileZ));
+
+    // Only the deleted entry was removed from the index, so the next trim retries the other one.
+    try (DirArtifactCacheIndex index =
+        new DirArtifactCacheIndex(cacheDir.resolve(".index").resolve("index.db"))) {
+      assertEquals(3L, index.getTotalSizeBytes());
+    }
+  }
+
   private DirectoryCleaner.PathStats fakePathStats(long creationTime, long lastAccessTime) {
     return new DirectoryCleaner.PathStats(null, 0, creationTime, lastAccessTime);
   }
@@ -64,6 +64,14 @@ public class InMemoryArtifactCache implements ArtifactCache {
         "in-memory", ArtifactCacheMode.dir, artifact.metadata, artifact.data.length);
   }
 
+  @Override
+  public ListenableFuture<CacheResult> containsAsync(RuleKey ruleKey) {
+    return Futures.immediateFuture(
+        artifacts.containsKey(ruleKey)
+            ? CacheResult.contains("in-memory", ArtifactCacheMode.dir)
+            : CacheResult.miss());
+  }
+
   public void store(ArtifactInfo info, byte[] data) {
     Artifact artifact = new Artifact();
     artifact.metadata = info.getMetadata();
@@ -17,14 +17,17 @@
 package com.facebook.buck.artifact_cache;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.io.BorrowablePath;
 import com.facebook.buck.io.LazyPath;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.MoreCollectors;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
@@ -155,6 +158,38 @@ public class MultiArtifactCacheTest {
     multiArtifactCache.close();
   }
 
+  @Test
+  public void testMultiFetchAsksEachCacheForMissingKeysAndPropagates() throws IOException {
+    RuleKey firstKey = new RuleKey("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+    RuleKey secondKey = new RuleKey("bbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbb");
+    RuleKey missingKey = new RuleKey("cccccccccccccccccccccccccccccccccccccccc");
+    InMemoryArtifactCache cache1 = new InMemoryArtifactCache();
+    InMemoryArtifactCache cache2 = new InMemoryArtifactCache();
+    cache1.store(ArtifactInfo.builder().addRuleKeys(firstKey).build(), new byte[] {1});
+    cache2.store(ArtifactInfo.builder().addRuleKeys(secondKey).build(), new byte[] {2});
+    MultiArtifactCache multiArtifactCache =
+        new MultiArtifactCache(ImmutableList.of(cache1, cache2));
+
+    ImmutableList<CacheResult> results =
+        Futures.getUnchecked(
+            multiArtifactCache.multiFetchAsync(
+                ImmutableList.of(firstKey, secondKey, missingKey),
+                ImmutableList.of(
+                    LazyPath.ofInstance(tmp.getRoot().resolve("first")),
+                    LazyPath.ofInstance(tmp.getRoot().resolve("second")),
+                    LazyPath.ofInstance(tmp.getRoot().resolve("missing")))));
+
+    assertEquals(
+        ImmutableList.of(CacheResultType.HIT, CacheResultType.HIT, CacheResultType.MISS),
+        results.stream().map(CacheResult::getType).collect(MoreCollectors.toImmutableList()));
+    assertTrue(
+        "The artifact found in the second cache should have been propagated to the first.",
+        cache1.hasArtifact(secondKey));
+    assertFalse(cache2.hasArtifact(firstKey));
+
+    multiArtifactCache.close();
+  }
+
   @Test
   public void testCacheStore() throws InterruptedException, IOException {
     DummyArtifactCache dummyArtifactCache1 = new DummyArtifactCache();
@@ -205,6 +240,14 @@ public class MultiArtifactCacheTest {
       }
     }
 
+    @Override
+    public ListenableFuture<CacheResult> containsAsync(RuleKey ruleKey) {
+      return Futures.immediateFuture(
+          ruleKey.equals(storedKey.get())
+              ? CacheResult.contains("cache", ArtifactCacheMode.http)
+              : CacheResult.miss());
+    }
+
     @Override
     public ListenableFuture<Void> store(ArtifactInfo info, BorrowablePath output) {
       if (output.canBorrow()) {
@@ -28,6 +28,7 @@ import com.google.caliper.Benchmark;
 import com.google.caliper.Param;
 import com.google.common.hash.HashCode;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
@@ -39,6 +40,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.Random;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -54,6 +56,9 @@ public class SQLiteArtifactCacheBenchmark {
   @Param({"5", "10"})
   private int threadCount = 2;
 
+  @Param({"false", "true"})
+  private boolean backgroundMaintenance = true;
+
   private static final Random random = new Random(12345);
   private static final long MAX_INLINED_BYTES = 1024;
 
@@ -133,7 +138,8 @@ public class SQLiteArtifactCacheBenchmark {
         cacheDir,
         maxCacheSizeBytes,
         Optional.of(MAX_INLINED_BYTES),
-        CacheReadMode.READWRITE);
+        CacheReadMode.READWRITE,
+        backgroundMaintenance);
   }
 
   @Ignore
@@ -150,6 +156,13 @@ public class SQLiteArtifactCacheBenchmark {
     runAllBenchmarks();
   }
 
+  @Ignore
+  @Test
+  public void testMultiThreadedWhileEvicting() throws IOException, SQLException {
+    executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(threadCount));
+    benchStoreAndFetchWhileEvicting();
+  }
+
   private void runAllBenchmarks() {
     benchMetadataStore();
     benchMetadataFetch();
@@ -188,4 +201,46 @@ public class SQLiteArtifactCacheBenchmark {
       Futures.getUnchecked(artifactCache.fetchAsync(key, output));
     }
   }
+
+  /**
+   * Stores and fetches artifacts from several threads, while evicting from another one. The cache
+   * is small enough for most stores to push it over its maximum size.
+   */
+  @Benchmark
+  private void benchStoreAndFetchWhileEvicting() throws IOException, SQLException {
+    artifactCache.close();
+    artifactCache = cache(Optional.of(16 * MAX_INLINED_BYTES));
+
+    // Stores only evict inline without background maintenance.
+    AtomicBoolean done = new AtomicBoolean(false);
+    ListeningExecutorService maintenanceExecutor =
+        MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
+    ListenableFuture<?> maintenance =
+        maintenanceExecutor.submit(
+            () -> {
+              while (backgroundMaintenance && !done.get()) {
+                artifactCache.runMaintenance();
+              }
+            });
+
+    List<ListenableFuture<?>> operations = new ArrayList<>(2 * opCount);
+    for (int i = 0; i < opCount; i++) {
+      ArtifactInfo info = contentInfo.get(i);
+      RuleKey contentHash = contentHashes.get(i);
+      LazyPath fetchOutput = LazyPath.ofInstance(cacheDir.resolve(".output" + i));
+      operations.add(
+          executor.submit(
+              () -> artifactCache.store(info, BorrowablePath.notBorrowablePath(largeFile))));
+      operations.add(
+          executor.submit(
+              () -> Futures.getUnchecked(artifactCache.fetchAsync(contentHash, fetchOutput))));
+    }
+    try {
+      Futures.getUnchecked(Futures.allAsList(operations));
+    } finally {
+      done.set(true);
+      Futures.getUnchecked(maintenance);
+      maintenanceExecutor.shutdown();
+    }
+  }
 }
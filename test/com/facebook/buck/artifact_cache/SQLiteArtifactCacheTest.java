@@ -364,6 +364,79 @@ public class SQLiteArtifactCacheTest {
     assertThat(filesNotDeleted, Matchers.hasItem(contentHashC));
   }
 
+  @Test
+  public void testBackgroundMaintenanceDeletesWhenFull() throws IOException, SQLException {
+    artifactCache =
+        new SQLiteArtifactCache(
+            "sqlite",
+            filesystem,
+            cacheDir,
+            Optional.of(2 * MAX_INLINED_BYTES),
+            Optional.of(MAX_INLINED_BYTES),
+            CacheReadMode.READWRITE,
+            /* backgroundMaintenance */ true);
+
+    writeFileArtifact(fileA);
+    writeFileArtifact(fileB);
+    writeFileArtifact(fileC);
+
+    artifactCache.insertContent(
+        contentHashA,
+        BorrowablePath.notBorrowablePath(fileA),
+        Timestamp.from(Instant.now().minus(Duration.ofDays(3))));
+    artifactCache.insertContent(
+        contentHashB,
+        BorrowablePath.notBorrowablePath(fileB),
+        Timestamp.from(Instant.now().minus(Duration.ofDays(2))));
+    artifactCache.insertContent(
+        contentHashC,
+        BorrowablePath.notBorrowablePath(fileC),
+        Timestamp.from(Instant.now().minus(Duration.ofDays(1))));
+
+    artifactCache.runMaintenance();
+
+    assertThat(artifactCache.directoryFileContentHashes(), Matchers.contains(contentHashC));
+    assertFalse(Files.exists(fileA));
+    assertFalse(Files.exists(fileB));
+    assertTrue(Files.exists(fileC));
+  }
+
+  @Test
+  public void testCloseEvictsBeforeBackgroundMaintenanceRuns() throws IOException, SQLException {
+    SQLiteArtifactCache cache =
+        new SQLiteArtifactCache(
+            "sqlite",
+            filesystem,
+            cacheDir,
+            Optional.of(2 * MAX_INLINED_BYTES),
+            Optional.of(MAX_INLINED_BYTES),
+            CacheReadMode.READWRITE,
+            /* backgroundMaintenance */ true);
+
+    writeFileArtifact(fileA);
+    writeFileArtifact(fileB);
+    writeFileArtifact(fileC);
+
+    cache.insertContent(
+        contentHashA,
+        BorrowablePath.notBorrowablePath(fileA),
+        Timestamp.from(Instant.now().minus(Duration.ofDays(3))));
+    cache.insertContent(
+        contentHashB,
+        BorrowablePath.notBorrowablePath(fileB),
+        Timestamp.from(Instant.now().minus(Duration.ofDays(2))));
+    cache.insertContent(
+        contentHashC,
+        BorrowablePath.notBorrowablePath(fileC),
+        Timestamp.from(Instant.now().minus(Duration.ofDays(1))));
+
+    cache.close();
+
+    assertFalse(Files.exists(fileA));
+    assertFalse(Files.exists(fileB));
+    assertTrue(Files.exists(fileC));
+  }
+
   @Test
   public void testCacheStoreMultipleKeys() throws IOException, SQLException {
     artifactCache = cache(Optional.empty());
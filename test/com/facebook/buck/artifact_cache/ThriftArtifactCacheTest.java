@@ -18,6 +18,7 @@ package com.facebook.buck.artifact_cache;
 
 import com.facebook.buck.artifact_cache.thrift.ArtifactMetadata;
 import com.facebook.buck.artifact_cache.thrift.BuckCacheFetchResponse;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheMultiFetchResponse;
 import com.facebook.buck.artifact_cache.thrift.BuckCacheRequestType;
 import com.facebook.buck.artifact_cache.thrift.BuckCacheResponse;
 import com.facebook.buck.artifact_cache.thrift.PayloadInfo;
@@ -30,7 +31,10 @@ import com.facebook.buck.slb.HttpService;
 import com.facebook.buck.slb.ThriftException;
 import com.facebook.buck.slb.ThriftUtil;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.hash.HashCode;
+import com.google.common.io.ByteSource;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -39,6 +43,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import javax.annotation.Nullable;
 import org.apache.thrift.TBase;
@@ -81,6 +87,94 @@ public class ThriftArtifactCacheTest {
     testWithMetadata(null);
   }
 
+  @Test
+  public void testMultiFetchReadsPayloadsInOrder() throws IOException, InterruptedException {
+    HttpService storeClient = EasyMock.createNiceMock(HttpService.class);
+    HttpService fetchClient = EasyMock.createMock(HttpService.class);
+    BuckEventBus eventBus = EasyMock.createNiceMock(BuckEventBus.class);
+    ProjectFilesystem filesystem = new ProjectFilesystem(tempPaths.getRoot());
+    NetworkCacheArgs networkArgs =
+        NetworkCacheArgs.builder()
+            .setCacheName("default_cache_name")
+            .setRepository("default_repository")
+            .setCacheReadMode(CacheReadMode.READONLY)
+            .setCacheMode(ArtifactCacheMode.thrift_over_http)
+            .setScheduleType("default_schedule_type")
+            .setProjectFilesystem(filesystem)
+            .setFetchClient(fetchClient)
+            .setStoreClient(storeClient)
+            .setBuckEventBus(eventBus)
+            .setHttpWriteExecutorService(MoreExecutors.newDirectExecutorService())
+            .setErrorTextTemplate("my super error msg")
+            .setDistributedBuildModeEnabled(false)
+            .setThriftEndpointPath("/nice_as_well")
+            .build();
+
+    com.facebook.buck.rules.RuleKey firstKey =
+        new com.facebook.buck.rules.RuleKey(HashCode.fromInt(1));
+    com.facebook.buck.rules.RuleKey missingKey =
+        new com.facebook.buck.rules.RuleKey(HashCode.fromInt(2));
+    com.facebook.buck.rules.RuleKey thirdKey =
+        new com.facebook.buck.rules.RuleKey(HashCode.fromInt(3));
+    byte[] firstPayload = "first".getBytes(StandardCharsets.UTF_8);
+    byte[] thirdPayload = "third artifact".getBytes(StandardCharsets.UTF_8);
+
+    BuckCacheMultiFetchResponse multiFetchResponse =
+        new BuckCacheMultiFetchResponse()
+            .setResults(
+                ImmutableList.of(
+                    makeFetchResponse(firstKey, firstPayload),
+                    new BuckCacheFetchResponse().setArtifactExists(false),
+                    makeFetchResponse(thirdKey, thirdPayload)));
+    BuckCacheResponse response =
+        new BuckCacheResponse()
+            .setWasSuccessful(true)
+            .setType(BuckCacheRequestType.MULTI_FETCH)
+            .setMultiFetchResponse(multiFetchResponse);
+    response.addToPayloads(new PayloadInfo().setSizeBytes(firstPayload.length));
+    response.addToPayloads(new PayloadInfo().setSizeBytes(thirdPayload.length));
+
+    EasyMock.expect(fetchClient.makeRequest(EasyMock.anyString(), EasyMock.anyObject()))
+        .andReturn(new InMemoryThriftResponse(response, firstPayload, thirdPayload))
+        .once();
+    fetchClient.close();
+    EasyMock.expectLastCall().once();
+    EasyMock.replay(fetchClient);
+
+    Path firstPath = tempPaths.getRoot().resolve("first");
+    Path missingPath = tempPaths.getRoot().resolve("missing");
+    Path thirdPath = tempPaths.getRoot().resolve("third");
+    try (ThriftArtifactCache cache = new ThriftArtifactCache(networkArgs)) {
+      ImmutableList<CacheResult> results =
+          Futures.getUnchecked(
+              cache.multiFetchAsync(
+                  ImmutableList.of(firstKey, missingKey, thirdKey),
+                  ImmutableList.of(
+                      LazyPath.ofInstance(firstPath),
+                      LazyPath.ofInstance(missingPath),
+                      LazyPath.ofInstance(thirdPath))));
+      Assert.assertEquals(3, results.size());
+      Assert.assertEquals(CacheResultType.HIT, results.get(0).getType());
+      Assert.assertEquals(CacheResultType.MISS, results.get(1).getType());
+      Assert.assertEquals(CacheResultType.HIT, results.get(2).getType());
+    }
+
+    Assert.assertArrayEquals(firstPayload, Files.readAllBytes(firstPath));
+    Assert.assertFalse(Files.exists(missingPath));
+    Assert.assertArrayEquals(thirdPayload, Files.readAllBytes(thirdPath));
+    EasyMock.verify(fetchClient);
+  }
+
+  private static BuckCacheFetchResponse makeFetchResponse(
+      com.facebook.buck.rules.RuleKey ruleKey, byte[] payload) throws IOException {
+    ArtifactMetadata metadata = new ArtifactMetadata();
+    metadata.addToRuleKeys(new RuleKey().setHashString(ruleKey.toString()));
+    metadata.setMetadata(ImmutableMap.of());
+    metadata.setArtifactPayloadMd5(
+        ThriftArtifactCacheProtocol.computeMd5Hash(ByteSource.wrap(payload)));
+    return new BuckCacheFetchResponse().setArtifactExists(true).setMetadata(metadata);
+  }
+
   private void testWithMetadata(@Nullable ArtifactMetadata artifactMetadata)
       throws IOException, InterruptedException {
     testWithMetadataAndPayloadInfo(artifactMetadata, true);
@@ -156,7 +250,7 @@ public class ThriftArtifactCacheTest {
   private static class InMemoryThriftResponse implements HttpResponse {
     private byte[] response;
 
-    public InMemoryThriftResponse(TBase<?, ?> payload) {
+    public InMemoryThriftResponse(TBase<?, ?> payload, byte[]... artifacts) {
       byte[] serializedThrift = null;
       try {
         serializedThrift = ThriftUtil.serialize(ThriftArtifactCache.PROTOCOL, payload);
@@ -164,10 +258,17 @@ public class ThriftArtifactCacheTest {
         throw new RuntimeException(e);
       }
 
-      ByteBuffer buffer = ByteBuffer.allocate(4 + serializedThrift.length);
+      int artifactsLength = 0;
+      for (byte[] artifact : artifacts) {
+        artifactsLength += artifact.length;
+      }
+      ByteBuffer buffer = ByteBuffer.allocate(4 + serializedThrift.length + artifactsLength);
       buffer.order(ByteOrder.BIG_ENDIAN);
       buffer.putInt(serializedThrift.length);
       buffer.put(serializedThrift);
+      for (byte[] artifact : artifacts) {
+        buffer.put(artifact);
+      }
       response = buffer.array();
     }
 
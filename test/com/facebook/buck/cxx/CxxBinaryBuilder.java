@@ -136,4 +136,9 @@ public class CxxBinaryBuilder
     getArgForPopulating().setDeps(deps);
     return this;
   }
+
+  public CxxBinaryBuilder setPrecompiledHeader(SourcePath precompiledHeader) {
+    getArgForPopulating().setPrecompiledHeader(Optional.of(precompiledHeader));
+    return this;
+  }
 }
@@ -30,11 +30,17 @@ import com.facebook.buck.cxx.platform.Compiler;
 import com.facebook.buck.cxx.platform.CxxPlatform;
 import com.facebook.buck.cxx.platform.CxxToolProvider;
 import com.facebook.buck.cxx.platform.PreprocessorProvider;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusForTests;
+import com.facebook.buck.event.listener.BroadcastEventListener;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.model.BuildTargets;
 import com.facebook.buck.model.Flavor;
+import com.facebook.buck.model.FlavorDomain;
+import com.facebook.buck.rules.ActionGraphAndResolver;
+import com.facebook.buck.rules.ActionGraphCache;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildRuleResolver;
@@ -42,15 +48,19 @@ import com.facebook.buck.rules.BuildRuleSuccessType;
 import com.facebook.buck.rules.DefaultBuildTargetSourcePath;
 import com.facebook.buck.rules.DefaultSourcePathResolver;
 import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.DependencyAggregation;
 import com.facebook.buck.rules.FakeSourcePath;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.SourceWithFlags;
 import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.rules.TargetNodeToBuildRuleTransformer;
 import com.facebook.buck.rules.TestBuildRuleParams;
 import com.facebook.buck.rules.args.StringArg;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.testutil.TargetGraphFactory;
 import com.facebook.buck.testutil.integration.BuckBuildLog;
 import com.facebook.buck.testutil.integration.ProjectWorkspace;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
@@ -58,16 +68,21 @@ import com.facebook.buck.testutil.integration.TestDataHelper;
 import com.facebook.buck.util.environment.Platform;
 import com.facebook.buck.util.sha1.Sha1HashCode;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.stream.Collectors;
 import org.hamcrest.CustomTypeSafeMatcher;
@@ -290,6 +305,72 @@ public class CxxPrecompiledHeaderRuleTest {
     assertNotEquals(pchFlag2, pchFlag3);
   }
 
+  @Test
+  public void parallelActionGraphCreatesPchRulesSharedBetweenBinariesOnce() throws Exception {
+    assumeTrue(platformOkForPCHTests());
+
+    BuildTarget pchTarget = newTarget("//test:pch");
+    TargetNode<?, ?> pchNode =
+        CxxPrecompiledHeaderBuilder.createBuilder(pchTarget)
+            .setSrc(new FakeSourcePath("header.h"))
+            .build();
+    FlavorDomain<CxxPlatform> cxxPlatforms =
+        new FlavorDomain<>(
+            "C/C++ Platform",
+            ImmutableMap.of(PLATFORM_SUPPORTING_PCH.getFlavor(), PLATFORM_SUPPORTING_PCH));
+    ImmutableList.Builder<TargetNode<?, ?>> binaryNodes = ImmutableList.builder();
+    for (int i = 0; i < 8; i++) {
+      binaryNodes.add(
+          new CxxBinaryBuilder(
+                  newTarget("//test:bin" + i),
+                  PLATFORM_SUPPORTING_PCH,
+                  cxxPlatforms,
+                  CXX_CONFIG_PCH_ENABLED)
+              .setSrcs(ImmutableSortedSet.of(SourceWithFlags.of(new FakeSourcePath("bin.cpp"))))
+              .setPrecompiledHeader(new DefaultBuildTargetSourcePath(pchTarget))
+              .build());
+    }
+    TargetGraph targetGraph =
+        TargetGraphFactory.newInstance(
+            ImmutableSet.<TargetNode<?, ?>>builder()
+                .add(pchNode)
+                .addAll(binaryNodes.build())
+                .build());
+
+    BuckEventBus eventBus = BuckEventBusForTests.newInstance();
+    BroadcastEventListener broadcastEventListener = new BroadcastEventListener();
+    broadcastEventListener.addEventBus(eventBus);
+    ActionGraphAndResolver result =
+        new ActionGraphCache(broadcastEventListener, 1, /* incremental */ false, /* threads */ 4)
+            .getActionGraph(
+                eventBus,
+                /* checkActionGraphs */ false,
+                /* skipActionGraphCache */ false,
+                targetGraph,
+                /* keySeed */ 0);
+
+    // All binaries depend on the one PCH rule in the resolver, which depends on the one
+    // aggregated deps rule of the template.
+    BuildRuleResolver resolver = result.getResolver();
+    Set<BuildRule> pchRules = new HashSet<>();
+    for (BuildRule rule : result.getActionGraph().getNodes()) {
+      for (BuildRule dep : rule.getBuildDeps()) {
+        assertEquals(Optional.of(dep), resolver.getRuleOptional(dep.getBuildTarget()));
+        if (dep instanceof CxxPrecompiledHeader) {
+          pchRules.add(dep);
+        }
+      }
+    }
+    assertEquals(1, pchRules.size());
+    assertEquals(
+        1,
+        Iterables.getOnlyElement(pchRules)
+            .getBuildDeps()
+            .stream()
+            .filter(DependencyAggregation.class::isInstance)
+            .count());
+  }
+
   @Test
   public void userRuleChangesDependencyPCHRuleFlags() throws Exception {
     assumeTrue(platformOkForPCHTests());
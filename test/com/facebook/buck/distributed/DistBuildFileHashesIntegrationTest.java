@@ -43,6 +43,7 @@ import com.facebook.buck.rules.TestCellBuilder;
 import com.facebook.buck.rules.coercer.ConstructorArgMarshaller;
 import com.facebook.buck.rules.coercer.DefaultTypeCoercerFactory;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
+import com.facebook.buck.rules.keys.RuleKeyFieldLoader;
 import com.facebook.buck.testutil.integration.ProjectWorkspace;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.facebook.buck.testutil.integration.TestDataHelper;
@@ -232,7 +233,7 @@ public class DistBuildFileHashesIntegrationTest {
         stackedCache,
         cellIndexer,
         MoreExecutors.newDirectExecutorService(),
-        /* keySeed */ KEY_SEED,
+        new RuleKeyFieldLoader(KEY_SEED),
         rootCell);
   }
 }
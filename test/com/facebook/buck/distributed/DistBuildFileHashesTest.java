@@ -49,6 +49,7 @@ import com.facebook.buck.rules.TargetGraph;
 import com.facebook.buck.rules.TestBuildRuleParams;
 import com.facebook.buck.rules.TestCellBuilder;
 import com.facebook.buck.rules.Tool;
+import com.facebook.buck.rules.keys.RuleKeyFieldLoader;
 import com.facebook.buck.slb.ThriftUtil;
 import com.facebook.buck.util.MoreCollectors;
 import com.facebook.buck.util.cache.DefaultFileHashCache;
@@ -123,7 +124,7 @@ public class DistBuildFileHashesTest {
               createFileHashCache(),
               new DistBuildCellIndexer(rootCell),
               MoreExecutors.newDirectExecutorService(),
-              /* keySeed */ 0,
+              new RuleKeyFieldLoader(/* keySeed */ 0),
               rootCell);
     }
 
@@ -60,6 +60,7 @@ import com.facebook.buck.rules.coercer.ConstructorArgMarshaller;
 import com.facebook.buck.rules.coercer.DefaultTypeCoercerFactory;
 import com.facebook.buck.rules.coercer.PathTypeCoercer;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
+import com.facebook.buck.rules.keys.RuleKeyFieldLoader;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.facebook.buck.testutil.TargetGraphFactory;
 import com.facebook.buck.testutil.TestConsole;
@@ -370,7 +371,7 @@ public class DistBuildStateTest {
                     projectFilesystem, FileHashCacheMode.DEFAULT))),
         new DistBuildCellIndexer(rootCell),
         MoreExecutors.newDirectExecutorService(),
-        /* keySeed */ 0,
+        new RuleKeyFieldLoader(/* keySeed */ 0),
         rootCell);
   }
 
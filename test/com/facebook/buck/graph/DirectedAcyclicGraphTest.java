@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.Set;
+import org.junit.Test;
+
+public class DirectedAcyclicGraphTest {
+
+  @Test
+  public void testEdgesInBothDirections() {
+    MutableDirectedGraph<String> mutableGraph = new MutableDirectedGraph<>();
+    mutableGraph.addEdge("A", "B");
+    mutableGraph.addEdge("A", "C");
+    mutableGraph.addEdge("B", "D");
+    mutableGraph.addEdge("C", "D");
+    mutableGraph.addNode("E");
+    DirectedAcyclicGraph<String> graph = new DirectedAcyclicGraph<>(mutableGraph);
+
+    assertEquals(ImmutableSet.of("A", "B", "C", "D", "E"), graph.getNodes());
+    assertEquals(ImmutableSet.of("B", "C"), graph.getOutgoingNodesFor("A"));
+    assertEquals(ImmutableSet.of("B", "C"), graph.getIncomingNodesFor("D"));
+    assertEquals(ImmutableSet.of(), graph.getIncomingNodesFor("A"));
+    assertEquals(ImmutableSet.of(), graph.getOutgoingNodesFor("F"));
+    assertEquals(ImmutableSet.of("A", "E"), graph.getNodesWithNoIncomingEdges());
+    assertEquals(ImmutableSet.of("D", "E"), graph.getNodesWithNoOutgoingEdges());
+  }
+
+  @Test
+  public void testEqualityDoesNotDependOnInsertionOrder() {
+    MutableDirectedGraph<String> first = new MutableDirectedGraph<>();
+    first.addEdge("A", "B");
+    first.addEdge("A", "C");
+    MutableDirectedGraph<String> second = new MutableDirectedGraph<>();
+    second.addNode("C");
+    second.addEdge("A", "C");
+    second.addEdge("A", "B");
+    MutableDirectedGraph<String> third = new MutableDirectedGraph<>();
+    third.addEdge("A", "B");
+    third.addEdge("B", "C");
+
+    DirectedAcyclicGraph<String> firstGraph = new DirectedAcyclicGraph<>(first);
+    DirectedAcyclicGraph<String> secondGraph = new DirectedAcyclicGraph<>(second);
+    assertEquals(firstGraph, secondGraph);
+    assertEquals(firstGraph.hashCode(), secondGraph.hashCode());
+    assertNotEquals(firstGraph, new DirectedAcyclicGraph<>(third));
+  }
+
+  @Test
+  public void testEdgeSetsHoldEachNodeOnce() {
+    DirectedAcyclicGraph<String> graph =
+        new DirectedAcyclicGraph<>(
+            ImmutableSet.of("A", "B", "C"),
+            node -> node.equals("A") ? ImmutableList.of("C", "B", "C") : ImmutableList.of());
+
+    Set<String> outgoing = graph.getOutgoingNodesFor("A");
+    assertEquals(2, outgoing.size());
+    assertEquals(ImmutableList.of("C", "B"), ImmutableList.copyOf(outgoing));
+    assertTrue(outgoing.contains("B"));
+    assertFalse(outgoing.contains("A"));
+    assertFalse(outgoing.contains("D"));
+    assertEquals(ImmutableSet.of("A"), graph.getIncomingNodesFor("C"));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testEdgeSetsAreUnmodifiable() {
+    MutableDirectedGraph<String> mutableGraph = new MutableDirectedGraph<>();
+    mutableGraph.addEdge("A", "B");
+    new DirectedAcyclicGraph<>(mutableGraph).getOutgoingNodesFor("A").add("C");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testCyclicGraphIsRejected() {
+    MutableDirectedGraph<String> mutableGraph = new MutableDirectedGraph<>();
+    mutableGraph.addEdge("A", "B");
+    mutableGraph.addEdge("B", "A");
+    new DirectedAcyclicGraph<>(mutableGraph);
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelBottomUpTraversalTest {
+
+  private ExecutorService executor;
+  private MutableDirectedGraph<String> graph;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(4);
+    graph = new MutableDirectedGraph<>();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testNodesAreVisitedAfterTheirChildren() throws Exception {
+    //    A
+    //  /   \
+    // B     C
+    //  \   / \
+    //    D    E
+    graph.addEdge("A", "B");
+    graph.addEdge("A", "C");
+    graph.addEdge("B", "D");
+    graph.addEdge("C", "D");
+    graph.addEdge("C", "E");
+    Set<String> visited = ConcurrentHashMap.newKeySet();
+
+    ImmutableMap<String, String> values =
+        newTraversal(
+                (node, childValues) -> {
+                  for (String child : graph.getOutgoingNodesFor(node)) {
+                    assertTrue(visited.contains(child));
+                  }
+                  assertTrue(visited.add(node));
+                  return node + childValues;
+                })
+            .traverse(ImmutableList.of("A"))
+            .get();
+
+    assertEquals("A[B[D[]], C[D[], E[]]]", values.get("A"));
+    assertEquals(ImmutableSet.of("A", "B", "C", "D", "E"), values.keySet());
+    assertEquals("A", values.keySet().asList().get(4));
+  }
+
+  @Test
+  public void testLongChainIsVisited() throws Exception {
+    for (int i = 0; i < 10000; i++) {
+      graph.addEdge(String.valueOf(i), String.valueOf(i + 1));
+    }
+
+    ImmutableMap<String, Integer> values =
+        new ParallelBottomUpTraversal<String, Integer>(
+                node -> graph.getOutgoingNodesFor(node).iterator(),
+                executor,
+                (node, childValues) -> childValues.isEmpty() ? 0 : childValues.get(0) + 1)
+            .traverse(ImmutableList.of("0"))
+            .get();
+
+    assertEquals(10000, (int) values.get("0"));
+  }
+
+  @Test
+  public void testCycleIsReportedBeforeVisitingNodes() throws Exception {
+    graph.addEdge("A", "B");
+    graph.addEdge("B", "C");
+    graph.addEdge("C", "B");
+
+    try {
+      newTraversal(
+              (node, childValues) -> {
+                throw new AssertionError("Should not visit " + node);
+              })
+          .traverse(ImmutableList.of("A"));
+      fail("Should have found a cycle.");
+    } catch (AcyclicDepthFirstPostOrderTraversal.CycleException e) {
+      assertEquals(ImmutableList.of("B", "C", "B"), e.getCycle());
+    }
+  }
+
+  @Test
+  public void testFailedVisitStopsTheTraversal() throws Exception {
+    graph.addEdge("A", "B");
+    graph.addEdge("B", "C");
+    IllegalStateException failure = new IllegalStateException();
+
+    try {
+      newTraversal(
+              (node, childValues) -> {
+                if (node.equals("B")) {
+                  throw failure;
+                }
+                if (node.equals("A")) {
+                  throw new AssertionError("Should not visit A");
+                }
+                return node;
+              })
+          .traverse(ImmutableList.of("A"))
+          .get();
+      fail("Should have failed.");
+    } catch (ExecutionException e) {
+      assertSame(failure, e.getCause());
+    }
+  }
+
+  private ParallelBottomUpTraversal<String, String> newTraversal(
+      ParallelBottomUpTraversal.Visitor<String, String> visitor) {
+    return new ParallelBottomUpTraversal<>(
+        node -> ImmutableSortedSet.copyOf(graph.getOutgoingNodesFor(node)).iterator(),
+        executor,
+        visitor);
+  }
+}
@@ -19,9 +19,13 @@ package com.facebook.buck.json;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 
+import com.facebook.buck.bser.BserDeserializer;
+import com.facebook.buck.bser.BserSerializer;
 import com.facebook.buck.util.ObjectMappers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -104,4 +108,35 @@ public final class BuildFilePythonResultDeserializerTest {
             BuildFilePythonResult.of(
                 ImmutableList.of(), ImmutableList.of(), Optional.of("this is a profile"))));
   }
+
+  @Test
+  public void bserResultMatchesJsonResult() throws IOException {
+    Map<String, Object> value = new LinkedHashMap<>();
+    value.put("name", "foo");
+    value.put("buck.type", "java_library");
+    value.put("deps", ImmutableList.of(":bar", ":baz"));
+    value.put("exported", true);
+    value.put("buck.foo", null);
+    ImmutableMap<String, Object> result =
+        ImmutableMap.of(
+            "values",
+            ImmutableList.of(value),
+            "diagnostics",
+            ImmutableList.of(ImmutableMap.of("message", "Oops", "level", "warning")),
+            "profile",
+            "this is a profile");
+
+    ByteArrayOutputStream bser = new ByteArrayOutputStream();
+    new BserSerializer().serializeToStream(result, bser);
+    BuildFilePythonResult bserResult =
+        ProjectBuildFileParser.toBuildFilePythonResult(
+            new BserDeserializer(BserDeserializer.KeyOrdering.SORTED)
+                .deserializeBserValue(new ByteArrayInputStream(bser.toByteArray())));
+
+    assertThat(
+        bserResult,
+        is(
+            ObjectMappers.readValue(
+                ObjectMappers.WRITER.writeValueAsString(result), BuildFilePythonResult.class)));
+  }
 }
@@ -181,4 +181,40 @@ public class BuildTargetTest {
             .build();
     assertSame(target1, target2);
   }
+
+  @Test
+  public void flavoredBuildTargetsAndTheirFlavorsAreInterned() {
+    BuildTarget target1 =
+        BuildTargetFactory.newInstance(ROOT, "//foo", "bar", InternalFlavor.of("biz"))
+            .withAppendedFlavors(InternalFlavor.of("aaa"));
+    BuildTarget target2 =
+        BuildTargetFactory.newInstance(ROOT, "//foo", "bar", InternalFlavor.of("aaa"))
+            .withAppendedFlavors(InternalFlavor.of("biz"));
+    assertSame(target1, target2);
+    assertSame(InternalFlavor.of("aaa"), InternalFlavor.of("aaa"));
+
+    BuildTarget otherTarget =
+        BuildTargetFactory.newInstance(
+            ROOT, "//foo", "other", InternalFlavor.of("aaa"), InternalFlavor.of("biz"));
+    assertSame(target1.getFlavors(), otherTarget.getFlavors());
+  }
+
+  @Test
+  public void userFlavorsAreNotReplacedByInterning() {
+    BuildTarget internalTarget =
+        BuildTargetFactory.newInstance(ROOT, "//foo", "bar", InternalFlavor.of("src"));
+    UserFlavor userFlavor = UserFlavor.of("src", "Sources");
+    BuildTarget userTarget = BuildTargetFactory.newInstance(ROOT, "//foo", "bar", userFlavor);
+    assertSame(userFlavor, userTarget.getFlavors().first());
+    assertSame(
+        userFlavor,
+        BuildTargetFactory.newInstance(ROOT, "//foo", "baz", userFlavor).getFlavors().first());
+
+    assertEquals(internalTarget, userTarget);
+    assertThat(
+        BuildTargetFactory.newInstance(ROOT, "//foo", "bar", InternalFlavor.of("src"))
+            .getFlavors()
+            .first(),
+        Matchers.instanceOf(InternalFlavor.class));
+  }
 }
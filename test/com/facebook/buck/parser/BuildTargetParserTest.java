@@ -209,4 +209,35 @@ public class BuildTargetParserTest {
         parser.parse(backslashStr, fullyQualifiedParser, createCellRoots(null));
     assertEquals("//com/microsoft/windows", buildTarget.getBaseName());
   }
+
+  @Test
+  public void testParsedTargetsAreOnlyReusedForTheSameCellsAndContext() {
+    String targetStr = "localreponame//foo/bar:baz";
+    CellPathResolver cellRoots =
+        new DefaultCellPathResolver(
+            Paths.get("/opt/local/rootcell"),
+            ImmutableMap.of("localreponame", Paths.get("/opt/local/repo")));
+    CellPathResolver otherCellRoots =
+        new DefaultCellPathResolver(
+            Paths.get("/opt/local/rootcell"),
+            ImmutableMap.of("localreponame", Paths.get("/opt/local/other")));
+
+    assertEquals(
+        Paths.get("/opt/local/repo"),
+        parser.parse(targetStr, fullyQualifiedParser, cellRoots).getCellPath());
+    assertEquals(
+        Paths.get("/opt/local/other"),
+        parser.parse(targetStr, fullyQualifiedParser, otherCellRoots).getCellPath());
+
+    assertEquals(
+        "//foo:bar",
+        parser
+            .parse(":bar", BuildTargetPatternParser.forBaseName("//foo"), cellRoots)
+            .getFullyQualifiedName());
+    assertEquals(
+        "//baz:bar",
+        parser
+            .parse(":bar", BuildTargetPatternParser.forBaseName("//baz"), cellRoots)
+            .getFullyQualifiedName());
+  }
 }
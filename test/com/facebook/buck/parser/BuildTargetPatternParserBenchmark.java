@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.facebook.buck.model.BuildTargetPattern;
+import com.facebook.buck.rules.CellPathResolver;
+import com.facebook.buck.rules.DefaultCellPathResolver;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableMap;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BuildTargetPatternParserBenchmark {
+  @Param({"100", "10000"})
+  private int patternCount = 100;
+
+  private final BuildTargetPatternParser<BuildTargetPattern> visibilityParser =
+      BuildTargetPatternParser.forVisibilityArgument();
+  private final BuildTargetPatternParser<BuildTargetPattern> buildFileParser =
+      BuildTargetPatternParser.forBaseName("//java/com/facebook/base");
+
+  private CellPathResolver cellNames;
+  private List<String> visibilityPatterns = new ArrayList<>();
+  private List<String> targetNames = new ArrayList<>();
+
+  @Before
+  public void setUpTest() throws Exception {
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    cellNames =
+        new DefaultCellPathResolver(
+            Paths.get("/repo").toAbsolutePath(),
+            ImmutableMap.of("other", Paths.get("/other").toAbsolutePath()));
+    for (int i = 0; i < patternCount; i++) {
+      String baseName = String.format("//java/com/facebook/module_%d", i);
+      switch (i % 3) {
+        case 0:
+          visibilityPatterns.add(baseName + "/...");
+          break;
+        case 1:
+          visibilityPatterns.add(baseName + ":");
+          break;
+        default:
+          visibilityPatterns.add("other" + baseName + ":lib");
+          break;
+      }
+      targetNames.add(i % 2 == 0 ? baseName + ":lib#flavor" : String.format(":lib_%d", i));
+    }
+  }
+
+  @Test
+  public void parseVisibilityPatternsCorrectness() throws Exception {
+    parseVisibilityPatterns();
+  }
+
+  @Benchmark
+  public void parseVisibilityPatterns() {
+    for (String pattern : visibilityPatterns) {
+      visibilityParser.parse(cellNames, pattern);
+    }
+  }
+
+  @Test
+  public void parseBuildTargetsCorrectness() throws Exception {
+    parseBuildTargets();
+  }
+
+  @Benchmark
+  public void parseBuildTargets() {
+    for (String targetName : targetNames) {
+      BuildTargetParser.INSTANCE.parse(targetName, buildFileParser, cellNames);
+    }
+  }
+}
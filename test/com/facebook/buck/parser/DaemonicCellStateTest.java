@@ -18,6 +18,7 @@ package com.facebook.buck.parser;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.cli.BuckConfig;
 import com.facebook.buck.cli.FakeBuckConfig;
@@ -26,6 +27,7 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetException;
 import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.model.Pair;
 import com.facebook.buck.parser.PipelineNodeCache.Cache;
 import com.facebook.buck.rules.Cell;
 import com.facebook.buck.rules.TestCellBuilder;
@@ -48,14 +50,26 @@ public class DaemonicCellStateTest {
   private DaemonicCellState childState;
 
   private void populateDummyRawNode(DaemonicCellState state, BuildTarget target) {
+    populateDummyRawNode(state, target, ImmutableMap.of());
+  }
+
+  private void populateDummyRawNode(
+      DaemonicCellState state,
+      BuildTarget target,
+      ImmutableMap<Pair<String, String>, Optional<String>> configs) {
     state.putRawNodesIfNotPresentAndStripMetaEntries(
-        target.getCellPath().resolve(target.getBasePath().resolve("BUCK")),
+        getBuildFile(target),
         ImmutableSet.of(
             ImmutableMap.of(
                 "name", target.getShortName(),
                 "buck.base_path", MorePaths.pathWithUnixSeparators(target.getBasePath()))),
         ImmutableSet.of(),
-        ImmutableMap.of());
+        ImmutableMap.of(),
+        configs);
+  }
+
+  private static Path getBuildFile(BuildTarget target) {
+    return target.getCellPath().resolve(target.getBasePath().resolve("BUCK"));
   }
 
   @Before
@@ -121,6 +135,7 @@ public class DaemonicCellStateTest {
                 "buck.base_path", "path/to",
                 "name", "target")),
         ImmutableSet.of(),
+        ImmutableMap.of(),
         ImmutableMap.of());
     assertEquals("Still only one invalidated node", 1, childState.invalidatePath(targetPath));
     assertEquals(
@@ -128,4 +143,39 @@ public class DaemonicCellStateTest {
         Optional.empty(),
         cache.lookupComputedNode(childCell, target));
   }
+
+  @Test
+  public void testOnlyBuildFilesReadingAChangedConfigAreInvalidated()
+      throws BuildTargetException, IOException, InterruptedException {
+    BuildTarget readsConfig =
+        BuildTargetFactory.newInstance(filesystem.getRootPath(), "//reads:config");
+    BuildTarget doesNotReadConfig =
+        BuildTargetFactory.newInstance(filesystem.getRootPath(), "//does/not/read:config");
+    populateDummyRawNode(
+        state, readsConfig, ImmutableMap.of(new Pair<>("foo", "bar"), Optional.empty()));
+    populateDummyRawNode(state, doesNotReadConfig);
+
+    assertEquals(
+        "Unchanged settings should not invalidate anything",
+        ImmutableSet.of(),
+        state.invalidateIfBuckConfigHasChanged(
+            createRootCell(ImmutableMap.of("foo", ImmutableMap.of("baz", "1")))));
+    assertTrue(state.lookupRawNodes(getBuildFile(readsConfig)).isPresent());
+
+    assertEquals(
+        ImmutableSet.of("foo.bar"),
+        state.invalidateIfBuckConfigHasChanged(
+            createRootCell(ImmutableMap.of("foo", ImmutableMap.of("bar", "1")))));
+    assertFalse(state.lookupRawNodes(getBuildFile(readsConfig)).isPresent());
+    assertTrue(state.lookupRawNodes(getBuildFile(doesNotReadConfig)).isPresent());
+  }
+
+  private Cell createRootCell(ImmutableMap<String, ImmutableMap<String, String>> sections)
+      throws IOException, InterruptedException {
+    return new TestCellBuilder()
+        .setFilesystem(filesystem)
+        .setBuckConfig(
+            FakeBuckConfig.builder().setFilesystem(filesystem).setSections(sections).build())
+        .build();
+  }
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.cli.FakeBuckConfig;
+import com.facebook.buck.event.listener.BroadcastEventListener;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.parser.PipelineNodeCache.Cache;
+import com.facebook.buck.rules.Cell;
+import com.facebook.buck.rules.TestCellBuilder;
+import com.facebook.buck.rules.coercer.DefaultTypeCoercerFactory;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class DaemonicParserStateTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private Path xplatRoot;
+  private DaemonicParserState state;
+
+  @Before
+  public void setUp() throws IOException, InterruptedException {
+    filesystem = new ProjectFilesystem(tmp.newFolder("root"));
+    xplatRoot = tmp.newFolder("xplat");
+    Files.createFile(xplatRoot.resolve(".buckconfig"));
+    state =
+        new DaemonicParserState(new BroadcastEventListener(), new DefaultTypeCoercerFactory(), 1);
+  }
+
+  @Test
+  public void cellQualifiedDefaultIncludesAreResolvedAgainstTheirCell() throws Exception {
+    Cell cell = createCell("xplat//DEFS");
+
+    assertEquals(
+        Optional.of(xplatRoot.resolve("DEFS")),
+        DaemonicParserState.resolveDefaultInclude(cell, "xplat//DEFS"));
+    assertEquals(
+        Optional.of(filesystem.resolve("DEFS")),
+        DaemonicParserState.resolveDefaultInclude(cell, "//DEFS"));
+    assertEquals(Optional.empty(), DaemonicParserState.resolveDefaultInclude(cell, "foo//DEFS"));
+  }
+
+  @Test
+  public void changingADefaultIncludeInvalidatesTheBuildFilesParsedWithIt() throws Exception {
+    Cache<Path, ImmutableSet<Map<String, Object>>> cache = state.getRawNodeCache();
+    Path buildFile = filesystem.resolve("foo/BUCK");
+    ImmutableSet<Map<String, Object>> rawNodes =
+        ImmutableSet.of(
+            ImmutableMap.of("name", "foo", "buck.base_path", "foo"),
+            ImmutableMap.of("__includes", ImmutableList.of(buildFile.toString())));
+
+    Cell cell = createCell("xplat//DEFS");
+    assertFalse(cache.lookupComputedNode(cell, buildFile).isPresent());
+    cache.putComputedNodeIfNotPresent(cell, buildFile, rawNodes);
+    assertTrue(cache.lookupComputedNode(cell, buildFile).isPresent());
+
+    assertFalse(cache.lookupComputedNode(createCell("xplat//OTHER_DEFS"), buildFile).isPresent());
+  }
+
+  private Cell createCell(String defaultInclude) throws IOException, InterruptedException {
+    return new TestCellBuilder()
+        .setFilesystem(filesystem)
+        .setBuckConfig(
+            FakeBuckConfig.builder()
+                .setFilesystem(filesystem)
+                .setSections(
+                    ImmutableMap.of(
+                        "buildfile", ImmutableMap.of("includes", defaultInclude),
+                        "repositories", ImmutableMap.of("xplat", "../xplat")))
+                .build())
+        .build();
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.cli.FakeBuckConfig;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.rules.Cell;
+import com.facebook.buck.rules.TestCellBuilder;
+import com.facebook.buck.rules.coercer.DefaultTypeCoercerFactory;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.ImmutableMapWithNullValues;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class PersistentRawNodeCacheTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private Path buildFile;
+  private ImmutableSet<Map<String, Object>> rawNodes;
+
+  @Before
+  public void setUp() throws IOException, InterruptedException {
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    filesystem.mkdirs(filesystem.getPath("foo"));
+    filesystem.writeContentsToPath("java_library(name = 'foo')", filesystem.getPath("foo/BUCK"));
+    filesystem.writeContentsToPath("", filesystem.getPath("foo/Foo.java"));
+    filesystem.writeContentsToPath("", filesystem.getPath("DEFS"));
+    buildFile = filesystem.resolve("foo/BUCK");
+    rawNodes =
+        ImmutableSet.of(
+            ImmutableMap.of("name", "foo", "buck.base_path", "foo"),
+            ImmutableMap.of("__includes", ImmutableList.of("foo/BUCK", "DEFS")),
+            ImmutableMap.of("__configs", ImmutableMap.of()),
+            ImmutableMap.of("__env", ImmutableMap.of("FOO", "bar")));
+  }
+
+  @Test
+  public void storedRawNodesAreReused() throws Exception {
+    newCache().store(newCell("bar"), buildFile, rawNodes);
+    assertEquals(Optional.of(rawNodes), newCache().lookup(newCell("bar"), buildFile));
+  }
+
+  @Test
+  public void storedRawNodesAreNotReusedWhenAnIncludeChanges() throws Exception {
+    newCache().store(newCell("bar"), buildFile, rawNodes);
+    filesystem.writeContentsToPath("FOO = 1", filesystem.getPath("DEFS"));
+    assertFalse(newCache().lookup(newCell("bar"), buildFile).isPresent());
+  }
+
+  @Test
+  public void storedRawNodesAreNotReusedWhenAFileIsAddedToThePackage() throws Exception {
+    newCache().store(newCell("bar"), buildFile, rawNodes);
+
+    // Files in nested packages do not affect it.
+    filesystem.mkdirs(filesystem.getPath("foo/bar"));
+    filesystem.writeContentsToPath("", filesystem.getPath("foo/bar/BUCK"));
+    filesystem.writeContentsToPath("", filesystem.getPath("foo/bar/Bar.java"));
+    assertEquals(Optional.of(rawNodes), newCache().lookup(newCell("bar"), buildFile));
+
+    Files.write(filesystem.resolve("foo/Bar.java"), new byte[0]);
+    assertFalse(newCache().lookup(newCell("bar"), buildFile).isPresent());
+  }
+
+  @Test
+  public void storedRawNodesAreNotReusedWhenAnEnvironmentVariableChanges() throws Exception {
+    newCache().store(newCell("bar"), buildFile, rawNodes);
+    assertFalse(newCache().lookup(newCell("baz"), buildFile).isPresent());
+  }
+
+  @Test
+  public void storedRawNodesHaveTheTypesOfParsedOnes() throws Exception {
+    ImmutableSet<Map<String, Object>> rawNodes =
+        ImmutableSet.<Map<String, Object>>builder()
+            .addAll(this.rawNodes)
+            .add(ImmutableMap.of("name", "bar", "srcs", ImmutableList.of("Bar.java"), "size", 1))
+            .build();
+    newCache().store(newCell("bar"), buildFile, rawNodes);
+    Map<String, Object> rawNode =
+        newCache().lookup(newCell("bar"), buildFile).get().asList().get(4);
+
+    assertThat(rawNode, Matchers.instanceOf(ImmutableMapWithNullValues.class));
+    assertThat(rawNode.get("srcs"), Matchers.instanceOf(ImmutableList.class));
+    assertEquals(1L, rawNode.get("size"));
+  }
+
+  private static PersistentRawNodeCache newCache() {
+    return new PersistentRawNodeCache(new DefaultTypeCoercerFactory());
+  }
+
+  private Cell newCell(String fooValue) throws IOException, InterruptedException {
+    return new TestCellBuilder()
+        .setFilesystem(filesystem)
+        .setBuckConfig(
+            FakeBuckConfig.builder()
+                .setFilesystem(filesystem)
+                // The parser settings include the python interpreter found on the path.
+                .setEnvironment(
+                    ImmutableMap.of("FOO", fooValue, "PATH", System.getenv("PATH")))
+                .build())
+        .build();
+  }
+}
@@ -19,6 +19,8 @@ package com.facebook.buck.parser;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusForTests;
 import com.facebook.buck.json.ProjectBuildFileParser;
 import com.facebook.buck.rules.Cell;
 import com.facebook.buck.util.concurrent.AssertScopeExclusiveAccess;
@@ -28,6 +30,8 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.eventbus.Subscribe;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -35,9 +39,11 @@ import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
@@ -333,6 +339,91 @@ public class ProjectBuildFileParserPoolTest {
     }
   }
 
+  @Test
+  public void adaptivePoolGrowsWhileRequestsAreWaiting() throws Exception {
+    final int parsersCount = 3;
+    final AtomicInteger createCount = new AtomicInteger(0);
+    Cell cell = createCell();
+    BuckEventBus eventBus = BuckEventBusForTests.newInstance();
+    PoolEventListener listener = new PoolEventListener();
+    eventBus.register(listener);
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(parsersCount));
+
+    final CountDownLatch allParsersBusy = new CountDownLatch(parsersCount);
+    try (ProjectBuildFileParserPool parserPool =
+        createAdaptiveParserPool(
+            parsersCount,
+            Optional.empty(),
+            input -> {
+              createCount.incrementAndGet();
+              return createMockParser(
+                  () -> {
+                    allParsersBusy.countDown();
+                    assertThat(allParsersBusy.await(1, TimeUnit.SECONDS), Matchers.is(true));
+                    return ImmutableList.of();
+                  },
+                  Optional.empty());
+            },
+            eventBus)) {
+
+      Futures.allAsList(scheduleWork(cell, parserPool, executorService, parsersCount)).get();
+      assertThat(createCount.get(), Matchers.equalTo(parsersCount));
+    } finally {
+      executorService.shutdown();
+      eventBus.close();
+    }
+    assertThat(
+        listener.getDecisions(),
+        Matchers.contains(
+            ProjectBuildFileParserPoolEvent.Decision.GROWN,
+            ProjectBuildFileParserPoolEvent.Decision.GROWN));
+  }
+
+  @Test
+  public void adaptivePoolDoesNotGrowOverMemoryBudget() throws Exception {
+    final AtomicInteger createCount = new AtomicInteger(0);
+    Cell cell = createCell();
+    BuckEventBus eventBus = BuckEventBusForTests.newInstance();
+    PoolEventListener listener = new PoolEventListener();
+    eventBus.register(listener);
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(3));
+
+    final CountDownLatch firstRequestRunning = new CountDownLatch(1);
+    final CountDownLatch unblockRequests = new CountDownLatch(1);
+    try (ProjectBuildFileParserPool parserPool =
+        createAdaptiveParserPool(
+            /* maxParsers */ 3,
+            /* memoryBudgetBytes */ Optional.of(150L),
+            input -> {
+              createCount.incrementAndGet();
+              return createMockParser(
+                  () -> {
+                    firstRequestRunning.countDown();
+                    unblockRequests.await();
+                    return ImmutableList.of();
+                  },
+                  /* residentMemoryBytes */ Optional.of(100L));
+            },
+            eventBus)) {
+
+      ImmutableSet<ListenableFuture<?>> first = scheduleWork(cell, parserPool, executorService, 1);
+      assertThat(firstRequestRunning.await(1, TimeUnit.SECONDS), Matchers.is(true));
+      ImmutableSet<ListenableFuture<?>> rest = scheduleWork(cell, parserPool, executorService, 2);
+      unblockRequests.countDown();
+
+      Futures.allAsList(Iterables.concat(first, rest)).get();
+      assertThat(createCount.get(), Matchers.equalTo(1));
+    } finally {
+      executorService.shutdown();
+      eventBus.close();
+    }
+    assertThat(
+        listener.getDecisions(),
+        Matchers.contains(ProjectBuildFileParserPoolEvent.Decision.CAPPED_BY_MEMORY));
+  }
+
   private static ImmutableSet<ListenableFuture<?>> scheduleWork(
       Cell cell,
       ProjectBuildFileParserPool pool,
@@ -346,10 +437,39 @@ public class ProjectBuildFileParserPoolTest {
     return futures.build();
   }
 
+  private ProjectBuildFileParserPool createAdaptiveParserPool(
+      int maxParsersPerCell,
+      Optional<Long> memoryBudgetBytes,
+      Function<Cell, ProjectBuildFileParser> parserFactory,
+      BuckEventBus eventBus) {
+    return new ProjectBuildFileParserPool(
+        maxParsersPerCell,
+        parserFactory,
+        false,
+        Optional.of(
+            new ProjectBuildFileParserPool.AdaptiveSizing(
+                eventBus, memoryBudgetBytes, TimeUnit.HOURS.toNanos(1))));
+  }
+
+  private static Cell createCell() {
+    Cell cell = EasyMock.createMock(Cell.class);
+    EasyMock.expect(cell.getRoot()).andReturn(Paths.get("cell")).anyTimes();
+    EasyMock.replay(cell);
+    return cell;
+  }
+
   private ProjectBuildFileParser createMockParser(
       IAnswer<ImmutableList<Map<String, Object>>> parseFn) {
+    return createMockParser(parseFn, Optional.empty());
+  }
+
+  private ProjectBuildFileParser createMockParser(
+      IAnswer<ImmutableList<Map<String, Object>>> parseFn, Optional<Long> residentMemoryBytes) {
     ProjectBuildFileParser mock = EasyMock.createMock(ProjectBuildFileParser.class);
+    // The memory of a parser is measured while it parses, so calls must not wait for each other.
+    EasyMock.makeThreadSafe(mock, false);
     try {
+      EasyMock.expect(mock.getResidentMemoryBytes()).andReturn(residentMemoryBytes).anyTimes();
       EasyMock.expect(
               mock.getAllRulesAndMetaRules(
                   EasyMock.anyObject(Path.class), EasyMock.anyObject(AtomicLong.class)))
@@ -377,4 +497,17 @@ public class ProjectBuildFileParserPoolTest {
           });
     };
   }
+
+  public static class PoolEventListener {
+    private final List<ProjectBuildFileParserPoolEvent.Decision> decisions = new ArrayList<>();
+
+    @Subscribe
+    public synchronized void onPoolEvent(ProjectBuildFileParserPoolEvent event) {
+      decisions.add(event.getDecision());
+    }
+
+    public synchronized List<ProjectBuildFileParserPoolEvent.Decision> getDecisions() {
+      return new ArrayList<>(decisions);
+    }
+  }
 }
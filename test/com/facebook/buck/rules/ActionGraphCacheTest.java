@@ -18,31 +18,51 @@ package com.facebook.buck.rules;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import com.facebook.buck.cxx.CxxBinaryBuilder;
+import com.facebook.buck.cxx.CxxLibraryBuilder;
 import com.facebook.buck.event.ActionGraphEvent;
 import com.facebook.buck.event.BuckEvent;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.BuckEventBusForTests;
 import com.facebook.buck.event.listener.BroadcastEventListener;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.java.HasJavaAbi;
 import com.facebook.buck.jvm.java.JavaLibraryBuilder;
+import com.facebook.buck.jvm.java.KeystoreBuilder;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.parser.NoSuchBuildTargetException;
 import com.facebook.buck.rules.keys.ContentAgnosticRuleKeyFactory;
 import com.facebook.buck.rules.keys.RuleKeyFieldLoader;
+import com.facebook.buck.shell.ExportFile;
+import com.facebook.buck.shell.ExportFileBuilder;
+import com.facebook.buck.shell.GenruleBuilder;
 import com.facebook.buck.testutil.TargetGraphFactory;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.facebook.buck.timing.IncrementingFakeClock;
 import com.facebook.buck.util.WatchmanOverflowEvent;
 import com.facebook.buck.util.WatchmanPathEvent;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.Uninterruptibles;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import org.hamcrest.Matchers;
@@ -243,6 +263,289 @@ public class ActionGraphCacheTest {
     assertEquals(countEventsOf(ActionGraphEvent.Cache.Miss.class), 4);
   }
 
+  @Test
+  public void alternatingTargetGraphsHitWithSeveralEntries() {
+    ActionGraphCache cache =
+        new ActionGraphCache(broadcastEventListener, 2, /* incremental */ false, /* threads */ 1);
+    TargetGraph subgraph = targetGraph.getSubgraph(ImmutableSet.of(nodeB));
+
+    ActionGraphAndResolver resultRun1 =
+        cache.getActionGraph(
+            eventBus, CHECK_GRAPHS, /* skipActionGraphCache */ false, targetGraph, keySeed);
+    cache.getActionGraph(
+        eventBus, CHECK_GRAPHS, /* skipActionGraphCache */ false, subgraph, keySeed);
+    ActionGraphAndResolver resultRun3 =
+        cache.getActionGraph(
+            eventBus, CHECK_GRAPHS, /* skipActionGraphCache */ false, targetGraph, keySeed);
+    cache.getActionGraph(
+        eventBus, CHECK_GRAPHS, /* skipActionGraphCache */ false, subgraph, keySeed);
+
+    assertEquals(2, countEventsOf(ActionGraphEvent.Cache.Hit.class));
+    assertEquals(2, countEventsOf(ActionGraphEvent.Cache.Miss.class));
+    assertSame(resultRun1, resultRun3);
+  }
+
+  @Test
+  public void incrementalActionGraphReusesRulesOfUnchangedTargets() {
+    ActionGraphCache cache =
+        new ActionGraphCache(broadcastEventListener, 1, /* incremental */ true, /* threads */ 1);
+    TargetNode<?, ?> reusableNode =
+        KeystoreBuilder.createBuilder(BuildTargetFactory.newInstance("//foo:keystore"))
+            .setStore(new FakeSourcePath("store"))
+            .setProperties(new FakeSourcePath("properties"))
+            .build();
+    ActionGraphAndResolver resultRun1 =
+        cache.getActionGraph(
+            eventBus,
+            CHECK_GRAPHS,
+            /* skipActionGraphCache */ false,
+            TargetGraphFactory.newInstance(nodeA, nodeB, reusableNode),
+            keySeed);
+
+    // Change A, which the keystore does not depend on.
+    TargetNode<?, ?> changedNodeA =
+        JavaLibraryBuilder.createBuilder(nodeA.getBuildTarget())
+            .addDep(nodeB.getBuildTarget())
+            .addSrc(Paths.get("A.java"))
+            .build();
+    ActionGraphAndResolver resultRun2 =
+        cache.getActionGraph(
+            eventBus,
+            CHECK_GRAPHS,
+            /* skipActionGraphCache */ false,
+            TargetGraphFactory.newInstance(changedNodeA, nodeB, reusableNode),
+            keySeed);
+    assertEquals(2, countEventsOf(ActionGraphEvent.Cache.Miss.class));
+
+    assertSame(
+        resultRun1.getResolver().getRule(reusableNode.getBuildTarget()),
+        resultRun2.getResolver().getRule(reusableNode.getBuildTarget()));
+    assertNotSame(
+        resultRun1.getResolver().getRule(nodeA.getBuildTarget()),
+        resultRun2.getResolver().getRule(nodeA.getBuildTarget()));
+  }
+
+  @Test
+  public void incrementalActionGraphLinksJavaLibrariesToRulesOfTheNewGraph() throws Exception {
+    ActionGraphCache cache =
+        new ActionGraphCache(broadcastEventListener, 1, /* incremental */ true, /* threads */ 1);
+    BuildTarget libraryTarget = BuildTargetFactory.newInstance("//foo:lib");
+    TargetNode<?, ?> library =
+        JavaLibraryBuilder.createBuilder(libraryTarget)
+            .addSrc(Paths.get("Lib.java"))
+            .addDep(nodeB.getBuildTarget())
+            .build();
+    BuildTarget dependentTarget = BuildTargetFactory.newInstance("//foo:dependent");
+    ActionGraphAndResolver resultRun1 =
+        cache.getActionGraph(
+            eventBus,
+            NOT_CHECK_GRAPHS,
+            /* skipActionGraphCache */ false,
+            TargetGraphFactory.newInstance(
+                nodeB,
+                library,
+                JavaLibraryBuilder.createBuilder(dependentTarget)
+                    .addSrc(Paths.get("Dependent.java"))
+                    .addDep(libraryTarget)
+                    .build()),
+            keySeed);
+
+    // Change the dependent, but not the library: the library still keeps the resolver and rule
+    // finder of the graph it was created in, so it is created again.
+    ActionGraphAndResolver resultRun2 =
+        cache.getActionGraph(
+            eventBus,
+            NOT_CHECK_GRAPHS,
+            /* skipActionGraphCache */ false,
+            TargetGraphFactory.newInstance(
+                nodeB,
+                library,
+                JavaLibraryBuilder.createBuilder(dependentTarget)
+                    .addSrc(Paths.get("Changed.java"))
+                    .addDep(libraryTarget)
+                    .build()),
+            keySeed);
+
+    BuildRuleResolver resolver = resultRun2.getResolver();
+    BuildRule libraryRule = resolver.getRule(libraryTarget);
+    assertNotSame(resultRun1.getResolver().getRule(libraryTarget), libraryRule);
+    assertThat(
+        resolver.requireRule(HasJavaAbi.getClassAbiJar(libraryTarget)).getBuildDeps(),
+        Matchers.contains(libraryRule));
+    for (BuildRule rule : resultRun2.getActionGraph().getNodes()) {
+      Iterable<BuildRule> deps = rule.getBuildDeps();
+      if (rule instanceof HasDeclaredAndExtraDeps) {
+        deps = Iterables.concat(deps, ((HasDeclaredAndExtraDeps) rule).getTargetGraphOnlyDeps());
+      }
+      for (BuildRule dep : deps) {
+        assertSame(dep, resolver.getRule(dep.getBuildTarget()));
+      }
+    }
+  }
+
+  @Test
+  public void incrementalActionGraphDoesNotReuseRulesNotMarkedReusable() {
+    ActionGraphCache cache =
+        new ActionGraphCache(broadcastEventListener, 1, /* incremental */ true, /* threads */ 1);
+    TargetNode<?, ?> library =
+        new CxxLibraryBuilder(BuildTargetFactory.newInstance("//foo:lib"))
+            .setSrcs(ImmutableSortedSet.of(SourceWithFlags.of(new FakeSourcePath("lib.c"))))
+            .build();
+    TargetNode<?, ?> reusableNode =
+        new ExportFileBuilder(BuildTargetFactory.newInstance("//foo:file"))
+            .setSrc(new FakeSourcePath("file"))
+            .build();
+    ActionGraphAndResolver resultRun1 =
+        cache.getActionGraph(
+            eventBus,
+            NOT_CHECK_GRAPHS,
+            /* skipActionGraphCache */ false,
+            TargetGraphFactory.newInstance(library, reusableNode),
+            keySeed);
+
+    // Add a target which neither of the others depends on.
+    ActionGraphAndResolver resultRun2 =
+        cache.getActionGraph(
+            eventBus,
+            NOT_CHECK_GRAPHS,
+            /* skipActionGraphCache */ false,
+            TargetGraphFactory.newInstance(library, reusableNode, createTargetNode("C")),
+            keySeed);
+
+    assertSame(
+        resultRun1.getResolver().getRule(reusableNode.getBuildTarget()),
+        resultRun2.getResolver().getRule(reusableNode.getBuildTarget()));
+    assertNotSame(
+        resultRun1.getResolver().getRule(library.getBuildTarget()),
+        resultRun2.getResolver().getRule(library.getBuildTarget()));
+  }
+
+  @Test
+  public void incrementalActionGraphLinksNewDependentsToReusedRules() {
+    ActionGraphCache cache =
+        new ActionGraphCache(broadcastEventListener, 1, /* incremental */ true, /* threads */ 1);
+    BuildTarget fileTarget = BuildTargetFactory.newInstance("//foo:file");
+    TargetNode<?, ?> file =
+        new ExportFileBuilder(fileTarget).setSrc(new FakeSourcePath("file")).build();
+    ActionGraphAndResolver resultRun1 =
+        cache.getActionGraph(
+            eventBus,
+            NOT_CHECK_GRAPHS,
+            /* skipActionGraphCache */ false,
+            TargetGraphFactory.newInstance(file),
+            keySeed);
+
+    // Add a genrule using the exported file.
+    TargetNode<?, ?> genrule =
+        GenruleBuilder.newGenruleBuilder(BuildTargetFactory.newInstance("//foo:gen"))
+            .setOut("out")
+            .setCmd("cat $SRCS > $OUT")
+            .setSrcs(ImmutableList.of(new DefaultBuildTargetSourcePath(fileTarget)))
+            .build();
+    ActionGraphAndResolver resultRun2 =
+        cache.getActionGraph(
+            eventBus,
+            NOT_CHECK_GRAPHS,
+            /* skipActionGraphCache */ false,
+            TargetGraphFactory.newInstance(file, genrule),
+            keySeed);
+
+    BuildRule fileRule = resultRun2.getResolver().getRule(fileTarget);
+    assertThat(fileRule, Matchers.instanceOf(ExportFile.class));
+    assertSame(resultRun1.getResolver().getRule(fileTarget), fileRule);
+    assertThat(
+        resultRun2.getResolver().getRule(genrule.getBuildTarget()).getBuildDeps(),
+        Matchers.contains(fileRule));
+  }
+
+  @Test
+  public void incrementalActionGraphCreatesRulesForNewDependentsInTheNewResolver() {
+    ActionGraphCache cache =
+        new ActionGraphCache(broadcastEventListener, 1, /* incremental */ true, /* threads */ 1);
+    TargetNode<?, ?> library =
+        new CxxLibraryBuilder(BuildTargetFactory.newInstance("//foo:lib"))
+            .setSrcs(ImmutableSortedSet.of(SourceWithFlags.of(new FakeSourcePath("lib.c"))))
+            .build();
+    cache.getActionGraph(
+        eventBus,
+        NOT_CHECK_GRAPHS,
+        /* skipActionGraphCache */ false,
+        TargetGraphFactory.newInstance(library),
+        keySeed);
+
+    // The binary links the library statically, a flavor of it which was not created before.
+    TargetNode<?, ?> binary =
+        new CxxBinaryBuilder(BuildTargetFactory.newInstance("//foo:bin"))
+            .setSrcs(ImmutableSortedSet.of(SourceWithFlags.of(new FakeSourcePath("bin.c"))))
+            .setDeps(ImmutableSortedSet.of(library.getBuildTarget()))
+            .build();
+    ActionGraphAndResolver result =
+        cache.getActionGraph(
+            eventBus,
+            NOT_CHECK_GRAPHS,
+            /* skipActionGraphCache */ false,
+            TargetGraphFactory.newInstance(library, binary),
+            keySeed);
+
+    BuildRuleResolver resolver = result.getResolver();
+    for (BuildRule rule : result.getActionGraph().getNodes()) {
+      for (BuildRule dep : rule.getBuildDeps()) {
+        assertEquals(Optional.of(dep), resolver.getRuleOptional(dep.getBuildTarget()));
+      }
+    }
+  }
+
+  @Test
+  public void parallelActionGraphMatchesSequentialOne() {
+    // Creates the following target graph, where B and C can be created in parallel:
+    //      A
+    //     / \
+    //    B   C
+    //     \ /
+    //      D
+    TargetNode<?, ?> nodeD = createTargetNode("D");
+    TargetNode<?, ?> nodeC = createTargetNode("C", nodeD);
+    TargetNode<?, ?> nodeB = createTargetNode("B", nodeD);
+    TargetNode<?, ?> nodeA = createTargetNode("A", nodeB, nodeC);
+    TargetGraph targetGraph = TargetGraphFactory.newInstance(nodeA, nodeB, nodeC, nodeD);
+
+    ActionGraphAndResolver sequential =
+        new ActionGraphCache(broadcastEventListener)
+            .getActionGraph(
+                eventBus, NOT_CHECK_GRAPHS, /* skipActionGraphCache */ false, targetGraph, keySeed);
+    ActionGraphAndResolver parallel =
+        new ActionGraphCache(broadcastEventListener, 1, /* incremental */ false, /* threads */ 4)
+            .getActionGraph(
+                eventBus, NOT_CHECK_GRAPHS, /* skipActionGraphCache */ false, targetGraph, keySeed);
+
+    assertEquals(
+        getRuleKeysFromBuildRules(
+            sequential.getActionGraph().getNodes(), sequential.getResolver()),
+        getRuleKeysFromBuildRules(parallel.getActionGraph().getNodes(), parallel.getResolver()));
+  }
+
+  @Test
+  public void parallelActionGraphCreatesRulesSharedBetweenNodesOnce() {
+    BuildTarget sharedTarget = BuildTargetFactory.newInstance("//foo:shared");
+    Set<BuildRule> sharedRules = Sets.newConcurrentHashSet();
+    CountDownLatch nodesStarted = new CountDownLatch(2);
+    TargetNode<?, ?> nodeA =
+        createTargetNodeSharingRule("A", sharedTarget, sharedRules, nodesStarted);
+    TargetNode<?, ?> nodeB =
+        createTargetNodeSharingRule("B", sharedTarget, sharedRules, nodesStarted);
+
+    ActionGraphAndResolver result =
+        new ActionGraphCache(broadcastEventListener, 1, /* incremental */ false, /* threads */ 4)
+            .getActionGraph(
+                eventBus,
+                NOT_CHECK_GRAPHS,
+                /* skipActionGraphCache */ false,
+                TargetGraphFactory.newInstance(nodeA, nodeB),
+                keySeed);
+
+    assertEquals(ImmutableSet.of(result.getResolver().getRule(sharedTarget)), sharedRules);
+  }
+
   private TargetNode<?, ?> createTargetNode(String name, TargetNode<?, ?>... deps) {
     BuildTarget buildTarget = BuildTargetFactory.newInstance("//foo:" + name);
     JavaLibraryBuilder targetNodeBuilder = JavaLibraryBuilder.createBuilder(buildTarget);
@@ -262,6 +565,32 @@ public class ActionGraphCacheTest {
     return i;
   }
 
+  private TargetNode<?, ?> createTargetNodeSharingRule(
+      String name, BuildTarget sharedTarget, Set<BuildRule> sharedRules, CountDownLatch started) {
+    BuildRule rule = new FakeBuildRule(BuildTargetFactory.newInstance("//foo:" + name));
+    FakeTargetNodeBuilder.FakeDescription description =
+        new FakeTargetNodeBuilder.FakeDescription(rule) {
+          @Override
+          public BuildRule createBuildRule(
+              TargetGraph targetGraph,
+              BuildTarget buildTarget,
+              ProjectFilesystem projectFilesystem,
+              BuildRuleParams params,
+              BuildRuleResolver resolver,
+              CellPathResolver cellRoots,
+              FakeTargetNodeArg args)
+              throws NoSuchBuildTargetException {
+            // Wait for the other nodes, so that they all try to create the shared rule at once.
+            started.countDown();
+            Uninterruptibles.awaitUninterruptibly(started, 1, TimeUnit.SECONDS);
+            sharedRules.add(resolver.computeIfAbsent(sharedTarget, FakeBuildRule::new));
+            return super.createBuildRule(
+                targetGraph, buildTarget, projectFilesystem, params, resolver, cellRoots, args);
+          }
+        };
+    return FakeTargetNodeBuilder.newBuilder(description, rule.getBuildTarget()).build();
+  }
+
   private Map<BuildRule, RuleKey> getRuleKeysFromBuildRules(
       Iterable<BuildRule> buildRules, BuildRuleResolver buildRuleResolver) {
     RuleKeyFieldLoader ruleKeyFieldLoader = new RuleKeyFieldLoader(0);
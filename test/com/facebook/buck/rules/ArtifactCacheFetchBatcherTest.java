@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.artifact_cache.ArtifactCacheMode;
+import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.artifact_cache.CacheResultType;
+import com.facebook.buck.artifact_cache.NoopArtifactCache;
+import com.facebook.buck.io.LazyPath;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class ArtifactCacheFetchBatcherTest {
+
+  private static final LazyPath OUTPUT = LazyPath.ofInstance(Paths.get("output"));
+
+  /** Records the size of each batch, and blocks the first one until released. */
+  private static class RecordingArtifactCache extends NoopArtifactCache {
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch firstBatchStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+
+    @Override
+    public ListenableFuture<ImmutableList<CacheResult>> multiFetchAsync(
+        List<RuleKey> ruleKeys, List<LazyPath> outputs) {
+      batchSizes.add(ruleKeys.size());
+      if (firstBatchStarted.getCount() > 0) {
+        firstBatchStarted.countDown();
+        try {
+          releaseFirstBatch.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      ImmutableList.Builder<CacheResult> results = ImmutableList.builder();
+      for (int i = 0; i < ruleKeys.size(); i++) {
+        results.add(CacheResult.hit("cache", ArtifactCacheMode.dir));
+      }
+      return Futures.immediateFuture(results.build());
+    }
+  }
+
+  @Test
+  public void fetchesArrivingDuringABatchAreSentTogether() throws Exception {
+    RecordingArtifactCache cache = new RecordingArtifactCache();
+    ArtifactCacheFetchBatcher batcher = new ArtifactCacheFetchBatcher(cache, 10, 1);
+    ConcurrentHashMap<Integer, CacheResultType> results = new ConcurrentHashMap<>();
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      int index = i;
+      RuleKey ruleKey = new RuleKey(String.format("%040d", index));
+      threads.add(
+          new Thread(() -> results.put(index, batcher.fetch(ruleKey, OUTPUT).getType())));
+    }
+
+    threads.get(0).start();
+    assertTrue(cache.firstBatchStarted.await(10, TimeUnit.SECONDS));
+    for (Thread thread : threads.subList(1, threads.size())) {
+      thread.start();
+      waitUntilWaiting(thread);
+    }
+    cache.releaseFirstBatch.countDown();
+    for (Thread thread : threads) {
+      thread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    assertEquals(ImmutableList.of(1, 4), cache.batchSizes);
+    assertEquals(5, results.size());
+    for (CacheResultType type : results.values()) {
+      assertEquals(CacheResultType.HIT, type);
+    }
+  }
+
+  @Test
+  public void batchesAreBoundedByMaxBatchSize() throws Exception {
+    RecordingArtifactCache cache = new RecordingArtifactCache();
+    ArtifactCacheFetchBatcher batcher = new ArtifactCacheFetchBatcher(cache, 2, 1);
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      RuleKey ruleKey = new RuleKey(String.format("%040d", i));
+      threads.add(new Thread(() -> batcher.fetch(ruleKey, OUTPUT)));
+    }
+
+    threads.get(0).start();
+    assertTrue(cache.firstBatchStarted.await(10, TimeUnit.SECONDS));
+    for (Thread thread : threads.subList(1, threads.size())) {
+      thread.start();
+      waitUntilWaiting(thread);
+    }
+    cache.releaseFirstBatch.countDown();
+    for (Thread thread : threads) {
+      thread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    assertEquals(ImmutableList.of(1, 2, 2, 1), cache.batchSizes);
+  }
+
+  private static void waitUntilWaiting(Thread thread) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (thread.getState() != Thread.State.WAITING) {
+      if (System.nanoTime() > deadline) {
+        fail("Thread did not start waiting for its fetch.");
+      }
+      Thread.sleep(1);
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class BuildRuleHistoryTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private static final BuildTarget TARGET = BuildTargetFactory.newInstance("//foo:bar");
+  private static final String TYPE = "java_library";
+
+  @Test
+  public void recordsAreKeptByTargetAndRuleType() {
+    BuildRuleHistory history = BuildRuleHistory.empty();
+    history.recordExecution(TARGET, TYPE, 1000, 0);
+    history.recordOutputSize(TARGET, TYPE, 2048, 0);
+    history.recordCacheFetch(TARGET, "genrule", 50, 0);
+
+    BuildRuleHistory.Entry entry = history.get(TARGET, TYPE).get();
+    assertEquals(Optional.of(1000L), entry.getExecutionMillis());
+    assertEquals(Optional.empty(), entry.getCacheFetchMillis());
+    assertEquals(Optional.of(2048L), entry.getOutputSize());
+    assertEquals(Optional.of(50L), history.get(TARGET, "genrule").get().getCacheFetchMillis());
+    assertFalse(history.get(BuildTargetFactory.newInstance("//foo:baz"), TYPE).isPresent());
+  }
+
+  @Test
+  public void olderSamplesCountForLessTheOlderTheyAre() {
+    BuildRuleHistory history = BuildRuleHistory.empty();
+    history.recordExecution(TARGET, TYPE, 1000, 0);
+    history.recordExecution(TARGET, TYPE, 2000, 0);
+    long average =
+        Math.round(
+            1000 * (1 - BuildRuleHistory.SAMPLE_WEIGHT) + 2000 * BuildRuleHistory.SAMPLE_WEIGHT);
+    assertEquals(Optional.of(average), history.get(TARGET, TYPE).get().getExecutionMillis());
+
+    // After a half life, the previous average only has half its usual weight.
+    history.recordExecution(TARGET, TYPE, 2000, BuildRuleHistory.HALF_LIFE_MILLIS);
+    double previousWeight = (1 - BuildRuleHistory.SAMPLE_WEIGHT) / 2;
+    assertEquals(
+        Optional.of(Math.round(average * previousWeight + 2000 * (1 - previousWeight))),
+        history.get(TARGET, TYPE).get().getExecutionMillis());
+  }
+
+  @Test
+  public void historySurvivesSavingAndLoading() throws Exception {
+    Path path = tmp.getRoot().resolve("buck-out/.rulehistory");
+    BuildRuleHistory history = BuildRuleHistory.empty();
+    history.recordExecution(TARGET, TYPE, 1000, 10);
+    history.recordCacheFetch(TARGET, TYPE, 20, 10);
+    history.save(path, 10);
+
+    assertEquals(history.get(TARGET, TYPE), BuildRuleHistory.load(path).get(TARGET, TYPE));
+  }
+
+  @Test
+  public void rulesWhichWereNotBuiltForLongAreForgotten() throws Exception {
+    Path path = tmp.getRoot().resolve("rulehistory");
+    BuildTarget other = BuildTargetFactory.newInstance("//foo:baz");
+    BuildRuleHistory history = BuildRuleHistory.empty();
+    history.recordExecution(TARGET, TYPE, 1000, 0);
+    history.recordExecution(other, TYPE, 1000, BuildRuleHistory.MAX_AGE_MILLIS);
+    history.save(path, BuildRuleHistory.MAX_AGE_MILLIS + 1);
+
+    BuildRuleHistory loaded = BuildRuleHistory.load(path);
+    assertFalse(loaded.get(TARGET, TYPE).isPresent());
+    assertEquals(history.get(other, TYPE), loaded.get(other, TYPE));
+  }
+
+  @Test
+  public void samplesSavedByConcurrentCommandsAreAllKept() throws Exception {
+    Path path = tmp.getRoot().resolve("rulehistory");
+    BuildTarget other = BuildTargetFactory.newInstance("//foo:baz");
+    BuildRuleHistory first = BuildRuleHistory.load(path);
+    BuildRuleHistory second = BuildRuleHistory.load(path);
+    first.recordExecution(TARGET, TYPE, 1000, 0);
+    second.recordExecution(TARGET, TYPE, 2000, 0);
+    second.recordExecution(other, TYPE, 500, 0);
+    first.save(path, 0);
+    second.save(path, 0);
+
+    BuildRuleHistory expected = BuildRuleHistory.empty();
+    expected.recordExecution(TARGET, TYPE, 1000, 0);
+    expected.recordExecution(TARGET, TYPE, 2000, 0);
+    expected.recordExecution(other, TYPE, 500, 0);
+    BuildRuleHistory loaded = BuildRuleHistory.load(path);
+    assertEquals(expected.get(TARGET, TYPE), loaded.get(TARGET, TYPE));
+    assertEquals(expected.get(other, TYPE), loaded.get(other, TYPE));
+
+    // Samples are only saved once.
+    second.save(path, 0);
+    assertEquals(expected.get(TARGET, TYPE), BuildRuleHistory.load(path).get(TARGET, TYPE));
+  }
+
+  @Test
+  public void unreadableHistoryIsIgnored() throws Exception {
+    Path path = tmp.newFile("rulehistory");
+    Files.write(path, new byte[] {0, 0, 0, 1, 0});
+    assertFalse(BuildRuleHistory.load(path).get(TARGET, TYPE).isPresent());
+    assertFalse(
+        BuildRuleHistory.load(tmp.getRoot().resolve("missing")).get(TARGET, TYPE).isPresent());
+  }
+
+  @Test
+  public void durationsAreEstimatedFromLocalBuildsAndFallBackOtherwise() {
+    BuildRule built = new FakeBuildRule("//foo:built");
+    BuildRule fetched = new FakeBuildRule("//foo:fetched");
+    BuildRuleHistory history = BuildRuleHistory.empty();
+    history.recordExecution(built.getBuildTarget(), built.getType(), 1234, 0);
+    history.recordCacheFetch(fetched.getBuildTarget(), fetched.getType(), 10, 0);
+
+    BuildRuleDurationEstimator estimator = history.asDurationEstimator(rule -> 42);
+    assertEquals(1234, estimator.estimateDurationMillis(built));
+    assertEquals(42, estimator.estimateDurationMillis(fetched));
+  }
+}
@@ -32,6 +32,14 @@ import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.facebook.buck.testutil.TargetGraphFactory;
 import com.facebook.buck.util.HumanReadableException;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.hamcrest.Matchers;
 import org.junit.Rule;
@@ -48,7 +56,7 @@ public class BuildRuleResolverTest {
         new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
 
     BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
-    JavaLibraryBuilder.createBuilder(target).build(buildRuleResolver);
+    BuildRule rule = JavaLibraryBuilder.createBuilder(target).build(buildRuleResolver);
 
     // A BuildRuleResolver should allow only one entry for a BuildTarget.
     try {
@@ -58,6 +66,7 @@ public class BuildRuleResolverTest {
       assertEquals(
           "A build rule for this target has already been created: " + target, e.getMessage());
     }
+    assertSame("existing rule is kept", rule, buildRuleResolver.getRule(target));
   }
 
   @Test
@@ -173,4 +182,46 @@ public class BuildRuleResolverTest {
     assertEquals("supplier is not called again", supplierInvoked.get(), 1);
     assertSame("recorded rule is still returned", returnedBuildRule, buildRule);
   }
+
+  @Test
+  public void computeIfAbsentComputesOnceWhenCalledConcurrently() throws Exception {
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    BuildTarget target = BuildTargetFactory.newInstance("//:target");
+    AtomicInteger supplierInvoked = new AtomicInteger(0);
+    CountDownLatch supplierStarted = new CountDownLatch(1);
+    CountDownLatch otherThreadsStarted = new CountDownLatch(1);
+    BuildRule buildRule =
+        new NoopBuildRuleWithDeclaredAndExtraDeps(
+            target, new FakeProjectFilesystem(), TestBuildRuleParams.create());
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Callable<BuildRule> computeRule =
+          () ->
+              resolver.computeIfAbsent(
+                  target,
+                  passedTarget -> {
+                    supplierInvoked.incrementAndGet();
+                    supplierStarted.countDown();
+                    Uninterruptibles.awaitUninterruptibly(otherThreadsStarted);
+                    return buildRule;
+                  });
+      Future<BuildRule> first = executor.submit(computeRule);
+      supplierStarted.await();
+      List<Future<BuildRule>> others = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        others.add(executor.submit(computeRule));
+      }
+      otherThreadsStarted.countDown();
+
+      assertSame(buildRule, first.get());
+      for (Future<BuildRule> other : others) {
+        assertSame(buildRule, other.get());
+      }
+      assertEquals("supplier was called once", 1, supplierInvoked.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
@@ -38,6 +38,7 @@ public class CachingBuildEngineFactory {
   private CachingBuildEngine.DepFiles depFiles = CachingBuildEngine.DepFiles.ENABLED;
   private long maxDepFileCacheEntries = 256L;
   private Optional<Long> artifactCacheSizeLimit = Optional.empty();
+  private int artifactCacheFetchBatchSize = 1;
   private long inputFileSizeLimit = Long.MAX_VALUE;
   private Optional<RuleKeyFactories> ruleKeyFactories = Optional.empty();
   private CachingBuildEngineDelegate cachingBuildEngineDelegate;
@@ -45,6 +46,7 @@ public class CachingBuildEngineFactory {
   private BuildRuleResolver buildRuleResolver;
   private ResourceAwareSchedulingInfo resourceAwareSchedulingInfo =
       ResourceAwareSchedulingInfo.NON_AWARE_SCHEDULING_INFO;
+  private Optional<BuildRuleDurationEstimator> criticalPathDurationEstimator = Optional.empty();
   private boolean logBuildRuleFailuresInline = true;
   private BuildInfoStoreManager buildInfoStoreManager;
   private FileHashCacheMode fileHashCacheMode = FileHashCacheMode.DEFAULT;
@@ -83,6 +85,11 @@ public class CachingBuildEngineFactory {
     return this;
   }
 
+  public CachingBuildEngineFactory setArtifactCacheFetchBatchSize(int artifactCacheFetchBatchSize) {
+    this.artifactCacheFetchBatchSize = artifactCacheFetchBatchSize;
+    return this;
+  }
+
   public CachingBuildEngineFactory setCachingBuildEngineDelegate(
       CachingBuildEngineDelegate cachingBuildEngineDelegate) {
     this.cachingBuildEngineDelegate = cachingBuildEngineDelegate;
@@ -100,6 +107,12 @@ public class CachingBuildEngineFactory {
     return this;
   }
 
+  public CachingBuildEngineFactory setCriticalPathDurationEstimator(
+      BuildRuleDurationEstimator criticalPathDurationEstimator) {
+    this.criticalPathDurationEstimator = Optional.of(criticalPathDurationEstimator);
+    return this;
+  }
+
   public CachingBuildEngineFactory setRuleKeyFactories(RuleKeyFactories ruleKeyFactories) {
     this.ruleKeyFactories = Optional.of(ruleKeyFactories);
     return this;
@@ -143,9 +156,11 @@ public class CachingBuildEngineFactory {
         depFiles,
         maxDepFileCacheEntries,
         artifactCacheSizeLimit,
+        artifactCacheFetchBatchSize,
         buildRuleResolver,
         buildInfoStoreManager,
         resourceAwareSchedulingInfo,
+        criticalPathDurationEstimator,
         logBuildRuleFailuresInline,
         RuleKeyFactories.of(
             0,
@@ -26,6 +26,7 @@ import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -715,6 +716,107 @@ public class CachingBuildEngineTest {
       }
     }
 
+    @Test
+    public void testCachedDepIsNotFetchedInDeepBuildAvoidanceMode() throws Exception {
+      BuildTarget depTarget = BuildTargetFactory.newInstance("//src/com/facebook/orca:lib");
+      FakeBuildRule dep = new FakeBuildRule(depTarget, filesystem, TestBuildRuleParams.create());
+      FakeBuildRule ruleToTest = new FakeBuildRule(BUILD_TARGET, filesystem, dep);
+
+      // Prepopulate the cache with an artifact for both the dep and the top-level rule.
+      Path depOutput = Paths.get("buck-out/gen/src/com/facebook/orca/lib.jar");
+      Path ruleToTestOutput = Paths.get("buck-out/gen/src/com/facebook/orca/orca.jar");
+      for (Map.Entry<BuildRule, Path> ruleAndOutput :
+          ImmutableMap.<BuildRule, Path>of(dep, depOutput, ruleToTest, ruleToTestOutput)
+              .entrySet()) {
+        BuildRule rule = ruleAndOutput.getKey();
+        RuleKey ruleKey = defaultRuleKeyFactory.build(rule);
+        Path artifact = tmp.newFile(rule.getBuildTarget().getShortName() + ".zip");
+        writeEntriesToZip(
+            artifact,
+            ImmutableMap.of(
+                BuildInfo.getPathToMetadataDirectory(rule.getBuildTarget(), filesystem)
+                    .resolve(BuildInfo.MetadataKey.RECORDED_PATHS),
+                ObjectMappers.WRITER.writeValueAsString(
+                    ImmutableList.of(ruleAndOutput.getValue().toString())),
+                ruleAndOutput.getValue(),
+                "stuff"));
+        cache.store(
+            ArtifactInfo.builder()
+                .addRuleKeys(ruleKey)
+                .putMetadata(BuildInfo.MetadataKey.BUILD_ID, buildContext.getBuildId().toString())
+                .putMetadata(
+                    BuildInfo.MetadataKey.ORIGIN_BUILD_ID, buildContext.getBuildId().toString())
+                .putMetadata(BuildInfo.MetadataKey.RULE_KEY, ruleKey.toString())
+                .build(),
+            BorrowablePath.notBorrowablePath(artifact));
+      }
+
+      try (CachingBuildEngine cachingBuildEngine =
+          cachingBuildEngineFactory()
+              .setBuildMode(CachingBuildEngine.BuildMode.DEEP_BUILD_AVOIDANCE)
+              .build()) {
+        BuildResult result =
+            cachingBuildEngine
+                .build(buildContext, TestExecutionContext.newInstance(), ruleToTest)
+                .getResult()
+                .get();
+        assertEquals(BuildRuleSuccessType.FETCHED_FROM_CACHE, result.getSuccess());
+        assertTrue(filesystem.exists(ruleToTestOutput));
+
+        // The dep was only probed: it is known to be cached, but its outputs were not fetched.
+        assertEquals(
+            BuildRuleSuccessType.FOUND_IN_CACHE,
+            cachingBuildEngine.getBuildRuleResult(depTarget).getSuccess());
+        assertFalse(filesystem.exists(depOutput));
+      }
+    }
+
+    @Test
+    public void testMissingDepIsFetchedForLocalBuildInDeepBuildAvoidanceMode() throws Exception {
+      BuildTarget depTarget = BuildTargetFactory.newInstance("//src/com/facebook/orca:lib");
+      FakeBuildRule dep = new FakeBuildRule(depTarget, filesystem, TestBuildRuleParams.create());
+      FakeBuildRule ruleToTest = new FakeBuildRule(BUILD_TARGET, filesystem, dep);
+
+      // Only the dep is cached, so the top-level rule has to be built locally and needs the dep's
+      // outputs on disk.
+      RuleKey depKey = defaultRuleKeyFactory.build(dep);
+      Path depOutput = Paths.get("buck-out/gen/src/com/facebook/orca/lib.jar");
+      Path artifact = tmp.newFile("artifact.zip");
+      writeEntriesToZip(
+          artifact,
+          ImmutableMap.of(
+              BuildInfo.getPathToMetadataDirectory(depTarget, filesystem)
+                  .resolve(BuildInfo.MetadataKey.RECORDED_PATHS),
+              ObjectMappers.WRITER.writeValueAsString(ImmutableList.of(depOutput.toString())),
+              depOutput,
+              "stuff"));
+      cache.store(
+          ArtifactInfo.builder()
+              .addRuleKeys(depKey)
+              .putMetadata(BuildInfo.MetadataKey.BUILD_ID, buildContext.getBuildId().toString())
+              .putMetadata(
+                  BuildInfo.MetadataKey.ORIGIN_BUILD_ID, buildContext.getBuildId().toString())
+              .putMetadata(BuildInfo.MetadataKey.RULE_KEY, depKey.toString())
+              .build(),
+          BorrowablePath.notBorrowablePath(artifact));
+
+      try (CachingBuildEngine cachingBuildEngine =
+          cachingBuildEngineFactory()
+              .setBuildMode(CachingBuildEngine.BuildMode.DEEP_BUILD_AVOIDANCE)
+              .build()) {
+        BuildResult result =
+            cachingBuildEngine
+                .build(buildContext, TestExecutionContext.newInstance(), ruleToTest)
+                .getResult()
+                .get();
+        assertEquals(BuildRuleSuccessType.BUILT_LOCALLY, result.getSuccess());
+        assertEquals(
+            BuildRuleSuccessType.FETCHED_FROM_CACHE,
+            cachingBuildEngine.getBuildRuleResult(depTarget).getSuccess());
+        assertTrue(filesystem.exists(depOutput));
+      }
+    }
+
     @Test
     public void testMatchingTopLevelRuleKeyStillProcessesRuntimeDeps() throws Exception {
       // Setup a runtime dependency that is found transitively from the top-level rule.
@@ -3611,6 +3713,11 @@ public class CachingBuildEngineTest {
           CacheResult.hit("dir", ArtifactCacheMode.dir).withMetadata(metadata));
     }
 
+    @Override
+    public ListenableFuture<CacheResult> containsAsync(RuleKey ruleKey) {
+      return Futures.immediateFuture(CacheResult.contains("dir", ArtifactCacheMode.dir));
+    }
+
     @Override
     public ListenableFuture<Void> store(ArtifactInfo info, BorrowablePath output) {
       throw new UnsupportedOperationException();
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+public class CriticalPathPrioritizerTest {
+
+  @Test
+  public void rulesArePrioritizedByTheLongestChainOfWorkLeftOnceTheyStart() {
+    //      apk
+    //     /   \
+    // merge   leaf
+    //    |
+    //   lib1
+    //    |
+    //   lib2
+    BuildRule lib2 = new FakeBuildRule("//:lib2");
+    BuildRule lib1 = new FakeBuildRule("//:lib1", lib2);
+    BuildRule merge = new FakeBuildRule("//:merge", lib1);
+    BuildRule leaf = new FakeBuildRule("//:leaf");
+    BuildRule apk = new FakeBuildRule("//:apk", merge, leaf);
+    BuildRule other = new FakeBuildRule("//:other", leaf);
+    ImmutableMap<BuildRule, Long> durations =
+        ImmutableMap.<BuildRule, Long>builder()
+            .put(lib2, 5L)
+            .put(lib1, 5L)
+            .put(merge, 100L)
+            .put(leaf, 1L)
+            .put(apk, 10L)
+            .put(other, 1000L)
+            .build();
+    CriticalPathPrioritizer prioritizer =
+        new CriticalPathPrioritizer(
+            new RuleDepsCache(
+                new BuildRuleResolver(
+                    TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer())),
+            durations::get);
+
+    prioritizer.addTopLevelRule(apk);
+    assertEquals(10, prioritizer.getPriority(apk));
+    assertEquals(110, prioritizer.getPriority(merge));
+    assertEquals(115, prioritizer.getPriority(lib1));
+    assertEquals(120, prioritizer.getPriority(lib2));
+    assertEquals(11, prioritizer.getPriority(leaf));
+    assertEquals(0, prioritizer.getPriority(other));
+
+    // A longer path through another top-level rule raises the priority of the shared dep only.
+    prioritizer.addTopLevelRule(other);
+    assertEquals(1000, prioritizer.getPriority(other));
+    assertEquals(1001, prioritizer.getPriority(leaf));
+    assertEquals(120, prioritizer.getPriority(lib2));
+  }
+}
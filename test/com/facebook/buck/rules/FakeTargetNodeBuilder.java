@@ -32,7 +32,11 @@ public class FakeTargetNodeBuilder
   }
 
   public static FakeTargetNodeBuilder newBuilder(BuildRule rule) {
-    return new FakeTargetNodeBuilder(new FakeDescription(rule), rule.getBuildTarget());
+    return newBuilder(new FakeDescription(rule), rule.getBuildTarget());
+  }
+
+  public static FakeTargetNodeBuilder newBuilder(FakeDescription description, BuildTarget target) {
+    return new FakeTargetNodeBuilder(description, target);
   }
 
   public static TargetNode<FakeTargetNodeArg, FakeDescription> build(BuildRule rule) {
@@ -35,6 +35,7 @@ import com.facebook.buck.testutil.FakeFileHashCache;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.facebook.buck.testutil.TargetGraphFactory;
 import com.facebook.buck.timing.IncrementingFakeClock;
+import com.facebook.buck.util.WatchmanPathEvent;
 import com.facebook.buck.util.cache.FileHashCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -43,7 +44,9 @@ import com.google.common.hash.HashCode;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 import org.junit.Test;
 
 public class TargetGraphHashingTest {
@@ -153,6 +156,57 @@ public class TargetGraphHashingTest {
         resultsB.get(nodeB.getBuildTarget()), equalTo(commonResults.get(nodeB.getBuildTarget())));
   }
 
+  @Test
+  public void cachedHashesAreReusedUntilAnInputChanges()
+      throws IOException, InterruptedException, AcyclicDepthFirstPostOrderTraversal.CycleException {
+    FakeProjectFilesystem projectFilesystem = new FakeProjectFilesystem();
+    BuckEventBus eventBus = new DefaultBuckEventBus(new IncrementingFakeClock(), new BuildId());
+
+    BuildTarget nodeTarget = BuildTargetFactory.newInstance("//foo:lib");
+    BuildTarget depTarget = BuildTargetFactory.newInstance("//dep:lib");
+    TargetGraph targetGraph =
+        createGraphWithANodeAndADep(
+            nodeTarget, HashCode.fromLong(12345), depTarget, HashCode.fromLong(64738));
+    ImmutableList<TargetNode<?, ?>> roots = ImmutableList.of(targetGraph.get(nodeTarget));
+
+    FileHashCache fileHashCache =
+        new FakeFileHashCache(
+            new HashMap<>(
+                ImmutableMap.of(
+                    projectFilesystem.resolve("foo/FooLib.java"), HashCode.fromString("abcdef"),
+                    projectFilesystem.resolve("dep/DepLib.java"), HashCode.fromString("123456"))));
+    TargetGraphHashCache hashCache = new TargetGraphHashCache();
+
+    Map<BuildTarget, HashCode> baseResult =
+        new TargetGraphHashing(eventBus, targetGraph, fileHashCache, roots)
+            .setHashCache(Optional.of(hashCache))
+            .hashTargetGraph();
+
+    // Without a Watchman event, the hashes are not computed again.
+    fileHashCache.set(projectFilesystem.resolve("dep/DepLib.java"), HashCode.fromString("123356"));
+    assertThat(
+        new TargetGraphHashing(eventBus, targetGraph, fileHashCache, roots)
+            .setHashCache(Optional.of(hashCache))
+            .hashTargetGraph(),
+        equalTo(baseResult));
+
+    hashCache.invalidateBasedOn(
+        WatchmanPathEvent.of(
+            projectFilesystem.getRootPath(),
+            WatchmanPathEvent.Kind.MODIFY,
+            Paths.get("dep/DepLib.java")));
+    Map<BuildTarget, HashCode> modifiedResult =
+        new TargetGraphHashing(eventBus, targetGraph, fileHashCache, roots)
+            .setHashCache(Optional.of(hashCache))
+            .hashTargetGraph();
+    assertThat(
+        modifiedResult,
+        equalTo(
+            new TargetGraphHashing(eventBus, targetGraph, fileHashCache, roots).hashTargetGraph()));
+    assertThat(modifiedResult.get(depTarget), not(equalTo(baseResult.get(depTarget))));
+    assertThat(modifiedResult.get(nodeTarget), not(equalTo(baseResult.get(nodeTarget))));
+  }
+
   private TargetGraph createGraphWithANodeAndADep(
       BuildTarget nodeTarget, HashCode nodeHash, BuildTarget depTarget, HashCode depHash) {
     TargetNode<?, ?> dep =
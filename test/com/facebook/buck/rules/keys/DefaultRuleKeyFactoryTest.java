@@ -17,6 +17,7 @@
 package com.facebook.buck.rules.keys;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThat;
 
@@ -26,6 +27,7 @@ import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.model.Either;
 import com.facebook.buck.rules.AddToRuleKey;
 import com.facebook.buck.rules.AddsToRuleKey;
+import com.facebook.buck.rules.AddsToRuleKeyByValue;
 import com.facebook.buck.rules.BuildContext;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleResolver;
@@ -69,6 +71,7 @@ import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
@@ -658,6 +661,71 @@ public class DefaultRuleKeyFactoryTest {
     assertThat(result.deps, Matchers.containsInAnyOrder(dep, depAppendable));
   }
 
+  @Test
+  public void testEqualValueAppendablesShareTheirRuleKey() {
+    SourcePathRuleFinder ruleFinder =
+        new SourcePathRuleFinder(
+            new BuildRuleResolver(
+                TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer()));
+    SourcePathResolver pathResolver = DefaultSourcePathResolver.from(ruleFinder);
+    AtomicInteger appendCount = new AtomicInteger();
+    BuildRule first =
+        new ValueAppenderRule(
+            BuildTargetFactory.newInstance("//:first"), new ValueAppender("flags", appendCount));
+    BuildRule second =
+        new ValueAppenderRule(
+            BuildTargetFactory.newInstance("//:second"), new ValueAppender("flags", appendCount));
+
+    DefaultRuleKeyFactory factory =
+        new DefaultRuleKeyFactory(0, new DummyFileHashCache(), pathResolver, ruleFinder);
+    factory.build(first);
+    RuleKey sharedKey = factory.build(second);
+    assertEquals(1, appendCount.get());
+
+    RuleKey expectedKey =
+        new DefaultRuleKeyFactory(0, new DummyFileHashCache(), pathResolver, ruleFinder)
+            .build(second);
+    assertEquals(expectedKey, sharedKey);
+  }
+
+  @Test
+  public void testSharedValueAppendableKeyIsInvalidatedWithItsInputs() throws IOException {
+    SourcePathRuleFinder ruleFinder =
+        new SourcePathRuleFinder(
+            new BuildRuleResolver(
+                TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer()));
+    SourcePathResolver pathResolver = DefaultSourcePathResolver.from(ruleFinder);
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    PathSourcePath input = new PathSourcePath(filesystem, filesystem.getPath("input"));
+    filesystem.touch(input.getRelativePath());
+    DefaultRuleKeyCache<RuleKey> cache = new DefaultRuleKeyCache<>();
+    DefaultRuleKeyFactory factory =
+        new DefaultRuleKeyFactory(
+            new RuleKeyFieldLoader(0),
+            new StackedFileHashCache(
+                ImmutableList.of(
+                    DefaultFileHashCache.createDefaultFileHashCache(
+                        filesystem, FileHashCacheMode.DEFAULT))),
+            pathResolver,
+            ruleFinder,
+            cache);
+    BuildRule first =
+        new ValueAppenderRule(
+            BuildTargetFactory.newInstance("//:first"),
+            new ValueAppender(input, new AtomicInteger()));
+    BuildRule second =
+        new ValueAppenderRule(
+            BuildTargetFactory.newInstance("//:second"),
+            new ValueAppender(input, new AtomicInteger()));
+
+    factory.build(first);
+    factory.build(second);
+    cache.invalidateInputs(ImmutableList.of(RuleKeyInput.of(filesystem, input.getRelativePath())));
+
+    assertFalse(cache.isCached(first));
+    assertFalse(cache.isCached(second));
+  }
+
   private void assertBothKeysAndValuesGetHashed(@Nullable Object val1, @Nullable Object val2) {
     assertKeysGetHashed(val1);
     assertValuesGetHashed(val1, val2);
@@ -732,6 +800,42 @@ public class DefaultRuleKeyFactoryTest {
     }
   }
 
+  /** Counts how many times it is added to rule keys, and is equal to others with the same value. */
+  private static class ValueAppender implements RuleKeyAppendable, AddsToRuleKeyByValue {
+    private final Object value;
+    private final AtomicInteger appendCount;
+
+    ValueAppender(Object value, AtomicInteger appendCount) {
+      this.value = value;
+      this.appendCount = appendCount;
+    }
+
+    @Override
+    public void appendToRuleKey(RuleKeyObjectSink sink) {
+      appendCount.incrementAndGet();
+      sink.setReflectively("value", value);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object other) {
+      return other instanceof ValueAppender && value.equals(((ValueAppender) other).value);
+    }
+
+    @Override
+    public int hashCode() {
+      return value.hashCode();
+    }
+  }
+
+  private static class ValueAppenderRule extends EmptyRule {
+    @AddToRuleKey private final ValueAppender appender;
+
+    ValueAppenderRule(BuildTarget target, ValueAppender appender) {
+      super(target);
+      this.appender = appender;
+    }
+  }
+
   /** A hollow shell of a build rule containing absolutely no marked up fields. */
   private static class EmptyRule implements BuildRule {
 
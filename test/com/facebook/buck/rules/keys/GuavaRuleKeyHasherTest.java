@@ -16,8 +16,14 @@
 
 package com.facebook.buck.rules.keys;
 
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.base.Strings;
 import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
 
 @SuppressWarnings("PMD.TestClassWithoutTestCases")
 public class GuavaRuleKeyHasherTest extends AbstractRuleKeyHasherTest<HashCode> {
@@ -26,4 +32,38 @@ public class GuavaRuleKeyHasherTest extends AbstractRuleKeyHasherTest<HashCode>
   protected GuavaRuleKeyHasher newHasher() {
     return new GuavaRuleKeyHasher(Hashing.sha1().newHasher());
   }
+
+  @Test
+  public void testStringsAreHashedAsTheirUtf8Bytes() {
+    String[] values = {
+      "",
+      "ascii",
+      "caf\u00e9 \u65e5\u672c \ud83d\ude00",
+      Strings.repeat("\u00e9a\u65e5", 100),
+      "lone \ud83d surrogates \ude00",
+      "trailing \ud83d",
+    };
+    for (String value : values) {
+      Hasher expected = Hashing.sha1().newHasher();
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      expected.putBytes(bytes);
+      expected.putInt(bytes.length);
+      expected.putByte(RuleKeyHasherTypes.STRING);
+      assertEquals(value, expected.hash(), newHasher().putString(value).hash());
+    }
+  }
+
+  @Test
+  public void testMurmur3HashFunctionIsStable() {
+    HashCode first =
+        new GuavaRuleKeyHasher(RuleKeyHashFunction.MURMUR3_128.newHasher())
+            .putString("value")
+            .hash();
+    HashCode second =
+        new GuavaRuleKeyHasher(RuleKeyHashFunction.MURMUR3_128.newHasher())
+            .putString("value")
+            .hash();
+    assertEquals(128, first.bits());
+    assertEquals(first, second);
+  }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.keys;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.FakeTargetNodeBuilder;
+import com.facebook.buck.rules.NoopBuildRuleWithDeclaredAndExtraDeps;
+import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.rules.TestBuildRuleParams;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.testutil.TargetGraphFactory;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class PersistentRuleKeyCacheTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private static final BuildTarget TARGET = BuildTargetFactory.newInstance("//:rule");
+  private static final RuleKey RULE_KEY = new RuleKey("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+  private static final RuleKey OTHER_RULE_KEY =
+      new RuleKey("bbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbb");
+  private static final HashCode SETTINGS_HASH = HashCode.fromInt(1);
+
+  private ProjectFilesystem filesystem;
+  private Path storePath;
+  private BuildRule rule;
+  private TargetGraph targetGraph;
+
+  @Before
+  public void setUp() {
+    filesystem = new FakeProjectFilesystem();
+    storePath = tmp.getRoot().resolve("rule_keys");
+    rule =
+        new NoopBuildRuleWithDeclaredAndExtraDeps(
+            TARGET, filesystem, TestBuildRuleParams.create());
+    targetGraph = TargetGraphFactory.newInstance(FakeTargetNodeBuilder.build(rule));
+  }
+
+  @Test
+  public void storedRuleKeyIsReusedAfterRestart() throws IOException {
+    PersistentRuleKeyCache cache = newCache(HashCode.fromInt(42), SETTINGS_HASH);
+    assertEquals(RULE_KEY, cache.get(rule, r -> newResult(RULE_KEY)));
+    cache.save();
+
+    PersistentRuleKeyCache restarted = newCache(HashCode.fromInt(42), SETTINGS_HASH);
+    assertEquals(RULE_KEY, restarted.get(rule, r -> newResult(OTHER_RULE_KEY)));
+    assertEquals(1, restarted.getStoredHitCount());
+  }
+
+  @Test
+  public void storedRuleKeyIsNotReusedWhenTargetNodeChanges() throws IOException {
+    PersistentRuleKeyCache cache = newCache(HashCode.fromInt(42), SETTINGS_HASH);
+    cache.get(rule, r -> newResult(RULE_KEY));
+    cache.save();
+
+    PersistentRuleKeyCache restarted = newCache(HashCode.fromInt(43), SETTINGS_HASH);
+    assertEquals(OTHER_RULE_KEY, restarted.get(rule, r -> newResult(OTHER_RULE_KEY)));
+    assertEquals(0, restarted.getStoredHitCount());
+  }
+
+  @Test
+  public void storedRuleKeyIsNotReusedWhenSettingsChange() throws IOException {
+    PersistentRuleKeyCache cache = newCache(HashCode.fromInt(42), SETTINGS_HASH);
+    cache.get(rule, r -> newResult(RULE_KEY));
+    cache.save();
+
+    PersistentRuleKeyCache restarted = newCache(HashCode.fromInt(42), HashCode.fromInt(2));
+    assertEquals(OTHER_RULE_KEY, restarted.get(rule, r -> newResult(OTHER_RULE_KEY)));
+  }
+
+  @Test
+  public void ruleKeyWithUnwatchedInputIsNotStored() throws IOException {
+    ProjectFilesystem unwatched = new FakeProjectFilesystem(tmp.getRoot().resolve("unwatched"));
+    PersistentRuleKeyCache cache = newCache(HashCode.fromInt(42), SETTINGS_HASH);
+    cache.get(
+        rule,
+        r ->
+            new RuleKeyResult<>(
+                RULE_KEY,
+                ImmutableList.of(),
+                ImmutableList.of(RuleKeyInput.of(unwatched, unwatched.getPath("input")))));
+    cache.save();
+
+    PersistentRuleKeyCache restarted = newCache(HashCode.fromInt(42), SETTINGS_HASH);
+    assertEquals(OTHER_RULE_KEY, restarted.get(rule, r -> newResult(OTHER_RULE_KEY)));
+  }
+
+  @Test
+  public void inMemoryRuleKeyIsDroppedWhenTargetNodeChanges() {
+    PersistentRuleKeyCache cache = newCache(HashCode.fromInt(42), SETTINGS_HASH);
+    cache.get(rule, r -> newResult(RULE_KEY));
+    cache.invalidateAll();
+    // Served from the stored rule keys, and then from memory.
+    assertEquals(RULE_KEY, cache.get(rule, r -> newResult(OTHER_RULE_KEY)));
+
+    cache.setBuildContext(newContext(HashCode.fromInt(43), SETTINGS_HASH));
+    assertEquals(OTHER_RULE_KEY, cache.get(rule, r -> newResult(OTHER_RULE_KEY)));
+  }
+
+  private PersistentRuleKeyCache newCache(HashCode nodeHash, HashCode settingsHash) {
+    PersistentRuleKeyCache cache =
+        new PersistentRuleKeyCache(
+            new DefaultRuleKeyCache<>(), storePath, ImmutableSet.of(filesystem));
+    cache.setBuildContext(newContext(nodeHash, settingsHash));
+    return cache;
+  }
+
+  private Optional<PersistentRuleKeyCache.BuildContext> newContext(
+      HashCode nodeHash, HashCode settingsHash) {
+    return Optional.of(
+        new PersistentRuleKeyCache.BuildContext(
+            settingsHash, targetGraph, ImmutableMap.of(TARGET, nodeHash)));
+  }
+
+  private static RuleKeyResult<RuleKey> newResult(RuleKey ruleKey) {
+    return new RuleKeyResult<>(ruleKey, ImmutableList.of(), ImmutableList.of());
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.keys;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.DefaultBuildTargetSourcePath;
+import com.facebook.buck.rules.DefaultSourcePathResolver;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.PathSourcePath;
+import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.shell.GenruleBuilder;
+import com.facebook.buck.testutil.FakeFileHashCache;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RuleKeyHashFunctionBenchmark {
+  private static final int SOURCES_PER_RULE = 20;
+  private static final int DEPS_PER_RULE = 5;
+
+  @Param({"SHA1", "MURMUR3_128"})
+  private RuleKeyHashFunction hashFunction = RuleKeyHashFunction.SHA1;
+
+  @Param({"100", "2000"})
+  private int ruleCount = 100;
+
+  private final List<BuildRule> rules = new ArrayList<>();
+  private FakeFileHashCache hashCache;
+  private SourcePathRuleFinder ruleFinder;
+  private SourcePathResolver pathResolver;
+
+  @Before
+  public void setUpTest() throws Exception {
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    ruleFinder = new SourcePathRuleFinder(resolver);
+    pathResolver = DefaultSourcePathResolver.from(ruleFinder);
+
+    // Each rule looks like a library: a few dozen sources, plus the outputs of some of the rules
+    // before it, so that keys are computed over a deep graph as in real builds.
+    Map<Path, HashCode> hashes = new HashMap<>();
+    for (int i = 0; i < ruleCount; i++) {
+      String baseName = String.format("java/com/facebook/module_%d", i);
+      ImmutableList.Builder<SourcePath> srcs = ImmutableList.builder();
+      for (int j = 0; j < SOURCES_PER_RULE; j++) {
+        Path source = Paths.get(baseName, String.format("Source%d.java", j));
+        hashes.put(filesystem.resolve(source), HashCode.fromInt(i * SOURCES_PER_RULE + j));
+        srcs.add(new PathSourcePath(filesystem, source));
+      }
+      for (int j = 1; j <= DEPS_PER_RULE && j <= i; j++) {
+        srcs.add(new DefaultBuildTargetSourcePath(rules.get(i - j).getBuildTarget()));
+      }
+      rules.add(
+          GenruleBuilder.newGenruleBuilder(
+                  BuildTargetFactory.newInstance(String.format("//%s:lib", baseName)), filesystem)
+              .setOut("lib.jar")
+              .setCmd("javac -d $OUT $SRCS")
+              .setSrcs(srcs.build())
+              .build(resolver, filesystem));
+    }
+    hashCache = new FakeFileHashCache(hashes);
+  }
+
+  @Test
+  public void computeRuleKeysCorrectness() throws Exception {
+    RuleKey first = computeRuleKeys();
+    assertEquals(first, computeRuleKeys());
+    assertEquals(hashFunction == RuleKeyHashFunction.SHA1 ? 160 : 128, first.getHashCode().bits());
+  }
+
+  @Benchmark
+  public RuleKey computeRuleKeys() {
+    // A new factory has an empty cache, so every key is computed again.
+    DefaultRuleKeyFactory factory =
+        new DefaultRuleKeyFactory(
+            new RuleKeyFieldLoader(0, hashFunction), hashCache, pathResolver, ruleFinder);
+    RuleKey last = factory.build(rules.get(0));
+    for (BuildRule rule : rules) {
+      last = factory.build(rule);
+    }
+    return last;
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.modern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.event.BuckEventBusForTests;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.java.FakeJavaPackageFinder;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.DefaultSourcePathResolver;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.FakeBuildableContext;
+import com.facebook.buck.rules.PathSourcePath;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.rules.modern.execution.ActionExecutor;
+import com.facebook.buck.rules.modern.execution.InMemoryActionCache;
+import com.facebook.buck.rules.modern.execution.LocalSandboxedExecutionStrategy;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.HumanReadableException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class ModernBuildRuleTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  private static final BuildTarget TARGET = BuildTargetFactory.newInstance("//foo:copy");
+
+  private ProjectFilesystem filesystem;
+  private SourcePathRuleFinder ruleFinder;
+  private ExecutionContext executionContext;
+  private AtomicInteger executions;
+  private BuildContext buildContext;
+
+  @Before
+  public void setUp() throws Exception {
+    filesystem = new ProjectFilesystem(tmp.newFolder("project"));
+    filesystem.writeContentsToPath("hello", Paths.get("in.txt"));
+    ruleFinder =
+        new SourcePathRuleFinder(
+            new BuildRuleResolver(
+                TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer()));
+    executionContext = TestExecutionContext.newInstanceWithRealProcessExecutor();
+
+    executions = new AtomicInteger();
+    LocalSandboxedExecutionStrategy local = new LocalSandboxedExecutionStrategy();
+    buildContext =
+        BuildContext.builder()
+            .setSourcePathResolver(DefaultSourcePathResolver.from(ruleFinder))
+            .setJavaPackageFinder(new FakeJavaPackageFinder())
+            .setEventBus(BuckEventBusForTests.newInstance())
+            .setBuildCellRootPath(filesystem.getRootPath())
+            .setActionExecutor(
+                new ActionExecutor(
+                    (action, fs, context) -> {
+                      executions.incrementAndGet();
+                      return local.execute(action, fs, context);
+                    },
+                    new InMemoryActionCache(1024)))
+            .build();
+  }
+
+  private ModernBuildRule<CopyBuildable> createRule(ProjectFilesystem inputFilesystem) {
+    return new ModernBuildRule<>(
+        TARGET,
+        filesystem,
+        new CopyBuildable(
+            new InputPath(new PathSourcePath(inputFilesystem, Paths.get("in.txt")))),
+        ruleFinder);
+  }
+
+  private void build(ModernBuildRule<?> rule) throws Exception {
+    FakeBuildableContext buildableContext = new FakeBuildableContext();
+    for (Step step : rule.getBuildSteps(buildContext, buildableContext)) {
+      assertTrue(step.getDescription(executionContext), step.execute(executionContext).isSuccess());
+    }
+    assertEquals(
+        ImmutableSet.of(new DefaultOutputPathResolver(filesystem, TARGET).getRootPath()),
+        buildableContext.getRecordedArtifacts());
+  }
+
+  private Optional<String> readOutput() {
+    return filesystem.readFileIfItExists(
+        new DefaultOutputPathResolver(filesystem, TARGET).resolvePath(CopyBuildable.OUTPUT));
+  }
+
+  @Test
+  public void commandsRunAsActions() throws Exception {
+    build(createRule(filesystem));
+    assertEquals(Optional.of("hello"), readOutput());
+    assertEquals(1, executions.get());
+  }
+
+  @Test
+  public void identicalActionsOnlyRunOnce() throws Exception {
+    build(createRule(filesystem));
+    // The output directory is cleaned before the action, so the outputs come from the cache.
+    build(createRule(filesystem));
+    assertEquals(Optional.of("hello"), readOutput());
+    assertEquals(1, executions.get());
+
+    filesystem.writeContentsToPath("changed", Paths.get("in.txt"));
+    build(createRule(filesystem));
+    assertEquals(Optional.of("changed"), readOutput());
+    assertEquals(2, executions.get());
+  }
+
+  @Test
+  public void inputsOutsideOfTheProjectAreRejected() throws Exception {
+    ProjectFilesystem otherFilesystem = new ProjectFilesystem(tmp.newFolder("other"));
+    otherFilesystem.writeContentsToPath("outside", Paths.get("in.txt"));
+
+    thrown.expect(HumanReadableException.class);
+    thrown.expectMessage("can't be an input of an action");
+    createRule(otherFilesystem).getBuildSteps(buildContext, new FakeBuildableContext());
+  }
+
+  private static class CopyBuildable implements CommandBuildable {
+    private static final OutputPath OUTPUT = new OutputPath("copy.txt");
+
+    private final InputPath input;
+
+    private CopyBuildable(InputPath input) {
+      this.input = input;
+    }
+
+    @Override
+    public ImmutableSortedSet<InputPath> getCommandInputs() {
+      return ImmutableSortedSet.of(input);
+    }
+
+    @Override
+    public ImmutableList<String> getCommand(
+        InputPathResolver inputPathResolver, OutputPathResolver outputPathResolver) {
+      Path inputPath = inputPathResolver.resolvePath(input);
+      return ImmutableList.of(
+          "/bin/sh", "-c", "cat " + inputPath + " > " + outputPathResolver.resolvePath(OUTPUT));
+    }
+  }
+}
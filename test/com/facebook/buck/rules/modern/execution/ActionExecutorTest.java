@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.modern.execution;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.MoreFiles;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ActionExecutorTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private static final Path OUTPUT_DIR = Paths.get("buck-out/gen/out");
+
+  private ProjectFilesystem filesystem;
+  private ExecutionContext context;
+
+  @Before
+  public void setUp() throws Exception {
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    filesystem.writeContentsToPath("hello", Paths.get("in.txt"));
+    filesystem.writeContentsToPath("undeclared", Paths.get("other.txt"));
+    context = TestExecutionContext.newInstanceWithRealProcessExecutor();
+  }
+
+  private ActionStep newStep(ActionExecutor executor, String script) {
+    return new ActionStep(
+        filesystem,
+        executor,
+        ImmutableList.of("/bin/sh", "-c", script),
+        ImmutableSortedMap.of("GREETING", "hi"),
+        ImmutableSortedSet.of(Paths.get("in.txt")),
+        ImmutableSortedSet.of(OUTPUT_DIR));
+  }
+
+  @Test
+  public void actionsOnlySeeTheirInputsAndEnvironment() throws Exception {
+    ActionExecutor executor =
+        new ActionExecutor(new LocalSandboxedExecutionStrategy(), new InMemoryActionCache(1024));
+    StepExecutionResult result =
+        newStep(
+                executor,
+                "cat in.txt > buck-out/gen/out/copy.txt && echo $GREETING > buck-out/gen/out/env"
+                    + " && test ! -e other.txt")
+            .execute(context);
+
+    assertTrue(result.isSuccess());
+    assertEquals(
+        Optional.of("hello"), filesystem.readFileIfItExists(OUTPUT_DIR.resolve("copy.txt")));
+    assertEquals(Optional.of("hi\n"), filesystem.readFileIfItExists(OUTPUT_DIR.resolve("env")));
+    // The sandbox is removed once the action has run.
+    try (Stream<Path> sandboxes =
+        Files.list(filesystem.resolve(filesystem.getBuckPaths().getTmpDir()))) {
+      assertEquals(0, sandboxes.count());
+    }
+  }
+
+  @Test
+  public void successfulResultsAreReusedUntilInputsChange() throws Exception {
+    AtomicInteger executions = new AtomicInteger();
+    LocalSandboxedExecutionStrategy local = new LocalSandboxedExecutionStrategy();
+    ActionExecutor executor =
+        new ActionExecutor(
+            (action, fs, ctx) -> {
+              executions.incrementAndGet();
+              return local.execute(action, fs, ctx);
+            },
+            new InMemoryActionCache(1024));
+    String script = "cat in.txt > buck-out/gen/out/copy.txt";
+
+    assertTrue(newStep(executor, script).execute(context).isSuccess());
+    filesystem.deleteRecursivelyIfExists(OUTPUT_DIR);
+    assertTrue(newStep(executor, script).execute(context).isSuccess());
+    assertEquals(1, executions.get());
+    assertEquals(
+        Optional.of("hello"), filesystem.readFileIfItExists(OUTPUT_DIR.resolve("copy.txt")));
+
+    filesystem.writeContentsToPath("changed", Paths.get("in.txt"));
+    assertTrue(newStep(executor, script).execute(context).isSuccess());
+    assertEquals(2, executions.get());
+    assertEquals(
+        Optional.of("changed"), filesystem.readFileIfItExists(OUTPUT_DIR.resolve("copy.txt")));
+  }
+
+  @Test
+  public void executableBitsOfInputsAndOutputsAreKept() throws Exception {
+    filesystem.writeContentsToPath("#!/bin/sh\necho tool", Paths.get("in.txt"));
+    MoreFiles.makeExecutable(filesystem.resolve("in.txt"));
+    ActionExecutor executor = ActionExecutor.local(1024);
+    String script =
+        "./in.txt > buck-out/gen/out/data && cp in.txt buck-out/gen/out/tool"
+            + " && chmod +x buck-out/gen/out/tool";
+
+    for (int i = 0; i < 2; i++) {
+      // The second time, the outputs are written from the cached result.
+      filesystem.deleteRecursivelyIfExists(OUTPUT_DIR);
+      assertTrue(newStep(executor, script).execute(context).isSuccess());
+      assertEquals(
+          Optional.of("tool\n"), filesystem.readFileIfItExists(OUTPUT_DIR.resolve("data")));
+      assertTrue(filesystem.isExecutable(OUTPUT_DIR.resolve("tool")));
+      assertFalse(filesystem.isExecutable(OUTPUT_DIR.resolve("data")));
+    }
+  }
+
+  @Test
+  public void failedActionsAreNotCached() throws Exception {
+    AtomicInteger executions = new AtomicInteger();
+    ActionExecutor executor =
+        new ActionExecutor(
+            (action, fs, ctx) -> {
+              executions.incrementAndGet();
+              return new ActionResult(
+                  1, "", "failed", ImmutableSortedMap.of(), ImmutableSortedSet.of());
+            },
+            new InMemoryActionCache(1024));
+
+    StepExecutionResult result = newStep(executor, "false").execute(context);
+    assertFalse(result.isSuccess());
+    assertEquals(Optional.of("failed"), result.getStderr());
+    newStep(executor, "false").execute(context);
+    assertEquals(2, executions.get());
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.modern.execution;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import com.facebook.buck.io.MoreFiles;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ActionTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+
+  @Before
+  public void setUp() throws Exception {
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    filesystem.mkdirs(Paths.get("src/dir"));
+    filesystem.writeContentsToPath("a", Paths.get("src/a.txt"));
+    filesystem.writeContentsToPath("b", Paths.get("src/dir/b.txt"));
+  }
+
+  private Action createAction() throws Exception {
+    return Action.create(
+        filesystem,
+        ImmutableList.of("cat", "src/a.txt"),
+        ImmutableSortedMap.of("LANG", "C"),
+        ImmutableList.of(Paths.get("src/a.txt"), Paths.get("src/dir")),
+        ImmutableSortedSet.of(Paths.get("buck-out/gen/foo")));
+  }
+
+  @Test
+  public void directoryInputsStandForTheFilesTheyContain() throws Exception {
+    assertEquals(
+        ImmutableSortedSet.of(Paths.get("src/a.txt"), Paths.get("src/dir/b.txt")),
+        createAction().getInputs().keySet());
+  }
+
+  @Test
+  public void digestDependsOnTheContentsOfInputs() throws Exception {
+    Action action = createAction();
+    assertEquals(action.getDigest(), createAction().getDigest());
+
+    filesystem.writeContentsToPath("changed", Paths.get("src/dir/b.txt"));
+    assertNotEquals(action.getDigest(), createAction().getDigest());
+  }
+
+  @Test
+  public void digestDependsOnTheModesOfInputs() throws Exception {
+    Action action = createAction();
+    MoreFiles.makeExecutable(filesystem.resolve("src/dir/b.txt"));
+    Action executableAction = createAction();
+
+    assertEquals(
+        ImmutableSortedSet.of(Paths.get("src/dir/b.txt")), executableAction.getExecutableInputs());
+    assertNotEquals(action.getDigest(), executableAction.getDigest());
+  }
+
+  @Test
+  public void actionsSurviveSerialization() throws Exception {
+    MoreFiles.makeExecutable(filesystem.resolve("src/a.txt"));
+    Action action = createAction();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    action.writeTo(new DataOutputStream(bytes));
+
+    Action read =
+        Action.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(action, read);
+    assertEquals(action.getDigest(), read.getDigest());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void pathsOutsideOfTheProjectAreRejected() {
+    Path outside = Paths.get("../outside");
+    new Action(
+        ImmutableList.of("true"),
+        ImmutableSortedMap.of(),
+        ImmutableSortedMap.of(),
+        ImmutableSortedSet.of(),
+        ImmutableSortedSet.of(outside));
+  }
+}
@@ -17,6 +17,7 @@
 package com.facebook.buck.util.cache;
 
 import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThat;
@@ -38,6 +39,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.Optional;
 import org.hamcrest.junit.ExpectedException;
 import org.junit.Rule;
 import org.junit.Test;
@@ -228,4 +230,42 @@ public class WatchedFileHashCacheTest {
     assertFalse(cache.willGet(filesystem.getPath("buck-out/file.txt")));
     assertTrue(cache.willGet(filesystem.getPath("file.txt")));
   }
+
+  @Test
+  public void restoredSnapshotServesHashesWithoutRehashing()
+      throws IOException, InterruptedException {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    tmp.newFolder("foo");
+    Path inputFile = tmp.newFile("foo/bar.txt");
+    Files.write(inputFile, "Hello".getBytes(Charsets.UTF_8));
+    Path snapshot = tmp.getRoot().resolve("buck-out/daemon/file_hashes");
+
+    WatchedFileHashCache cache = new WatchedFileHashCache(filesystem, fileHashCacheMode);
+    HashCode fileHash = cache.get(filesystem.getPath("foo/bar.txt"));
+    HashCode dirHash = cache.get(filesystem.getPath("foo"));
+    cache.saveSnapshot(snapshot, "c:1:2:3");
+
+    // Change the file behind the cache's back: the restored hash is the one from the snapshot.
+    Files.write(inputFile, "Goodbye".getBytes(Charsets.UTF_8));
+    WatchedFileHashCache restored = new WatchedFileHashCache(filesystem, fileHashCacheMode);
+    assertEquals(Optional.of("c:1:2:3"), restored.loadSnapshot(snapshot));
+    assertEquals(Optional.of(fileHash), restored.getIfPresent(filesystem.getPath("foo/bar.txt")));
+    assertEquals(Optional.of(dirHash), restored.getIfPresent(filesystem.getPath("foo")));
+
+    // Replaying the changes since the snapshot's clock invalidates the hashes.
+    restored.onFileSystemChange(
+        WatchmanPathEvent.of(
+            filesystem.getRootPath(),
+            WatchmanPathEvent.Kind.MODIFY,
+            filesystem.getPath("foo/bar.txt")));
+    assertFalse(restored.getIfPresent(filesystem.getPath("foo/bar.txt")).isPresent());
+    assertNotEquals(fileHash, restored.get(filesystem.getPath("foo/bar.txt")));
+  }
+
+  @Test
+  public void missingSnapshotIsNotRestored() {
+    WatchedFileHashCache cache =
+        new WatchedFileHashCache(new FakeProjectFilesystem(), fileHashCacheMode);
+    assertEquals(Optional.empty(), cache.loadSnapshot(tmp.getRoot().resolve("file_hashes")));
+  }
 }
@@ -202,6 +202,29 @@ public class ListeningMultiSemaphoreTest {
     assertThat(second.isDone(), Matchers.equalTo(true));
   }
 
+  @Test
+  public void pendingAcquisitionsAreGrantedByPriority() {
+    ListeningMultiSemaphore semaphore = getFairListeningMultiSemaphore(amountsOfCpu(1));
+    semaphore.acquire(amountsOfCpu(1));
+
+    ListenableFuture<Void> firstLow = semaphore.acquire(amountsOfCpu(1), 1);
+    ListenableFuture<Void> high = semaphore.acquire(amountsOfCpu(1), 10);
+    ListenableFuture<Void> secondLow = semaphore.acquire(amountsOfCpu(1), 1);
+    assertThat(semaphore.getQueueLength(), Matchers.equalTo(3));
+
+    semaphore.release(amountsOfCpu(1));
+    assertThat(high.isDone(), Matchers.equalTo(true));
+    assertThat(firstLow.isDone(), Matchers.equalTo(false));
+
+    semaphore.release(amountsOfCpu(1));
+    assertThat(firstLow.isDone(), Matchers.equalTo(true));
+    assertThat(secondLow.isDone(), Matchers.equalTo(false));
+
+    semaphore.release(amountsOfCpu(1));
+    assertThat(secondLow.isDone(), Matchers.equalTo(true));
+    assertThat(semaphore.getQueueLength(), Matchers.equalTo(0));
+  }
+
   private ListeningMultiSemaphore getFairListeningMultiSemaphore(ResourceAmounts values) {
     return new ListeningMultiSemaphore(values, ResourceAllocationFairness.FAIR);
   }
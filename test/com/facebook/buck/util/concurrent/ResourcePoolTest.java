@@ -18,7 +18,9 @@ package com.facebook.buck.util.concurrent;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -153,6 +155,78 @@ public class ResourcePoolTest {
     }
   }
 
+  @Test
+  public void raisingMaxResourcesLetsWaitingRequestsCreateResources() throws Exception {
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(2));
+    try (Fixture f = new Fixture(/* maxResources */ 1)) {
+      CountDownLatch waitTillAllThreadsAreBusy = new CountDownLatch(2);
+      CountDownLatch unblockAllThreads = new CountDownLatch(1);
+      List<ListenableFuture<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        futures.add(
+            f.getPool()
+                .scheduleOperationWithResource(
+                    r -> {
+                      waitTillAllThreadsAreBusy.countDown();
+                      unblockAllThreads.await();
+                      return r;
+                    },
+                    executorService));
+      }
+      assertFalse(waitTillAllThreadsAreBusy.await(100, TimeUnit.MILLISECONDS));
+
+      f.getPool().setMaxResources(2);
+      assertTrue(waitTillAllThreadsAreBusy.await(1, TimeUnit.SECONDS));
+      unblockAllThreads.countDown();
+
+      Futures.allAsList(futures).get();
+      assertThat(f.getCreatedResources().get(), equalTo(2));
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  @Test
+  public void loweringMaxResourcesRetiresParkedResources() throws Exception {
+    try (Fixture f = new Fixture()) {
+      useAllResources(f);
+      assertThat(f.getPool().getCreatedResourceCount(), equalTo(2));
+
+      f.getPool().setMaxResources(1);
+      assertThat(f.getPool().getCreatedResourceCount(), equalTo(1));
+    }
+  }
+
+  @Test
+  public void retiringIdleResourcesKeepsOne() throws Exception {
+    try (Fixture f = new Fixture()) {
+      useAllResources(f);
+      assertThat(f.getPool().retireIdleResources(TimeUnit.HOURS.toNanos(1)), equalTo(0));
+
+      assertThat(f.getPool().retireIdleResources(0), equalTo(1));
+      assertThat(f.getPool().getCreatedResourceCount(), equalTo(1));
+      assertThat(f.getPool().getMaxResources(), equalTo(1));
+    }
+  }
+
+  private static void useAllResources(Fixture f) throws Exception {
+    CountDownLatch waitTillAllThreadsAreBusy = new CountDownLatch(f.getMaxResources());
+    List<ListenableFuture<?>> futures = new ArrayList<>();
+    for (int i = 0; i < f.getMaxResources(); i++) {
+      futures.add(
+          f.getPool()
+              .scheduleOperationWithResource(
+                  r -> {
+                    waitTillAllThreadsAreBusy.countDown();
+                    waitTillAllThreadsAreBusy.await();
+                    return r;
+                  },
+                  f.getExecutorService()));
+    }
+    Futures.allAsList(futures).get();
+  }
+
   private static class TestResource implements AutoCloseable {
     private final int id;
 
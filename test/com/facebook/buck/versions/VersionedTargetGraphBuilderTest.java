@@ -32,6 +32,7 @@ import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Maps;
 import java.lang.reflect.Field;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ForkJoinPool;
 import org.hamcrest.Matchers;
 import org.junit.Test;
@@ -323,4 +324,72 @@ public class VersionedTargetGraphBuilderTest {
     TargetGraph versionedGraph = builder.build();
     assertEquals(graph, versionedGraph);
   }
+
+  @Test
+  public void onlyChangedRootsAreTransformedAgain() throws Exception {
+    TargetNode<?, ?> dep1 = new VersionPropagatorBuilder("//:dep1").build();
+    TargetNode<?, ?> versioned1 =
+        new VersionedAliasBuilder("//:versioned1").setVersions("1.0", "//:dep1").build();
+    TargetNode<?, ?> root1 = new VersionRootBuilder("//:root1").setDeps("//:versioned1").build();
+    TargetNode<?, ?> versioned2 =
+        new VersionedAliasBuilder("//:versioned2").setVersions("1.0", "//:dep2").build();
+    TargetNode<?, ?> root2 = new VersionRootBuilder("//:root2").setDeps("//:versioned2").build();
+    ImmutableSet<BuildTarget> roots =
+        ImmutableSet.of(root1.getBuildTarget(), root2.getBuildTarget());
+    TargetGraph previousGraph =
+        TargetGraphFactory.newInstanceExact(
+            dep1,
+            versioned1,
+            root1,
+            new VersionPropagatorBuilder("//:dep2").build(),
+            versioned2,
+            root2);
+    VersionedTargetGraph previousVersionedGraph =
+        (VersionedTargetGraph)
+            new VersionedTargetGraphBuilder(
+                    POOL,
+                    new NaiveVersionSelector(),
+                    TargetGraphAndBuildTargets.of(previousGraph, roots),
+                    new DefaultTypeCoercerFactory())
+                .build();
+
+    // Change a dep of the second root only.
+    TargetGraph graph =
+        TargetGraphFactory.newInstanceExact(
+            dep1,
+            versioned1,
+            root1,
+            new VersionPropagatorBuilder("//:extra").build(),
+            new VersionPropagatorBuilder("//:dep2").setDeps("//:extra").build(),
+            versioned2,
+            root2);
+    TargetGraph versionedGraph =
+        new VersionedTargetGraphBuilder(
+                POOL,
+                new NaiveVersionSelector(),
+                TargetGraphAndBuildTargets.of(graph, roots),
+                new DefaultTypeCoercerFactory(),
+                Optional.of(previousGraph),
+                Optional.of(previousVersionedGraph))
+            .build();
+
+    TargetGraph expectedTargetGraph =
+        new VersionedTargetGraphBuilder(
+                POOL,
+                new NaiveVersionSelector(),
+                TargetGraphAndBuildTargets.of(graph, roots),
+                new DefaultTypeCoercerFactory())
+            .build();
+    assertEquals(expectedTargetGraph, versionedGraph);
+    ImmutableMap<BuildTarget, TargetNode<?, ?>> previousNodes =
+        Maps.uniqueIndex(previousVersionedGraph.getNodes(), TargetNode::getBuildTarget);
+    ImmutableMap<BuildTarget, TargetNode<?, ?>> nodes =
+        Maps.uniqueIndex(versionedGraph.getNodes(), TargetNode::getBuildTarget);
+    assertThat(
+        nodes.get(root1.getBuildTarget()),
+        Matchers.sameInstance(previousNodes.get(root1.getBuildTarget())));
+    assertThat(
+        nodes.get(root2.getBuildTarget()),
+        Matchers.not(Matchers.sameInstance(previousNodes.get(root2.getBuildTarget()))));
+  }
 }
@@ -19,20 +19,31 @@ package com.facebook.buck.zip;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeThat;
 
 import com.facebook.buck.io.MoreFiles;
 import com.facebook.buck.io.MorePosixFilePermissions;
+import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.testutil.Zip;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.facebook.buck.util.environment.Platform;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
@@ -219,4 +230,94 @@ public class UnzipTest {
     assertTrue(Files.exists(extractFolder.toAbsolutePath().resolve("foo")));
     assertTrue(Files.exists(extractFolder.toAbsolutePath().resolve("foo/bar")));
   }
+
+  @Test
+  public void testExtractZipFileWithExecutor() throws InterruptedException, IOException {
+    try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(zipFile.toFile())) {
+      for (int i = 0; i < 20; i++) {
+        zip.putArchiveEntry(new ZipArchiveEntry(String.format("subdir%d/%d.bin", i % 3, i)));
+        zip.write(("contents " + i).getBytes(Charsets.UTF_8));
+        zip.closeArchiveEntry();
+      }
+      zip.putArchiveEntry(new ZipArchiveEntry("emptydir/"));
+      zip.closeArchiveEntry();
+    }
+
+    Path extractFolder = tmpFolder.newFolder();
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+    try {
+      ImmutableList<Path> result =
+          Unzip.extractZipFile(
+              zipFile.toAbsolutePath(),
+              new ProjectFilesystem(extractFolder),
+              Unzip.ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES,
+              executorService);
+      assertEquals(20, result.size());
+      for (int i = 0; i < 20; i++) {
+        Path file = extractFolder.resolve(String.format("subdir%d/%d.bin", i % 3, i));
+        assertEquals("contents " + i, new String(Files.readAllBytes(file), Charsets.UTF_8));
+      }
+      assertTrue(Files.isDirectory(extractFolder.resolve("emptydir")));
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testExtractZipFileWithExecutorWaitsForAllWritesWhenOneFails() throws Exception {
+    try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(zipFile.toFile())) {
+      for (int i = 0; i < 20; i++) {
+        zip.putArchiveEntry(new ZipArchiveEntry(String.format("%d.bin", i)));
+        zip.write(("contents " + i).getBytes(Charsets.UTF_8));
+        zip.closeArchiveEntry();
+      }
+    }
+
+    Path extractFolder = tmpFolder.newFolder();
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger started = new AtomicInteger();
+    ProjectFilesystem filesystem =
+        new ProjectFilesystem(extractFolder) {
+          @Override
+          public OutputStream newFileOutputStream(
+              Path pathRelativeToProjectRoot, boolean append, FileAttribute<?>... attrs)
+              throws IOException {
+            started.incrementAndGet();
+            if (pathRelativeToProjectRoot.equals(getPath("0.bin"))) {
+              throw new IOException("Failed to write " + pathRelativeToProjectRoot);
+            }
+            running.incrementAndGet();
+            Uninterruptibles.sleepUninterruptibly(20, TimeUnit.MILLISECONDS);
+            return new FilterOutputStream(
+                super.newFileOutputStream(pathRelativeToProjectRoot, append, attrs)) {
+              @Override
+              public void close() throws IOException {
+                super.close();
+                running.decrementAndGet();
+              }
+            };
+          }
+        };
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+    try {
+      Unzip.extractZipFile(
+          zipFile.toAbsolutePath(),
+          filesystem,
+          Unzip.ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES,
+          executorService);
+      fail("Extracting should fail when an entry cannot be written.");
+    } catch (IOException e) {
+      assertThat(e.getMessage(), Matchers.containsString("0.bin"));
+    } finally {
+      executorService.shutdown();
+    }
+
+    // No write is still running once the failure is reported, nor starts afterwards.
+    assertEquals(0, running.get());
+    int startedWhenFailed = started.get();
+    assertTrue(executorService.awaitTermination(1, TimeUnit.SECONDS));
+    assertEquals(startedWhenFailed, started.get());
+  }
 }